@@ -0,0 +1,432 @@
+import java.io.*;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Batch Processor
+// Headless entry point: java -jar RetroTextEditor.jar --batch <command> ...
+// Files are streamed in fixed-size chunks and processed in parallel,
+// using the same SearchEngine and TextStatistics as the editor UI.
+class BatchProcessor {
+
+    private static final String USAGE =
+        "Usage: java -jar RetroTextEditor.jar --batch <command> [options] <file>...\n" +
+        "\n" +
+        "Commands:\n" +
+        "  find      Print path:line:column for every match\n" +
+        "  replace   Replace every match in place (or into --output)\n" +
+        "  stats     Print characters, words and lines per file\n" +
+        "  convert   Re-encode files from --encoding to --to\n" +
+        "\n" +
+        "Options:\n" +
+        "  --find TEXT         Text to search for\n" +
+        "  --replace TEXT      Replacement text\n" +
+        "  --case-sensitive    Match case\n" +
+        "  --whole-word        Match whole words only\n" +
+        "  --encoding CHARSET  Input encoding (default UTF-8)\n" +
+        "  --to CHARSET        Output encoding (default: input encoding)\n" +
+        "  --output DIR        Write results to DIR instead of in place\n" +
+        "  --threads N         Files processed in parallel (default: CPUs)";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private String command;
+    private String findText;
+    private String replaceText;
+    private boolean caseSensitive;
+    private boolean wholeWord;
+    private Charset inputCharset = StandardCharsets.UTF_8;
+    private Charset outputCharset;
+    private File outputDir;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean help;
+    private final List<File> files = new ArrayList<>();
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private BatchProcessor(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // Returns the process exit code: 0 on success, 1 if find matched
+    // nothing, 2 on usage or I/O errors
+    public static int run(String[] args) {
+        BatchProcessor processor = new BatchProcessor(System.out, System.err);
+        try {
+            processor.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            processor.err.println("Error: " + e.getMessage());
+            processor.err.println(USAGE);
+            return 2;
+        }
+        if (processor.help) {
+            processor.out.println(USAGE);
+            return 0;
+        }
+        return processor.execute();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--find":
+                    findText = value(args, ++i, arg);
+                    break;
+                case "--replace":
+                    replaceText = value(args, ++i, arg);
+                    break;
+                case "--case-sensitive":
+                    caseSensitive = true;
+                    break;
+                case "--whole-word":
+                    wholeWord = true;
+                    break;
+                case "--encoding":
+                    inputCharset = charset(value(args, ++i, arg));
+                    break;
+                case "--to":
+                    outputCharset = charset(value(args, ++i, arg));
+                    break;
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(
+                            "Invalid thread count: " + args[i]
+                        );
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException(
+                            "Thread count must be positive"
+                        );
+                    }
+                    break;
+                case "--help":
+                    help = true;
+                    return;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException(
+                            "Unknown option: " + arg
+                        );
+                    }
+                    if (command == null) {
+                        command = arg;
+                    } else {
+                        files.add(new File(arg));
+                    }
+            }
+        }
+
+        if (command == null) {
+            throw new IllegalArgumentException("No command given");
+        }
+        if (outputCharset == null) {
+            outputCharset = inputCharset;
+        }
+        switch (command) {
+            case "find":
+                requireFindText();
+                break;
+            case "replace":
+                requireFindText();
+                if (replaceText == null) {
+                    throw new IllegalArgumentException(
+                        "replace requires --replace"
+                    );
+                }
+                break;
+            case "stats":
+            case "convert":
+                break;
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown command: " + command
+                );
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No input files given");
+        }
+        if (outputDir != null) {
+            // Every file is written to outputDir under its own name, so two
+            // with the same name would overwrite each other; compared
+            // ignoring case, as some file systems do
+            Set<String> names = new HashSet<>();
+            for (File file : files) {
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if (!names.add(name)) {
+                    throw new IllegalArgumentException(
+                        "More than one input file is named " +
+                        file.getName() + " for --output"
+                    );
+                }
+            }
+        }
+    }
+
+    private void requireFindText() {
+        if (findText == null || findText.isEmpty()) {
+            throw new IllegalArgumentException(command + " requires --find");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " requires a value");
+        }
+        return args[index];
+    }
+
+    private static Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown charset: " + name);
+        }
+    }
+
+    private int execute() {
+        if (outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()) {
+            err.println("Error: cannot create output directory " + outputDir);
+            return 2;
+        }
+
+        SearchEngine engine = findText != null
+            ? new SearchEngine(findText, caseSensitive, wholeWord)
+            : null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threads, files.size())
+        );
+        List<Future<FileResult>> futures = new ArrayList<>();
+        for (File file : files) {
+            futures.add(executor.submit(() -> processFile(file, engine)));
+        }
+
+        // Collect in argument order so summaries are deterministic
+        boolean failed = false;
+        long totalMatches = 0;
+        TextStatistics[] stats = new TextStatistics[files.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                FileResult result = futures.get(i).get();
+                totalMatches += result.matches;
+                stats[i] = result.statistics;
+                if (command.equals("replace")) {
+                    out.println(
+                        files.get(i) + ": replaced " + result.matches +
+                        " occurrences"
+                    );
+                } else if (command.equals("convert")) {
+                    out.println(
+                        files.get(i) + ": converted " + inputCharset.name() +
+                        " -> " + outputCharset.name()
+                    );
+                }
+            } catch (ExecutionException e) {
+                failed = true;
+                err.println(files.get(i) + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+                break;
+            }
+        }
+        executor.shutdownNow();
+
+        if (command.equals("stats")) {
+            printStatistics(stats);
+        }
+
+        if (failed) return 2;
+        if (command.equals("find") && totalMatches == 0) return 1;
+        return 0;
+    }
+
+    private FileResult processFile(File file, SearchEngine engine)
+        throws IOException {
+        FileResult result = new FileResult();
+        switch (command) {
+            case "find":
+                try (Reader reader = openReader(file, false)) {
+                    String path = file.getPath();
+                    result.matches = engine.scan(
+                        reader,
+                        (offset, line, column) -> {
+                            synchronized (out) {
+                                out.println(path + ":" + line + ":" + column);
+                            }
+                        },
+                        null,
+                        null
+                    );
+                }
+                break;
+            case "replace":
+                result.matches = rewrite(file, (reader, writer) ->
+                    engine.scan(reader, null, writer, replaceText)
+                );
+                break;
+            case "convert":
+                rewrite(file, (reader, writer) -> {
+                    char[] buf = new char[BUFFER_SIZE];
+                    int n;
+                    while ((n = reader.read(buf)) != -1) {
+                        writer.write(buf, 0, n);
+                    }
+                    return 0;
+                });
+                break;
+            case "stats":
+                try (Reader reader = openReader(file, false)) {
+                    result.statistics = TextStatistics.of(reader);
+                }
+                break;
+        }
+        return result;
+    }
+
+    // Streams a file through the transform into a temporary file next to
+    // the target, then moves it into place with the file's permissions.
+    // Input that is not valid in the charset fails the file rather than
+    // turning into U+FFFD, and a replace that matched nothing in place
+    // leaves the file untouched.
+    private long rewrite(File file, Transform transform) throws IOException {
+        File target = outputDir != null
+            ? new File(outputDir, file.getName())
+            : file;
+        File dir = target.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(".batch", ".tmp", dir);
+        long count;
+        try {
+            try (
+                Reader reader = openReader(file, true);
+                Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(
+                        new FileOutputStream(temp),
+                        outputCharset
+                    ),
+                    BUFFER_SIZE
+                )
+            ) {
+                count = transform.apply(reader, writer);
+            } catch (CharacterCodingException e) {
+                throw new IOException(
+                    "not valid " + inputCharset.name() + " text, left as is"
+                );
+            }
+            boolean unchanged =
+                count == 0 &&
+                command.equals("replace") &&
+                target == file &&
+                outputCharset.equals(inputCharset);
+            if (!unchanged) {
+                copyAttributes(file.toPath(), temp.toPath());
+                moveReplacing(temp.toPath(), target.toPath());
+            }
+        } finally {
+            temp.delete();
+        }
+        return count;
+    }
+
+    // The temporary file is created owner-only; give it the permissions
+    // and, where allowed, the owner of the file it replaces
+    private static void copyAttributes(Path from, Path to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(
+                to,
+                Files.getPosixFilePermissions(from)
+            );
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; keep the defaults
+            return;
+        }
+        UserPrincipal owner = Files.getOwner(from);
+        if (!owner.equals(Files.getOwner(to))) {
+            try {
+                Files.setOwner(to, owner);
+            } catch (FileSystemException e) {
+                // Only a privileged user may give a file away
+            }
+        }
+    }
+
+    private static void moveReplacing(Path source, Path target)
+        throws IOException {
+        try {
+            Files.move(
+                source,
+                target,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Rewrites decode strictly so malformed input is reported instead of
+    // being silently replaced
+    private Reader openReader(File file, boolean strict) throws IOException {
+        CharsetDecoder decoder = inputCharset.newDecoder();
+        CodingErrorAction action = strict
+            ? CodingErrorAction.REPORT
+            : CodingErrorAction.REPLACE;
+        decoder.onMalformedInput(action);
+        decoder.onUnmappableCharacter(action);
+        return new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), decoder),
+            BUFFER_SIZE
+        );
+    }
+
+    private void printStatistics(TextStatistics[] stats) {
+        String format = "%12s %12s %12s %12s  %s%n";
+        out.printf(format, "chars", "non-space", "words", "lines", "file");
+        long chars = 0, nonSpace = 0, words = 0, lines = 0;
+        for (int i = 0; i < stats.length; i++) {
+            if (stats[i] == null) continue;
+            out.printf(
+                format,
+                stats[i].getCharacters(),
+                stats[i].getNonWhitespaceCharacters(),
+                stats[i].getWords(),
+                stats[i].getLines(),
+                files.get(i)
+            );
+            chars += stats[i].getCharacters();
+            nonSpace += stats[i].getNonWhitespaceCharacters();
+            words += stats[i].getWords();
+            lines += stats[i].getLines();
+        }
+        if (stats.length > 1) {
+            out.printf(format, chars, nonSpace, words, lines, "total");
+        }
+    }
+
+    private interface Transform {
+        long apply(Reader reader, Writer writer) throws IOException;
+    }
+
+    private static class FileResult {
+
+        long matches;
+        TextStatistics statistics;
+    }
+}
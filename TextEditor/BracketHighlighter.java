@@ -0,0 +1,92 @@
+import java.awt.Color;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+
+// Bracket Highlighter
+// Marks the bracket next to the caret and the one it pairs with, looked
+// up in a structure index rather than by scanning the text. A bracket
+// without a partner is marked on its own in another color.
+class BracketHighlighter {
+
+    private static final Color MATCH_COLOR = new Color(190, 215, 255);
+    private static final Color UNMATCHED_COLOR = new Color(255, 200, 200);
+    private static final Highlighter.HighlightPainter MATCH_PAINTER =
+        new DefaultHighlighter.DefaultHighlightPainter(MATCH_COLOR);
+    private static final Highlighter.HighlightPainter UNMATCHED_PAINTER =
+        new DefaultHighlighter.DefaultHighlightPainter(UNMATCHED_COLOR);
+
+    private final JTextComponent textArea;
+    private StructureIndex index;
+    private Object[] tags = new Object[0];
+
+    BracketHighlighter(JTextComponent textArea) {
+        this.textArea = textArea;
+        textArea.addCaretListener(e -> refresh());
+    }
+
+    // The index must describe the text area's document; null turns
+    // highlighting off
+    public void setIndex(StructureIndex index) {
+        this.index = index;
+        refresh();
+    }
+
+    public void refresh() {
+        clear();
+        if (
+            index == null ||
+            textArea.getSelectionStart() != textArea.getSelectionEnd() ||
+            !(textArea.getDocument() instanceof EditorDocument)
+        ) {
+            return;
+        }
+        // Only trust the index once it has caught up with the edits
+        EditorDocument document = (EditorDocument) textArea.getDocument();
+        if (!index.isCurrent(document)) return;
+
+        Element root = document.getDefaultRootElement();
+        int caret = textArea.getCaretPosition();
+        // The bracket before the caret wins, as after typing one
+        int bracket = caret - 1;
+        int match = bracket >= 0
+            ? index.findMatch(root, bracket)
+            : StructureIndex.NO_BRACKET;
+        if (match == StructureIndex.NO_BRACKET) {
+            bracket = caret;
+            match = index.findMatch(root, bracket);
+        }
+        if (match == StructureIndex.NO_BRACKET) return;
+
+        if (match < 0) {
+            tags = new Object[] { highlight(bracket, UNMATCHED_PAINTER) };
+        } else {
+            tags = new Object[] {
+                highlight(bracket, MATCH_PAINTER),
+                highlight(match, MATCH_PAINTER),
+            };
+        }
+    }
+
+    private Object highlight(
+        int offset,
+        Highlighter.HighlightPainter painter
+    ) {
+        try {
+            return textArea
+                .getHighlighter()
+                .addHighlight(offset, offset + 1, painter);
+        } catch (BadLocationException e) {
+            return null;
+        }
+    }
+
+    private void clear() {
+        for (Object tag : tags) {
+            if (tag != null) textArea.getHighlighter().removeHighlight(tag);
+        }
+        tags = new Object[0];
+    }
+}
@@ -0,0 +1,107 @@
+// Change Batch
+// Edits to a document merged into one replaced range: the text in
+// [start, oldEnd) before the batch became [start, end) in its version
+class ChangeBatch {
+
+    final EditorDocument.Version version;
+    final int start;
+    final int end;
+    final int oldEnd;
+    final int events;
+    // The whole document was replaced, e.g. by loading a file
+    final boolean reset;
+
+    private ChangeBatch(
+        EditorDocument.Version version,
+        int start,
+        int end,
+        int oldEnd,
+        int events,
+        boolean reset
+    ) {
+        this.version = version;
+        this.start = start;
+        this.end = end;
+        this.oldEnd = oldEnd;
+        this.events = events;
+        this.reset = reset;
+    }
+
+    static ChangeBatch inserted(
+        EditorDocument.Version version,
+        int offset,
+        int length
+    ) {
+        return new ChangeBatch(
+            version,
+            offset,
+            offset + length,
+            offset,
+            1,
+            false
+        );
+    }
+
+    static ChangeBatch removed(
+        EditorDocument.Version version,
+        int offset,
+        int length
+    ) {
+        return new ChangeBatch(
+            version,
+            offset,
+            offset,
+            offset + length,
+            1,
+            false
+        );
+    }
+
+    static ChangeBatch reset(EditorDocument.Version version) {
+        return new ChangeBatch(version, 0, version.text.length(), 0, 0, true);
+    }
+
+    public TextRope getText() {
+        return version.text;
+    }
+
+    public int getLengthDelta() {
+        return end - oldEnd;
+    }
+
+    // This batch followed by next, whose offsets are in this batch's
+    // resulting text
+    ChangeBatch merge(ChangeBatch next) {
+        if (reset || next.reset) return reset(next.version);
+        int newStart = Math.min(start, next.start);
+
+        // Where this batch's end lands after next is applied
+        int mappedEnd;
+        if (end <= next.start) {
+            mappedEnd = end;
+        } else if (end >= next.oldEnd) {
+            mappedEnd = end + next.getLengthDelta();
+        } else {
+            mappedEnd = next.end;
+        }
+
+        // Where next's old end was before this batch was applied
+        int mappedOldEnd;
+        if (next.oldEnd <= start) {
+            mappedOldEnd = next.oldEnd;
+        } else if (next.oldEnd >= end) {
+            mappedOldEnd = next.oldEnd - getLengthDelta();
+        } else {
+            mappedOldEnd = oldEnd;
+        }
+
+        return new ChangeBatch(
+            next.version,
+            newStart,
+            Math.max(mappedEnd, next.end),
+            Math.max(oldEnd, mappedOldEnd),
+            events + next.events,
+            false
+        );
+    }
+}
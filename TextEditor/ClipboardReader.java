@@ -0,0 +1,94 @@
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Clipboard Reader
+// Reads clipboard text a bounded chunk at a time through the Reader of
+// its best plain text flavor, turning \r\n and \r into \n as a standard
+// paste does, so huge clipboards never have to exist as one String
+class ClipboardReader implements Closeable {
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private final Reader in;
+    private final char[] buffer = new char[CHUNK_SIZE];
+    private boolean afterReturn;
+    private boolean ended;
+
+    private ClipboardReader(Reader in) {
+        this.in = in;
+    }
+
+    // A reader for the text in contents, or null when it holds none
+    public static ClipboardReader open(Transferable contents)
+        throws IOException {
+        if (contents == null) return null;
+        DataFlavor[] flavors = contents.getTransferDataFlavors();
+        if (flavors == null) return null;
+        // Only plain text: the best flavor overall would paste a browser's
+        // copy as its HTML markup
+        List<DataFlavor> plain = new ArrayList<>();
+        for (DataFlavor flavor : flavors) {
+            if (
+                flavor.isMimeTypeEqual("text/plain") ||
+                flavor.equals(DataFlavor.stringFlavor)
+            ) {
+                plain.add(flavor);
+            }
+        }
+        DataFlavor flavor = DataFlavor.selectBestTextFlavor(
+            plain.toArray(new DataFlavor[0])
+        );
+        if (flavor == null) return null;
+        try {
+            return new ClipboardReader(flavor.getReaderForText(contents));
+        } catch (UnsupportedFlavorException e) {
+            return null;
+        }
+    }
+
+    // Up to CHUNK_SIZE more characters, or null once all have been read
+    public String next() throws IOException {
+        int length = 0;
+        while (length < buffer.length && !ended) {
+            int count = in.read(buffer, length, buffer.length - length);
+            if (count == -1) {
+                ended = true;
+            } else {
+                length = normalize(length, count);
+            }
+        }
+        return length == 0 ? null : new String(buffer, 0, length);
+    }
+
+    // False once the text is known to be used up
+    public boolean hasMore() {
+        return !ended;
+    }
+
+    // Converts line endings in the count chars read at start, in place;
+    // a \r at the end of one read still swallows a \n opening the next
+    private int normalize(int start, int count) {
+        int out = start;
+        for (int i = start; i < start + count; i++) {
+            char c = buffer[i];
+            if (c == '\n' && afterReturn) {
+                afterReturn = false;
+                continue;
+            }
+            afterReturn = c == '\r';
+            buffer[out++] = afterReturn ? '\n' : c;
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
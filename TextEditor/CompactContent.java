@@ -0,0 +1,783 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+// Compact Content
+// Document content that keeps Latin-1 text at a byte per character. It
+// is a gap buffer with the position and undo behaviour of GapContent,
+// but the buffer is cut into chunks that hold bytes until a character
+// outside Latin-1 is written to them, and chunks lying wholly in the gap
+// are let go.
+class CompactContent implements AbstractDocument.Content {
+
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int GROWTH_SIZE = 512 * 1024;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - CHUNK_SIZE;
+    // A mark, its position and its slot in the mark vector
+    private static final int MARK_BYTES = 64;
+    private static final char[] EMPTY = new char[0];
+
+    // Chunk k holds the buffer from k * CHUNK_SIZE on, as bytes in
+    // narrow[k] or, once widened, as chars in wide[k]
+    private byte[][] narrow;
+    private char[][] wide;
+    private int capacity;
+    private int gapStart;
+    private int gapEnd;
+    private int narrowChunks;
+    private int wideChunks;
+
+    private Marks marks = new Marks(16);
+    private final ReferenceQueue<StickyPosition> queue =
+        new ReferenceQueue<>();
+    private int unusedMarks;
+
+    CompactContent() {
+        this(EMPTY, 0);
+    }
+
+    // Takes the text as it is, without the String that insertString
+    // would need, followed by the newline every document ends with
+    CompactContent(char[] text, int length) {
+        if (length >= MAX_CAPACITY - GROWTH_SIZE) {
+            throw new OutOfMemoryError("Text is too long");
+        }
+        capacity = length + 1 + GROWTH_SIZE;
+        int chunks = chunkCount(capacity);
+        narrow = new byte[chunks][];
+        wide = new char[chunks][];
+        // Laid out as GapContent leaves a loaded text, with the gap
+        // between the text and the newline
+        int newline = length > 0 ? capacity - 1 : 0;
+        write(0, text, 0, length);
+        write(newline, new char[] { '\n' }, 0, 1);
+        gapStart = length > 0 ? length : 1;
+        gapEnd = length > 0 ? newline : capacity;
+    }
+
+    // Adds text before the final newline, for building content up
+    // without a String per piece
+    public void append(char[] text, int offset, int length) {
+        if (length == 0) return;
+        int where = length() - 1;
+        open(where, length);
+        write(where, text, offset, length);
+    }
+
+    // Bytes held for the text and its positions
+    public long getFootprint() {
+        return (
+            (long) narrowChunks * CHUNK_SIZE +
+            (long) wideChunks * CHUNK_SIZE * 2 +
+            (long) narrow.length * 16 +
+            (long) marks.size() * MARK_BYTES
+        );
+    }
+
+    // --- AbstractDocument.Content ---
+
+    @Override
+    public int length() {
+        return capacity - (gapEnd - gapStart);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str)
+        throws BadLocationException {
+        if (where > length() || where < 0) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        char[] chars = str.toCharArray();
+        if (chars.length > 0) {
+            open(where, chars.length);
+            write(where, chars, 0, chars.length);
+        }
+        return new InsertUndo(where, chars.length);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems)
+        throws BadLocationException {
+        if (where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", length() + 1);
+        }
+        String removed = getString(where, nitems);
+        UndoableEdit edit = new RemoveUndo(where, removed);
+        close(where, nitems);
+        return edit;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment segment = new Segment();
+        getChars(where, len, segment);
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    // A run within one widened chunk is handed out in place, as
+    // GapContent hands out its array; anything else is copied. Partial
+    // returns stop at the end of a chunk, so copies stay small.
+    @Override
+    public void getChars(int where, int len, Segment chars)
+        throws BadLocationException {
+        int end = where + len;
+        if (where < 0 || end < 0) {
+            throw new BadLocationException("Invalid location", -1);
+        }
+        if (end > length() || where > length()) {
+            throw new BadLocationException("Invalid location", length() + 1);
+        }
+        int index = toIndex(where);
+        int count = len;
+        if (chars.isPartialReturn()) {
+            count = Math.min(count, CHUNK_SIZE - (index & CHUNK_MASK));
+            if (where < gapStart) count = Math.min(count, gapStart - where);
+        }
+        int chunk = index >>> CHUNK_SHIFT;
+        boolean inGap = where < gapStart && where + count > gapStart;
+        if (
+            count > 0 &&
+            !inGap &&
+            wide[chunk] != null &&
+            (index + count - 1) >>> CHUNK_SHIFT == chunk
+        ) {
+            chars.array = wide[chunk];
+            chars.offset = index & CHUNK_MASK;
+            chars.count = count;
+            return;
+        }
+        char[] copy = count > 0 ? new char[count] : EMPTY;
+        int below = Math.max(0, Math.min(count, gapStart - where));
+        read(index, copy, 0, below);
+        read(toIndex(where + below), copy, below, count - below);
+        chars.array = copy;
+        chars.offset = 0;
+        chars.count = count;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        while (queue.poll() != null) {
+            unusedMarks++;
+        }
+        if (unusedMarks > Math.max(5, marks.size() / 10)) {
+            removeUnusedMarks();
+        }
+        int index = toIndex(offset);
+        int sortIndex = findSortIndex(index);
+        if (sortIndex < marks.size()) {
+            MarkData mark = marks.get(sortIndex);
+            StickyPosition position = mark.get();
+            if (mark.index == index && position != null) return position;
+        }
+        StickyPosition position = new StickyPosition();
+        MarkData mark = new MarkData(index, position, queue);
+        position.mark = mark;
+        marks.insert(sortIndex, mark);
+        return position;
+    }
+
+    // Text below the gap sits at its offset, text above it past the gap
+    private int toIndex(int offset) {
+        return offset < gapStart ? offset : offset + (gapEnd - gapStart);
+    }
+
+    // --- Chunk storage ---
+
+    private static int chunkCount(int capacity) {
+        return (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+    private void allocate(int chunk) {
+        if (narrow[chunk] == null && wide[chunk] == null) {
+            narrow[chunk] = new byte[CHUNK_SIZE];
+            narrowChunks++;
+        }
+    }
+
+    private void widen(int chunk) {
+        byte[] bytes = narrow[chunk];
+        char[] chars = new char[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        wide[chunk] = chars;
+        narrow[chunk] = null;
+        narrowChunks--;
+        wideChunks++;
+    }
+
+    // Lets go of the chunks that lie wholly in the gap and overlap
+    // [from, to), the part the gap has just grown or moved over
+    private void release(int from, int to) {
+        int first = Math.max(
+            (gapStart + CHUNK_MASK) >>> CHUNK_SHIFT,
+            from >>> CHUNK_SHIFT
+        );
+        int last = Math.min(gapEnd >>> CHUNK_SHIFT, chunkCount(to));
+        for (int chunk = first; chunk < last; chunk++) {
+            if (narrow[chunk] != null) {
+                narrow[chunk] = null;
+                narrowChunks--;
+            }
+            if (wide[chunk] != null) {
+                wide[chunk] = null;
+                wideChunks--;
+            }
+        }
+    }
+
+    private static boolean isLatin1(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (chars[i] > 0xFF) return false;
+        }
+        return true;
+    }
+
+    private void write(int index, char[] src, int offset, int length) {
+        while (length > 0) {
+            int chunk = index >>> CHUNK_SHIFT;
+            int at = index & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - at);
+            allocate(chunk);
+            if (wide[chunk] == null && !isLatin1(src, offset, n)) {
+                widen(chunk);
+            }
+            if (wide[chunk] != null) {
+                System.arraycopy(src, offset, wide[chunk], at, n);
+            } else {
+                byte[] bytes = narrow[chunk];
+                for (int i = 0; i < n; i++) {
+                    bytes[at + i] = (byte) src[offset + i];
+                }
+            }
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void read(int index, char[] dst, int offset, int length) {
+        while (length > 0) {
+            int chunk = index >>> CHUNK_SHIFT;
+            int at = index & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - at);
+            if (wide[chunk] != null) {
+                System.arraycopy(wide[chunk], at, dst, offset, n);
+            } else {
+                byte[] bytes = narrow[chunk];
+                for (int i = 0; i < n; i++) {
+                    dst[offset + i] = (char) (bytes[at + i] & 0xFF);
+                }
+            }
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Moves a run of the buffer, which may overlap itself, a piece at a
+    // time so that no piece crosses a chunk boundary at either end
+    private void move(int from, int to, int length) {
+        if (length == 0 || from == to) return;
+        if (to < from) {
+            int done = 0;
+            while (done < length) {
+                int n = Math.min(
+                    length - done,
+                    Math.min(
+                        CHUNK_SIZE - ((from + done) & CHUNK_MASK),
+                        CHUNK_SIZE - ((to + done) & CHUNK_MASK)
+                    )
+                );
+                copy(from + done, to + done, n);
+                done += n;
+            }
+        } else {
+            int left = length;
+            while (left > 0) {
+                int n = Math.min(
+                    left,
+                    Math.min(
+                        ((from + left - 1) & CHUNK_MASK) + 1,
+                        ((to + left - 1) & CHUNK_MASK) + 1
+                    )
+                );
+                left -= n;
+                copy(from + left, to + left, n);
+            }
+        }
+    }
+
+    private void copy(int from, int to, int n) {
+        int source = from >>> CHUNK_SHIFT;
+        int target = to >>> CHUNK_SHIFT;
+        int at = from & CHUNK_MASK;
+        int into = to & CHUNK_MASK;
+        allocate(target);
+        char[] chars = wide[source];
+        if (chars == null) {
+            byte[] bytes = narrow[source];
+            if (wide[target] == null) {
+                System.arraycopy(bytes, at, narrow[target], into, n);
+            } else {
+                char[] dst = wide[target];
+                for (int i = 0; i < n; i++) {
+                    dst[into + i] = (char) (bytes[at + i] & 0xFF);
+                }
+            }
+            return;
+        }
+        if (wide[target] == null && !isLatin1(chars, at, n)) widen(target);
+        if (wide[target] != null) {
+            System.arraycopy(chars, at, wide[target], into, n);
+        } else {
+            byte[] dst = narrow[target];
+            for (int i = 0; i < n; i++) {
+                dst[into + i] = (byte) chars[at + i];
+            }
+        }
+    }
+
+    // --- Gap management, as GapVector and GapContent do it ---
+
+    private void open(int position, int length) {
+        int gapSize = gapEnd - gapStart;
+        shiftGap(position);
+        if (length >= gapSize) {
+            shiftEnd(capacity - gapSize + length);
+        }
+        gapStart += length;
+    }
+
+    private void close(int position, int length) {
+        if (length == 0) return;
+        int end = position + length;
+        int newGapSize = (gapEnd - gapStart) + length;
+        if (end <= gapStart) {
+            if (gapStart != end) shiftGap(end);
+            shiftGapStartDown(gapStart - length);
+        } else if (position >= gapStart) {
+            if (gapStart != position) shiftGap(position);
+            shiftGapEndUp(gapStart + newGapSize);
+        } else {
+            shiftGapStartDown(position);
+            shiftGapEndUp(gapStart + newGapSize);
+        }
+    }
+
+    private void shiftEnd(int newSize) {
+        if (newSize > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Text is too long");
+        }
+        long grown = newSize < GROWTH_SIZE
+            ? (newSize + 1L) * 2
+            : (long) newSize + GROWTH_SIZE;
+        int newCapacity = (int) Math.min(grown, MAX_CAPACITY);
+        int chunks = chunkCount(newCapacity);
+        if (chunks > narrow.length) {
+            narrow = Arrays.copyOf(narrow, chunks);
+            wide = Arrays.copyOf(wide, chunks);
+        }
+
+        int oldGapEnd = gapEnd;
+        int upperSize = capacity - oldGapEnd;
+        capacity = newCapacity;
+        gapEnd = newCapacity - upperSize;
+        move(oldGapEnd, gapEnd, upperSize);
+        release(oldGapEnd, gapEnd);
+
+        int shift = gapEnd - oldGapEnd;
+        int n = marks.size();
+        for (int i = findMarkAdjustIndex(oldGapEnd); i < n; i++) {
+            marks.get(i).index += shift;
+        }
+    }
+
+    private void shiftGap(int newGapStart) {
+        int oldGapStart = gapStart;
+        int oldGapEnd = gapEnd;
+        int shift = newGapStart - oldGapStart;
+        int newGapEnd = oldGapEnd + shift;
+        int gapSize = oldGapEnd - oldGapStart;
+        gapStart = newGapStart;
+        gapEnd = newGapEnd;
+
+        int n = marks.size();
+        if (shift > 0) {
+            // Gap moves up, the text and marks above it move down
+            move(oldGapEnd, oldGapStart, shift);
+            release(oldGapEnd, newGapEnd);
+            for (int i = findMarkAdjustIndex(oldGapStart); i < n; i++) {
+                MarkData mark = marks.get(i);
+                if (mark.index >= newGapEnd) break;
+                mark.index -= gapSize;
+            }
+        } else if (shift < 0) {
+            // Gap moves down, the text and marks below it move up
+            move(newGapStart, newGapEnd, -shift);
+            release(newGapStart, oldGapStart);
+            for (int i = findMarkAdjustIndex(newGapStart); i < n; i++) {
+                MarkData mark = marks.get(i);
+                if (mark.index >= oldGapEnd) break;
+                mark.index += gapSize;
+            }
+        }
+        resetMarksAtZero();
+    }
+
+    // Marks in the removed text collapse onto the end of the gap
+    private void shiftGapStartDown(int newGapStart) {
+        int n = marks.size();
+        for (int i = findMarkAdjustIndex(newGapStart); i < n; i++) {
+            MarkData mark = marks.get(i);
+            if (mark.index > gapStart) break;
+            mark.index = gapEnd;
+        }
+        int oldGapStart = gapStart;
+        gapStart = newGapStart;
+        release(newGapStart, oldGapStart);
+        resetMarksAtZero();
+    }
+
+    private void shiftGapEndUp(int newGapEnd) {
+        int n = marks.size();
+        for (int i = findMarkAdjustIndex(gapEnd); i < n; i++) {
+            MarkData mark = marks.get(i);
+            if (mark.index >= newGapEnd) break;
+            mark.index = newGapEnd;
+        }
+        int oldGapEnd = gapEnd;
+        gapEnd = newGapEnd;
+        release(oldGapEnd, newGapEnd);
+        resetMarksAtZero();
+    }
+
+    // Positions at offset 0 stay there when text is inserted before them
+    private void resetMarksAtZero() {
+        if (gapStart != 0) return;
+        int n = marks.size();
+        for (int i = 0; i < n; i++) {
+            MarkData mark = marks.get(i);
+            if (mark.index > gapEnd) break;
+            mark.index = 0;
+        }
+    }
+
+    // --- Marks ---
+
+    // First of the marks at or above index, never counting those at 0
+    private int findMarkAdjustIndex(int index) {
+        int search = Math.max(index, 1);
+        int i = findSortIndex(search);
+        while (i > 0 && marks.get(i - 1).index == search) {
+            i--;
+        }
+        return i;
+    }
+
+    private int findSortIndex(int index) {
+        int upper = marks.size() - 1;
+        if (upper < 0) return 0;
+        if (index > marks.get(upper).index) return upper + 1;
+        int lower = 0;
+        int mid = 0;
+        int cmp = 0;
+        while (lower <= upper) {
+            mid = lower + (upper - lower) / 2;
+            cmp = Integer.compare(index, marks.get(mid).index);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                upper = mid - 1;
+            } else {
+                lower = mid + 1;
+            }
+        }
+        return cmp < 0 ? mid : mid + 1;
+    }
+
+    private void removeUnusedMarks() {
+        int n = marks.size();
+        Marks cleaned = new Marks(n + 16);
+        for (int i = 0; i < n; i++) {
+            MarkData mark = marks.get(i);
+            if (mark.get() != null) cleaned.insert(cleaned.size(), mark);
+        }
+        marks = cleaned;
+        unusedMarks = 0;
+    }
+
+    private final class MarkData extends WeakReference<StickyPosition> {
+
+        int index;
+
+        MarkData(
+            int index,
+            StickyPosition position,
+            ReferenceQueue<StickyPosition> queue
+        ) {
+            super(position, queue);
+            this.index = index;
+        }
+
+        int getOffset() {
+            int offset = index < gapStart
+                ? index
+                : index - (gapEnd - gapStart);
+            return Math.max(offset, 0);
+        }
+    }
+
+    private final class StickyPosition implements Position {
+
+        MarkData mark;
+
+        @Override
+        public int getOffset() {
+            return mark.getOffset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    // Marks in index order, in a gap vector of their own since new ones
+    // tend to be added near the last
+    private static final class Marks {
+
+        private MarkData[] array;
+        private int gapStart;
+        private int gapEnd;
+
+        Marks(int capacity) {
+            array = new MarkData[capacity];
+            gapEnd = capacity;
+        }
+
+        int size() {
+            return array.length - (gapEnd - gapStart);
+        }
+
+        MarkData get(int i) {
+            return array[i < gapStart ? i : i + (gapEnd - gapStart)];
+        }
+
+        void set(int i, MarkData mark) {
+            array[i < gapStart ? i : i + (gapEnd - gapStart)] = mark;
+        }
+
+        void insert(int i, MarkData mark) {
+            if (gapStart == gapEnd) grow();
+            if (i < gapStart) {
+                int n = gapStart - i;
+                System.arraycopy(array, i, array, gapEnd - n, n);
+                Arrays.fill(array, i, Math.min(gapStart, gapEnd - n), null);
+                gapStart = i;
+                gapEnd -= n;
+            } else if (i > gapStart) {
+                int n = i - gapStart;
+                System.arraycopy(array, gapEnd, array, gapStart, n);
+                Arrays.fill(array, Math.max(gapEnd, i), gapEnd + n, null);
+                gapStart = i;
+                gapEnd += n;
+            }
+            array[gapStart++] = mark;
+        }
+
+        private void grow() {
+            MarkData[] bigger = new MarkData[array.length * 2 + 16];
+            int upper = array.length - gapEnd;
+            System.arraycopy(array, 0, bigger, 0, gapStart);
+            System.arraycopy(
+                array,
+                gapEnd,
+                bigger,
+                bigger.length - upper,
+                upper
+            );
+            gapEnd = bigger.length - upper;
+            array = bigger;
+        }
+    }
+
+    // --- Undo ---
+
+    // Records where the positions in a range are, so that undoing its
+    // removal can put them back rather than leave them at its start
+    private List<UndoPosRef> getPositionsInRange(int offset, int length) {
+        int endOffset = offset + length;
+        int gapSize = gapEnd - gapStart;
+        int startIndex;
+        int endIndex;
+        if (offset < gapStart) {
+            startIndex = offset == 0 ? 0 : findMarkAdjustIndex(offset);
+            endIndex = endOffset >= gapStart
+                ? findMarkAdjustIndex(endOffset + gapSize + 1)
+                : findMarkAdjustIndex(endOffset + 1);
+        } else {
+            startIndex = findMarkAdjustIndex(offset + gapSize);
+            endIndex = findMarkAdjustIndex(endOffset + gapSize + 1);
+        }
+        List<UndoPosRef> refs = new ArrayList<>(
+            Math.max(1, endIndex - startIndex)
+        );
+        for (int i = startIndex; i < endIndex; i++) {
+            refs.add(new UndoPosRef(marks.get(i)));
+        }
+        return refs;
+    }
+
+    // Called once the text is back; the marks it covers all sit at the
+    // end of the gap (or at 0) and are sorted back into place
+    private void updateUndoPositions(
+        List<UndoPosRef> refs,
+        int offset,
+        int length
+    ) {
+        int endOffset = offset + length;
+        int end = gapEnd;
+        int startIndex = offset != 0 ? findMarkAdjustIndex(end) : 0;
+        int endIndex = findMarkAdjustIndex(end + 1);
+        for (int i = refs.size() - 1; i >= 0; i--) {
+            refs.get(i).resetLocation(endOffset, end);
+        }
+        if (startIndex >= endIndex) return;
+
+        MarkData[] sorted = new MarkData[endIndex - startIndex];
+        int added = 0;
+        // With offset 0 the restored marks are the ones at index 0 and
+        // go first; otherwise those left at the gap end go last
+        int pinned = offset == 0 ? 0 : end;
+        if (offset == 0) {
+            for (int i = startIndex; i < endIndex; i++) {
+                MarkData mark = marks.get(i);
+                if (mark.index == pinned) sorted[added++] = mark;
+            }
+        }
+        for (int i = startIndex; i < endIndex; i++) {
+            MarkData mark = marks.get(i);
+            if (mark.index != pinned) sorted[added++] = mark;
+        }
+        if (offset != 0) {
+            for (int i = startIndex; i < endIndex; i++) {
+                MarkData mark = marks.get(i);
+                if (mark.index == pinned) sorted[added++] = mark;
+            }
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            marks.set(startIndex + i, sorted[i]);
+        }
+    }
+
+    private final class UndoPosRef {
+
+        private final MarkData mark;
+        private final int undoLocation;
+
+        UndoPosRef(MarkData mark) {
+            this.mark = mark;
+            this.undoLocation = mark.getOffset();
+        }
+
+        void resetLocation(int endOffset, int gapEnd) {
+            mark.index = undoLocation != endOffset ? undoLocation : gapEnd;
+        }
+    }
+
+    private class InsertUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+        private final int length;
+        private String string;
+        private List<UndoPosRef> refs;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                refs = getPositionsInRange(offset, length);
+                string = getString(offset, length);
+                remove(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                insertString(offset, string);
+                string = null;
+                if (refs != null) {
+                    updateUndoPositions(refs, offset, length);
+                    refs = null;
+                }
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+
+    private class RemoveUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+        private final int length;
+        private String string;
+        private List<UndoPosRef> refs;
+
+        RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+            this.length = string.length();
+            refs = getPositionsInRange(offset, length);
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                insertString(offset, string);
+                if (refs != null) {
+                    updateUndoPositions(refs, offset, length);
+                    refs = null;
+                }
+                string = null;
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                string = getString(offset, length);
+                refs = getPositionsInRange(offset, length);
+                remove(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
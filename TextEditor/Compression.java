@@ -0,0 +1,278 @@
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Compression
+// Recognizes compressed files by their magic bytes and wraps their
+// streams so callers read and write plain text. gzip is built in; zstd
+// and xz work when zstd-jni or xz-java is on the classpath.
+class Compression {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final Codec GZIP = new Codec(
+        "gzip",
+        ".gz",
+        new byte[] { 0x1F, (byte) 0x8B }
+    ) {
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        @Override
+        OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+    };
+
+    static final Codec ZSTD = new LibraryCodec(
+        "zstd",
+        ".zst",
+        new byte[] { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD },
+        "zstd-jni",
+        "com.github.luben.zstd.ZstdInputStream",
+        "com.github.luben.zstd.ZstdOutputStream",
+        null,
+        null
+    );
+
+    static final Codec XZ = new LibraryCodec(
+        "xz",
+        ".xz",
+        new byte[] { (byte) 0xFD, '7', 'z', 'X', 'Z', 0 },
+        "xz-java",
+        "org.tukaani.xz.XZInputStream",
+        "org.tukaani.xz.XZOutputStream",
+        "org.tukaani.xz.FilterOptions",
+        "org.tukaani.xz.LZMA2Options"
+    );
+
+    private static final Codec[] CODECS = { GZIP, ZSTD, XZ };
+    private static final int MAGIC_SIZE = 6;
+
+    static abstract class Codec {
+
+        final String name;
+        final String extension;
+        private final byte[] magic;
+
+        Codec(String name, String extension, byte[] magic) {
+            this.name = name;
+            this.extension = extension;
+            this.magic = magic;
+        }
+
+        abstract InputStream decompress(InputStream in) throws IOException;
+
+        abstract OutputStream compress(OutputStream out) throws IOException;
+
+        // Throws if the codec's library is missing
+        void checkAvailable() throws IOException {}
+
+        boolean matches(byte[] head, int length) {
+            if (length < magic.length) return false;
+            for (int i = 0; i < magic.length; i++) {
+                if (head[i] != magic[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    // Codec whose streams come from an optional library, looked up by
+    // class name so the editor builds and runs without it
+    private static class LibraryCodec extends Codec {
+
+        private final String library;
+        private final String inputClass;
+        private final String outputClass;
+        private final String optionsType;
+        private final String optionsClass;
+
+        LibraryCodec(
+            String name,
+            String extension,
+            byte[] magic,
+            String library,
+            String inputClass,
+            String outputClass,
+            String optionsType,
+            String optionsClass
+        ) {
+            super(name, extension, magic);
+            this.library = library;
+            this.inputClass = inputClass;
+            this.outputClass = outputClass;
+            this.optionsType = optionsType;
+            this.optionsClass = optionsClass;
+        }
+
+        @Override
+        void checkAvailable() throws IOException {
+            try {
+                Class.forName(inputClass);
+                Class.forName(outputClass);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(
+                    name + " files need " + library + " on the classpath"
+                );
+            }
+        }
+
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            checkAvailable();
+            return construct(inputClass, InputStream.class, in, null, null);
+        }
+
+        @Override
+        OutputStream compress(OutputStream out) throws IOException {
+            checkAvailable();
+            return construct(
+                outputClass,
+                OutputStream.class,
+                out,
+                optionsType,
+                optionsClass
+            );
+        }
+
+        // new streamClass(stream) or new streamClass(stream, new options())
+        @SuppressWarnings("unchecked")
+        private <T> T construct(
+            String streamClass,
+            Class<T> streamType,
+            T stream,
+            String optionsType,
+            String optionsClass
+        ) throws IOException {
+            try {
+                Class<?> type = Class.forName(streamClass);
+                if (optionsType == null) {
+                    return (T) type.getConstructor(streamType).newInstance(
+                        stream
+                    );
+                }
+                Constructor<?> constructor = type.getConstructor(
+                    streamType,
+                    Class.forName(optionsType)
+                );
+                Object options = Class.forName(optionsClass)
+                    .getDeclaredConstructor()
+                    .newInstance();
+                return (T) constructor.newInstance(stream, options);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(
+                    library + " is not compatible: " + e.getMessage()
+                );
+            }
+        }
+    }
+
+    // The codec a file was written with, or null for a plain file
+    public static Codec detect(File file) throws IOException {
+        byte[] head = new byte[MAGIC_SIZE];
+        int n = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (
+                n < head.length &&
+                (read = in.read(head, n, head.length - n)) != -1
+            ) {
+                n += read;
+            }
+        }
+        for (Codec codec : CODECS) {
+            if (codec.matches(head, n)) return codec;
+        }
+        return null;
+    }
+
+    // A codec named by the file's extension, such as .gz, or null
+    public static Codec forFileName(String name) {
+        String lower = name.toLowerCase();
+        for (Codec codec : CODECS) {
+            if (lower.endsWith(codec.extension)) return codec;
+        }
+        return null;
+    }
+
+    // How a save to file should be compressed: as its extension says, or
+    // else as the file already on disk is
+    public static Codec forSave(File file) throws IOException {
+        Codec codec = forFileName(file.getName());
+        if (codec == null && file.isFile()) {
+            codec = detect(file);
+        }
+        return codec;
+    }
+
+    // Streams the file's contents, decompressing on the fly when codec
+    // is not null; nothing is unpacked to disk
+    public static InputStream open(File file, Codec codec)
+        throws IOException {
+        if (codec != null) codec.checkAvailable();
+        InputStream in = new BufferedInputStream(
+            new FileInputStream(file),
+            BUFFER_SIZE
+        );
+        if (codec == null) return in;
+        try {
+            return codec.decompress(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public static InputStream open(File file) throws IOException {
+        return open(file, detect(file));
+    }
+
+    // Writes to file through codec when it is not null. Compression runs
+    // on the calling thread while a second thread writes finished blocks.
+    public static OutputStream create(File file, Codec codec)
+        throws IOException {
+        // Fail before the file is truncated
+        if (codec != null) codec.checkAvailable();
+        if (codec == null) {
+            return new BufferedOutputStream(
+                new FileOutputStream(file),
+                BUFFER_SIZE
+            );
+        }
+        OutputStream out = new PipelinedOutputStream(
+            new FileOutputStream(file)
+        );
+        try {
+            return codec.compress(out);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    // Rough uncompressed size to presize buffers with. gzip records it
+    // modulo 4 GB in its trailer; other formats get a typical ratio.
+    public static long sizeHint(File file, Codec codec) {
+        long size = file.length();
+        if (codec == null) return size;
+        if (codec == GZIP && size >= 18) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(size - 4);
+                long isize = Integer.reverseBytes(raf.readInt()) & 0xFFFFFFFFL;
+                if (isize >= size) return isize;
+            } catch (IOException e) {
+                // Fall back to the estimate
+            }
+        }
+        return size * 4;
+    }
+}
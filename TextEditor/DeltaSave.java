@@ -0,0 +1,560 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+// Delta Save
+// Follows a document's edits as the runs of text left intact since it
+// was last loaded or saved. While the file on disk is still the one that
+// was read or written, a save writes only the text between those runs:
+// over the file in place when every run keeps its byte offset, or else
+// into a new file that copies the runs across with transferTo.
+class DeltaSave implements DocumentListener {
+
+    // Past this many separate edits, the next save writes everything
+    private static final int MAX_RUNS = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final EditorDocument document;
+    // What the file holds and the text it was made from; null when the
+    // file is unknown or its bytes are not simply that text in UTF-8
+    private Baseline baseline;
+    private TextRope baseText;
+    // The document's text against the baseline, and against the version
+    // a running save is writing
+    private Runs runs;
+    private Runs saving;
+
+    DeltaSave(EditorDocument document) {
+        this.document = document;
+        document.addDocumentListener(this);
+    }
+
+    public void dispose() {
+        document.removeDocumentListener(this);
+    }
+
+    // The document's text as it is now is what the baseline describes
+    public void setBaseline(Baseline baseline) {
+        boolean known = baseline != null && baseline.isExact();
+        this.baseline = known ? baseline : null;
+        baseText = known ? document.getVersion().text : null;
+        runs = known ? new Runs(baseText.length()) : null;
+    }
+
+    // Called on the EDT as the save of version starts; edits made while
+    // it runs are followed against the saved text from then on
+    public Save startSave(File file, EditorDocument.Version version) {
+        saving = new Runs(version.text.length());
+        return new Save(
+            file,
+            version.text,
+            baseline,
+            baseText,
+            runs != null ? new Runs(runs) : null
+        );
+    }
+
+    // Moves the baseline to what the save wrote, or keeps the old one if
+    // it failed
+    public void finishSave(Save save, boolean written) {
+        if (written && save.saved != null && save.saved.isExact()) {
+            baseline = save.saved;
+            baseText = save.text;
+            runs = saving;
+        } else if (written) {
+            baseline = null;
+            baseText = null;
+            runs = null;
+        }
+        saving = null;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        replace(e.getOffset(), e.getOffset(), e.getOffset() + e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        replace(e.getOffset(), e.getOffset() + e.getLength(), e.getOffset());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {}
+
+    private void replace(int start, int oldEnd, int end) {
+        if (runs != null && !runs.replace(start, oldEnd, end)) runs = null;
+        if (saving != null && !saving.replace(start, oldEnd, end)) {
+            saving = null;
+        }
+    }
+
+    // UTF-8 length of one char; a surrogate pair takes four bytes
+    private static int byteLength(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800 || Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    // The UTF-8 bytes of a text as written to a file, recorded as the
+    // byte offset of a char every CHECKPOINT chars or so, together with
+    // the file's size, time and identity once it was read or written
+    static class Baseline {
+
+        private static final int CHECKPOINT = 4096;
+
+        final File file;
+        private int[] chars = new int[64];
+        private long[] bytes = new long[64];
+        private int count;
+        private int length;
+        private long size;
+        private int next;
+        private char last;
+        private boolean exact = true;
+        private long fileSize = -1;
+        private FileTime modified;
+        private Object key;
+
+        Baseline(File file) {
+            this.file = file.getAbsoluteFile();
+        }
+
+        // Only text whose bytes are exactly its UTF-8 encoding can be
+        // patched, so not text with normalized line ends or replaced input
+        public void invalidate() {
+            exact = false;
+        }
+
+        public boolean isExact() {
+            return exact && fileSize >= 0;
+        }
+
+        public void add(char[] text, int offset, int count) {
+            for (int i = offset; i < offset + count; i++) add(text[i]);
+        }
+
+        public void add(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) add(text.charAt(i));
+        }
+
+        private void add(char c) {
+            if (length >= next) checkpoint(length, size);
+            // Lone surrogates are written as '?', so offsets would drift
+            boolean paired = Character.isHighSurrogate(last);
+            if (Character.isLowSurrogate(c) != paired) exact = false;
+            size += byteLength(c);
+            length++;
+            last = c;
+        }
+
+        // Appends the part of another baseline's text in [from, to), which
+        // is at bytes [fromByte, toByte) there
+        private void copy(
+            Baseline other,
+            int from,
+            int to,
+            long fromByte,
+            long toByte
+        ) {
+            checkpoint(length, size);
+            int i = other.floor(from) + 1;
+            for (; i < other.count && other.chars[i] < to; i++) {
+                checkpoint(
+                    length + other.chars[i] - from,
+                    size + other.bytes[i] - fromByte
+                );
+            }
+            // A high surrogate before the copied text is left unpaired
+            if (Character.isHighSurrogate(last)) exact = false;
+            length += to - from;
+            size += toByte - fromByte;
+            last = 0;
+        }
+
+        private void checkpoint(int at, long byteOffset) {
+            if (count > 0 && chars[count - 1] >= at) return;
+            if (count == chars.length) {
+                chars = Arrays.copyOf(chars, count * 2);
+                bytes = Arrays.copyOf(bytes, count * 2);
+            }
+            chars[count] = at;
+            bytes[count++] = byteOffset;
+            next = at + CHECKPOINT;
+        }
+
+        // Records the file as it is now, after the text was written; when
+        // before is given, the file must not have changed while being read
+        public void finish(BasicFileAttributes before) throws IOException {
+            if (Character.isHighSurrogate(last)) exact = false;
+            BasicFileAttributes after = Files.readAttributes(
+                file.toPath(),
+                BasicFileAttributes.class
+            );
+            if (before != null && !sameFile(before, after)) exact = false;
+            if (after.size() != size) exact = false;
+            fileSize = after.size();
+            modified = after.lastModifiedTime();
+            key = after.fileKey();
+        }
+
+        // Whether the file still looks the way it did when recorded
+        public boolean matches(BasicFileAttributes attributes) {
+            return (
+                attributes.size() == fileSize &&
+                attributes.lastModifiedTime().equals(modified) &&
+                Objects.equals(attributes.fileKey(), key)
+            );
+        }
+
+        private static boolean sameFile(
+            BasicFileAttributes a,
+            BasicFileAttributes b
+        ) {
+            return (
+                a.size() == b.size() &&
+                a.lastModifiedTime().equals(b.lastModifiedTime()) &&
+                Objects.equals(a.fileKey(), b.fileKey())
+            );
+        }
+
+        // Byte offset of char offset in the text, counting from the
+        // checkpoint before it
+        private long byteOffset(CharSequence text, int offset) {
+            int i = floor(offset);
+            long result = bytes[i];
+            for (int c = chars[i]; c < offset; c++) {
+                result += byteLength(text.charAt(c));
+            }
+            return result;
+        }
+
+        private int floor(int offset) {
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (chars[mid] <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    // A save of one version, prepared on the EDT and written on a
+    // background thread
+    static class Save {
+
+        final File file;
+        final TextRope text;
+        private final Baseline baseline;
+        private final TextRope baseText;
+        private final Runs runs;
+        private Baseline saved;
+
+        private Save(
+            File file,
+            TextRope text,
+            Baseline baseline,
+            TextRope baseText,
+            Runs runs
+        ) {
+            this.file = file;
+            this.text = text;
+            this.baseline = baseline;
+            this.baseText = baseText;
+            this.runs = runs;
+        }
+
+        // Records a full write of the text; the writer adds the text to it
+        // as it goes and finishes it once the file is closed
+        public Baseline fullWrite() {
+            saved = new Baseline(file);
+            return saved;
+        }
+
+        // Writes only what changed if the file still holds the baseline;
+        // false, with nothing written, if the whole text must be written
+        public boolean writeChanges() throws IOException {
+            if (
+                baseline == null ||
+                runs == null ||
+                runs.count == 0 ||
+                !baseline.file.equals(file.getAbsoluteFile()) ||
+                Compression.forFileName(file.getName()) != null
+            ) {
+                return false;
+            }
+            Path path = file.toPath();
+            if (
+                !baseline.matches(
+                    Files.readAttributes(path, BasicFileAttributes.class)
+                )
+            ) {
+                return false;
+            }
+
+            // Lay the new file out as gaps of new text between runs
+            // copied from the old one
+            CharSequence chars = text.chars();
+            CharSequence baseChars = baseText.chars();
+            int n = runs.count;
+            long[] gapStarts = new long[n + 1];
+            long[] runFrom = new long[n];
+            long[] runTo = new long[n];
+            Baseline result = new Baseline(file);
+            boolean inPlace = true;
+            int offset = 0;
+            for (int r = 0; ; r++) {
+                int gapEnd = r < n ? runs.starts[r] : text.length();
+                gapStarts[r] = result.size;
+                result.add(chars, offset, gapEnd);
+                if (r == n) break;
+
+                int start = runs.starts[r];
+                int end = start + runs.lengths[r];
+                // A run may not split a surrogate pair
+                if (
+                    Character.isLowSurrogate(chars.charAt(start)) ||
+                    Character.isHighSurrogate(chars.charAt(end - 1))
+                ) {
+                    return false;
+                }
+                int base = runs.bases[r];
+                runFrom[r] = baseline.byteOffset(baseChars, base);
+                runTo[r] = baseline.byteOffset(baseChars, base + end - start);
+                if (runFrom[r] != result.size) inPlace = false;
+                result.copy(
+                    baseline,
+                    base,
+                    base + end - start,
+                    runFrom[r],
+                    runTo[r]
+                );
+                offset = end;
+            }
+            if (Character.isHighSurrogate(result.last)) result.exact = false;
+            if (!result.exact) return false;
+
+            if (inPlace) {
+                patch(path, gapStarts, result.size);
+            } else {
+                rewrite(path, runFrom, runTo);
+            }
+            result.finish(null);
+            saved = result;
+            return true;
+        }
+
+        // Every run is where it was, so only the gaps are written
+        private void patch(Path path, long[] gapStarts, long size)
+            throws IOException {
+            try (
+                FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.WRITE
+                )
+            ) {
+                int offset = 0;
+                for (int r = 0; r <= runs.count; r++) {
+                    int gapEnd = r < runs.count
+                        ? runs.starts[r]
+                        : text.length();
+                    if (gapEnd > offset) {
+                        writeText(channel, gapStarts[r], offset, gapEnd);
+                    }
+                    if (r < runs.count) {
+                        offset = runs.starts[r] + runs.lengths[r];
+                    }
+                }
+                if (size < channel.size()) channel.truncate(size);
+            }
+        }
+
+        // Builds the new file next to the old one, copying the runs across
+        // without passing them through the editor, then moves it into place
+        private void rewrite(Path path, long[] runFrom, long[] runTo)
+            throws IOException {
+            Path target = path.toRealPath();
+            Path temp = Files.createTempFile(
+                target.getParent(),
+                ".save",
+                ".tmp"
+            );
+            try {
+                try (
+                    FileChannel in = FileChannel.open(
+                        target,
+                        StandardOpenOption.READ
+                    );
+                    FileChannel out = FileChannel.open(
+                        temp,
+                        StandardOpenOption.WRITE
+                    )
+                ) {
+                    int offset = 0;
+                    for (int r = 0; r <= runs.count; r++) {
+                        int gapEnd = r < runs.count
+                            ? runs.starts[r]
+                            : text.length();
+                        if (gapEnd > offset) {
+                            writeText(out, -1, offset, gapEnd);
+                        }
+                        if (r == runs.count) break;
+                        transfer(in, runFrom[r], runTo[r], out);
+                        offset = runs.starts[r] + runs.lengths[r];
+                    }
+                }
+                try {
+                    Files.setPosixFilePermissions(
+                        temp,
+                        Files.getPosixFilePermissions(target)
+                    );
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system; keep the defaults
+                }
+                try {
+                    Files.move(
+                        temp,
+                        target,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE
+                    );
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(
+                        temp,
+                        target,
+                        StandardCopyOption.REPLACE_EXISTING
+                    );
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private static void transfer(
+            FileChannel in,
+            long from,
+            long to,
+            FileChannel out
+        ) throws IOException {
+            while (from < to) {
+                long n = in.transferTo(from, to - from, out);
+                if (n <= 0) throw new IOException("File changed while saving");
+                from += n;
+            }
+        }
+
+        // Encodes text[start, end) at position, or at the channel's own
+        // position when position is negative
+        private void writeText(
+            FileChannel channel,
+            long position,
+            int start,
+            int end
+        ) throws IOException {
+            CharsetEncoder encoder = DocumentLoader.CHARSET.newEncoder();
+            CharBuffer in = CharBuffer.wrap(text.chars(), start, end);
+            ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+            boolean done = false;
+            while (!done) {
+                CoderResult result = encoder.encode(in, out, true);
+                if (result.isError()) result.throwException();
+                done = result.isUnderflow();
+                if (done) encoder.flush(out);
+                out.flip();
+                while (out.hasRemaining()) {
+                    if (position < 0) {
+                        channel.write(out);
+                    } else {
+                        position += channel.write(out, position);
+                    }
+                }
+                out.clear();
+            }
+        }
+    }
+
+    // Runs of the current text unchanged from a base text: run i is
+    // [starts[i], starts[i] + lengths[i]) here and starts at bases[i]
+    // there, in order
+    private static class Runs {
+
+        private int[] starts;
+        private int[] bases;
+        private int[] lengths;
+        private int count;
+
+        Runs(int length) {
+            starts = new int[] { 0 };
+            bases = new int[] { 0 };
+            lengths = new int[] { length };
+            count = length > 0 ? 1 : 0;
+        }
+
+        Runs(Runs other) {
+            starts = Arrays.copyOf(other.starts, other.count);
+            bases = Arrays.copyOf(other.bases, other.count);
+            lengths = Arrays.copyOf(other.lengths, other.count);
+            count = other.count;
+        }
+
+        // [start, oldEnd) was replaced by [start, end); false once there
+        // are too many runs to keep
+        boolean replace(int start, int oldEnd, int end) {
+            int delta = end - oldEnd;
+            int[] newStarts = new int[count + 1];
+            int[] newBases = new int[count + 1];
+            int[] newLengths = new int[count + 1];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int runStart = starts[i];
+                int runEnd = runStart + lengths[i];
+                if (runEnd <= start) {
+                    newStarts[n] = runStart;
+                    newBases[n] = bases[i];
+                    newLengths[n++] = lengths[i];
+                } else if (runStart >= oldEnd) {
+                    newStarts[n] = runStart + delta;
+                    newBases[n] = bases[i];
+                    newLengths[n++] = lengths[i];
+                } else {
+                    // The edit cuts into the run; keep what is either side
+                    if (runStart < start) {
+                        newStarts[n] = runStart;
+                        newBases[n] = bases[i];
+                        newLengths[n++] = start - runStart;
+                    }
+                    if (runEnd > oldEnd) {
+                        newStarts[n] = oldEnd + delta;
+                        newBases[n] = bases[i] + oldEnd - runStart;
+                        newLengths[n++] = runEnd - oldEnd;
+                    }
+                }
+            }
+            starts = newStarts;
+            bases = newBases;
+            lengths = newLengths;
+            count = n;
+            return count <= MAX_RUNS;
+        }
+    }
+}
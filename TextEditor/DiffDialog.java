@@ -0,0 +1,439 @@
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+
+// Diff Dialog
+// Side-by-side comparison of two texts. The diff runs in the background
+// until it finishes or the dialog is closed; only visible rows are drawn.
+class DiffDialog extends JDialog {
+
+    private static final Color DELETED_BG = new Color(255, 226, 226);
+    private static final Color INSERTED_BG = new Color(222, 245, 222);
+    private static final Color FILLER_BG = new Color(242, 242, 242);
+    private static final Color NUMBER_FG = new Color(128, 128, 128);
+    // Longer lines are cut off; the view does not scroll sideways
+    private static final int MAX_DRAWN_CHARS = 1000;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final JScrollPane scrollPane = new JScrollPane();
+    private final JLabel statusLabel = new JLabel("Comparing...");
+    private final JButton previousButton = new JButton("Previous Change");
+    private final JButton nextButton = new JButton("Next Change");
+    private final JButton closeButton = new JButton("Cancel");
+    private final Font font;
+    private IntConsumer rightLineAction;
+    private TextSnapshot leftText;
+    private DiffView view;
+    private int currentChange = -1;
+
+    DiffDialog(
+        Frame owner,
+        String title,
+        String leftName,
+        String rightName,
+        Font font
+    ) {
+        super(owner, title, false);
+        this.font = font;
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        addWindowListener(
+            new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    cancelled.set(true);
+                }
+            }
+        );
+
+        JPanel header = new JPanel(new GridLayout(1, 2));
+        header.setBorder(new EmptyBorder(6, 12, 6, 12));
+        header.add(new JLabel(leftName));
+        header.add(new JLabel(rightName));
+
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+
+        previousButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        previousButton.addActionListener(e -> jumpToChange(false));
+        nextButton.addActionListener(e -> jumpToChange(true));
+        closeButton.addActionListener(e -> dispose());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(previousButton);
+        buttonPanel.add(nextButton);
+        buttonPanel.add(closeButton);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBorder(new EmptyBorder(4, 12, 4, 4));
+        bottomPanel.add(statusLabel, BorderLayout.WEST);
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+
+        setLayout(new BorderLayout());
+        add(header, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        add(bottomPanel, BorderLayout.SOUTH);
+        setSize(1000, 700);
+        setLocationRelativeTo(owner);
+    }
+
+    // Double-clicking a line on the right reports its index here
+    public void setRightLineAction(IntConsumer action) {
+        rightLineAction = action;
+    }
+
+    public TextSnapshot getLeftText() {
+        return leftText;
+    }
+
+    // Loads both sides and diffs them off the EDT; onResult runs on the
+    // EDT unless the dialog was closed first
+    public void compare(
+        Callable<TextSnapshot> left,
+        Callable<TextSnapshot> right,
+        Consumer<List<LineDiff.Hunk>> onResult
+    ) {
+        setVisible(true);
+        TaskManager.getInstance().submitCancellable(
+            "Comparing",
+            TaskManager.Priority.INTERACTIVE,
+            null,
+            cancelled,
+            new SwingWorker<List<LineDiff.Hunk>, Void>() {
+                private TextSnapshot a;
+                private TextSnapshot b;
+
+                @Override
+                protected List<LineDiff.Hunk> doInBackground()
+                    throws Exception {
+                    a = left.call();
+                    if (cancelled.get()) throw new CancellationException();
+                    b = right.call();
+                    return LineDiff.compare(a, b, cancelled::get);
+                }
+
+                @Override
+                protected void done() {
+                    closeButton.setText("Close");
+                    if (cancelled.get()) {
+                        statusLabel.setText("Cancelled");
+                        return;
+                    }
+                    try {
+                        List<LineDiff.Hunk> hunks = get();
+                        leftText = a;
+                        showResult(a, b, hunks);
+                        onResult.accept(hunks);
+                    } catch (ExecutionException e) {
+                        statusLabel.setText(
+                            "Compare failed: " + e.getCause().getMessage()
+                        );
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        );
+    }
+
+    private void showResult(
+        TextSnapshot left,
+        TextSnapshot right,
+        List<LineDiff.Hunk> hunks
+    ) {
+        view = new DiffView(left, right, hunks);
+        scrollPane.setViewportView(view);
+
+        int removed = 0;
+        int added = 0;
+        for (LineDiff.Hunk hunk : hunks) {
+            removed += hunk.leftEnd - hunk.leftStart;
+            added += hunk.rightEnd - hunk.rightStart;
+        }
+        statusLabel.setText(
+            hunks.isEmpty()
+                ? "No differences"
+                : String.format(
+                    "%d changes: %d lines removed, %d lines added",
+                    hunks.size(),
+                    removed,
+                    added
+                )
+        );
+        previousButton.setEnabled(!hunks.isEmpty());
+        nextButton.setEnabled(!hunks.isEmpty());
+    }
+
+    private void jumpToChange(boolean forward) {
+        int change = currentChange + (forward ? 1 : -1);
+        if (change < 0 || change >= view.hunkRows.length) {
+            getToolkit().beep();
+            return;
+        }
+        currentChange = change;
+        Rectangle visible = view.getVisibleRect();
+        int h = view.rowHeight;
+        visible.y = Math.max(0, view.hunkRows[change] * h - h * 3);
+        view.scrollRectToVisible(visible);
+    }
+
+    // Both texts laid out as aligned rows; equal runs between hunks are
+    // derived from the hunk table instead of being stored per row
+    private class DiffView extends JComponent implements Scrollable {
+
+        private final TextSnapshot left;
+        private final TextSnapshot right;
+        private final List<LineDiff.Hunk> hunks;
+        private final int[] hunkRows;
+        private final int rowCount;
+        private final int rowHeight;
+        private final int numberWidth;
+        private final Segment segment = new Segment();
+
+        DiffView(
+            TextSnapshot left,
+            TextSnapshot right,
+            List<LineDiff.Hunk> hunks
+        ) {
+            this.left = left;
+            this.right = right;
+            this.hunks = hunks;
+            setFont(font);
+            setOpaque(true);
+            setBackground(Color.WHITE);
+
+            hunkRows = new int[hunks.size()];
+            int row = 0;
+            int leftLine = 0;
+            for (int i = 0; i < hunks.size(); i++) {
+                LineDiff.Hunk hunk = hunks.get(i);
+                row += hunk.leftStart - leftLine;
+                hunkRows[i] = row;
+                row += hunkHeight(hunk);
+                leftLine = hunk.leftEnd;
+            }
+            rowCount = row + left.getLineCount() - leftLine;
+
+            FontMetrics fm = getFontMetrics(font);
+            rowHeight = fm.getHeight();
+            int lines = Math.max(left.getLineCount(), right.getLineCount());
+            numberWidth = (String.valueOf(lines).length() + 1) *
+                fm.charWidth('0');
+
+            addMouseListener(
+                new MouseAdapter() {
+                    @Override
+                    public void mouseClicked(MouseEvent e) {
+                        if (e.getClickCount() != 2) return;
+                        if (rightLineAction == null) return;
+                        int line = rightLineAt(rowAt(e.getY()));
+                        if (line >= 0) {
+                            rightLineAction.accept(line);
+                        }
+                    }
+                }
+            );
+        }
+
+        private int hunkHeight(LineDiff.Hunk hunk) {
+            return Math.max(
+                hunk.leftEnd - hunk.leftStart,
+                hunk.rightEnd - hunk.rightStart
+            );
+        }
+
+        int rowAt(int y) {
+            return Math.max(0, Math.min(rowCount - 1, y / rowHeight));
+        }
+
+        // Index of the last hunk starting at or before row, or -1
+        private int hunkBefore(int row) {
+            int low = 0;
+            int high = hunkRows.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (hunkRows[mid] <= row) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        // Line shown on each side of a row, -1 where that side is blank
+        private int leftLineAt(int row) {
+            return lineAt(row, true);
+        }
+
+        private int rightLineAt(int row) {
+            return lineAt(row, false);
+        }
+
+        private int lineAt(int row, boolean leftSide) {
+            int k = hunkBefore(row);
+            if (k < 0) return row;
+            LineDiff.Hunk hunk = hunks.get(k);
+            int offset = row - hunkRows[k];
+            int start = leftSide ? hunk.leftStart : hunk.rightStart;
+            int end = leftSide ? hunk.leftEnd : hunk.rightEnd;
+            if (offset < hunkHeight(hunk)) {
+                return offset < end - start ? start + offset : -1;
+            }
+            return end + offset - hunkHeight(hunk);
+        }
+
+        private boolean inHunk(int row) {
+            int k = hunkBefore(row);
+            return k >= 0 && row - hunkRows[k] < hunkHeight(hunks.get(k));
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(800, rowCount * rowHeight);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+
+            int half = getWidth() / 2;
+            int first = rowAt(clip.y);
+            int last = rowAt(clip.y + clip.height);
+            for (int row = first; row <= last; row++) {
+                int y = row * rowHeight;
+                boolean changed = inHunk(row);
+                paintSide(
+                    g,
+                    fm,
+                    left,
+                    leftLineAt(row),
+                    changed ? DELETED_BG : null,
+                    0,
+                    y,
+                    half
+                );
+                paintSide(
+                    g,
+                    fm,
+                    right,
+                    rightLineAt(row),
+                    changed ? INSERTED_BG : null,
+                    half,
+                    y,
+                    getWidth() - half
+                );
+            }
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawLine(half - 1, clip.y, half - 1, clip.y + clip.height);
+        }
+
+        private void paintSide(
+            Graphics g,
+            FontMetrics fm,
+            TextSnapshot text,
+            int line,
+            Color changedColor,
+            int x,
+            int y,
+            int width
+        ) {
+            if (changedColor != null) {
+                g.setColor(line >= 0 ? changedColor : FILLER_BG);
+                g.fillRect(x, y, width, rowHeight);
+            }
+            if (line < 0) return;
+
+            Graphics2D side = (Graphics2D) g.create(x, y, width - 2, rowHeight);
+            try {
+                int baseline = fm.getAscent();
+                String number = String.valueOf(line + 1);
+                side.setColor(NUMBER_FG);
+                side.drawString(
+                    number,
+                    numberWidth - fm.stringWidth(number) - 4,
+                    baseline
+                );
+
+                int start = text.getLineStart(line);
+                int end = Math.min(
+                    text.getLineEnd(line),
+                    start + MAX_DRAWN_CHARS
+                );
+                segment.array = text.getText();
+                segment.offset = start;
+                segment.count = end - start;
+                int tabSize = 4 * fm.charWidth('m');
+                int textX = numberWidth + 4;
+                TabExpander tabs = (tx, tabOffset) ->
+                    textX + ((((int) tx - textX) / tabSize) + 1) * tabSize;
+                side.setColor(getForeground());
+                Utilities.drawTabbedText(
+                    segment,
+                    (float) textX,
+                    (float) baseline,
+                    side,
+                    tabs,
+                    0
+                );
+            } finally {
+                side.dispose();
+            }
+        }
+
+        // --- Scrollable methods ---------------------------------------
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(
+            Rectangle visible,
+            int orientation,
+            int direction
+        ) {
+            return rowHeight;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(
+            Rectangle visible,
+            int orientation,
+            int direction
+        ) {
+            return Math.max(rowHeight, visible.height - rowHeight);
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+}
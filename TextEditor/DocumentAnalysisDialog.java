@@ -0,0 +1,256 @@
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.AbstractTableModel;
+
+// Document Analysis Dialog
+// Top words and word pairs, line lengths and character classes of one
+// version of the document. Tables fill in as chunks are counted; closing
+// the dialog stops the analysis.
+class DocumentAnalysisDialog extends JDialog {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final JLabel statusLabel = new JLabel("Analyzing...");
+    private final JButton closeButton = new JButton("Cancel");
+    private final RowsModel wordRows = new RowsModel(
+        "#",
+        "Word",
+        "Count",
+        "Share"
+    );
+    private final RowsModel pairRows = new RowsModel(
+        "#",
+        "Word Pair",
+        "Count",
+        "Share"
+    );
+    private final RowsModel lineRows = new RowsModel(
+        "Length",
+        "Lines",
+        "Share"
+    );
+    private final RowsModel classRows = new RowsModel(
+        "Characters",
+        "Count",
+        "Share"
+    );
+
+    DocumentAnalysisDialog(Frame owner, String title) {
+        super(owner, title, false);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        addWindowListener(
+            new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    cancelled.set(true);
+                }
+            }
+        );
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Words", createTable(wordRows));
+        tabs.addTab("Word Pairs", createTable(pairRows));
+        tabs.addTab("Line Lengths", createTable(lineRows));
+        tabs.addTab("Characters", createTable(classRows));
+
+        closeButton.addActionListener(e -> dispose());
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBorder(new EmptyBorder(4, 12, 4, 4));
+        bottomPanel.add(statusLabel, BorderLayout.WEST);
+        bottomPanel.add(closeButton, BorderLayout.EAST);
+
+        setLayout(new BorderLayout());
+        add(tabs, BorderLayout.CENTER);
+        add(bottomPanel, BorderLayout.SOUTH);
+        setSize(560, 520);
+        setLocationRelativeTo(owner);
+    }
+
+    private static JScrollPane createTable(RowsModel model) {
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        return scrollPane;
+    }
+
+    // Shows the dialog and analyzes text in the background
+    public void analyze(TextRope text) {
+        setVisible(true);
+        TaskManager.getInstance().submitCancellable(
+            "Analyzing document",
+            TaskManager.Priority.BACKGROUND,
+            null,
+            cancelled,
+            new SwingWorker<TextAnalysis.Report, TextAnalysis.Report>() {
+                @Override
+                protected TextAnalysis.Report doInBackground() {
+                    return TextAnalysis.run(
+                        text,
+                        cancelled::get,
+                        this::publish
+                    );
+                }
+
+                @Override
+                protected void process(List<TextAnalysis.Report> reports) {
+                    if (cancelled.get()) return;
+                    showReport(reports.get(reports.size() - 1));
+                }
+
+                @Override
+                protected void done() {
+                    closeButton.setText("Close");
+                    if (cancelled.get()) {
+                        statusLabel.setText("Cancelled");
+                        return;
+                    }
+                    try {
+                        showReport(get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        Throwable cause = e.getCause() != null
+                            ? e.getCause()
+                            : e;
+                        if (!(cause instanceof CancellationException)) {
+                            statusLabel.setText(
+                                "Analysis failed: " + cause.getMessage()
+                            );
+                        }
+                    }
+                }
+            }
+        );
+    }
+
+    private void showReport(TextAnalysis.Report report) {
+        wordRows.setRows(ranked(report.words, report.wordCount));
+        pairRows.setRows(ranked(report.bigrams, report.pairCount));
+
+        int longest = 0;
+        for (int i = 0; i < report.lineLengths.length; i++) {
+            if (report.lineLengths[i] > 0) longest = i;
+        }
+        Object[][] lines = new Object[longest + 1][];
+        for (int i = 0; i <= longest; i++) {
+            lines[i] = new Object[] {
+                bucketName(i),
+                report.lineLengths[i],
+                share(report.lineLengths[i], report.lineCount),
+            };
+        }
+        lineRows.setRows(lines);
+
+        Object[][] classes = new Object[report.classes.length][];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new Object[] {
+                TextAnalysis.CLASS_NAMES[i],
+                report.classes[i],
+                share(report.classes[i], report.characters),
+            };
+        }
+        classRows.setRows(classes);
+
+        String status = String.format(
+            "Words: %,d | Lines: %,d | Characters: %,d",
+            report.wordCount,
+            report.lineCount,
+            report.characters
+        );
+        if (report.progress < 1) {
+            status += String.format(
+                " | %d%% analyzed",
+                (int) (report.progress * 100)
+            );
+        }
+        if (report.maxError > 0) {
+            status += String.format(
+                " | counts may be up to %,d low",
+                report.maxError
+            );
+        }
+        statusLabel.setText(status);
+    }
+
+    private static Object[][] ranked(
+        List<TextAnalysis.Entry> entries,
+        long total
+    ) {
+        Object[][] rows = new Object[entries.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            TextAnalysis.Entry entry = entries.get(i);
+            rows[i] = new Object[] {
+                i + 1,
+                entry.text,
+                entry.count,
+                share(entry.count, total),
+            };
+        }
+        return rows;
+    }
+
+    private static String bucketName(int bucket) {
+        if (bucket == 0) return "0";
+        long from = 1L << (bucket - 1);
+        if (bucket == TextAnalysis.BUCKETS - 1) {
+            return String.format("%,d+", from);
+        }
+        long to = (1L << bucket) - 1;
+        return from == to
+            ? String.format("%,d", from)
+            : String.format("%,d-%,d", from, to);
+    }
+
+    private static String share(long count, long total) {
+        if (total == 0) return "";
+        return String.format("%.2f%%", count * 100.0 / total);
+    }
+
+    // Read-only rows that are replaced as a whole
+    private static class RowsModel extends AbstractTableModel {
+
+        private final String[] columns;
+        private Object[][] rows = new Object[0][];
+
+        RowsModel(String... columns) {
+            this.columns = columns;
+        }
+
+        void setRows(Object[][] rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        // Numbers get the right-aligned renderer
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return rows.length > 0 ? rows[0][column].getClass() : Object.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows[row][column];
+        }
+    }
+}
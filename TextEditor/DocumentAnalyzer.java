@@ -0,0 +1,29 @@
+import java.util.function.Consumer;
+
+// Document Analyzer
+// Extension point for code that reacts to edits, such as linters and
+// counters. Register one with a DocumentChangeBus and pick where it runs:
+// analyzers on a background executor never hold up typing, and batches
+// that arrive while one is still busy are merged into its next call.
+public interface DocumentAnalyzer {
+    // Shown in the timing report
+    String getName();
+
+    // Called with edits in order, one call at a time per analyzer. The
+    // batch's text is an immutable version, safe to read on any thread.
+    void analyze(ChangeBatch batch);
+
+    static DocumentAnalyzer of(String name, Consumer<ChangeBatch> action) {
+        return new DocumentAnalyzer() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void analyze(ChangeBatch batch) {
+                action.accept(batch);
+            }
+        };
+    }
+}
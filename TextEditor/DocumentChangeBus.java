@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+// Document Change Bus
+// Collects a document's events into batches and hands them to analyzers
+// on the executor each one registered with. Events fired during one EDT
+// turn become a single batch, and each analyzer gets its own merged
+// queue, so a slow one only ever has one batch waiting.
+class DocumentChangeBus {
+
+    // Runs analyzers on the EDT after the current event
+    static final Executor EDT = SwingUtilities::invokeLater;
+
+    // Shared pool for analyzers that may take a while
+    static final Executor BACKGROUND = createBackgroundExecutor();
+
+    private final List<Subscription> subscriptions =
+        new CopyOnWriteArrayList<>();
+    private EditorDocument document;
+    private ChangeBatch pending;
+    private int suspended;
+
+    private final DocumentListener listener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            collect(
+                ChangeBatch.inserted(
+                    ((EditorDocument) e.getDocument()).getVersion(),
+                    e.getOffset(),
+                    e.getLength()
+                )
+            );
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            collect(
+                ChangeBatch.removed(
+                    ((EditorDocument) e.getDocument()).getVersion(),
+                    e.getOffset(),
+                    e.getLength()
+                )
+            );
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {}
+    };
+
+    DocumentChangeBus(EditorDocument document) {
+        this.document = document;
+        document.addDocumentListener(listener);
+    }
+
+    private static ExecutorService createBackgroundExecutor() {
+        int threads = Math.max(
+            1,
+            Runtime.getRuntime().availableProcessors() - 1
+        );
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Document analyzer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // Follows a newly installed document; analyzers get a reset batch
+    public synchronized void setDocument(EditorDocument document) {
+        this.document.removeDocumentListener(listener);
+        this.document = document;
+        document.addDocumentListener(listener);
+        pending = null;
+        publish(ChangeBatch.reset(document.getVersion()));
+    }
+
+    public void register(DocumentAnalyzer analyzer, Executor executor) {
+        subscriptions.add(new Subscription(analyzer, executor));
+    }
+
+    public void unregister(DocumentAnalyzer analyzer) {
+        subscriptions.removeIf(s -> s.analyzer == analyzer);
+    }
+
+    private synchronized void collect(ChangeBatch batch) {
+        if (pending == null) {
+            pending = batch;
+            if (suspended == 0) SwingUtilities.invokeLater(this::flush);
+        } else {
+            pending = pending.merge(batch);
+        }
+    }
+
+    // Holds batches back, merging them, until the matching resume(); for
+    // edits made over several EDT turns that analyzers should see as one
+    public synchronized void suspend() {
+        suspended++;
+    }
+
+    public synchronized void resume() {
+        if (--suspended == 0 && pending != null) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    private void flush() {
+        ChangeBatch batch;
+        synchronized (this) {
+            if (suspended > 0) return;
+            batch = pending;
+            pending = null;
+        }
+        if (batch != null) publish(batch);
+    }
+
+    private void publish(ChangeBatch batch) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(batch);
+        }
+    }
+
+    // Time spent in each analyzer, slowest in total first
+    public List<Timing> getTimings() {
+        List<Timing> timings = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            timings.add(subscription.timing());
+        }
+        timings.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return timings;
+    }
+
+    static class Timing {
+
+        final String name;
+        final boolean onEdt;
+        final long batches;
+        final long totalNanos;
+        final long maxNanos;
+        final long failures;
+
+        Timing(
+            String name,
+            boolean onEdt,
+            long batches,
+            long totalNanos,
+            long maxNanos,
+            long failures
+        ) {
+            this.name = name;
+            this.onEdt = onEdt;
+            this.batches = batches;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.failures = failures;
+        }
+    }
+
+    // One analyzer's queue: batches merge while it runs, and it never
+    // runs twice at once
+    private static class Subscription {
+
+        final DocumentAnalyzer analyzer;
+        final Executor executor;
+        private ChangeBatch waiting;
+        private boolean running;
+        private long batches;
+        private long totalNanos;
+        private long maxNanos;
+        private long failures;
+
+        Subscription(DocumentAnalyzer analyzer, Executor executor) {
+            this.analyzer = analyzer;
+            this.executor = executor;
+        }
+
+        synchronized void offer(ChangeBatch batch) {
+            waiting = waiting == null ? batch : waiting.merge(batch);
+            if (!running) {
+                running = true;
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                ChangeBatch batch;
+                synchronized (this) {
+                    batch = waiting;
+                    waiting = null;
+                    if (batch == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    analyzer.analyze(batch);
+                } catch (RuntimeException e) {
+                    // One broken analyzer must not stop the others
+                    failed = true;
+                }
+                record(System.nanoTime() - start, failed);
+            }
+        }
+
+        private synchronized void record(long nanos, boolean failed) {
+            batches++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (failed) failures++;
+        }
+
+        synchronized Timing timing() {
+            return new Timing(
+                analyzer.getName(),
+                executor == EDT,
+                batches,
+                totalNanos,
+                maxNanos,
+                failures
+            );
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+// Document Loader
+// Reads a text file into an EditorDocument, decompressing gzip and other
+// formats as it streams in. Safe to call off the EDT: the document is not
+// attached to any component until installed.
+class DocumentLoader {
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int SNIFF_SIZE = 8 * 1024;
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 16;
+
+    // Line endings are normalized to \n and a final newline is added,
+    // matching what the editor has always shown for loaded files
+    public static Result load(File file, LineIndex cachedIndex)
+        throws IOException {
+        return load(file, cachedIndex, () -> false, percent -> {});
+    }
+
+    // Reports how far it has read, as a percent, and stops with a
+    // CancellationException once cancelled
+    public static Result load(
+        File file,
+        LineIndex cachedIndex,
+        BooleanSupplier cancelled,
+        IntConsumer progress
+    ) throws IOException {
+        DeltaSave.Baseline baseline = new DeltaSave.Baseline(file);
+        TextSnapshot text = readText(
+            file,
+            cachedIndex,
+            baseline,
+            cancelled,
+            progress
+        );
+        EditorDocument document = EditorDocument.create(
+            text.getText(),
+            text.getLength(),
+            text.getLineIndex()
+        );
+        return new Result(document, text.getLineIndex(), baseline);
+    }
+
+    // Reads and normalizes the file without building a document
+    public static TextSnapshot readText(File file, LineIndex cachedIndex)
+        throws IOException {
+        return readText(file, cachedIndex, null, () -> false, percent -> {});
+    }
+
+    // Also records the file's bytes in baseline, when given, so that
+    // later saves can write just the changes
+    private static TextSnapshot readText(
+        File file,
+        LineIndex cachedIndex,
+        DeltaSave.Baseline baseline,
+        BooleanSupplier cancelled,
+        IntConsumer progress
+    ) throws IOException {
+        BasicFileAttributes before = Files.readAttributes(
+            file.toPath(),
+            BasicFileAttributes.class
+        );
+        Compression.Codec codec = Compression.detect(file);
+        long size = Compression.sizeHint(file, codec);
+        char[] text = new char[(int) Math.min(MAX_LENGTH, size + 1)];
+        int length = 0;
+        boolean previousCR = false;
+        // Text that would not be written back byte for byte
+        boolean changed = codec != null;
+
+        try (
+            Reader reader = new InputStreamReader(
+                Compression.open(file, codec),
+                CHARSET
+            )
+        ) {
+            char[] chunk = new char[CHUNK_SIZE];
+            int n;
+            while ((n = reader.read(chunk)) != -1) {
+                int start = length;
+                if ((long) length + n + 1 > text.length) {
+                    if ((long) length + n + 1 > MAX_LENGTH) {
+                        throw new IOException("File is too large to open");
+                    }
+                    text = Arrays.copyOf(
+                        text,
+                        (int) Math.min(
+                            MAX_LENGTH,
+                            Math.max((long) text.length * 2, length + n + 1)
+                        )
+                    );
+                }
+                for (int i = 0; i < n; i++) {
+                    char c = chunk[i];
+                    if (c == '\r') {
+                        text[length++] = '\n';
+                        previousCR = true;
+                        changed = true;
+                    } else {
+                        // Malformed input decodes to the replacement char
+                        if (c == '\uFFFD') changed = true;
+                        if (!(c == '\n' && previousCR)) {
+                            text[length++] = c;
+                        }
+                        previousCR = false;
+                    }
+                }
+                if (baseline != null) {
+                    baseline.add(text, start, length - start);
+                }
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+                // The size is in bytes, so this is only near for UTF-8
+                progress.accept(
+                    (int) Math.min(99, 100L * length / Math.max(1, size))
+                );
+            }
+        }
+
+        if (length > 0 && text[length - 1] != '\n') {
+            text[length++] = '\n';
+            changed = true;
+        }
+        if (baseline != null) {
+            if (changed) baseline.invalidate();
+            baseline.finish(before);
+        }
+
+        LineIndex index =
+            cachedIndex != null && cachedIndex.isValidFor(text, length)
+                ? cachedIndex
+                : LineIndex.scan(text, length);
+        return new TextSnapshot(text, length, index);
+    }
+
+    // Looks at the start of the file, after decompressing it: a NUL
+    // byte, or more than one in ten control characters other than common
+    // whitespace, means binary
+    public static boolean isBinary(File file) throws IOException {
+        byte[] head = new byte[SNIFF_SIZE];
+        int n = 0;
+        try (InputStream in = Compression.open(file)) {
+            int read;
+            while (
+                n < head.length &&
+                (read = in.read(head, n, head.length - n)) != -1
+            ) {
+                n += read;
+            }
+        }
+
+        int control = 0;
+        for (int i = 0; i < n; i++) {
+            int b = head[i] & 0xFF;
+            if (b == 0) return true;
+            if (
+                b < 0x20 &&
+                b != '\t' &&
+                b != '\n' &&
+                b != '\r' &&
+                b != '\f' &&
+                b != '\b' &&
+                b != 0x1B
+            ) {
+                control++;
+            }
+        }
+        return control * 10 > n;
+    }
+
+    static class Result {
+
+        final EditorDocument document;
+        final LineIndex lineIndex;
+        final DeltaSave.Baseline baseline;
+
+        Result(
+            EditorDocument document,
+            LineIndex lineIndex,
+            DeltaSave.Baseline baseline
+        ) {
+            this.document = document;
+            this.lineIndex = lineIndex;
+            this.baseline = baseline;
+        }
+    }
+}
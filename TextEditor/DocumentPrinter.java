@@ -0,0 +1,256 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+
+// Document Printer
+// Paginates a snapshot of a document off the EDT and renders single
+// pages on demand. Only the first line and row of each page are kept,
+// so memory stays bounded no matter how many pages are printed.
+class DocumentPrinter implements Pageable, Printable {
+
+    private final char[] text;
+    private final LineIndex lines;
+    private final Font font;
+    private final FontMetrics metrics;
+    private final int tabSize;
+    private final String title;
+    private final PageFormat format;
+    private final WrapLayoutView.LayoutParams layout;
+    private final int rowsPerPage;
+
+    private int[] pageLines = new int[64];
+    private int[] pageRows = new int[64];
+    private int pageCount;
+
+    private DocumentPrinter(
+        char[] text,
+        LineIndex lines,
+        Font font,
+        int tabSize,
+        String title,
+        PageFormat format
+    ) {
+        this.text = text;
+        this.lines = lines;
+        this.font = font;
+        this.title = title;
+        this.format = format;
+
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+            .createGraphics();
+        metrics = g.getFontMetrics(font);
+        g.dispose();
+        this.tabSize = tabSize * metrics.charWidth('m');
+        layout = new WrapLayoutView.LayoutParams(
+            0,
+            font,
+            metrics,
+            this.tabSize,
+            (int) format.getImageableWidth(),
+            true
+        );
+
+        // Two rows at the bottom are kept for the page footer
+        int height =
+            (int) format.getImageableHeight() - 2 * metrics.getHeight();
+        rowsPerPage = Math.max(1, height / metrics.getHeight());
+    }
+
+    // Copies the text and line structure; must be called on the EDT or
+    // with the document otherwise locked against changes
+    public static DocumentPrinter snapshot(
+        Document doc,
+        Font font,
+        int tabSize,
+        String title,
+        PageFormat format
+    ) {
+        TextSnapshot text = TextSnapshot.of(doc);
+        return new DocumentPrinter(
+            text.getText(),
+            text.getLineIndex(),
+            font,
+            tabSize,
+            title,
+            format
+        );
+    }
+
+    // Counts rows line by line and records where each page starts.
+    // Safe to run off the EDT; reports the number of lines done.
+    public void paginate(IntConsumer progress) {
+        int row = 0;
+        int count = lines.getLineCount();
+        for (int line = 0; line < count; line++) {
+            int rows = getRowEnds(line).length;
+            for (int r = 0; r < rows; r++, row++) {
+                if (row % rowsPerPage == 0) {
+                    addPage(line, r);
+                }
+            }
+            if (progress != null && (line & 0xFFF) == 0) {
+                progress.accept(line);
+            }
+        }
+        if (pageCount == 0) {
+            addPage(0, 0);
+        }
+    }
+
+    private void addPage(int line, int row) {
+        if (pageCount == pageLines.length) {
+            pageLines = Arrays.copyOf(pageLines, pageCount * 2);
+            pageRows = Arrays.copyOf(pageRows, pageCount * 2);
+        }
+        pageLines[pageCount] = line;
+        pageRows[pageCount] = row;
+        pageCount++;
+    }
+
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    // Pageable view of this printer for one job: reports each rendered
+    // page and aborts the job once it is cancelled
+    public Pageable withProgress(
+        IntConsumer listener,
+        BooleanSupplier cancelled
+    ) {
+        Printable printable = (graphics, pf, pageIndex) -> {
+            if (cancelled.getAsBoolean()) {
+                throw new PrinterAbortException();
+            }
+            int result = print(graphics, pf, pageIndex);
+            if (result == PAGE_EXISTS) {
+                listener.accept(pageIndex);
+            }
+            return result;
+        };
+        return new Pageable() {
+            @Override
+            public int getNumberOfPages() {
+                return pageCount;
+            }
+
+            @Override
+            public PageFormat getPageFormat(int pageIndex) {
+                return format;
+            }
+
+            @Override
+            public Printable getPrintable(int pageIndex) {
+                return printable;
+            }
+        };
+    }
+
+    private int getLineEnd(int line) {
+        return line + 1 < lines.getLineCount()
+            ? lines.getLineStart(line + 1)
+            : text.length;
+    }
+
+    // Row end offsets relative to the line start; at least one row
+    private int[] getRowEnds(int line) {
+        int start = lines.getLineStart(line);
+        int end = getLineEnd(line);
+        int[] ends = layout.computeRowEnds(
+            new Segment(text, start, end - start)
+        );
+        return ends != null ? ends : new int[] { end - start };
+    }
+
+    // --- Pageable methods ---------------------------------------------
+
+    @Override
+    public int getNumberOfPages() {
+        return pageCount;
+    }
+
+    @Override
+    public PageFormat getPageFormat(int pageIndex) {
+        return format;
+    }
+
+    @Override
+    public Printable getPrintable(int pageIndex) {
+        return this;
+    }
+
+    // --- Printable methods --------------------------------------------
+
+    @Override
+    public int print(Graphics graphics, PageFormat pf, int pageIndex) {
+        if (pageIndex < 0 || pageIndex >= pageCount) {
+            return NO_SUCH_PAGE;
+        }
+
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            int x = (int) pf.getImageableX();
+            int y = (int) pf.getImageableY();
+            int width = (int) pf.getImageableWidth();
+            int height = (int) pf.getImageableHeight();
+            g.clipRect(x, y, width, height);
+            g.setFont(font);
+            g.setColor(Color.BLACK);
+            TabExpander tabs = (tx, tabOffset) -> nextTabStop(x, tx);
+
+            int line = pageLines[pageIndex];
+            int row = pageRows[pageIndex];
+            int baseline = y + metrics.getAscent();
+            int i = 0;
+            while (i < rowsPerPage && line < lines.getLineCount()) {
+                int start = lines.getLineStart(line);
+                int[] ends = getRowEnds(line);
+                for (; row < ends.length && i < rowsPerPage; row++, i++) {
+                    int p0 = start + (row > 0 ? ends[row - 1] : 0);
+                    int p1 = start + ends[row];
+                    Utilities.drawTabbedText(
+                        new Segment(text, p0, p1 - p0),
+                        (float) x,
+                        (float) baseline,
+                        g,
+                        tabs,
+                        p0
+                    );
+                    baseline += metrics.getHeight();
+                }
+                if (row == ends.length) {
+                    line++;
+                    row = 0;
+                }
+            }
+
+            String footer = pageCount > 1
+                ? title + " - Page " + (pageIndex + 1) + " of " + pageCount
+                : title;
+            g.drawString(
+                footer,
+                x + (width - metrics.stringWidth(footer)) / 2,
+                y + height - metrics.getDescent()
+            );
+        } finally {
+            g.dispose();
+        }
+        return PAGE_EXISTS;
+    }
+
+    // Tab stops are measured from the left edge of the printable area
+    private float nextTabStop(int tabBase, float x) {
+        if (tabSize == 0) return x;
+        int ntabs = (((int) x) - tabBase) / tabSize;
+        return tabBase + ((ntabs + 1) * tabSize);
+    }
+}
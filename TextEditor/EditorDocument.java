@@ -0,0 +1,113 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+// Editor Document
+// Plain document that can be built directly from a line index, skipping
+// the per-character newline scan PlainDocument does on insertion. Every
+// edit also yields a new immutable version of the text for background
+// readers. The text is kept in CompactContent, a byte per character
+// while it is Latin-1, and the versions' ropes keep Latin-1 chunks the
+// same way.
+class EditorDocument extends PlainDocument {
+
+    private volatile Version current = new Version(0, TextRope.EMPTY);
+
+    public EditorDocument() {
+        super(new CompactContent());
+    }
+
+    private EditorDocument(CompactContent content) {
+        super(content);
+    }
+
+    // The text as of one edit. Numbers only grow, so a result computed
+    // from a version whose number is no longer current is stale.
+    static class Version {
+
+        final long number;
+        final TextRope text;
+
+        Version(long number, TextRope text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    // Builds a document off the EDT before it is attached to a component
+    public static EditorDocument create(
+        char[] text,
+        int length,
+        LineIndex index
+    ) {
+        CompactContent content = new CompactContent(text, length);
+        EditorDocument document = new EditorDocument(content);
+        document.current = new Version(0, TextRope.of(text, 0, length));
+        document.installLineIndex(index);
+        return document;
+    }
+
+    // Takes no lock and copies nothing; safe from any thread
+    public Version getVersion() {
+        return current;
+    }
+
+    public boolean isCurrent(Version version) {
+        return version.number == current.number;
+    }
+
+    // Bytes held for the text, counting the current version's rope
+    public long getFootprint() {
+        return (
+            ((CompactContent) getContent()).getFootprint() +
+            current.text.estimateFootprint()
+        );
+    }
+
+    // Edits, undo and redo all pass through the fire methods while the
+    // write lock is held, so the rope follows every change
+    @Override
+    protected void fireInsertUpdate(DocumentEvent e) {
+        try {
+            String inserted = getText(e.getOffset(), e.getLength());
+            Version version = current;
+            current = new Version(
+                version.number + 1,
+                version.text.insert(e.getOffset(), inserted)
+            );
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        super.fireInsertUpdate(e);
+    }
+
+    @Override
+    protected void fireRemoveUpdate(DocumentEvent e) {
+        Version version = current;
+        current = new Version(
+            version.number + 1,
+            version.text.delete(e.getOffset(), e.getLength())
+        );
+        super.fireRemoveUpdate(e);
+    }
+
+    private void installLineIndex(LineIndex index) {
+        writeLock();
+        try {
+            BranchElement root = (BranchElement) getDefaultRootElement();
+            int count = index.getLineCount();
+            Element[] lines = new Element[count];
+            for (int i = 0; i < count; i++) {
+                int start = index.getLineStart(i);
+                int end = i + 1 < count
+                    ? index.getLineStart(i + 1)
+                    : getLength() + 1;
+                lines[i] = createLeafElement(root, null, start, end);
+            }
+            root.replace(0, root.getElementCount(), lines);
+        } finally {
+            writeUnlock();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+// Editor Text Area
+// JTextArea whose UI builds the editor's own views, so layout strategies
+// can be swapped in without changing how the component is used
+class EditorTextArea extends JTextArea {
+
+    // Documents with a line longer than this switch to long-line mode
+    static final int LONG_LINE_THRESHOLD = 10000;
+
+    private final DocumentListener longLineWatcher = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            Element root = e.getDocument().getDefaultRootElement();
+            int index = root.getElementIndex(e.getOffset());
+            if (isLongLine(root.getElement(index)) && !isLongLineMode()) {
+                SwingUtilities.invokeLater(EditorTextArea.this::rebuildView);
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {}
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {}
+    };
+
+    private final FoldModel folds;
+
+    EditorTextArea() {
+        WordNavigation.install(this);
+        getDocument().addDocumentListener(longLineWatcher);
+        folds = new FoldModel(getDocument());
+        folds.addChangeListener(e -> foldsChanged());
+        // The caret never stays inside a fold
+        addCaretListener(e -> folds.reveal(e.getDot()));
+        addPropertyChangeListener("document", e -> {
+            if (e.getOldValue() instanceof Document) {
+                ((Document) e.getOldValue()).removeDocumentListener(
+                    longLineWatcher
+                );
+            }
+            if (e.getNewValue() instanceof Document) {
+                ((Document) e.getNewValue()).addDocumentListener(
+                    longLineWatcher
+                );
+                folds.setDocument((Document) e.getNewValue());
+            }
+        });
+    }
+
+    // New documents are versioned too, not just loaded ones
+    @Override
+    protected Document createDefaultModel() {
+        return new EditorDocument();
+    }
+
+    @Override
+    public void updateUI() {
+        setUI(new EditorTextAreaUI());
+    }
+
+    // True while the document is shown by a LongLineView; word wrap is
+    // not available in that mode
+    public boolean isLongLineMode() {
+        View root = getUI().getRootView(this);
+        return (
+            root.getViewCount() > 0 && root.getView(0) instanceof LongLineView
+        );
+    }
+
+    // Null only while the superclass constructor runs
+    public FoldModel getFolds() {
+        return folds;
+    }
+
+    // Folding needs the editor's own views; long-line mode and
+    // bidirectional text show every line
+    public boolean canFold() {
+        return (
+            !isLongLineMode() &&
+            !Boolean.TRUE.equals(getDocument().getProperty("i18n"))
+        );
+    }
+
+    // Hidden lines changed, so every line may have a new height
+    private void foldsChanged() {
+        View root = getUI().getRootView(this);
+        if (root.getViewCount() > 0) {
+            root.getView(0).preferenceChanged(null, true, true);
+        }
+        revalidate();
+        repaint();
+    }
+
+    private void rebuildView() {
+        if (getUI() instanceof EditorTextAreaUI) {
+            ((EditorTextAreaUI) getUI()).rebuildView();
+        }
+    }
+
+    static boolean isLongLine(Element line) {
+        return line.getEndOffset() - line.getStartOffset() > LONG_LINE_THRESHOLD;
+    }
+
+    static boolean hasLongLine(Element root) {
+        for (int i = 0; i < root.getElementCount(); i++) {
+            if (isLongLine(root.getElement(i))) return true;
+        }
+        return false;
+    }
+
+    static class EditorTextAreaUI extends BasicTextAreaUI {
+
+        @Override
+        public View create(Element elem) {
+            Object i18n = elem.getDocument().getProperty("i18n");
+            JTextArea area = (JTextArea) getComponent();
+            if (Boolean.TRUE.equals(i18n)) {
+                // Bidirectional text keeps the standard views
+                expandFolds();
+                return super.create(elem);
+            }
+            if (hasLongLine(elem)) {
+                expandFolds();
+                return new LongLineView(elem);
+            }
+            if (area.getLineWrap()) {
+                return new WrapLayoutView(elem, area.getWrapStyleWord());
+            }
+            return new FoldingPlainView(elem);
+        }
+
+        void rebuildView() {
+            modelChanged();
+        }
+
+        // Views that cannot fold show every line
+        private void expandFolds() {
+            FoldModel folds = ((EditorTextArea) getComponent()).getFolds();
+            if (folds != null) folds.expandAll();
+        }
+    }
+}
@@ -0,0 +1,895 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+// File Index
+// Paths of the files under the quick-open folders, for fuzzy matching.
+// Each folder's paths are packed into one byte array, with a mask of the
+// characters in each path that rules most of them out before any
+// matching. The index is saved to ~/.texteditor/files.idx and used from
+// there at startup while a fresh walk runs; a WatchService then applies
+// file system changes as they happen.
+class FileIndex {
+
+    private static final FileIndex INSTANCE = new FileIndex();
+    private static final int MAGIC = 0x52544649; // "RTFI"
+    private static final int VERSION = 1;
+    private static final int CHUNK = 32 * 1024;
+    // Watch events are applied once they pause this long
+    private static final long SETTLE_MILLIS = 300;
+
+    private final List<Folder> folders = new CopyOnWriteArrayList<>();
+    private final List<ChangeListener> listeners =
+        new CopyOnWriteArrayList<>();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private WatchService watcher;
+    private Thread watchThread;
+    private final AtomicInteger walking = new AtomicInteger();
+    private volatile boolean changed;
+    private volatile Narrowing narrowing;
+    private boolean started;
+
+    public static FileIndex getInstance() {
+        return INSTANCE;
+    }
+
+    // One indexed folder; its snapshot is replaced, never modified
+    private static class Folder {
+
+        final Path root;
+        volatile Snapshot snapshot;
+
+        Folder(Path root, Snapshot snapshot) {
+            this.root = root;
+            this.snapshot = snapshot;
+        }
+    }
+
+    // Paths from the last walk, less those removed since, plus those added
+    private static class Snapshot {
+
+        final PathTable base;
+        final BitSet removed;
+        final PathTable added;
+
+        Snapshot(PathTable base, BitSet removed, PathTable added) {
+            this.base = base;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        int size() {
+            return base.count - removed.cardinality() + added.count;
+        }
+    }
+
+    // A match, with its path relative to the folder it was found in
+    static class Match {
+
+        final File file;
+        final String path;
+        final int score;
+
+        Match(File file, String path, int score) {
+            this.file = file;
+            this.path = path;
+            this.score = score;
+        }
+    }
+
+    // The best matches of one search, and how many paths matched at all
+    static class Result {
+
+        final List<Match> matches;
+        final int total;
+
+        Result(List<Match> matches, int total) {
+            this.matches = matches;
+            this.total = total;
+        }
+    }
+
+    // --- Folders ------------------------------------------------------
+
+    // Loads the saved index in the background, then walks every folder
+    // again and starts watching them
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        List<Folder> loaded = new ArrayList<>();
+        for (String name : readFolders()) {
+            loaded.add(new Folder(Paths.get(name), emptySnapshot()));
+        }
+        folders.addAll(loaded);
+        runInBackground(() -> {
+            Map<String, PathTable> saved = readIndex();
+            for (Folder folder : loaded) {
+                PathTable table = saved.get(folder.root.toString());
+                if (table != null) {
+                    folder.snapshot = new Snapshot(
+                        table,
+                        new BitSet(),
+                        PathTable.EMPTY
+                    );
+                }
+            }
+            fireChanged();
+            for (Folder folder : loaded) {
+                refresh(folder);
+            }
+            save();
+        });
+    }
+
+    private static Snapshot emptySnapshot() {
+        return new Snapshot(PathTable.EMPTY, new BitSet(), PathTable.EMPTY);
+    }
+
+    public List<File> getFolders() {
+        List<File> roots = new ArrayList<>();
+        for (Folder folder : folders) {
+            roots.add(folder.root.toFile());
+        }
+        return roots;
+    }
+
+    public synchronized void addFolder(File dir) {
+        Path root = dir.toPath().toAbsolutePath().normalize();
+        for (Folder folder : folders) {
+            if (folder.root.equals(root)) return;
+        }
+        Folder folder = new Folder(root, emptySnapshot());
+        folders.add(folder);
+        writeFolders();
+        walkInBackground(folder);
+    }
+
+    public synchronized void removeFolder(File dir) {
+        Path root = dir.toPath().toAbsolutePath().normalize();
+        folders.removeIf(folder -> folder.root.equals(root));
+        synchronized (watchedDirs) {
+            Iterator<Map.Entry<WatchKey, Path>> it =
+                watchedDirs.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<WatchKey, Path> entry = it.next();
+                if (entry.getValue().startsWith(root)) {
+                    entry.getKey().cancel();
+                    it.remove();
+                }
+            }
+        }
+        writeFolders();
+        changed = true;
+        fireChanged();
+    }
+
+    public boolean isWalking() {
+        return walking.get() > 0;
+    }
+
+    public int getFileCount() {
+        int count = 0;
+        for (Folder folder : folders) {
+            count += folder.snapshot.size();
+        }
+        return count;
+    }
+
+    // Listeners are called on the EDT after walks and watched changes
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireChanged() {
+        SwingUtilities.invokeLater(() -> {
+            ChangeEvent event = new ChangeEvent(this);
+            for (ChangeListener listener : listeners) {
+                listener.stateChanged(event);
+            }
+        });
+    }
+
+    // --- Searching ----------------------------------------------------
+
+    // The limit best matches for query, best first. Spaces in the query
+    // are ignored and letters match either case.
+    public Result search(
+        String query,
+        int limit,
+        BooleanSupplier cancelled
+    ) {
+        byte[] q = query
+            .replace(" ", "")
+            .toLowerCase(Locale.ROOT)
+            .getBytes(StandardCharsets.UTF_8);
+        long mask = PathTable.mask(q, 0, q.length);
+
+        Narrowing last = narrowing;
+        Map<PathTable, int[]> matched = new IdentityHashMap<>();
+        List<Match> matches = new ArrayList<>();
+        int total = 0;
+        for (Folder folder : folders) {
+            Snapshot snapshot = folder.snapshot;
+            PathTable[] tables = { snapshot.base, snapshot.added };
+            for (PathTable table : tables) {
+                Found found = table.search(
+                    q,
+                    mask,
+                    table == snapshot.base ? snapshot.removed : null,
+                    last != null ? last.candidates(q, table) : null,
+                    limit,
+                    cancelled
+                );
+                if (found == null) return null;
+                matched.put(table, found.matched);
+                total += found.matched.length;
+                for (long key : found.best) {
+                    String path = table.path((int) key);
+                    matches.add(
+                        new Match(
+                            folder.root.resolve(path).toFile(),
+                            path,
+                            (int) (key >> 32)
+                        )
+                    );
+                }
+            }
+        }
+        narrowing = new Narrowing(q, matched);
+        matches.sort((a, b) -> {
+            if (a.score != b.score) return Integer.compare(b.score, a.score);
+            return a.path.compareTo(b.path);
+        });
+        if (matches.size() > limit) {
+            matches = new ArrayList<>(matches.subList(0, limit));
+        }
+        return new Result(matches, total);
+    }
+
+    // --- Walking and watching -----------------------------------------
+
+    private void walkInBackground(Folder folder) {
+        runInBackground(() -> {
+            refresh(folder);
+            save();
+        });
+    }
+
+    // Counts as walking until the task ends
+    private void runInBackground(Runnable task) {
+        walking.incrementAndGet();
+        fireChanged();
+        Thread thread = new Thread(
+            () -> {
+                try {
+                    task.run();
+                } finally {
+                    walking.decrementAndGet();
+                    fireChanged();
+                }
+            },
+            "File index"
+        );
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Replaces the folder's paths with a fresh walk
+    private void refresh(Folder folder) {
+        PathTable table = walk(folder.root, folder.root);
+        if (folders.contains(folder)) {
+            folder.snapshot = new Snapshot(
+                table,
+                new BitSet(),
+                PathTable.EMPTY
+            );
+            changed = true;
+            fireChanged();
+        }
+    }
+
+    // Paths of the files under dir, relative to root, watching every
+    // directory on the way
+    private PathTable walk(Path root, Path dir) {
+        PathTable.Builder builder = new PathTable.Builder();
+        try {
+            Files.walkFileTree(
+                dir,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                        Path path,
+                        BasicFileAttributes attrs
+                    ) {
+                        if (!path.equals(dir) && isIgnored(path)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        watch(path);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(
+                        Path path,
+                        BasicFileAttributes attrs
+                    ) {
+                        if (attrs.isRegularFile()) {
+                            builder.add(relative(root, path));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(
+                        Path path,
+                        IOException e
+                    ) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+            );
+        } catch (IOException e) {
+            // Keep whatever was found
+        }
+        return builder.build();
+    }
+
+    // Version control and tool directories hold nothing worth opening
+    private static boolean isIgnored(Path dir) {
+        Path name = dir.getFileName();
+        if (name == null) return false;
+        String s = name.toString();
+        return s.startsWith(".") || s.equals("node_modules");
+    }
+
+    private static String relative(Path root, Path path) {
+        String s = root.relativize(path).toString();
+        return s.replace(File.separatorChar, '/');
+    }
+
+    private void watch(Path dir) {
+        try {
+            synchronized (watchedDirs) {
+                if (watcher == null) {
+                    watcher = FileSystems.getDefault().newWatchService();
+                    watchThread = new Thread(this::watchLoop, "File watcher");
+                    watchThread.setDaemon(true);
+                    watchThread.start();
+                }
+                WatchKey key = dir.register(
+                    watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE
+                );
+                watchedDirs.put(key, dir);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Out of watches; the next walk still finds changes here
+        }
+    }
+
+    // Collects events until they pause, then applies them in one go
+    private void watchLoop() {
+        Map<Path, Boolean> events = new LinkedHashMap<>();
+        Set<Path> overflowed = new HashSet<>();
+        while (true) {
+            WatchKey key;
+            try {
+                key = events.isEmpty() && overflowed.isEmpty()
+                    ? watcher.take()
+                    : watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            if (key == null) {
+                applyEvents(events, overflowed);
+                events.clear();
+                overflowed.clear();
+                continue;
+            }
+            Path dir;
+            synchronized (watchedDirs) {
+                dir = watchedDirs.get(key);
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (dir == null) continue;
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflowed.add(dir);
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                // Later events for a path replace earlier ones
+                events.remove(path);
+                events.put(
+                    path,
+                    event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                );
+            }
+            if (!key.reset()) {
+                synchronized (watchedDirs) {
+                    watchedDirs.remove(key);
+                }
+            }
+        }
+    }
+
+    private void applyEvents(Map<Path, Boolean> events, Set<Path> overflowed) {
+        for (Folder folder : folders) {
+            boolean lost = false;
+            for (Path dir : overflowed) {
+                if (dir.startsWith(folder.root)) lost = true;
+            }
+            if (lost) {
+                walkInBackground(folder);
+                continue;
+            }
+
+            Set<String> removed = new HashSet<>();
+            Set<String> added = new LinkedHashSet<>();
+            for (Map.Entry<Path, Boolean> event : events.entrySet()) {
+                Path path = event.getKey();
+                if (!path.startsWith(folder.root)) continue;
+                // A path replaced by another keeps nothing of the old one
+                removed.add(relative(folder.root, path));
+                if (!event.getValue()) continue;
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (isIgnored(path)) continue;
+                    PathTable inside = walk(folder.root, path);
+                    for (int i = 0; i < inside.count; i++) {
+                        added.add(inside.path(i));
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    added.add(relative(folder.root, path));
+                }
+            }
+            if (removed.isEmpty()) continue;
+            // Files may be both walked and reported, or already listed
+            removed.addAll(added);
+            folder.snapshot = apply(folder.snapshot, removed, added);
+            changed = true;
+        }
+        fireChanged();
+    }
+
+    // The snapshot with paths, and everything under them, removed and
+    // others added; folds them all into one table once the extras grow
+    private static Snapshot apply(
+        Snapshot snapshot,
+        Set<String> removed,
+        Set<String> added
+    ) {
+        BitSet gone = (BitSet) snapshot.removed.clone();
+        snapshot.base.mark(removed, gone);
+        BitSet addedGone = new BitSet();
+        snapshot.added.mark(removed, addedGone);
+
+        PathTable.Builder extra = new PathTable.Builder();
+        for (int i = 0; i < snapshot.added.count; i++) {
+            if (!addedGone.get(i)) extra.add(snapshot.added.path(i));
+        }
+        for (String path : added) {
+            extra.add(path);
+        }
+
+        int base = snapshot.base.count;
+        if (extra.count + gone.cardinality() > base / 8) {
+            PathTable.Builder all = new PathTable.Builder();
+            for (int i = 0; i < base; i++) {
+                if (!gone.get(i)) all.add(snapshot.base.path(i));
+            }
+            all.addAll(extra.build());
+            return new Snapshot(all.build(), new BitSet(), PathTable.EMPTY);
+        }
+        return new Snapshot(snapshot.base, gone, extra.build());
+    }
+
+    // --- Persistence --------------------------------------------------
+
+    private static File getConfigDir() {
+        return new File(System.getProperty("user.home"), ".texteditor");
+    }
+
+    private static List<String> readFolders() {
+        List<String> names = new ArrayList<>();
+        File file = new File(getConfigDir(), "folders.txt");
+        if (!file.exists()) return names;
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    new FileInputStream(file),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (new File(line).isDirectory()) names.add(line);
+            }
+        } catch (IOException e) {
+            // No folders then
+        }
+        return names;
+    }
+
+    private void writeFolders() {
+        File dir = getConfigDir();
+        dir.mkdirs();
+        try (
+            PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(new File(dir, "folders.txt")),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            for (Folder folder : folders) {
+                writer.println(folder.root);
+            }
+        } catch (IOException e) {
+            // Folders are only remembered for this run
+        }
+    }
+
+    private static Map<String, PathTable> readIndex() {
+        Map<String, PathTable> tables = new HashMap<>();
+        File file = new File(getConfigDir(), "files.idx");
+        if (!file.exists()) return tables;
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))
+            )
+        ) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return tables;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String root = in.readUTF();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                tables.put(root, PathTable.of(data));
+            }
+        } catch (IOException e) {
+            // A fresh walk rebuilds it
+            tables.clear();
+        }
+        return tables;
+    }
+
+    // Writes the index if it changed since it was last written
+    public synchronized void save() {
+        if (!changed) return;
+        changed = false;
+        File dir = getConfigDir();
+        dir.mkdirs();
+        File temp = new File(dir, "files.idx.tmp");
+        try {
+            try (
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))
+                )
+            ) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(folders.size());
+                for (Folder folder : folders) {
+                    Snapshot snapshot = folder.snapshot;
+                    PathTable.Builder all = new PathTable.Builder();
+                    for (int i = 0; i < snapshot.base.count; i++) {
+                        if (!snapshot.removed.get(i)) {
+                            all.add(snapshot.base.path(i));
+                        }
+                    }
+                    all.addAll(snapshot.added);
+                    out.writeUTF(folder.root.toString());
+                    out.writeInt(all.length);
+                    out.write(all.data, 0, all.length);
+                }
+            }
+            Files.move(
+                temp.toPath(),
+                new File(dir, "files.idx").toPath(),
+                StandardCopyOption.REPLACE_EXISTING
+            );
+        } catch (IOException e) {
+            // Written again after the next change
+            changed = true;
+        }
+    }
+
+    // --- Path tables --------------------------------------------------
+
+    // The best paths of a table for a query, as score << 32 | index, best
+    // first, and the indexes of every path that matched
+    private static class Found {
+
+        final long[] best;
+        final int[] matched;
+
+        Found(long[] best, int[] matched) {
+            this.best = best;
+            this.matched = matched;
+        }
+    }
+
+    // Matches of the last query, which narrow the search for a longer one
+    private static class Narrowing {
+
+        final byte[] query;
+        final Map<PathTable, int[]> matched;
+
+        Narrowing(byte[] query, Map<PathTable, int[]> matched) {
+            this.query = query;
+            this.matched = matched;
+        }
+
+        int[] candidates(byte[] q, PathTable table) {
+            if (q.length < query.length) return null;
+            for (int i = 0; i < query.length; i++) {
+                if (q[i] != query[i]) return null;
+            }
+            return matched.get(table);
+        }
+    }
+
+    // Paths packed as UTF-8, each ended by a newline, with their starts
+    // and character masks; immutable once built
+    private static class PathTable {
+
+        static final PathTable EMPTY = new Builder().build();
+
+        final byte[] data;
+        final int[] starts;
+        final long[] masks;
+        final int count;
+
+        private PathTable(byte[] data, int[] starts, int count) {
+            this.data = data;
+            this.starts = starts;
+            this.count = count;
+            masks = new long[count];
+            for (int i = 0; i < count; i++) {
+                masks[i] = mask(data, starts[i], starts[i + 1] - 1);
+            }
+        }
+
+        static PathTable of(byte[] data) {
+            int count = 0;
+            for (byte b : data) {
+                if (b == '\n') count++;
+            }
+            int[] starts = new int[count + 1];
+            int n = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == '\n') starts[++n] = i + 1;
+            }
+            return new PathTable(data, starts, count);
+        }
+
+        String path(int i) {
+            return new String(
+                data,
+                starts[i],
+                starts[i + 1] - 1 - starts[i],
+                StandardCharsets.UTF_8
+            );
+        }
+
+        // One bit per letter, digit and some punctuation, case folded;
+        // every other byte shares the last bit
+        static long mask(byte[] bytes, int start, int end) {
+            long mask = 0;
+            for (int i = start; i < end; i++) {
+                mask |= 1L << bit(bytes[i]);
+            }
+            return mask;
+        }
+
+        private static int bit(byte b) {
+            if (b >= 'a' && b <= 'z') return b - 'a';
+            if (b >= 'A' && b <= 'Z') return b - 'A';
+            if (b >= '0' && b <= '9') return 26 + b - '0';
+            switch (b) {
+                case '.':
+                    return 36;
+                case '_':
+                    return 37;
+                case '-':
+                    return 38;
+                case '/':
+                    return 39;
+                default:
+                    return 63;
+            }
+        }
+
+        // Sets the bits of the paths that are in names or under one of them
+        void mark(Set<String> names, BitSet bits) {
+            if (names.isEmpty()) return;
+            for (int i = 0; i < count; i++) {
+                String path = path(i);
+                if (names.contains(path)) {
+                    bits.set(i);
+                    continue;
+                }
+                for (int slash = path.indexOf('/'); slash > 0; ) {
+                    if (names.contains(path.substring(0, slash))) {
+                        bits.set(i);
+                        break;
+                    }
+                    slash = path.indexOf('/', slash + 1);
+                }
+            }
+        }
+
+        // Scores the paths, or only the candidates when given, in
+        // parallel chunks that each keep their own best; null if cancelled
+        Found search(
+            byte[] q,
+            long qMask,
+            BitSet removed,
+            int[] candidates,
+            int limit,
+            BooleanSupplier cancelled
+        ) {
+            int size = candidates != null ? candidates.length : count;
+            int chunks = (size + CHUNK - 1) / CHUNK;
+            long[][] best = new long[chunks][];
+            int[][] matched = new int[chunks][];
+            IntStream.range(0, chunks)
+                .parallel()
+                .forEach(c -> {
+                    if (cancelled.getAsBoolean()) return;
+                    PriorityQueue<Long> top = new PriorityQueue<>();
+                    int end = Math.min(size, (c + 1) * CHUNK);
+                    int[] hits = new int[end - c * CHUNK];
+                    int n = 0;
+                    for (int k = c * CHUNK; k < end; k++) {
+                        int i = candidates != null ? candidates[k] : k;
+                        if ((masks[i] & qMask) != qMask) continue;
+                        if (removed != null && removed.get(i)) continue;
+                        int score = score(
+                            data,
+                            starts[i],
+                            starts[i + 1] - 1,
+                            q
+                        );
+                        if (score == Integer.MIN_VALUE) continue;
+                        hits[n++] = i;
+                        long key = (long) score << 32 | i;
+                        if (top.size() < limit) {
+                            top.add(key);
+                        } else if (key > top.peek()) {
+                            top.poll();
+                            top.add(key);
+                        }
+                    }
+                    long[] keys = new long[top.size()];
+                    for (int k = keys.length - 1; k >= 0; k--) {
+                        keys[k] = top.poll();
+                    }
+                    best[c] = keys;
+                    matched[c] = Arrays.copyOf(hits, n);
+                });
+            if (cancelled.getAsBoolean()) return null;
+
+            int total = 0;
+            int kept = 0;
+            for (int c = 0; c < chunks; c++) {
+                total += matched[c].length;
+                kept += best[c].length;
+            }
+            long[] keys = new long[kept];
+            int[] hits = new int[total];
+            kept = 0;
+            total = 0;
+            for (int c = 0; c < chunks; c++) {
+                System.arraycopy(best[c], 0, keys, kept, best[c].length);
+                kept += best[c].length;
+                System.arraycopy(matched[c], 0, hits, total, matched[c].length);
+                total += matched[c].length;
+            }
+            Arrays.sort(keys);
+            long[] top = new long[Math.min(limit, keys.length)];
+            for (int k = 0; k < top.length; k++) {
+                top[k] = keys[keys.length - 1 - k];
+            }
+            return new Found(top, hits);
+        }
+
+        static class Builder {
+
+            byte[] data = new byte[4096];
+            int length;
+            int[] starts = new int[256];
+            int count;
+
+            void add(String path) {
+                byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                for (byte b : bytes) {
+                    // Names with line breaks can't be stored
+                    if (b == '\n') return;
+                }
+                if (length + bytes.length + 1 > data.length) {
+                    data = Arrays.copyOf(
+                        data,
+                        Math.max(data.length * 2, length + bytes.length + 1)
+                    );
+                }
+                System.arraycopy(bytes, 0, data, length, bytes.length);
+                length += bytes.length;
+                data[length++] = '\n';
+                if (count + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[++count] = length;
+            }
+
+            void addAll(PathTable table) {
+                for (int i = 0; i < table.count; i++) {
+                    add(table.path(i));
+                }
+            }
+
+            PathTable build() {
+                return new PathTable(
+                    Arrays.copyOf(data, length),
+                    Arrays.copyOf(starts, count + 1),
+                    count
+                );
+            }
+        }
+    }
+
+    // Matches the query from its last character backwards, taking each
+    // one as far right as it occurs, so matches favor the file name.
+    // Characters at the start of a word, right after the previous match,
+    // or in the file name score extra; long paths score a little less.
+    // Returns Integer.MIN_VALUE if the query is not a subsequence.
+    static int score(byte[] data, int start, int end, byte[] q) {
+        int score = 0;
+        int next = -1;
+        int qi = q.length - 1;
+        boolean inName = true;
+        for (int i = end - 1; i >= start && qi >= 0; i--) {
+            byte b = data[i];
+            if (b == '/') inName = false;
+            byte lower = b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+            if (lower != q[qi]) continue;
+            score += 1;
+            if (i == start || isBoundary(data[i - 1], b)) score += 8;
+            if (i + 1 == next) score += 6;
+            if (inName) score += 4;
+            next = i;
+            qi--;
+        }
+        if (qi >= 0) return Integer.MIN_VALUE;
+        return score - ((end - start) >> 4);
+    }
+
+    private static boolean isBoundary(byte before, byte b) {
+        return (
+            before == '/' ||
+            before == '_' ||
+            before == '-' ||
+            before == '.' ||
+            before == ' ' ||
+            (before >= 'a' && before <= 'z' && b >= 'A' && b <= 'Z')
+        );
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+
+// Fold Model
+// Foldable regions of a text area's document and which of them are
+// collapsed. A collapsed region hides the lines between its first and
+// last line; views and the gutter map lines to visible rows through here.
+// Collapsed regions are held as positions, so they move with edits.
+class FoldModel {
+
+    // A foldable range, from the offset of its opening token to that of
+    // its closing one
+    static class Region {
+
+        final int start;
+        final int end;
+        final int startLine;
+        final int endLine;
+
+        Region(int start, int end, int startLine, int endLine) {
+            this.start = start;
+            this.end = end;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+    }
+
+    private final List<ChangeListener> listeners = new ArrayList<>();
+    private Document document;
+    private List<Region> regions = Collections.emptyList();
+    // Start and end positions of collapsed regions
+    private final List<Position[]> collapsed = new ArrayList<>();
+    private int changes;
+
+    // Hidden line ranges, recomputed whenever the text or the folds change
+    private long cachedVersion = -1;
+    private int cachedChanges = -1;
+    private int[] hiddenStart = new int[0];
+    private int[] hiddenEnd = new int[0];
+    private int[] startOffsets = new int[0];
+    private int[] endOffsets = new int[0];
+    // Lines hidden by the ranges before each one
+    private int[] hiddenBefore = new int[1];
+
+    FoldModel(Document document) {
+        this.document = document;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // Regions and folds belong to one document
+    public void setDocument(Document document) {
+        this.document = document;
+        regions = Collections.emptyList();
+        collapsed.clear();
+        fireChanged();
+    }
+
+    // Replaces the foldable regions, sorted by start; a collapsed region
+    // that no longer exists is expanded, and one whose end moved follows
+    // it
+    public void setRegions(List<Region> regions) {
+        this.regions = regions;
+        boolean changed = false;
+        for (int i = collapsed.size() - 1; i >= 0; i--) {
+            Position[] fold = collapsed.get(i);
+            Region region = regionStartingAt(fold[0].getOffset());
+            if (region == null) {
+                collapsed.remove(i);
+                changed = true;
+            } else if (region.end != fold[1].getOffset()) {
+                Position[] moved = positions(region);
+                if (moved != null) {
+                    collapsed.set(i, moved);
+                } else {
+                    collapsed.remove(i);
+                }
+                changed = true;
+            }
+        }
+        if (changed) fireChanged();
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    public boolean hasCollapsed() {
+        return !collapsed.isEmpty();
+    }
+
+    // The outermost region starting on line, or null
+    public Region regionAt(int line) {
+        int low = 0;
+        int high = regions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (regions.get(mid).startLine < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < regions.size() && regions.get(low).startLine == line) {
+            return regions.get(low);
+        }
+        return null;
+    }
+
+    public boolean isCollapsed(Region region) {
+        return indexOf(region.start) >= 0;
+    }
+
+    public void toggle(Region region) {
+        int index = indexOf(region.start);
+        if (index >= 0) {
+            collapsed.remove(index);
+        } else {
+            Position[] fold = positions(region);
+            if (fold == null) return;
+            collapsed.add(fold);
+        }
+        fireChanged();
+    }
+
+    public void collapseAll() {
+        collapsed.clear();
+        for (Region region : regions) {
+            Position[] fold = positions(region);
+            if (fold != null) collapsed.add(fold);
+        }
+        fireChanged();
+    }
+
+    public void expandAll() {
+        if (collapsed.isEmpty()) return;
+        collapsed.clear();
+        fireChanged();
+    }
+
+    // Expands every fold that hides the line holding offset
+    public void reveal(int offset) {
+        if (collapsed.isEmpty()) return;
+        Element root = document.getDefaultRootElement();
+        int line = root.getElementIndex(offset);
+        boolean changed = false;
+        for (int i = collapsed.size() - 1; i >= 0; i--) {
+            Position[] fold = collapsed.get(i);
+            if (
+                line > root.getElementIndex(fold[0].getOffset()) &&
+                line < root.getElementIndex(fold[1].getOffset())
+            ) {
+                collapsed.remove(i);
+                changed = true;
+            }
+        }
+        if (changed) fireChanged();
+    }
+
+    public boolean isHidden(int line) {
+        int range = rangeAtOrBefore(line);
+        return range >= 0 && line <= hiddenEnd[range];
+    }
+
+    // Same as isHidden for the line starting at offset, without looking
+    // the line up
+    public boolean isHiddenAt(int offset) {
+        refresh();
+        int low = 0;
+        int high = startOffsets.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startOffsets[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 && offset < endOffsets[found];
+    }
+
+    // The first line at or after line that is not hidden
+    public int nextVisibleLine(int line) {
+        int range = rangeAtOrBefore(line);
+        if (range >= 0 && line <= hiddenEnd[range]) {
+            return hiddenEnd[range] + 1;
+        }
+        return line;
+    }
+
+    public int getHiddenLineCount() {
+        refresh();
+        return hiddenBefore[hiddenStart.length];
+    }
+
+    // Visible row of line; a hidden line shares the row of the line
+    // that folds it
+    public int rowOf(int line) {
+        int range = rangeAtOrBefore(line);
+        if (range < 0) return line;
+        if (line <= hiddenEnd[range]) {
+            return hiddenStart[range] - 1 - hiddenBefore[range];
+        }
+        return line - hiddenBefore[range + 1];
+    }
+
+    public int lineOfRow(int row) {
+        refresh();
+        // Ranges whose first hidden line would sit at or above row
+        int low = 0;
+        int high = hiddenStart.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hiddenStart[mid] - hiddenBefore[mid] <= row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return row + hiddenBefore[low];
+    }
+
+    // Index of the last hidden range starting at or before line, or -1
+    private int rangeAtOrBefore(int line) {
+        refresh();
+        int low = 0;
+        int high = hiddenStart.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (hiddenStart[mid] <= line) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void refresh() {
+        long version = document instanceof EditorDocument
+            ? ((EditorDocument) document).getVersion().number
+            : -2;
+        if (
+            version == cachedVersion &&
+            version != -2 &&
+            changes == cachedChanges
+        ) {
+            return;
+        }
+        cachedVersion = version;
+        cachedChanges = changes;
+
+        Element root = document.getDefaultRootElement();
+        int[][] ranges = new int[collapsed.size()][];
+        int n = 0;
+        for (Position[] fold : collapsed) {
+            int first = root.getElementIndex(fold[0].getOffset()) + 1;
+            int last = root.getElementIndex(fold[1].getOffset()) - 1;
+            if (last >= first) ranges[n++] = new int[] { first, last };
+        }
+        Arrays.sort(ranges, 0, n, (a, b) -> Integer.compare(a[0], b[0]));
+
+        // Nested folds merge into the one around them
+        int merged = 0;
+        for (int i = 0; i < n; i++) {
+            if (merged > 0 && ranges[i][0] <= ranges[merged - 1][1] + 1) {
+                ranges[merged - 1][1] = Math.max(
+                    ranges[merged - 1][1],
+                    ranges[i][1]
+                );
+            } else {
+                ranges[merged++] = ranges[i];
+            }
+        }
+        hiddenStart = new int[merged];
+        hiddenEnd = new int[merged];
+        startOffsets = new int[merged];
+        endOffsets = new int[merged];
+        hiddenBefore = new int[merged + 1];
+        for (int i = 0; i < merged; i++) {
+            hiddenStart[i] = ranges[i][0];
+            hiddenEnd[i] = ranges[i][1];
+            startOffsets[i] = root.getElement(hiddenStart[i]).getStartOffset();
+            endOffsets[i] = root.getElement(hiddenEnd[i]).getEndOffset();
+            hiddenBefore[i + 1] =
+                hiddenBefore[i] + hiddenEnd[i] - hiddenStart[i] + 1;
+        }
+    }
+
+    private int indexOf(int start) {
+        for (int i = 0; i < collapsed.size(); i++) {
+            if (collapsed.get(i)[0].getOffset() == start) return i;
+        }
+        return -1;
+    }
+
+    private Region regionStartingAt(int start) {
+        int low = 0;
+        int high = regions.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midStart = regions.get(mid).start;
+            if (midStart < start) {
+                low = mid + 1;
+            } else if (midStart > start) {
+                high = mid - 1;
+            } else {
+                return regions.get(mid);
+            }
+        }
+        return null;
+    }
+
+    private Position[] positions(Region region) {
+        try {
+            return new Position[] {
+                document.createPosition(region.start),
+                document.createPosition(region.end),
+            };
+        } catch (BadLocationException e) {
+            return null;
+        }
+    }
+
+    // Listeners hear about folds opening and closing, not about regions
+    private void fireChanged() {
+        changes++;
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
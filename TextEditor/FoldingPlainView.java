@@ -0,0 +1,122 @@
+import java.awt.*;
+import javax.swing.text.Element;
+import javax.swing.text.PlainView;
+import javax.swing.text.Position;
+
+// Folding Plain View
+// PlainView that leaves out the lines hidden by folds. Every line is
+// still laid out as PlainView does it; each call is handed an allocation
+// shifted so that the line lands on its visible row, and painting only
+// visits the runs of visible lines inside the clip.
+class FoldingPlainView extends PlainView {
+
+    // Set while a run is painted with an already shifted allocation
+    private boolean painting;
+
+    FoldingPlainView(Element elem) {
+        super(elem);
+    }
+
+    private FoldModel getFolds() {
+        Container host = getContainer();
+        FoldModel folds = host instanceof EditorTextArea
+            ? ((EditorTextArea) host).getFolds()
+            : null;
+        return folds != null && folds.hasCollapsed() ? folds : null;
+    }
+
+    private int lineHeight() {
+        Component host = getContainer();
+        return host.getFontMetrics(host.getFont()).getHeight();
+    }
+
+    // The allocation in which PlainView puts line on its visible row; it
+    // is made taller so lines below the rows still count as inside it
+    private Rectangle shift(Shape a, int line, FoldModel folds) {
+        Rectangle alloc = a.getBounds();
+        int h = lineHeight();
+        alloc.y += (folds.rowOf(line) - line) * h;
+        alloc.height += folds.getHiddenLineCount() * h;
+        return alloc;
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        float span = super.getPreferredSpan(axis);
+        FoldModel folds = getFolds();
+        if (axis != Y_AXIS || folds == null) return span;
+        return Math.max(
+            lineHeight(),
+            span - folds.getHiddenLineCount() * lineHeight()
+        );
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        FoldModel folds = getFolds();
+        Rectangle clip = g.getClipBounds();
+        int h = lineHeight();
+        if (folds == null || clip == null || h <= 0) {
+            super.paint(g, a);
+            return;
+        }
+        Rectangle alloc = a.getBounds();
+        int lines = getElement().getElementCount();
+        int row = Math.max(0, (clip.y - alloc.y) / h);
+        int lastRow = (clip.y + clip.height - alloc.y) / h;
+
+        painting = true;
+        try {
+            while (row <= lastRow) {
+                int line = folds.lineOfRow(row);
+                if (line >= lines) break;
+                // Rows down to the next fold show consecutive lines
+                int next = line + 1;
+                while (next < lines && !folds.isHidden(next)) {
+                    if (next - line > lastRow - row) break;
+                    next++;
+                }
+                int runEnd = row + next - line;
+                Graphics run = g.create();
+                try {
+                    run.clipRect(
+                        clip.x,
+                        alloc.y + row * h,
+                        clip.width,
+                        (runEnd - row) * h
+                    );
+                    super.paint(run, shift(alloc, line, folds));
+                } finally {
+                    run.dispose();
+                }
+                row = runEnd;
+            }
+        } finally {
+            painting = false;
+        }
+    }
+
+    // Used by modelToView and damage repaints as well as by paint
+    @Override
+    protected Rectangle lineToRect(Shape a, int line) {
+        FoldModel folds = getFolds();
+        if (painting || folds == null) return super.lineToRect(a, line);
+        return super.lineToRect(shift(a, line, folds), line);
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias) {
+        FoldModel folds = getFolds();
+        if (painting || folds == null) {
+            return super.viewToModel(fx, fy, a, bias);
+        }
+        Rectangle alloc = a.getBounds();
+        int h = lineHeight();
+        int row = h > 0 ? Math.max(0, ((int) fy - alloc.y) / h) : 0;
+        int line = Math.min(
+            folds.lineOfRow(row),
+            getElement().getElementCount() - 1
+        );
+        return super.viewToModel(fx, fy, shift(a, line, folds), bias);
+    }
+}
@@ -0,0 +1,234 @@
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.awt.font.FontRenderContext;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import javax.swing.SwingUtilities;
+
+// Font Catalog
+// Enumerates the installed font families once on a background thread and
+// caches them, with a monospaced flag per family, in
+// ~/.texteditor/fonts.cache so later launches have the list immediately
+class FontCatalog {
+
+    private static final String CACHE_HEADER = "# RetroTextEditor fonts 1";
+    private static final FontCatalog INSTANCE = new FontCatalog();
+
+    private volatile List<FontFamily> families;
+    private volatile Set<String> familyNames = Collections.emptySet();
+    private volatile boolean loaded;
+    private final List<Runnable> loadListeners = new ArrayList<>();
+    private final Map<String, Font> baseFonts = new HashMap<>();
+    private boolean started;
+
+    public static FontCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    // Reads the disk cache right away, then refreshes it in the background
+    public synchronized void startLoading() {
+        if (started) return;
+        started = true;
+
+        List<FontFamily> cached = readCache();
+        if (cached != null) {
+            setFamilies(cached);
+        }
+
+        Thread thread = new Thread(() -> refresh(cached), "Font catalog");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Families from the cache or the last enumeration, or null if neither
+    // is available yet
+    public List<FontFamily> getFamilies() {
+        return families;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Runs the callback on the EDT once the background enumeration is done
+    public void whenLoaded(Runnable callback) {
+        synchronized (loadListeners) {
+            if (!loaded) {
+                loadListeners.add(callback);
+                return;
+            }
+        }
+        SwingUtilities.invokeLater(callback);
+    }
+
+    // Returns the first installed family, falling back to the last name.
+    // Without a catalog yet, each name is probed the old way.
+    public String firstAvailable(String... names) {
+        for (String name : names) {
+            if (families != null) {
+                if (familyNames.contains(name)) return name;
+            } else if (
+                new Font(name, Font.PLAIN, 12).getFamily().equals(name)
+            ) {
+                return name;
+            }
+        }
+        return names[names.length - 1];
+    }
+
+    // Derives from one cached base font per family instead of creating a
+    // new Font for every preview
+    public Font getFont(String family, int style, float size) {
+        Font base;
+        synchronized (baseFonts) {
+            base = baseFonts.get(family);
+            if (base == null) {
+                base = new Font(family, Font.PLAIN, 12);
+                baseFonts.put(family, base);
+            }
+        }
+        return base.deriveFont(style, size);
+    }
+
+    private void refresh(List<FontFamily> cached) {
+        Map<String, Boolean> known = new HashMap<>();
+        if (cached != null) {
+            for (FontFamily family : cached) {
+                known.put(family.name, family.monospaced);
+            }
+        }
+
+        String[] names =
+            GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+        FontRenderContext frc = new FontRenderContext(null, false, false);
+        List<FontFamily> result = new ArrayList<>(names.length);
+        for (String name : names) {
+            Boolean monospaced = known.get(name);
+            if (monospaced == null) {
+                monospaced = isMonospaced(new Font(name, Font.PLAIN, 12), frc);
+            }
+            result.add(new FontFamily(name, monospaced));
+        }
+
+        setFamilies(result);
+        if (!result.equals(cached)) {
+            writeCache(result);
+        }
+
+        List<Runnable> callbacks;
+        synchronized (loadListeners) {
+            loaded = true;
+            callbacks = new ArrayList<>(loadListeners);
+            loadListeners.clear();
+        }
+        for (Runnable callback : callbacks) {
+            SwingUtilities.invokeLater(callback);
+        }
+    }
+
+    private void setFamilies(List<FontFamily> list) {
+        Set<String> names = new HashSet<>();
+        for (FontFamily family : list) {
+            names.add(family.name);
+        }
+        familyNames = names;
+        families = Collections.unmodifiableList(list);
+    }
+
+    private static boolean isMonospaced(Font font, FontRenderContext frc) {
+        if (!font.canDisplay('m')) return false;
+        double narrow = font.getStringBounds("i", frc).getWidth();
+        double wide = font.getStringBounds("W", frc).getWidth();
+        double medium = font.getStringBounds("m", frc).getWidth();
+        return (
+            narrow > 0 &&
+            Math.abs(narrow - wide) < 0.01 &&
+            Math.abs(narrow - medium) < 0.01
+        );
+    }
+
+    private static File getCacheFile() {
+        return new File(
+            new File(System.getProperty("user.home"), ".texteditor"),
+            "fonts.cache"
+        );
+    }
+
+    private static List<FontFamily> readCache() {
+        File file = getCacheFile();
+        if (!file.exists()) return null;
+
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    new FileInputStream(file),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            if (!CACHE_HEADER.equals(reader.readLine())) return null;
+            List<FontFamily> list = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(1) != '\t') continue;
+                list.add(
+                    new FontFamily(line.substring(2), line.charAt(0) == 'M')
+                );
+            }
+            return list;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeCache(List<FontFamily> list) {
+        File file = getCacheFile();
+        file.getParentFile().mkdirs();
+        try (
+            PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(file),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            writer.println(CACHE_HEADER);
+            for (FontFamily family : list) {
+                writer.print(family.monospaced ? "M\t" : "P\t");
+                writer.println(family.name);
+            }
+        } catch (IOException e) {
+            // Ignore errors when saving the font cache
+        }
+    }
+
+    static class FontFamily {
+
+        final String name;
+        final boolean monospaced;
+
+        FontFamily(String name, boolean monospaced) {
+            this.name = name;
+            this.monospaced = monospaced;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FontFamily)) return false;
+            FontFamily other = (FontFamily) o;
+            return name.equals(other.name) && monospaced == other.monospaced;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + (monospaced ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,517 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+// Hex View
+// Hex and ASCII display of a MappedFile. Only the visible rows are read
+// from the mapping, and the scroll bar counts rows rather than pixels so
+// multi-gigabyte files scroll too. Typing overwrites bytes in place.
+class HexView extends JPanel {
+
+    static final int BYTES_PER_ROW = 16;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final Color OFFSET_FG = new Color(128, 128, 128);
+    private static final Color EDITED_FG = new Color(200, 0, 0);
+    private static final Color CARET_BG = new Color(180, 210, 255);
+    private static final Color INACTIVE_CARET_BG = new Color(225, 225, 225);
+    private static final Color MATCH_BG = new Color(255, 235, 150);
+
+    private final MappedFile data;
+    private final Rows rows = new Rows();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final long rowCount;
+    private final long rowScale;
+    private final int offsetDigits;
+    private final byte[] rowBytes = new byte[BYTES_PER_ROW];
+
+    private long firstRow;
+    private long caret;
+    private long matchStart = -1;
+    private int matchLength;
+    private boolean asciiPane;
+    private boolean lowNibble;
+    private boolean syncingScrollBar;
+
+    HexView(MappedFile data, Font font) {
+        super(new BorderLayout());
+        this.data = data;
+        rowCount = Math.max(
+            1,
+            (data.size() + BYTES_PER_ROW - 1) / BYTES_PER_ROW
+        );
+        // Scroll bar values are ints; very large files scroll in steps
+        long maxValue = Integer.MAX_VALUE / 2;
+        rowScale = Math.max(1, (rowCount + maxValue - 1) / maxValue);
+        offsetDigits = data.size() > 0xFFFFFFFFL ? 12 : 8;
+
+        rows.setFont(monospaced(font));
+        add(rows, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+
+        scrollBar.addAdjustmentListener(e -> {
+            if (!syncingScrollBar) {
+                firstRow = Math.min(
+                    (long) e.getValue() * rowScale,
+                    Math.max(0, rowCount - getVisibleRows())
+                );
+                rows.repaint();
+            }
+        });
+        rows.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollBar();
+            }
+        });
+    }
+
+    public MappedFile getData() {
+        return data;
+    }
+
+    public long getCaret() {
+        return caret;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(
+            ChangeListener.class
+        )) {
+            listener.stateChanged(event);
+        }
+    }
+
+    @Override
+    public boolean requestFocusInWindow() {
+        return rows.requestFocusInWindow();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        if (rows != null) {
+            rows.setFont(monospaced(font));
+            updateScrollBar();
+            rows.repaint();
+        }
+    }
+
+    // Columns are laid out on a character grid
+    private Font monospaced(Font font) {
+        FontMetrics fm = getFontMetrics(font);
+        return fm.charWidth('i') == fm.charWidth('W')
+            ? font
+            : new Font(Font.MONOSPACED, Font.PLAIN, font.getSize());
+    }
+
+    private int getRowHeight() {
+        return rows.getFontMetrics(rows.getFont()).getHeight();
+    }
+
+    private int getVisibleRows() {
+        return Math.max(1, rows.getHeight() / Math.max(1, getRowHeight()));
+    }
+
+    private void updateScrollBar() {
+        int visible = getVisibleRows();
+        int extent = (int) Math.max(1, visible / rowScale);
+        int max = (int) ((rowCount + rowScale - 1) / rowScale);
+        syncingScrollBar = true;
+        scrollBar.setValues(
+            (int) (firstRow / rowScale),
+            extent,
+            0,
+            Math.max(max, extent)
+        );
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setBlockIncrement(extent);
+        syncingScrollBar = false;
+    }
+
+    // Moves the caret and scrolls it into view
+    public void goTo(long offset) {
+        caret = Math.max(0, Math.min(offset, Math.max(0, data.size() - 1)));
+        lowNibble = false;
+        long row = caret / BYTES_PER_ROW;
+        int visible = getVisibleRows();
+        if (row < firstRow) {
+            firstRow = row;
+        } else if (row >= firstRow + visible) {
+            firstRow = row - visible + 1;
+        }
+        updateScrollBar();
+        rows.repaint();
+        fireStateChanged();
+    }
+
+    // Searches forward from the byte after the caret, wrapping once, on a
+    // background thread; reports the outcome through the callback
+    public void findNext(byte[] pattern, Consumer<String> onResult) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        long start = matchStart == caret ? caret + 1 : caret;
+
+        TaskManager.getInstance().submitCancellable(
+            "Searching bytes",
+            TaskManager.Priority.INTERACTIVE,
+            this,
+            cancelled,
+            new SwingWorker<Long, Void>() {
+                @Override
+                protected Long doInBackground() throws IOException {
+                    long found = data.indexOf(pattern, start, cancelled::get);
+                    if (found < 0 && !cancelled.get()) {
+                        found = data.indexOf(pattern, 0, cancelled::get);
+                    }
+                    return found;
+                }
+
+                @Override
+                protected void done() {
+                    if (cancelled.get()) return;
+                    try {
+                        long found = get();
+                        if (found < 0) {
+                            onResult.accept("Pattern not found");
+                        } else {
+                            matchStart = found;
+                            matchLength = pattern.length;
+                            goTo(found);
+                            onResult.accept(
+                                found < start ? "Search wrapped" : null
+                            );
+                        }
+                    } catch (Exception e) {
+                        onResult.accept("Search failed: " + e.getMessage());
+                    }
+                }
+            }
+        );
+    }
+
+    // Parses "DE AD BE EF" style hex, or "quoted text" as UTF-8 bytes
+    public static byte[] parsePattern(String text) {
+        String trimmed = text.trim();
+        if (
+            trimmed.length() >= 2 &&
+            trimmed.startsWith("\"") &&
+            trimmed.endsWith("\"")
+        ) {
+            byte[] bytes = trimmed
+                .substring(1, trimmed.length() - 1)
+                .getBytes(StandardCharsets.UTF_8);
+            if (bytes.length == 0) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            return bytes;
+        }
+
+        String hex = trimmed.replaceAll("\\s+", "");
+        if (hex.startsWith("0x") || hex.startsWith("0X")) {
+            hex = hex.substring(2);
+        }
+        if (hex.isEmpty() || hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex pattern");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(
+                hex.substring(2 * i, 2 * i + 2),
+                16
+            );
+        }
+        return bytes;
+    }
+
+    // Accepts decimal or 0x-prefixed hex offsets
+    public static long parseOffset(String text) {
+        String trimmed = text.trim();
+        if (trimmed.startsWith("0x") || trimmed.startsWith("0X")) {
+            return Long.parseLong(trimmed.substring(2), 16);
+        }
+        return Long.parseLong(trimmed);
+    }
+
+    private void overwrite(byte value) {
+        if (caret >= data.size()) return;
+        try {
+            data.put(caret, value);
+        } catch (IOException e) {
+            getToolkit().beep();
+            return;
+        }
+        rows.repaint();
+        fireStateChanged();
+    }
+
+    private void typeHexDigit(int digit) {
+        if (caret >= data.size()) return;
+        try {
+            int b = data.get(caret) & 0xFF;
+            b = lowNibble ? (b & 0xF0) | digit : (digit << 4) | (b & 0x0F);
+            overwrite((byte) b);
+        } catch (IOException e) {
+            getToolkit().beep();
+            return;
+        }
+        if (lowNibble) {
+            goTo(caret + 1);
+        } else {
+            lowNibble = true;
+            rows.repaint();
+        }
+    }
+
+    // Column layout: offset, two spaces, 16 "XX " groups with an extra
+    // space after the eighth, a space, then the ASCII column
+    private int hexColumn(int index) {
+        return offsetDigits + 2 + index * 3 + (index >= 8 ? 1 : 0);
+    }
+
+    private int asciiColumn(int index) {
+        return hexColumn(BYTES_PER_ROW) + 1 + index;
+    }
+
+    private class Rows extends JComponent {
+
+        Rows() {
+            setFocusable(true);
+            setOpaque(true);
+            setBackground(UIManager.getColor("TextArea.background"));
+            setForeground(UIManager.getColor("TextArea.foreground"));
+            setFocusTraversalKeysEnabled(false);
+
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    requestFocusInWindow();
+                    click(e.getX(), e.getY());
+                }
+            });
+            addMouseWheelListener(e ->
+                scrollBar.setValue(
+                    scrollBar.getValue() + e.getWheelRotation() * 3
+                )
+            );
+            addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyPressed(KeyEvent e) {
+                    navigate(e);
+                }
+
+                @Override
+                public void keyTyped(KeyEvent e) {
+                    type(e.getKeyChar());
+                }
+            });
+            addFocusListener(new FocusAdapter() {
+                @Override
+                public void focusGained(FocusEvent e) {
+                    repaint();
+                }
+
+                @Override
+                public void focusLost(FocusEvent e) {
+                    repaint();
+                }
+            });
+        }
+
+        private void click(int x, int y) {
+            FontMetrics fm = getFontMetrics(getFont());
+            int column = (x - 8) / Math.max(1, fm.charWidth('0'));
+            long row = firstRow + y / Math.max(1, fm.getHeight());
+            int index = -1;
+            for (int i = 0; i < BYTES_PER_ROW; i++) {
+                if (column >= hexColumn(i) && column < hexColumn(i) + 3) {
+                    index = i;
+                    asciiPane = false;
+                } else if (column == asciiColumn(i)) {
+                    index = i;
+                    asciiPane = true;
+                }
+            }
+            if (index >= 0) {
+                goTo(row * BYTES_PER_ROW + index);
+            }
+        }
+
+        private void navigate(KeyEvent e) {
+            long page = (long) getVisibleRows() * BYTES_PER_ROW;
+            boolean toEnds = e.isControlDown() || e.isMetaDown();
+            switch (e.getKeyCode()) {
+                case KeyEvent.VK_LEFT:
+                    goTo(caret - 1);
+                    break;
+                case KeyEvent.VK_RIGHT:
+                    goTo(caret + 1);
+                    break;
+                case KeyEvent.VK_UP:
+                    goTo(caret - BYTES_PER_ROW);
+                    break;
+                case KeyEvent.VK_DOWN:
+                    goTo(caret + BYTES_PER_ROW);
+                    break;
+                case KeyEvent.VK_PAGE_UP:
+                    firstRow = Math.max(0, firstRow - getVisibleRows());
+                    goTo(caret - page);
+                    break;
+                case KeyEvent.VK_PAGE_DOWN:
+                    firstRow = Math.max(
+                        0,
+                        Math.min(
+                            firstRow + getVisibleRows(),
+                            rowCount - getVisibleRows()
+                        )
+                    );
+                    goTo(caret + page);
+                    break;
+                case KeyEvent.VK_HOME:
+                    goTo(toEnds ? 0 : caret - caret % BYTES_PER_ROW);
+                    break;
+                case KeyEvent.VK_END:
+                    goTo(
+                        toEnds
+                            ? data.size() - 1
+                            : caret - caret % BYTES_PER_ROW + BYTES_PER_ROW - 1
+                    );
+                    break;
+                case KeyEvent.VK_TAB:
+                    asciiPane = !asciiPane;
+                    lowNibble = false;
+                    repaint();
+                    break;
+                default:
+                    return;
+            }
+            e.consume();
+        }
+
+        private void type(char c) {
+            if (!data.isWritable()) return;
+            if (asciiPane) {
+                if (c >= 0x20 && c < 0x7F) {
+                    overwrite((byte) c);
+                    goTo(caret + 1);
+                }
+            } else {
+                int digit = Character.digit(c, 16);
+                if (digit >= 0) {
+                    typeHexDigit(digit);
+                }
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int cw = fm.charWidth('0');
+            int h = fm.getHeight();
+            int left = 8;
+            char[] chars = new char[asciiColumn(BYTES_PER_ROW)];
+            char[] edited = new char[chars.length];
+            boolean focused = isFocusOwner();
+
+            int visible = getHeight() / Math.max(1, h) + 1;
+            for (int r = 0; r < visible && firstRow + r < rowCount; r++) {
+                long offset = (firstRow + r) * BYTES_PER_ROW;
+                int n;
+                try {
+                    n = data.read(offset, rowBytes, BYTES_PER_ROW);
+                } catch (IOException e) {
+                    break;
+                }
+                int y = r * h;
+
+                // Caret and search match backgrounds in both panes
+                for (int i = 0; i < n; i++) {
+                    long pos = offset + i;
+                    Color bg = null;
+                    if (pos == caret) {
+                        bg = focused ? CARET_BG : INACTIVE_CARET_BG;
+                    } else if (
+                        matchStart >= 0 &&
+                        pos >= matchStart &&
+                        pos < matchStart + matchLength
+                    ) {
+                        bg = MATCH_BG;
+                    }
+                    if (bg != null) {
+                        // The pane without the caret shows it dimmed
+                        boolean dim = pos == caret;
+                        g.setColor(dim && asciiPane ? INACTIVE_CARET_BG : bg);
+                        g.fillRect(left + hexColumn(i) * cw, y, 2 * cw, h);
+                        g.setColor(dim && !asciiPane ? INACTIVE_CARET_BG : bg);
+                        g.fillRect(left + asciiColumn(i) * cw, y, cw, h);
+                    }
+                }
+
+                Arrays.fill(chars, ' ');
+                for (int i = offsetDigits - 1, k = 0; i >= 0; i--, k += 4) {
+                    chars[i] = HEX_DIGITS[(int) (offset >>> k) & 0xF];
+                }
+                for (int i = 0; i < n; i++) {
+                    int b = rowBytes[i] & 0xFF;
+                    chars[hexColumn(i)] = HEX_DIGITS[b >> 4];
+                    chars[hexColumn(i) + 1] = HEX_DIGITS[b & 0xF];
+                    chars[asciiColumn(i)] = b >= 0x20 && b < 0x7F
+                        ? (char) b
+                        : '.';
+                }
+
+                // Overwritten bytes are moved out of the row and drawn red
+                Arrays.fill(edited, (char) 0);
+                boolean anyEdited = false;
+                for (int i = 0; i < n; i++) {
+                    if (data.isEdited(offset + i)) {
+                        anyEdited = true;
+                        for (int c : new int[] {
+                            hexColumn(i),
+                            hexColumn(i) + 1,
+                            asciiColumn(i),
+                        }) {
+                            edited[c] = chars[c];
+                            chars[c] = ' ';
+                        }
+                    }
+                }
+
+                int baseline = y + fm.getAscent();
+                g.setColor(OFFSET_FG);
+                g.drawChars(chars, 0, offsetDigits, left, baseline);
+                g.setColor(getForeground());
+                g.drawChars(
+                    chars,
+                    offsetDigits,
+                    chars.length - offsetDigits,
+                    left + offsetDigits * cw,
+                    baseline
+                );
+                if (anyEdited) {
+                    g.setColor(EDITED_FG);
+                    for (int c = 0; c < edited.length; c++) {
+                        if (edited[c] != 0) {
+                            g.drawChars(edited, c, 1, left + c * cw, baseline);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+
+// JSON Formatter
+// A tokenizer that checks JSON as it reads it and writes each token back
+// out, indented or packed tight. Nesting is tracked in an array rather
+// than by recursion, so deeply nested input cannot overflow the stack.
+// Several values in a row, as in JSON Lines, must each start on a new
+// line and go one to a line.
+class JsonFormatter {
+
+    private final CharSequence text;
+    private final StructuredFormat.Output out;
+    private final boolean pretty;
+    private final int indent;
+    private int pos;
+    private int line = 1;
+    private int lineStart;
+    // True for each open object, false for each open array
+    private boolean[] objects = new boolean[32];
+    private int depth;
+
+    JsonFormatter(
+        CharSequence text,
+        StructuredFormat.Output out,
+        boolean pretty,
+        int indent
+    ) {
+        this.text = text;
+        this.out = out;
+        this.pretty = pretty;
+        this.indent = indent;
+    }
+
+    void run() throws StructuredFormat.SyntaxError {
+        skipSpace();
+        if (pos == text.length()) throw error("Expected a value");
+        while (pos < text.length()) {
+            value();
+            int valueLine = line;
+            skipSpace();
+            if (pos == text.length()) break;
+            // Run together, "01" or "truefalse" would come apart as two
+            if (line == valueLine) {
+                throw error("Expected a new line before the next value");
+            }
+            out.put('\n');
+        }
+        if (text.charAt(text.length() - 1) == '\n') out.put('\n');
+    }
+
+    // One top-level value, however deeply nested
+    private void value() throws StructuredFormat.SyntaxError {
+        boolean expectValue = true;
+        while (true) {
+            if (!expectValue && depth == 0) return;
+            skipSpace();
+            if (expectValue) {
+                char c = peek("Expected a value");
+                if (c == '{' || c == '[') {
+                    pos++;
+                    out.put(c);
+                    char close = c == '{' ? '}' : ']';
+                    skipSpace();
+                    if (pos < text.length() && text.charAt(pos) == close) {
+                        pos++;
+                        out.put(close);
+                        expectValue = false;
+                        continue;
+                    }
+                    push(c == '{');
+                    newline();
+                    if (c == '{') key();
+                    continue;
+                }
+                scalar(c);
+                expectValue = false;
+                continue;
+            }
+            boolean object = objects[depth - 1];
+            char close = object ? '}' : ']';
+            char c = peek("Expected ',' or '" + close + "'");
+            if (c == ',') {
+                pos++;
+                out.put(',');
+                newline();
+                if (object) key();
+                expectValue = true;
+            } else if (c == close) {
+                pos++;
+                depth--;
+                newline();
+                out.put(close);
+            } else {
+                throw error("Expected ',' or '" + close + "'");
+            }
+        }
+    }
+
+    private void key() throws StructuredFormat.SyntaxError {
+        skipSpace();
+        if (peek("Expected a property name") != '"') {
+            throw error("Expected a property name");
+        }
+        string();
+        skipSpace();
+        if (peek("Expected ':'") != ':') throw error("Expected ':'");
+        pos++;
+        out.put(pretty ? ": " : ":");
+    }
+
+    private void scalar(char c) throws StructuredFormat.SyntaxError {
+        if (c == '"') {
+            string();
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            number();
+        } else if (c == 't') {
+            literal("true");
+        } else if (c == 'f') {
+            literal("false");
+        } else if (c == 'n') {
+            literal("null");
+        } else {
+            throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    // Copied as written, escapes and all, once they check out
+    private void string() throws StructuredFormat.SyntaxError {
+        int start = pos++;
+        while (true) {
+            if (pos == text.length()) throw error("Unterminated string");
+            char c = text.charAt(pos);
+            if (c == '"') break;
+            if (c < 0x20) throw error("Control character in string");
+            if (c == '\\') {
+                pos++;
+                char escape = pos < text.length() ? text.charAt(pos) : 0;
+                if (escape == 'u') {
+                    for (int i = 0; i < 4; i++) {
+                        pos++;
+                        if (
+                            pos == text.length() || !isHex(text.charAt(pos))
+                        ) {
+                            throw error("Invalid \\u escape");
+                        }
+                    }
+                } else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+                    throw error("Invalid escape");
+                }
+            }
+            pos++;
+        }
+        pos++;
+        out.put(text, start, pos);
+    }
+
+    private void number() throws StructuredFormat.SyntaxError {
+        int start = pos;
+        if (text.charAt(pos) == '-') pos++;
+        if (pos < text.length() && text.charAt(pos) == '0') {
+            pos++;
+            if (
+                pos < text.length() &&
+                text.charAt(pos) >= '0' &&
+                text.charAt(pos) <= '9'
+            ) {
+                throw error("Leading zero in number");
+            }
+        } else if (digits() == 0) {
+            throw error("Invalid number");
+        }
+        if (pos < text.length() && text.charAt(pos) == '.') {
+            pos++;
+            if (digits() == 0) throw error("Invalid number");
+        }
+        if (
+            pos < text.length() &&
+            (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')
+        ) {
+            pos++;
+            if (
+                pos < text.length() &&
+                (text.charAt(pos) == '+' || text.charAt(pos) == '-')
+            ) {
+                pos++;
+            }
+            if (digits() == 0) throw error("Invalid number");
+        }
+        out.put(text, start, pos);
+    }
+
+    private int digits() {
+        int start = pos;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c < '0' || c > '9') break;
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private void literal(String word) throws StructuredFormat.SyntaxError {
+        for (int i = 0; i < word.length(); i++) {
+            if (pos == text.length() || text.charAt(pos) != word.charAt(i)) {
+                throw error("Expected " + word);
+            }
+            pos++;
+        }
+        out.put(word);
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        objects[depth++] = object;
+    }
+
+    private void newline() {
+        if (!pretty) return;
+        out.put('\n');
+        for (int i = depth * indent; i > 0; i--) {
+            out.put(' ');
+        }
+    }
+
+    private void skipSpace() {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '\n') {
+                line++;
+                lineStart = pos + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private char peek(String expected) throws StructuredFormat.SyntaxError {
+        if (pos == text.length()) throw error(expected);
+        return text.charAt(pos);
+    }
+
+    private static boolean isHex(char c) {
+        return (
+            (c >= '0' && c <= '9') ||
+            (c >= 'a' && c <= 'f') ||
+            (c >= 'A' && c <= 'F')
+        );
+    }
+
+    private StructuredFormat.SyntaxError error(String message) {
+        return new StructuredFormat.SyntaxError(
+            message,
+            line,
+            pos - lineStart + 1
+        );
+    }
+}
@@ -0,0 +1,660 @@
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import javax.swing.*;
+import javax.swing.text.JTextComponent;
+
+// Latency Benchmark
+// Entry point: java -jar RetroTextEditor.jar --benchmark [options]
+// Drives the editor with java.awt.Robot on a virtual display and times
+// each input from the moment it is sent until the paint that shows its
+// effect has finished on the EDT. Every document size runs in a fresh
+// JVM; the report gives p50 and p99 per operation and the run fails if
+// any p99 is over its budget.
+class LatencyBenchmark {
+
+    private static final String USAGE =
+        "Usage: java -jar RetroTextEditor.jar --benchmark [options]\n" +
+        "\n" +
+        "Options:\n" +
+        "  --lines N,N,...   Document sizes in lines, at least 400\n" +
+        "                    (default 1000,100000,1000000)\n" +
+        "  --samples N       Measured inputs per operation (default 200)\n" +
+        "  --warmup N        Unmeasured inputs first (default 20)\n" +
+        "  --budget OP=MS    Fail if OP's p99 is over MS milliseconds;\n" +
+        "                    OP is typing, search, scroll or zoom\n" +
+        "  --display :N      X display (default: $DISPLAY, or a new Xvfb)";
+
+    private static final String[] OPERATIONS = {
+        "typing",
+        "search",
+        "scroll",
+        "zoom",
+    };
+    private static final int BURST = 20;
+    private static final int BURST_INTERVAL = 15;
+    private static final int PAUSE = 150;
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+    private static final long LOAD_TIMEOUT_NANOS = 300_000_000_000L;
+    private static final String NEEDLE = "needle";
+    // Scrolling goes 150 lines down and back, and F3 needs a second match
+    // to move to, so smaller documents would only time out
+    private static final int MIN_LINES = 400;
+    private static final int NEEDLE_SPACING = 500;
+
+    private List<Integer> sizes = Arrays.asList(1000, 100000, 1000000);
+    private int samples = 200;
+    private int warmup = 20;
+    private final Map<String, Double> budgets = new LinkedHashMap<>();
+    private String display;
+    private File child;
+
+    // Returns the process exit code: 0 when within budget, 1 when over,
+    // 2 on usage errors or if the editor could not be driven
+    public static int run(String[] args) {
+        LatencyBenchmark benchmark = new LatencyBenchmark();
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        try {
+            return benchmark.child != null
+                ? benchmark.measure()
+                : benchmark.execute();
+        } catch (Exception e) {
+            System.err.println("Benchmark failed: " + e);
+            return 2;
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--lines":
+                    sizes = new ArrayList<>();
+                    for (String size : value(args, ++i, arg).split(",")) {
+                        int lines = number(size.trim(), arg);
+                        if (lines < MIN_LINES) {
+                            throw new IllegalArgumentException(
+                                "--lines must be at least " + MIN_LINES +
+                                ": " + size.trim()
+                            );
+                        }
+                        sizes.add(lines);
+                    }
+                    break;
+                case "--samples":
+                    samples = number(value(args, ++i, arg), arg);
+                    break;
+                case "--warmup":
+                    warmup = number(value(args, ++i, arg), arg);
+                    break;
+                case "--budget":
+                    String budget = value(args, ++i, arg);
+                    int equals = budget.indexOf('=');
+                    String operation = equals > 0
+                        ? budget.substring(0, equals)
+                        : "";
+                    if (!Arrays.asList(OPERATIONS).contains(operation)) {
+                        throw new IllegalArgumentException(
+                            "Invalid budget: " + budget
+                        );
+                    }
+                    try {
+                        budgets.put(
+                            operation,
+                            Double.parseDouble(budget.substring(equals + 1))
+                        );
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(
+                            "Invalid budget: " + budget
+                        );
+                    }
+                    break;
+                case "--display":
+                    display = value(args, ++i, arg);
+                    break;
+                // Internal: runs one document in this JVM
+                case "--child":
+                    child = new File(value(args, ++i, arg));
+                    break;
+                case "--help":
+                    throw new IllegalArgumentException("Help requested");
+                default:
+                    throw new IllegalArgumentException(
+                        "Unknown option: " + arg
+                    );
+            }
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static int number(String text, String option) {
+        try {
+            int n = Integer.parseInt(text);
+            if (n >= 0) return n;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid " + option + ": " + text);
+    }
+
+    // Parent: one editor JVM per document size, on one display
+    private int execute() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("latency").toFile();
+        Process xvfb = null;
+        try {
+            if (display == null) display = System.getenv("DISPLAY");
+            if (display == null || display.isEmpty()) {
+                xvfb = startXvfb();
+            }
+
+            Map<String, Map<Integer, long[]>> results = new LinkedHashMap<>();
+            for (String operation : OPERATIONS) {
+                results.put(operation, new LinkedHashMap<>());
+            }
+            for (int lines : sizes) {
+                File document = new File(dir, "document-" + lines + ".txt");
+                writeDocument(document, lines);
+                for (String line : runChild(document, dir)) {
+                    String[] fields = line.split(" ");
+                    if (fields.length != 5 || !fields[0].equals("RESULT")) {
+                        continue;
+                    }
+                    long[] values = new long[3];
+                    for (int v = 0; v < 3; v++) {
+                        values[v] = Long.parseLong(fields[v + 2]);
+                    }
+                    if (results.containsKey(fields[1])) {
+                        results.get(fields[1]).put(lines, values);
+                    }
+                }
+                document.delete();
+            }
+            return report(results);
+        } finally {
+            if (xvfb != null) xvfb.destroy();
+            deleteTree(dir);
+        }
+    }
+
+    // Xvfb picks a free display and writes its number to the given fd
+    private Process startXvfb() throws IOException {
+        Process xvfb;
+        try {
+            xvfb = new ProcessBuilder(
+                "Xvfb",
+                "-displayfd",
+                "1",
+                "-screen",
+                "0",
+                "1280x1024x24",
+                "-nolisten",
+                "tcp"
+            )
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        } catch (IOException e) {
+            throw new IOException("Xvfb not found; set DISPLAY or --display");
+        }
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(xvfb.getInputStream())
+        );
+        String number = reader.readLine();
+        if (number == null) {
+            xvfb.destroy();
+            throw new IOException("Xvfb did not start");
+        }
+        display = ":" + number.trim();
+        return xvfb;
+    }
+
+    // Java-like lines with the search word every so often, at least four
+    // times so F3 always has another match to go to
+    private static void writeDocument(File file, int lines)
+        throws IOException {
+        int spacing = Math.min(NEEDLE_SPACING, lines / 4);
+        try (
+            Writer writer = new BufferedWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(file),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            for (int i = 0; i < lines; i++) {
+                if (i % spacing == spacing / 2) {
+                    writer.write("    // the " + NEEDLE + " on line " + i);
+                } else if (i % 40 == 0) {
+                    writer.write("    void method" + i + "() {");
+                } else {
+                    writer.write(
+                        "        int value" + i + " = compute(value" +
+                        (i - 1) + ") * 31 + " + (i % 97) + ";"
+                    );
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    // Runs the editor on one document in a JVM of its own, with a home
+    // directory of its own so no session or settings carry over
+    private List<String> runChild(File document, File dir)
+        throws IOException, InterruptedException {
+        File home = new File(dir, "home");
+        home.mkdirs();
+        List<String> command = new ArrayList<>();
+        command.add(
+            new File(System.getProperty("java.home"), "bin/java").getPath()
+        );
+        // Same heap and flags as this JVM
+        List<String> jvmArgs = ManagementFactory.getRuntimeMXBean()
+            .getInputArguments();
+        for (String arg : jvmArgs) {
+            if (!arg.startsWith("-Duser.home=")) command.add(arg);
+        }
+        command.add("-Duser.home=" + home.getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("RetroTextEditor");
+        command.add("--benchmark");
+        command.add("--child");
+        command.add(document.getPath());
+        command.add("--samples");
+        command.add(String.valueOf(samples));
+        command.add("--warmup");
+        command.add(String.valueOf(warmup));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put("DISPLAY", display);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<>();
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream())
+            )
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException(
+                "Editor run on " + document.getName() + " failed"
+            );
+        }
+        return lines;
+    }
+
+    private int report(Map<String, Map<Integer, long[]>> results) {
+        System.out.printf(
+            "%-8s %10s %10s %10s %10s %8s%n",
+            "op",
+            "lines",
+            "p50 ms",
+            "p99 ms",
+            "max ms",
+            "budget"
+        );
+        boolean over = false;
+        for (String operation : results.keySet()) {
+            Double budget = budgets.get(operation);
+            Map<Integer, long[]> bySize = results.get(operation);
+            for (Map.Entry<Integer, long[]> size : bySize.entrySet()) {
+                long[] values = size.getValue();
+                boolean fails = budget != null && values[1] / 1000.0 > budget;
+                over |= fails;
+                System.out.printf(
+                    "%-8s %10d %10.2f %10.2f %10.2f %8s%s%n",
+                    operation,
+                    size.getKey(),
+                    values[0] / 1000.0,
+                    values[1] / 1000.0,
+                    values[2] / 1000.0,
+                    budget != null ? String.format("%.1f", budget) : "-",
+                    fails ? "  OVER" : ""
+                );
+            }
+        }
+        return over ? 1 : 0;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteTree(child);
+        }
+        file.delete();
+    }
+
+    // Child: instruments the EDT, starts the editor on the document and
+    // prints a RESULT line per operation, in microseconds
+    private int measure() throws Exception {
+        Probe probe = new Probe();
+        EventQueue.invokeAndWait(() -> {
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(probe);
+            RepaintManager.setCurrentManager(probe.repaintManager);
+        });
+        RetroTextEditor.main(
+            new String[] { "--new-instance", child.getAbsolutePath() }
+        );
+
+        RetroTextEditor editor = waitForEditor();
+        JTextComponent textArea = onEdt(editor::getTextArea);
+        Robot robot = new Robot();
+        robot.setAutoDelay(0);
+        EventQueue.invokeAndWait(() -> {
+            editor.toFront();
+            textArea.setCaretPosition(textArea.getDocument().getLength() / 2);
+            textArea.requestFocusInWindow();
+        });
+        robot.waitForIdle();
+        prepareSearch(editor, textArea, robot);
+
+        print("typing", typing(probe, robot));
+        print("search", search(probe, robot, textArea));
+        print("scroll", scroll(probe, robot, textArea));
+        print("zoom", zoom(probe, editor, textArea));
+        // The edits are never saved
+        return 0;
+    }
+
+    private static RetroTextEditor waitForEditor() throws Exception {
+        long deadline = System.nanoTime() + LOAD_TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            RetroTextEditor editor = onEdt(() -> {
+                for (Frame frame : Frame.getFrames()) {
+                    if (!(frame instanceof RetroTextEditor)) continue;
+                    JTextComponent text = ((RetroTextEditor) frame)
+                        .getTextArea();
+                    // Loaded once there is text and it can be edited
+                    if (
+                        frame.isShowing() &&
+                        text.isEditable() &&
+                        text.getDocument().getLength() > 0
+                    ) {
+                        return (RetroTextEditor) frame;
+                    }
+                }
+                return null;
+            });
+            if (editor != null) return editor;
+            Thread.sleep(100);
+        }
+        throw new IOException("The document did not open");
+    }
+
+    // F3 repeats the search typed into the Find & Replace dialog
+    private static void prepareSearch(
+        RetroTextEditor editor,
+        JTextComponent textArea,
+        Robot robot
+    ) throws Exception {
+        EventQueue.invokeAndWait(() ->
+            findMenuItem(editor.getJMenuBar(), "Find & Replace...").doClick(0)
+        );
+        robot.waitForIdle();
+        EventQueue.invokeAndWait(() -> {
+            JTextField field = editor.getFindField();
+            field.setText(NEEDLE);
+            SwingUtilities.getWindowAncestor(field).setVisible(false);
+            editor.toFront();
+            textArea.requestFocusInWindow();
+        });
+        robot.waitForIdle();
+    }
+
+    // Bursts of keys at typing speed, each measured on its own
+    private long[] typing(Probe probe, Robot robot) throws Exception {
+        List<Probe.Sample> sent = new ArrayList<>();
+        int total = warmup + samples;
+        while (sent.size() < total) {
+            int burst = Math.min(BURST, total - sent.size());
+            for (int i = 0; i < burst; i++) {
+                int key = KeyEvent.VK_A + sent.size() % 26;
+                sent.add(probe.expect(KeyEvent.KEY_TYPED, () -> true));
+                robot.keyPress(key);
+                robot.keyRelease(key);
+                Thread.sleep(BURST_INTERVAL);
+            }
+            for (Probe.Sample sample : sent) sample.await();
+            Thread.sleep(PAUSE);
+        }
+        return percentiles(sent.subList(warmup, total));
+    }
+
+    // F3 until the selection lands on the next match
+    private long[] search(Probe probe, Robot robot, JTextComponent textArea)
+        throws Exception {
+        List<Probe.Sample> measured = new ArrayList<>();
+        for (int i = 0; i < warmup + samples; i++) {
+            int before = onEdt(textArea::getSelectionStart);
+            Probe.Sample sample = probe.expect(KeyEvent.KEY_PRESSED, () ->
+                textArea.getSelectionStart() != before
+            );
+            robot.keyPress(KeyEvent.VK_F3);
+            robot.keyRelease(KeyEvent.VK_F3);
+            sample.await();
+            if (i >= warmup) measured.add(sample);
+        }
+        return percentiles(measured);
+    }
+
+    // Wheel notches until the view has moved, from the top down
+    private long[] scroll(Probe probe, Robot robot, JTextComponent textArea)
+        throws Exception {
+        Point center = onEdt(() -> {
+            textArea.scrollRectToVisible(new Rectangle(0, 0, 1, 1));
+            Rectangle visible = textArea.getVisibleRect();
+            Point point = new Point(
+                visible.x + visible.width / 2,
+                visible.y + visible.height / 2
+            );
+            SwingUtilities.convertPointToScreen(point, textArea);
+            return point;
+        });
+        robot.mouseMove(center.x, center.y);
+        robot.waitForIdle();
+
+        List<Probe.Sample> measured = new ArrayList<>();
+        for (int i = 0; i < warmup + samples; i++) {
+            int before = onEdt(() -> textArea.getVisibleRect().y);
+            Probe.Sample sample = probe.expect(MouseEvent.MOUSE_WHEEL, () ->
+                textArea.getVisibleRect().y != before
+            );
+            robot.mouseWheel(i % 100 < 50 ? 3 : -3);
+            sample.await();
+            if (i >= warmup) measured.add(sample);
+        }
+        return percentiles(measured);
+    }
+
+    // View > Zoom In, then Zoom Out so the font stays in range
+    private long[] zoom(
+        Probe probe,
+        RetroTextEditor editor,
+        JTextComponent textArea
+    ) throws Exception {
+        JMenuItem zoomIn = onEdt(() ->
+            findMenuItem(editor.getJMenuBar(), "Zoom In")
+        );
+        JMenuItem zoomOut = onEdt(() ->
+            findMenuItem(editor.getJMenuBar(), "Zoom Out")
+        );
+        List<Probe.Sample> measured = new ArrayList<>();
+        for (int i = 0; i < warmup + samples; i++) {
+            JMenuItem item = i % 2 == 0 ? zoomIn : zoomOut;
+            Probe.Sample sample = probe.expect(0, () -> true);
+            EventQueue.invokeLater(() -> {
+                probe.trigger(sample);
+                item.doClick(0);
+            });
+            sample.await();
+            if (i >= warmup) measured.add(sample);
+        }
+        return percentiles(measured);
+    }
+
+    // p50, p99 and max in microseconds
+    private static long[] percentiles(List<Probe.Sample> samples) {
+        long[] latencies = new long[samples.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = samples.get(i).latency() / 1000;
+        }
+        Arrays.sort(latencies);
+        if (latencies.length == 0) return new long[3];
+        return new long[] {
+            latencies[(latencies.length - 1) / 2],
+            latencies[(int) Math.ceil(latencies.length * 0.99) - 1],
+            latencies[latencies.length - 1],
+        };
+    }
+
+    private static void print(String operation, long[] values) {
+        System.out.println(
+            "RESULT " +
+            operation +
+            " " +
+            values[0] +
+            " " +
+            values[1] +
+            " " +
+            values[2]
+        );
+    }
+
+    private static JMenuItem findMenuItem(JMenuBar bar, String text) {
+        for (int m = 0; m < bar.getMenuCount(); m++) {
+            JMenu menu = bar.getMenu(m);
+            if (menu == null) continue;
+            for (int i = 0; i < menu.getItemCount(); i++) {
+                JMenuItem item = menu.getItem(i);
+                if (item != null && text.equals(item.getText())) return item;
+            }
+        }
+        throw new IllegalStateException("No menu item " + text);
+    }
+
+    private static <T> T onEdt(java.util.concurrent.Callable<T> task)
+        throws Exception {
+        Object[] result = new Object[1];
+        Exception[] failure = new Exception[1];
+        EventQueue.invokeAndWait(() -> {
+            try {
+                result[0] = task.call();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    // Times inputs on the EDT. A sample starts when the input is sent and
+    // is triggered when an event of its kind is dispatched; it ends when
+    // a paint finishes after that and its condition holds, so work the
+    // input queued for later, such as a background search, is included.
+    private static class Probe extends EventQueue {
+
+        private final Deque<Sample> waiting = new ArrayDeque<>();
+        private final List<Sample> triggered = new ArrayList<>();
+
+        final RepaintManager repaintManager = new RepaintManager() {
+            @Override
+            public void paintDirtyRegions() {
+                super.paintDirtyRegions();
+                painted();
+            }
+        };
+
+        synchronized Sample expect(int eventId, BooleanSupplier condition) {
+            Sample sample = new Sample(eventId, condition);
+            if (eventId != 0) waiting.add(sample);
+            return sample;
+        }
+
+        synchronized void trigger(Sample sample) {
+            triggered.add(sample);
+        }
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            super.dispatchEvent(event);
+            synchronized (this) {
+                Sample next = waiting.peek();
+                if (next != null && next.eventId == event.getID()) {
+                    triggered.add(waiting.poll());
+                }
+            }
+        }
+
+        private synchronized void painted() {
+            long now = System.nanoTime();
+            for (int i = 0; i < triggered.size(); ) {
+                Sample sample = triggered.get(i);
+                if (sample.condition.getAsBoolean()) {
+                    triggered.remove(i);
+                    sample.finish(now);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        static class Sample {
+
+            final int eventId;
+            final BooleanSupplier condition;
+            final long start = System.nanoTime();
+            private long end;
+
+            Sample(int eventId, BooleanSupplier condition) {
+                this.eventId = eventId;
+                this.condition = condition;
+            }
+
+            synchronized void finish(long time) {
+                end = time;
+                notifyAll();
+            }
+
+            synchronized void await() throws InterruptedException, IOException {
+                long deadline = start + TIMEOUT_NANOS;
+                while (end == 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) throw new IOException("No paint followed");
+                    wait(left / 1_000_000 + 1);
+                }
+            }
+
+            synchronized long latency() {
+                return end - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+// Line Diff
+// Linear-space Myers diff between two texts. Every line is hashed to an
+// int id first so the search only compares ints, and lines that occur on
+// one side only are set aside up front since they can never match.
+class LineDiff {
+
+    private static final byte MATCHABLE = 0;
+    private static final byte UNIQUE = 1;
+    private static final byte COMMON = 2;
+    private static final int COMMON_RUN_LIMIT = 8;
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] changedA;
+    private final boolean[] changedB;
+    private final int[] forward;
+    private final int[] backward;
+    private final int diagonalOffset;
+    private final int tooExpensive;
+    private final BooleanSupplier cancelled;
+
+    private LineDiff(
+        int[] a,
+        int[] b,
+        boolean[] changedA,
+        boolean[] changedB,
+        BooleanSupplier cancelled
+    ) {
+        this.a = a;
+        this.b = b;
+        this.changedA = changedA;
+        this.changedB = changedB;
+        this.cancelled = cancelled;
+        forward = new int[a.length + b.length + 3];
+        backward = new int[a.length + b.length + 3];
+        diagonalOffset = b.length + 1;
+
+        // Past the square root of the diagonal count, the search settles
+        // for a good split instead of the minimal one
+        tooExpensive = Math.max(256, (int) Math.sqrt(forward.length));
+    }
+
+    // Lines [leftStart, leftEnd) were replaced by [rightStart, rightEnd);
+    // one of the ranges is empty for pure insertions and deletions
+    static class Hunk {
+
+        final int leftStart;
+        final int leftEnd;
+        final int rightStart;
+        final int rightEnd;
+
+        Hunk(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+            this.leftStart = leftStart;
+            this.leftEnd = leftEnd;
+            this.rightStart = rightStart;
+            this.rightEnd = rightEnd;
+        }
+    }
+
+    // Throws CancellationException once cancelled reports true
+    public static List<Hunk> compare(
+        TextSnapshot left,
+        TextSnapshot right,
+        BooleanSupplier cancelled
+    ) {
+        LineTable table = new LineTable(
+            left.getLineCount() + right.getLineCount()
+        );
+        int[] idsA = table.assign(left, cancelled);
+        int[] idsB = table.assign(right, cancelled);
+        boolean[] changedA = new boolean[idsA.length];
+        boolean[] changedB = new boolean[idsB.length];
+
+        // Unchanged ends are trimmed before lines are set aside
+        int start = 0;
+        int endA = idsA.length;
+        int endB = idsB.length;
+        while (start < endA && start < endB && idsA[start] == idsB[start]) {
+            start++;
+        }
+        while (
+            endA > start &&
+            endB > start &&
+            idsA[endA - 1] == idsB[endB - 1]
+        ) {
+            endA--;
+            endB--;
+        }
+
+        int[] countA = new int[table.size()];
+        int[] countB = new int[table.size()];
+        for (int i = start; i < endA; i++) countA[idsA[i]]++;
+        for (int i = start; i < endB; i++) countB[idsB[i]]++;
+        int[] mapA = keepMatchable(idsA, start, endA, countB, changedA);
+        int[] mapB = keepMatchable(idsB, start, endB, countA, changedB);
+
+        int[] a = new int[mapA.length];
+        int[] b = new int[mapB.length];
+        for (int i = 0; i < a.length; i++) a[i] = idsA[mapA[i]];
+        for (int i = 0; i < b.length; i++) b[i] = idsB[mapB[i]];
+
+        boolean[] reducedA = new boolean[a.length];
+        boolean[] reducedB = new boolean[b.length];
+        new LineDiff(a, b, reducedA, reducedB, cancelled).compareSeq(
+            0,
+            a.length,
+            0,
+            b.length
+        );
+        for (int i = 0; i < a.length; i++) {
+            if (reducedA[i]) changedA[mapA[i]] = true;
+        }
+        for (int i = 0; i < b.length; i++) {
+            if (reducedB[i]) changedB[mapB[i]] = true;
+        }
+        return buildHunks(changedA, changedB);
+    }
+
+    // Marks lines that cannot anchor a match as changed and returns the
+    // indexes of the lines that are left for the search. Lines with no
+    // counterpart never match; short runs of lines too common on the
+    // other side only stay next to a matchable line, so blank lines and
+    // braces still line up while unrelated texts are not searched.
+    private static int[] keepMatchable(
+        int[] ids,
+        int start,
+        int end,
+        int[] otherCounts,
+        boolean[] changed
+    ) {
+        int limit = Math.max(256, (int) Math.sqrt(ids.length));
+        byte[] marks = new byte[ids.length];
+        for (int i = start; i < end; i++) {
+            int count = otherCounts[ids[i]];
+            marks[i] = count == 0 ? UNIQUE : count > limit ? COMMON : MATCHABLE;
+        }
+
+        int[] kept = new int[ids.length];
+        int count = 0;
+        for (int i = 0; i < start; i++) {
+            kept[count++] = i;
+        }
+        for (int i = start; i < end; ) {
+            int runEnd = i + 1;
+            boolean keep = marks[i] == MATCHABLE;
+            if (marks[i] == COMMON) {
+                while (runEnd < end && marks[runEnd] == COMMON) runEnd++;
+                keep =
+                    runEnd - i <= COMMON_RUN_LIMIT &&
+                    ((i > start && marks[i - 1] == MATCHABLE) ||
+                        (runEnd < end && marks[runEnd] == MATCHABLE));
+            }
+            for (; i < runEnd; i++) {
+                if (keep) {
+                    kept[count++] = i;
+                } else {
+                    changed[i] = true;
+                }
+            }
+        }
+        for (int i = end; i < ids.length; i++) {
+            kept[count++] = i;
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    private static List<Hunk> buildHunks(
+        boolean[] changedA,
+        boolean[] changedB
+    ) {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < changedA.length || j < changedB.length) {
+            boolean keptA = i < changedA.length && !changedA[i];
+            boolean keptB = j < changedB.length && !changedB[j];
+            if (keptA && keptB) {
+                i++;
+                j++;
+                continue;
+            }
+            int startA = i;
+            int startB = j;
+            while (i < changedA.length && changedA[i]) i++;
+            while (j < changedB.length && changedB[j]) j++;
+            hunks.add(new Hunk(startA, i, startB, j));
+        }
+        return hunks;
+    }
+
+    // Divide and conquer on the middle snake, after trimming the common
+    // prefix and suffix of each subproblem
+    private void compareSeq(int xOff, int xLim, int yOff, int yLim) {
+        while (xOff < xLim && yOff < yLim && a[xOff] == b[yOff]) {
+            xOff++;
+            yOff++;
+        }
+        while (xOff < xLim && yOff < yLim && a[xLim - 1] == b[yLim - 1]) {
+            xLim--;
+            yLim--;
+        }
+
+        if (xOff == xLim) {
+            Arrays.fill(changedB, yOff, yLim, true);
+        } else if (yOff == yLim) {
+            Arrays.fill(changedA, xOff, xLim, true);
+        } else {
+            long split = findMiddleSnake(xOff, xLim, yOff, yLim);
+            int xMid = (int) (split >>> 32);
+            int yMid = (int) split;
+            compareSeq(xOff, xMid, yOff, yMid);
+            compareSeq(xMid, xLim, yMid, yLim);
+        }
+    }
+
+    // Runs the forward and backward searches until they overlap and
+    // returns the split point packed as (x << 32 | y)
+    private long findMiddleSnake(int xOff, int xLim, int yOff, int yLim) {
+        int[] fd = forward;
+        int[] bd = backward;
+        int k = diagonalOffset;
+        int dMin = xOff - yLim;
+        int dMax = xLim - yOff;
+        int fMid = xOff - yOff;
+        int bMid = xLim - yLim;
+        int fMin = fMid;
+        int fMax = fMid;
+        int bMin = bMid;
+        int bMax = bMid;
+        boolean odd = ((fMid - bMid) & 1) != 0;
+
+        fd[k + fMid] = xOff;
+        bd[k + bMid] = xLim;
+
+        for (int c = 1;; c++) {
+            if ((c & 0xFF) == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            if (c >= tooExpensive) {
+                return furthestReach(
+                    xOff,
+                    xLim,
+                    yOff,
+                    yLim,
+                    fMin,
+                    fMax,
+                    bMin,
+                    bMax
+                );
+            }
+
+            if (fMin > dMin) {
+                fd[k + --fMin - 1] = -1;
+            } else {
+                fMin++;
+            }
+            if (fMax < dMax) {
+                fd[k + ++fMax + 1] = -1;
+            } else {
+                fMax--;
+            }
+            for (int d = fMax; d >= fMin; d -= 2) {
+                int lo = fd[k + d - 1];
+                int hi = fd[k + d + 1];
+                int x = lo >= hi ? lo + 1 : hi;
+                int y = x - d;
+                while (x < xLim && y < yLim && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                fd[k + d] = x;
+                if (odd && bMin <= d && d <= bMax && bd[k + d] <= x) {
+                    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+                }
+            }
+
+            if (bMin > dMin) {
+                bd[k + --bMin - 1] = Integer.MAX_VALUE;
+            } else {
+                bMin++;
+            }
+            if (bMax < dMax) {
+                bd[k + ++bMax + 1] = Integer.MAX_VALUE;
+            } else {
+                bMax--;
+            }
+            for (int d = bMax; d >= bMin; d -= 2) {
+                int lo = bd[k + d - 1];
+                int hi = bd[k + d + 1];
+                int x = lo < hi ? lo : hi - 1;
+                int y = x - d;
+                while (x > xOff && y > yOff && a[x - 1] == b[y - 1]) {
+                    x--;
+                    y--;
+                }
+                bd[k + d] = x;
+                if (!odd && fMin <= d && d <= fMax && x <= fd[k + d]) {
+                    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+                }
+            }
+        }
+    }
+
+    // Splits at whichever search got furthest from its starting corner
+    private long furthestReach(
+        int xOff,
+        int xLim,
+        int yOff,
+        int yLim,
+        int fMin,
+        int fMax,
+        int bMin,
+        int bMax
+    ) {
+        int k = diagonalOffset;
+        int forwardBest = -1;
+        int forwardX = xOff;
+        for (int d = fMax; d >= fMin; d -= 2) {
+            int x = Math.min(forward[k + d], xLim);
+            int y = x - d;
+            if (y > yLim) {
+                x = yLim + d;
+                y = yLim;
+            }
+            if (x + y > forwardBest) {
+                forwardBest = x + y;
+                forwardX = x;
+            }
+        }
+
+        int backwardBest = Integer.MAX_VALUE;
+        int backwardX = xLim;
+        for (int d = bMax; d >= bMin; d -= 2) {
+            int x = Math.max(xOff, backward[k + d]);
+            int y = x - d;
+            if (y < yOff) {
+                x = yOff + d;
+                y = yOff;
+            }
+            if (x + y < backwardBest) {
+                backwardBest = x + y;
+                backwardX = x;
+            }
+        }
+
+        if (xLim + yLim - backwardBest < forwardBest - (xOff + yOff)) {
+            return ((long) forwardX << 32) | (forwardBest - forwardX);
+        }
+        return ((long) backwardX << 32) | (backwardBest - backwardX);
+    }
+}
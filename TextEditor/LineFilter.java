@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Line Filter
+// Finds the lines of a snapshot that contain a match for a pattern. A
+// refined pattern can rescan just the lines that matched before instead
+// of the whole text.
+class LineFilter {
+
+    // Compiles the filter text; regex patterns see each line's bounds as
+    // ^ and $. Throws PatternSyntaxException for a bad regex.
+    public static Pattern compile(
+        String filter,
+        boolean regex,
+        boolean matchCase
+    ) {
+        int flags = matchCase
+            ? 0
+            : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return regex
+            ? Pattern.compile(filter, flags | Pattern.MULTILINE)
+            : Pattern.compile(filter, flags | Pattern.LITERAL);
+    }
+
+    // True if every line matching refined also matches previous, so a
+    // refined scan only needs the lines that matched before
+    public static boolean isRefinement(Pattern previous, Pattern refined) {
+        if (
+            previous == null ||
+            (previous.flags() & Pattern.LITERAL) == 0 ||
+            refined.flags() != previous.flags()
+        ) {
+            return false;
+        }
+        // The old literal, with the same case rule, found in the new one
+        return previous.matcher(refined.pattern()).find();
+    }
+
+    // Line numbers with a match, in order. When candidates is not null
+    // only those lines are tested. Throws CancellationException once
+    // cancelled reports true, even in the middle of a slow regex.
+    public static int[] scan(
+        TextSnapshot text,
+        Pattern pattern,
+        int[] candidates,
+        BooleanSupplier cancelled
+    ) {
+        Matcher matcher = pattern.matcher(
+            new CancellableText(text.getText(), text.getLength(), cancelled)
+        );
+        int[] lines = new int[candidates != null ? candidates.length : 64];
+        int count = 0;
+
+        if (candidates != null) {
+            for (int line : candidates) {
+                matcher.region(text.getLineStart(line), text.getLineEnd(line));
+                if (matcher.find()) {
+                    lines[count++] = line;
+                }
+            }
+            return Arrays.copyOf(lines, count);
+        }
+
+        LineIndex index = text.getLineIndex();
+        int lineCount = text.getLineCount();
+        int position = 0;
+        while (position <= text.getLength()) {
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            matcher.region(position, text.getLength());
+            if (!matcher.find()) break;
+            int line = index.getLineOfOffset(matcher.start());
+            if (count == lines.length) {
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            lines[count++] = line;
+            if (line + 1 >= lineCount) break;
+            position = text.getLineStart(line + 1);
+        }
+        return Arrays.copyOf(lines, count);
+    }
+
+    // Read-only view of the snapshot that checks for cancellation as the
+    // matcher reads through it
+    private static class CancellableText implements CharSequence {
+
+        private final char[] chars;
+        private final int length;
+        private final BooleanSupplier cancelled;
+        private int reads;
+
+        CancellableText(char[] chars, int length, BooleanSupplier cancelled) {
+            this.chars = chars;
+            this.length = length;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & 0xFFFFF) == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
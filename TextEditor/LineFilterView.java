@@ -0,0 +1,485 @@
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+
+// Line Filter View
+// Filter bar over a view of only the lines that match it, numbered as in
+// the full text. Scans run in the background and restart as the pattern
+// is typed or the text changes.
+class LineFilterView extends JPanel {
+
+    private static final Color MATCH_BG = new Color(255, 236, 140);
+    private static final Color SELECTED_BG = new Color(220, 232, 250);
+    private static final Color NUMBER_FG = new Color(128, 128, 128);
+    private static final Color ERROR_FG = new Color(200, 0, 0);
+    // Longer lines are cut off; the view does not scroll sideways
+    private static final int MAX_DRAWN_CHARS = 1000;
+    private static final int TEXT_X = 4;
+
+    private final JTextField filterField = new JTextField(30);
+    private final JCheckBox regexBox = new JCheckBox("Regex");
+    private final JCheckBox matchCaseBox = new JCheckBox("Match Case");
+    private final JLabel countLabel = new JLabel(" ");
+    private final Rows rows = new Rows();
+    private final Gutter gutter = new Gutter();
+    private final Timer scanTimer = new Timer(150, e -> scan());
+    private final IntConsumer lineAction;
+
+    private TextRope text;
+    // The copy of text made by the last scan of it, if any
+    private TextSnapshot snapshot;
+
+    // The last finished scan, which the view is showing
+    private TextSnapshot shownText;
+    private Pattern shownPattern;
+    private int[] lines = new int[0];
+    private int selected = -1;
+
+    LineFilterView(Font font, IntConsumer lineAction, Runnable closeAction) {
+        super(new BorderLayout());
+        this.lineAction = lineAction;
+        scanTimer.setRepeats(false);
+
+        filterField.getDocument().addDocumentListener(
+            new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    scanTimer.restart();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    scanTimer.restart();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {}
+            }
+        );
+        regexBox.addActionListener(e -> scan());
+        matchCaseBox.addActionListener(e -> scan());
+
+        KeyAdapter keys = new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                navigate(e, closeAction);
+            }
+        };
+        filterField.addKeyListener(keys);
+        rows.addKeyListener(keys);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> closeAction.run());
+
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        options.add(regexBox);
+        options.add(matchCaseBox);
+        options.add(countLabel);
+
+        JPanel bar = new JPanel(new BorderLayout(8, 0));
+        bar.setBorder(new EmptyBorder(4, 8, 4, 4));
+        bar.add(new JLabel("Filter:"), BorderLayout.WEST);
+        bar.add(filterField, BorderLayout.CENTER);
+        JPanel east = new JPanel(new BorderLayout());
+        east.add(options, BorderLayout.CENTER);
+        east.add(closeButton, BorderLayout.EAST);
+        bar.add(east, BorderLayout.EAST);
+
+        setFont(font);
+        JScrollPane scrollPane = new JScrollPane(rows);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.setRowHeaderView(gutter);
+        add(bar, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        // Called by the look and feel before the fields are assigned
+        if (rows == null) return;
+        rows.setFont(font);
+        gutter.setFont(font);
+        rows.revalidate();
+        gutter.revalidate();
+        repaint();
+    }
+
+    // Filters a new version of the text with the current pattern; the
+    // copy the rows are drawn from is made in the background
+    public void setText(TextRope text) {
+        if (text != this.text) {
+            this.text = text;
+            snapshot = null;
+        }
+        scan();
+    }
+
+    public void focusFilter() {
+        filterField.requestFocusInWindow();
+        filterField.selectAll();
+    }
+
+    // Stops any running scan; call when the view is discarded
+    public void cancel() {
+        scanTimer.stop();
+        TaskManager.getInstance().cancel(this);
+    }
+
+    private void scan() {
+        cancel();
+        if (text == null) return;
+
+        String filter = filterField.getText();
+        Pattern pattern;
+        try {
+            pattern = filter.isEmpty()
+                ? null
+                : LineFilter.compile(
+                    filter,
+                    regexBox.isSelected(),
+                    matchCaseBox.isSelected()
+                );
+        } catch (PatternSyntaxException e) {
+            countLabel.setForeground(ERROR_FG);
+            countLabel.setText(e.getDescription());
+            return;
+        }
+
+        TextRope rope = text;
+        TextSnapshot copied = snapshot;
+        if (pattern == null && copied != null) {
+            showResult(copied, null, allLines(copied));
+            return;
+        }
+
+        // A longer literal can only match lines the shorter one did
+        int[] candidates =
+            copied != null &&
+            shownText == copied &&
+            LineFilter.isRefinement(shownPattern, pattern)
+                ? lines
+                : null;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        countLabel.setForeground(getForeground());
+        countLabel.setText("Filtering...");
+
+        TaskManager.getInstance().submitCancellable(
+            "Filtering lines",
+            TaskManager.Priority.INTERACTIVE,
+            this,
+            cancelled,
+            new SwingWorker<int[], Void>() {
+                private TextSnapshot scanned;
+
+                @Override
+                protected int[] doInBackground() {
+                    scanned = copied != null ? copied : TextSnapshot.of(rope);
+                    if (pattern == null) return allLines(scanned);
+                    return LineFilter.scan(
+                        scanned,
+                        pattern,
+                        candidates,
+                        cancelled::get
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    if (cancelled.get()) return;
+                    try {
+                        int[] found = get();
+                        if (rope == text) snapshot = scanned;
+                        showResult(scanned, pattern, found);
+                    } catch (ExecutionException e) {
+                        countLabel.setForeground(ERROR_FG);
+                        countLabel.setText("Filter failed: " + e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        );
+    }
+
+    private static int[] allLines(TextSnapshot text) {
+        int[] all = new int[text.getLineCount()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        return all;
+    }
+
+    private void showResult(TextSnapshot text, Pattern pattern, int[] found) {
+        // Keep the same original line selected if it still matches
+        int selectedLine = selected >= 0 ? lines[selected] : -1;
+        shownText = text;
+        shownPattern = pattern;
+        lines = found;
+        selected = selectedLine >= 0
+            ? Math.max(-1, Arrays.binarySearch(lines, selectedLine))
+            : -1;
+
+        countLabel.setForeground(getForeground());
+        countLabel.setText(
+            String.format(
+                "%,d of %,d lines",
+                lines.length,
+                text.getLineCount()
+            )
+        );
+        rows.revalidate();
+        gutter.revalidate();
+        repaint();
+        if (selected >= 0) {
+            scrollToSelected();
+        } else {
+            rows.scrollRectToVisible(new Rectangle(0, 0, 1, 1));
+        }
+    }
+
+    private void navigate(KeyEvent e, Runnable closeAction) {
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_ESCAPE:
+                closeAction.run();
+                break;
+            case KeyEvent.VK_ENTER:
+                if (lines.length > 0) {
+                    lineAction.accept(lines[Math.max(selected, 0)]);
+                }
+                break;
+            case KeyEvent.VK_DOWN:
+                select(selected + 1);
+                break;
+            case KeyEvent.VK_UP:
+                select(selected - 1);
+                break;
+            case KeyEvent.VK_PAGE_DOWN:
+                select(selected + rows.visibleRows());
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                select(selected - rows.visibleRows());
+                break;
+            default:
+                return;
+        }
+        e.consume();
+    }
+
+    private void select(int row) {
+        if (lines.length == 0) return;
+        selected = Math.max(0, Math.min(lines.length - 1, row));
+        scrollToSelected();
+        rows.repaint();
+    }
+
+    private void scrollToSelected() {
+        int h = rows.rowHeight();
+        rows.scrollRectToVisible(new Rectangle(0, selected * h, 1, h));
+    }
+
+    // The matching lines, one per row; only the visible rows are drawn
+    private class Rows extends JComponent implements Scrollable {
+
+        private final Segment segment = new Segment();
+
+        Rows() {
+            setOpaque(true);
+            setFocusable(true);
+            setBackground(UIManager.getColor("TextArea.background"));
+            setForeground(UIManager.getColor("TextArea.foreground"));
+            addMouseListener(
+                new MouseAdapter() {
+                    @Override
+                    public void mousePressed(MouseEvent e) {
+                        requestFocusInWindow();
+                        select(e.getY() / rowHeight());
+                    }
+
+                    @Override
+                    public void mouseClicked(MouseEvent e) {
+                        if (e.getClickCount() == 2 && selected >= 0) {
+                            lineAction.accept(lines[selected]);
+                        }
+                    }
+                }
+            );
+        }
+
+        int rowHeight() {
+            return Math.max(1, getFontMetrics(getFont()).getHeight());
+        }
+
+        int visibleRows() {
+            return Math.max(1, getVisibleRect().height / rowHeight());
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(400, lines.length * rowHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            if (shownText == null) return;
+
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int h = rowHeight();
+            int first = clip.y / h;
+            int last = Math.min(lines.length - 1, (clip.y + clip.height) / h);
+            int tabSize = 4 * fm.charWidth('m');
+            TabExpander tabs = (x, tabOffset) ->
+                TEXT_X + ((((int) x - TEXT_X) / tabSize) + 1) * tabSize;
+            Matcher matcher = shownPattern != null
+                ? shownPattern.matcher(segment)
+                : null;
+
+            for (int row = first; row <= last; row++) {
+                int y = row * h;
+                if (row == selected) {
+                    g.setColor(SELECTED_BG);
+                    g.fillRect(clip.x, y, clip.width, h);
+                }
+                int start = shownText.getLineStart(lines[row]);
+                int end = Math.min(
+                    shownText.getLineEnd(lines[row]),
+                    start + MAX_DRAWN_CHARS
+                );
+                segment.array = shownText.getText();
+                segment.offset = start;
+                segment.count = end - start;
+
+                if (matcher != null) {
+                    matcher.reset(segment);
+                    g.setColor(MATCH_BG);
+                    while (matcher.find()) {
+                        if (matcher.end() == matcher.start()) continue;
+                        int x1 = tabbedWidth(fm, tabs, matcher.start());
+                        int x2 = tabbedWidth(fm, tabs, matcher.end());
+                        g.fillRect(x1, y, x2 - x1, h);
+                    }
+                }
+
+                g.setColor(getForeground());
+                Utilities.drawTabbedText(
+                    segment,
+                    (float) TEXT_X,
+                    (float) (y + fm.getAscent()),
+                    (Graphics2D) g,
+                    tabs,
+                    0
+                );
+            }
+        }
+
+        // Where the first count chars of the current segment end
+        private int tabbedWidth(FontMetrics fm, TabExpander tabs, int count) {
+            Segment prefix = new Segment(segment.array, segment.offset, count);
+            float width = Utilities.getTabbedTextWidth(
+                prefix,
+                fm,
+                (float) TEXT_X,
+                tabs,
+                0
+            );
+            return TEXT_X + Math.round(width);
+        }
+
+        // --- Scrollable methods ---------------------------------------
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(
+            Rectangle visible,
+            int orientation,
+            int direction
+        ) {
+            return rowHeight();
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(
+            Rectangle visible,
+            int orientation,
+            int direction
+        ) {
+            return Math.max(rowHeight(), visible.height - rowHeight());
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+
+    // Original line numbers of the rows beside it
+    private class Gutter extends JComponent {
+
+        Gutter() {
+            setOpaque(true);
+            setBorder(new EmptyBorder(0, 10, 0, 8));
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int count = shownText != null ? shownText.getLineCount() : 0;
+            int digits = Math.max(2, String.valueOf(count).length());
+            Insets insets = getInsets();
+            FontMetrics fm = getFontMetrics(getFont());
+            return new Dimension(
+                insets.left + insets.right + digits * fm.charWidth('0'),
+                rows.getPreferredSize().height
+            );
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int h = rows.rowHeight();
+            int right = getWidth() - getInsets().right;
+            int first = clip.y / h;
+            int last = Math.min(lines.length - 1, (clip.y + clip.height) / h);
+            g.setColor(NUMBER_FG);
+            for (int row = first; row <= last; row++) {
+                String label = String.valueOf(lines[row] + 1);
+                g.drawString(
+                    label,
+                    right - fm.stringWidth(label),
+                    row * h + fm.getAscent()
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.swing.text.Element;
+
+// Line Index
+// Start offsets of every line in a text, as used by the session cache
+// to rebuild a document's line structure without rescanning the text.
+class LineIndex {
+
+    private int[] starts;
+    private int count;
+
+    public LineIndex() {
+        this(1024);
+    }
+
+    private LineIndex(int capacity) {
+        starts = new int[Math.max(capacity, 1)];
+        starts[0] = 0;
+        count = 1;
+    }
+
+    public static LineIndex scan(char[] text, int length) {
+        LineIndex index = new LineIndex(Math.max(1024, length / 40));
+        for (int i = 0; i < length; i++) {
+            if (text[i] == '\n') {
+                index.addLineStart(i + 1);
+            }
+        }
+        return index;
+    }
+
+    // Copies the line structure of a document's default root element
+    public static LineIndex fromElement(Element root) {
+        int lines = root.getElementCount();
+        LineIndex index = new LineIndex(lines);
+        for (int i = 1; i < lines; i++) {
+            index.addLineStart(root.getElement(i).getStartOffset());
+        }
+        return index;
+    }
+
+    public void addLineStart(int offset) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = offset;
+    }
+
+    public int getLineCount() {
+        return count;
+    }
+
+    public int getLineStart(int line) {
+        return starts[line];
+    }
+
+    // Binary search for the line containing the offset
+    public int getLineOfOffset(int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Checks that the index describes the text as loaded, which always
+    // ends with a newline: every line but the first must follow one, and
+    // the last must start at the end
+    public boolean isValidFor(char[] text, int length) {
+        if (count == 0 || starts[count - 1] != length) return false;
+        for (int i = 1; i < count; i++) {
+            int start = starts[i];
+            if (start <= starts[i - 1] || text[start - 1] != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Line starts are stored as variable-length deltas, which keeps
+    // typical source files at one or two bytes per line
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(count);
+        int previous = 0;
+        for (int i = 1; i < count; i++) {
+            writeVarInt(out, starts[i] - previous);
+            previous = starts[i];
+        }
+    }
+
+    public static LineIndex read(DataInput in) throws IOException {
+        int lines = in.readInt();
+        if (lines < 1) {
+            throw new IOException("Corrupt line index");
+        }
+        LineIndex index = new LineIndex(lines);
+        int offset = 0;
+        for (int i = 1; i < lines; i++) {
+            offset += readVarInt(in);
+            index.addLineStart(offset);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(DataOutput out, int value)
+        throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt line index");
+    }
+}
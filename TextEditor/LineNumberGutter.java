@@ -0,0 +1,321 @@
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+
+// Line Number Gutter
+// Row header that paints the numbers of the visible lines only, aligned
+// with the text area's own layout, plus a stripe of colored line markers.
+// Next to the numbers, foldable regions get a toggle; lines folded away
+// get no number.
+class LineNumberGutter extends JComponent {
+
+    private static final int MARKER_WIDTH = 4;
+    private static final int NUMBER_GAP = 4;
+    private static final int FOLD_WIDTH = 12;
+
+    private final JTextComponent textArea;
+    private final FoldModel folds;
+    private List<Marker> markers = Collections.emptyList();
+    private int digits;
+
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {}
+    };
+
+    LineNumberGutter(JTextComponent textArea) {
+        this.textArea = textArea;
+        this.folds = textArea instanceof EditorTextArea
+            ? ((EditorTextArea) textArea).getFolds()
+            : null;
+        setOpaque(true);
+        textArea.getDocument().addDocumentListener(documentListener);
+        textArea.addPropertyChangeListener("document", e -> {
+            if (e.getOldValue() instanceof Document) {
+                ((Document) e.getOldValue()).removeDocumentListener(
+                    documentListener
+                );
+            }
+            if (e.getNewValue() instanceof Document) {
+                ((Document) e.getNewValue()).addDocumentListener(
+                    documentListener
+                );
+            }
+            linesChanged();
+        });
+        // The text area's height follows its layout, so follow it too
+        textArea.addComponentListener(
+            new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    revalidate();
+                    repaint();
+                }
+            }
+        );
+        if (folds != null) {
+            folds.addChangeListener(e -> repaint());
+            addMouseListener(
+                new MouseAdapter() {
+                    @Override
+                    public void mousePressed(MouseEvent e) {
+                        toggleFoldAt(e.getPoint());
+                    }
+                }
+            );
+        }
+    }
+
+    // A colored range of lines; an empty range marks the gap above
+    // startLine, such as lines deleted there
+    static class Marker {
+
+        final int startLine;
+        final int endLine;
+        final Color color;
+
+        Marker(int startLine, int endLine, Color color) {
+            this.startLine = startLine;
+            this.endLine = endLine;
+            this.color = color;
+        }
+    }
+
+    // Markers must be sorted by start line
+    public void setMarkers(List<Marker> markers) {
+        this.markers = new ArrayList<>(markers);
+        repaint();
+    }
+
+    public void clearMarkers() {
+        if (!markers.isEmpty()) {
+            markers = Collections.emptyList();
+            repaint();
+        }
+    }
+
+    // Regions were added or removed, which may show or hide the toggles
+    public void foldsChanged() {
+        revalidate();
+        repaint();
+    }
+
+    private boolean showsFolds() {
+        return (
+            folds != null &&
+            !folds.getRegions().isEmpty() &&
+            ((EditorTextArea) textArea).canFold()
+        );
+    }
+
+    private int foldWidth() {
+        return showsFolds() ? FOLD_WIDTH : 0;
+    }
+
+    private void toggleFoldAt(Point point) {
+        int left = getWidth() - getInsets().right - MARKER_WIDTH - foldWidth();
+        if (!showsFolds() || point.x < left) return;
+        Element root = textArea.getDocument().getDefaultRootElement();
+        int line = root.getElementIndex(
+            textArea.viewToModel2D(new Point(0, point.y))
+        );
+        FoldModel.Region region = folds.regionAt(line);
+        if (region != null) folds.toggle(region);
+    }
+
+    private void linesChanged() {
+        int count = textArea
+            .getDocument()
+            .getDefaultRootElement()
+            .getElementCount();
+        int newDigits = Math.max(2, String.valueOf(count).length());
+        if (newDigits != digits) {
+            digits = newDigits;
+            revalidate();
+        }
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (digits == 0) {
+            linesChanged();
+        }
+        Insets insets = getInsets();
+        FontMetrics fm = getFontMetrics(getFont());
+        int width =
+            insets.left +
+            insets.right +
+            MARKER_WIDTH +
+            foldWidth() +
+            NUMBER_GAP +
+            digits * fm.charWidth('0');
+        int height = textArea.getHeight() > 0
+            ? textArea.getHeight()
+            : textArea.getPreferredSize().height;
+        return new Dimension(width, height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        Element root = textArea.getDocument().getDefaultRootElement();
+        int first = root.getElementIndex(
+            textArea.viewToModel2D(new Point(0, clip.y))
+        );
+        int last = root.getElementIndex(
+            textArea.viewToModel2D(new Point(0, clip.y + clip.height))
+        );
+
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        FontMetrics textMetrics = textArea.getFontMetrics(textArea.getFont());
+        Insets insets = getInsets();
+        int right = getWidth() - insets.right - MARKER_WIDTH;
+        int foldWidth = foldWidth();
+        int markerIndex = firstMarkerAtOrAfter(first);
+
+        for (int line = first; line <= last; line = nextLine(line)) {
+            Rectangle top = lineBounds(root, line);
+            if (top == null) break;
+            int nextLine = nextLine(line);
+            int next = nextLine < root.getElementCount()
+                ? lineTop(root, nextLine, top.y + top.height)
+                : top.y + top.height;
+
+            while (
+                markerIndex < markers.size() &&
+                lastLineOf(markers.get(markerIndex)) < line
+            ) {
+                markerIndex++;
+            }
+            for (
+                int m = markerIndex;
+                m < markers.size() && markers.get(m).startLine <= line;
+                m++
+            ) {
+                Marker marker = markers.get(m);
+                g.setColor(marker.color);
+                if (marker.startLine == marker.endLine) {
+                    if (marker.startLine == line) {
+                        g.fillRect(right, top.y - 1, MARKER_WIDTH, 3);
+                    }
+                } else if (line < marker.endLine) {
+                    g.fillRect(right, top.y, MARKER_WIDTH, next - top.y);
+                }
+            }
+
+            String label = String.valueOf(line + 1);
+            int baseline = top.y + textMetrics.getAscent();
+            g.setColor(getForeground());
+            g.drawString(
+                label,
+                right - foldWidth - NUMBER_GAP - fm.stringWidth(label),
+                baseline
+            );
+
+            FoldModel.Region region = foldWidth > 0
+                ? folds.regionAt(line)
+                : null;
+            if (region != null) {
+                paintFoldToggle(
+                    g,
+                    right - foldWidth,
+                    top.y + textMetrics.getHeight() / 2,
+                    folds.isCollapsed(region)
+                );
+            }
+        }
+    }
+
+    // A triangle pointing right for a collapsed region, down otherwise
+    private static void paintFoldToggle(
+        Graphics g,
+        int x,
+        int centerY,
+        boolean collapsed
+    ) {
+        int cx = x + FOLD_WIDTH / 2;
+        if (collapsed) {
+            g.fillPolygon(
+                new int[] { cx - 2, cx + 2, cx - 2 },
+                new int[] { centerY - 4, centerY, centerY + 4 },
+                3
+            );
+        } else {
+            g.fillPolygon(
+                new int[] { cx - 4, cx + 4, cx },
+                new int[] { centerY - 2, centerY - 2, centerY + 2 },
+                3
+            );
+        }
+    }
+
+    // The line after line that is not folded away
+    private int nextLine(int line) {
+        return folds != null && folds.hasCollapsed()
+            ? folds.nextVisibleLine(line + 1)
+            : line + 1;
+    }
+
+    private static int lastLineOf(Marker marker) {
+        return Math.max(marker.endLine - 1, marker.startLine);
+    }
+
+    // Binary search for the first marker that reaches line or below
+    private int firstMarkerAtOrAfter(int line) {
+        int low = 0;
+        int high = markers.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastLineOf(markers.get(mid)) < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Rectangle lineBounds(Element root, int line) {
+        try {
+            Rectangle2D r = textArea.modelToView2D(
+                root.getElement(line).getStartOffset()
+            );
+            return r != null ? r.getBounds() : null;
+        } catch (BadLocationException e) {
+            return null;
+        }
+    }
+
+    private int lineTop(Element root, int line, int fallback) {
+        Rectangle r = lineBounds(root, line);
+        return r != null ? r.y : fallback;
+    }
+}
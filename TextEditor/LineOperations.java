@@ -0,0 +1,201 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+// Line Operations
+// Whole-line transformations over a snapshot of lines. Each one returns
+// the new text of the lines joined by newlines, or null when the lines
+// would come out unchanged. Safe to run off the EDT; each throws
+// CancellationException once cancelled reports true.
+class LineOperations {
+
+    interface Operation {
+        String apply(TextSnapshot text, BooleanSupplier cancelled);
+    }
+
+    public static String sort(
+        TextSnapshot text,
+        boolean descending,
+        boolean ignoreCase,
+        BooleanSupplier cancelled
+    ) {
+        int count = text.getLineCount();
+        Line[] lines = new Line[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = new Line(i, text.getLineStart(i), text.getLineEnd(i));
+        }
+        char[] chars = text.getText();
+        Comparator<Line> order = (a, b) -> {
+            // Sorting threads share no counter, so each comparison checks
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            return compare(chars, a, b, ignoreCase);
+        };
+        // Stable and split across the common fork/join pool
+        Arrays.parallelSort(lines, descending ? order.reversed() : order);
+
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = lines[i].index;
+        }
+        return join(text, indexes, count, cancelled);
+    }
+
+    // Keeps the first of each set of equal lines, in their original order
+    public static String removeDuplicates(
+        TextSnapshot text,
+        BooleanSupplier cancelled
+    ) {
+        int count = text.getLineCount();
+        LineTable table = new LineTable(count);
+        int[] kept = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            checkCancelled(cancelled, i);
+            // A line seen for the first time gets the next free id
+            if (table.idOf(text, i) == n) {
+                kept[n++] = i;
+            }
+        }
+        return join(text, kept, n, cancelled);
+    }
+
+    public static String reverse(
+        TextSnapshot text,
+        BooleanSupplier cancelled
+    ) {
+        int count = text.getLineCount();
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = count - 1 - i;
+        }
+        return join(text, indexes, count, cancelled);
+    }
+
+    public static String shuffle(
+        TextSnapshot text,
+        Random random,
+        BooleanSupplier cancelled
+    ) {
+        int count = text.getLineCount();
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = swap;
+        }
+        return join(text, indexes, count, cancelled);
+    }
+
+    public static String trimTrailingWhitespace(
+        TextSnapshot text,
+        BooleanSupplier cancelled
+    ) {
+        char[] chars = text.getText();
+        int count = text.getLineCount();
+        char[] result = new char[text.getLength()];
+        int length = 0;
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            checkCancelled(cancelled, i);
+            int start = text.getLineStart(i);
+            int end = text.getLineEnd(i);
+            int trimmed = end;
+            while (trimmed > start && isBlank(chars[trimmed - 1])) {
+                trimmed--;
+            }
+            changed |= trimmed != end;
+            if (i > 0) result[length++] = '\n';
+            System.arraycopy(chars, start, result, length, trimmed - start);
+            length += trimmed - start;
+        }
+        return changed ? new String(result, 0, length) : null;
+    }
+
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || Character.isSpaceChar(c);
+    }
+
+    // Checked every 64K lines
+    private static void checkCancelled(BooleanSupplier cancelled, int i) {
+        if ((i & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    // Lines in the given order; null if that is the original order
+    private static String join(
+        TextSnapshot text,
+        int[] indexes,
+        int count,
+        BooleanSupplier cancelled
+    ) {
+        boolean unchanged = count == text.getLineCount();
+        int length = Math.max(0, count - 1);
+        for (int i = 0; i < count; i++) {
+            int line = indexes[i];
+            unchanged &= line == i;
+            length += text.getLineEnd(line) - text.getLineStart(line);
+        }
+        if (unchanged) return null;
+
+        char[] chars = text.getText();
+        char[] result = new char[length];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            checkCancelled(cancelled, i);
+            if (i > 0) result[offset++] = '\n';
+            int start = text.getLineStart(indexes[i]);
+            int lineLength = text.getLineEnd(indexes[i]) - start;
+            System.arraycopy(chars, start, result, offset, lineLength);
+            offset += lineLength;
+        }
+        return new String(result);
+    }
+
+    // Same ordering as String.compareTo and CASE_INSENSITIVE_ORDER, read
+    // straight from the snapshot
+    private static int compare(
+        char[] chars,
+        Line a,
+        Line b,
+        boolean ignoreCase
+    ) {
+        int lengthA = a.end - a.start;
+        int lengthB = b.end - b.start;
+        int n = Math.min(lengthA, lengthB);
+        for (int i = 0; i < n; i++) {
+            char c1 = chars[a.start + i];
+            char c2 = chars[b.start + i];
+            if (c1 == c2) continue;
+            if (ignoreCase) {
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 == c2) continue;
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+                if (c1 == c2) continue;
+            }
+            return c1 - c2;
+        }
+        return lengthA - lengthB;
+    }
+
+    private static class Line {
+
+        final int index;
+        final int start;
+        final int end;
+
+        Line(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
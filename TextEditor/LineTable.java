@@ -0,0 +1,105 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+// Line Table
+// Open-addressing hash table from line content to a dense int id. Lines
+// are referenced by index into their snapshot rather than copied, and
+// equal lines from any snapshot added to the same table share an id.
+class LineTable {
+
+    private int[] slots;
+    private int[] hashes;
+    private TextSnapshot[] owners;
+    private int[] lines;
+    private int size;
+
+    LineTable(int expectedLines) {
+        int capacity = Integer.highestOneBit(
+            Math.max(16, expectedLines * 2 - 1)
+        ) << 1;
+        slots = new int[capacity];
+        hashes = new int[Math.max(16, expectedLines)];
+        owners = new TextSnapshot[hashes.length];
+        lines = new int[hashes.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Ids of every line of the text; throws CancellationException once
+    // cancelled reports true
+    public int[] assign(TextSnapshot text, BooleanSupplier cancelled) {
+        int[] ids = new int[text.getLineCount()];
+        for (int line = 0; line < ids.length; line++) {
+            if ((line & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            ids[line] = idOf(text, line);
+        }
+        return ids;
+    }
+
+    public int idOf(TextSnapshot text, int line) {
+        char[] chars = text.getText();
+        int start = text.getLineStart(line);
+        int end = text.getLineEnd(line);
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = slots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && sameLine(id, chars, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size * 2 >= slots.length) {
+            rehash(slots.length * 2);
+            slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            owners = Arrays.copyOf(owners, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+        }
+        hashes[size] = hash;
+        owners[size] = text;
+        lines[size] = line;
+        slots[slot] = ++size;
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = (hashes[id] ^ (hashes[id] >>> 16)) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private boolean sameLine(int id, char[] chars, int start, int end) {
+        TextSnapshot owner = owners[id];
+        int otherStart = owner.getLineStart(lines[id]);
+        int otherEnd = owner.getLineEnd(lines[id]);
+        if (otherEnd - otherStart != end - start) return false;
+        char[] other = owner.getText();
+        for (int i = 0; i < end - start; i++) {
+            if (other[otherStart + i] != chars[start + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,489 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.*;
+
+// Long Line View
+// Non-wrapping view used when a document has very long lines, such as
+// minified files. Long lines remember the x position of every chunk
+// boundary, so painting and caret mapping only measure the visible part.
+class LongLineView extends View implements TabExpander {
+
+    // Characters between cached x positions
+    static final int CHUNK = 1024;
+
+    private final Map<Element, LineMetrics> lineMetrics = new WeakHashMap<>();
+    private final Segment lineText = new Segment();
+
+    private Font font;
+    private FontMetrics metrics;
+    private int tabSize;
+    private int tabBase;
+
+    private Element longLine;
+    private int longWidth;
+
+    private int sel0;
+    private int sel1;
+    private Color unselected;
+    private Color selected;
+
+    LongLineView(Element elem) {
+        super(elem);
+    }
+
+    private int getTabSize() {
+        Integer size = (Integer) getDocument().getProperty(
+            PlainDocument.tabSizeAttribute
+        );
+        return size != null ? size : 8;
+    }
+
+    private void updateMetrics() {
+        Component host = getContainer();
+        Font f = host.getFont();
+        if (font != f) {
+            font = f;
+            metrics = host.getFontMetrics(f);
+            tabSize = getTabSize() * metrics.charWidth('m');
+            lineMetrics.clear();
+            calculateLongestLine();
+        }
+    }
+
+    private void calculateLongestLine() {
+        Element map = getElement();
+        longLine = null;
+        longWidth = 0;
+        for (int i = 0; i < map.getElementCount(); i++) {
+            Element line = map.getElement(i);
+            int w = getLineWidth(line);
+            if (longLine == null || w > longWidth) {
+                longLine = line;
+                longWidth = w;
+            }
+        }
+    }
+
+    // Long lines are only measured in full once; after edits their width
+    // is estimated until they are painted to the end again
+    private int getLineWidth(Element line) {
+        LineMetrics lm = getLineMetrics(line);
+        if (lm != null) {
+            return lm.getWidth(line);
+        }
+        return measure(line.getStartOffset(), line.getEndOffset(), 0);
+    }
+
+    private LineMetrics getLineMetrics(Element line) {
+        LineMetrics lm = lineMetrics.get(line);
+        if (
+            lm == null && line.getEndOffset() - line.getStartOffset() > CHUNK
+        ) {
+            lm = new LineMetrics();
+            lineMetrics.put(line, lm);
+        }
+        return lm;
+    }
+
+    // Width of [p0, p1) when drawn starting x pixels into the line
+    private int measure(int p0, int p1, int x) {
+        if (p1 <= p0) return 0;
+        try {
+            getDocument().getText(p0, p1 - p0, lineText);
+            return Math.round(
+                Utilities.getTabbedTextWidth(
+                    lineText,
+                    metrics,
+                    (float) (tabBase + x),
+                    this,
+                    p0
+                )
+            );
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Can't measure line", e);
+        }
+    }
+
+    private int getXAt(Element line, int offset) {
+        LineMetrics lm = getLineMetrics(line);
+        if (lm != null) {
+            return lm.getXAt(line, offset);
+        }
+        return measure(line.getStartOffset(), offset, 0);
+    }
+
+    // Offset of the character at x pixels into the line; with round set,
+    // the nearest character boundary instead
+    private int getOffsetAt(Element line, int x, boolean round) {
+        int p0 = line.getStartOffset();
+        int p1 = line.getEndOffset();
+        int x0 = 0;
+        LineMetrics lm = getLineMetrics(line);
+        if (lm != null) {
+            int chunk = lm.findChunk(line, x);
+            x0 = lm.checkpoints[chunk];
+            p0 += chunk * CHUNK;
+            p1 = Math.min(p1, p0 + CHUNK);
+        }
+        try {
+            getDocument().getText(p0, p1 - p0, lineText);
+            return p0 + Utilities.getTabbedTextOffset(
+                lineText,
+                metrics,
+                (float) (tabBase + x0),
+                (float) (tabBase + x),
+                this,
+                p0,
+                round
+            );
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Can't get line text", e);
+        }
+    }
+
+    // --- TabExpander methods ------------------------------------------
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        if (tabSize == 0) return x;
+        int ntabs = (((int) x) - tabBase) / tabSize;
+        return tabBase + ((ntabs + 1) * tabSize);
+    }
+
+    // --- View methods -------------------------------------------------
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        updateMetrics();
+        switch (axis) {
+            case View.X_AXIS:
+                return longWidth;
+            case View.Y_AXIS:
+                return getElement().getElementCount() * metrics.getHeight();
+            default:
+                throw new IllegalArgumentException("Invalid axis: " + axis);
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+        JTextComponent host = (JTextComponent) getContainer();
+        Highlighter highlighter = host.getHighlighter();
+        g.setFont(host.getFont());
+        sel0 = host.getSelectionStart();
+        sel1 = host.getSelectionEnd();
+        unselected = host.isEnabled()
+            ? host.getForeground()
+            : host.getDisabledTextColor();
+        Caret c = host.getCaret();
+        selected = c.isSelectionVisible() && highlighter != null
+            ? host.getSelectedTextColor()
+            : unselected;
+        updateMetrics();
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = alloc;
+        int h = metrics.getHeight();
+        if (h <= 0) return;
+
+        Element map = getElement();
+        int lastLine = map.getElementCount() - 1;
+        int first = Math.max(0, (clip.y - alloc.y) / h);
+        int last = Math.min(lastLine, (clip.y + clip.height - alloc.y) / h);
+        int left = clip.x - alloc.x;
+        int right = clip.x + clip.width - alloc.x;
+        LayeredHighlighter dh = highlighter instanceof LayeredHighlighter
+            ? (LayeredHighlighter) highlighter
+            : null;
+
+        int y = alloc.y + first * h + metrics.getAscent();
+        for (int i = first; i <= last; i++, y += h) {
+            Element line = map.getElement(i);
+            int lineEnd = line.getEndOffset();
+            int p0 = line.getStartOffset();
+            int p1 = lineEnd;
+            int x = 0;
+
+            // Only the visible part of a long line is drawn
+            LineMetrics lm = getLineMetrics(line);
+            if (lm != null) {
+                p0 = getOffsetAt(line, left, false);
+                p1 = Math.min(lineEnd, getOffsetAt(line, right, false) + 1);
+                x = getXAt(line, p0);
+                if (p1 == lineEnd) {
+                    lm.measured(line);
+                }
+            }
+
+            if (dh != null) {
+                int hp1 = p1 == lineEnd && i != lastLine ? p1 - 1 : p1;
+                dh.paintLayeredHighlights(g, p0, hp1, a, host, this);
+            }
+            drawText(g, alloc.x + x, y, p0, p1);
+        }
+    }
+
+    private void drawText(Graphics g, int x, int y, int p0, int p1) {
+        p1 = Math.min(getDocument().getLength(), p1);
+        try {
+            if (sel0 == sel1 || selected == unselected) {
+                drawText(g, x, y, p0, p1, unselected);
+            } else if (p0 >= sel0 && p1 <= sel1) {
+                drawText(g, x, y, p0, p1, selected);
+            } else {
+                int s0 = Math.max(p0, Math.min(sel0, p1));
+                int s1 = Math.max(s0, Math.min(sel1, p1));
+                x = drawText(g, x, y, p0, s0, unselected);
+                x = drawText(g, x, y, s0, s1, selected);
+                drawText(g, x, y, s1, p1, unselected);
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Can't render line", e);
+        }
+    }
+
+    private int drawText(Graphics g, int x, int y, int p0, int p1, Color color)
+        throws BadLocationException {
+        if (p1 <= p0) return x;
+        g.setColor(color);
+        getDocument().getText(p0, p1 - p0, lineText);
+        return Math.round(
+            Utilities.drawTabbedText(
+                lineText,
+                (float) x,
+                (float) y,
+                (Graphics2D) g,
+                this,
+                p0
+            )
+        );
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b)
+        throws BadLocationException {
+        Document doc = getDocument();
+        if (pos < 0 || pos > doc.getLength() + 1) {
+            throw new BadLocationException("Position out of range", pos);
+        }
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+
+        Element map = getElement();
+        int lineIndex = map.getElementIndex(pos);
+        Element line = map.getElement(lineIndex);
+        int h = metrics.getHeight();
+        return new Rectangle(
+            alloc.x + getXAt(line, pos),
+            alloc.y + lineIndex * h,
+            1,
+            h
+        );
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias) {
+        updateMetrics();
+        bias[0] = Position.Bias.Forward;
+
+        Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+        int x = (int) fx;
+        int y = (int) fy;
+        if (y < alloc.y) {
+            return getStartOffset();
+        } else if (y > alloc.y + alloc.height) {
+            return getEndOffset() - 1;
+        }
+
+        Element map = getElement();
+        int h = metrics.getHeight();
+        int lineIndex = h > 0 ? (y - alloc.y) / h : map.getElementCount();
+        if (lineIndex >= map.getElementCount()) {
+            return getEndOffset() - 1;
+        }
+        Element line = map.getElement(lineIndex);
+        if (x < alloc.x) {
+            return line.getStartOffset();
+        } else if (x > alloc.x + alloc.width) {
+            return line.getEndOffset() - 1;
+        }
+        return Math.min(
+            getOffsetAt(line, x - alloc.x, true),
+            line.getEndOffset() - 1
+        );
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        updateDamage(e, a);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        updateDamage(e, a);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        updateDamage(e, a);
+    }
+
+    private void updateDamage(DocumentEvent e, Shape a) {
+        Component host = getContainer();
+        updateMetrics();
+        Element map = getElement();
+        DocumentEvent.ElementChange ec = e.getChange(map);
+
+        if (ec != null) {
+            // Lines were added or removed
+            boolean longestRemoved = false;
+            for (Element removed : ec.getChildrenRemoved()) {
+                longestRemoved |= removed == longLine;
+            }
+            if (longestRemoved) {
+                calculateLongestLine();
+            } else {
+                for (Element added : ec.getChildrenAdded()) {
+                    int w = getLineWidth(added);
+                    if (w > longWidth) {
+                        longLine = added;
+                        longWidth = w;
+                    }
+                }
+            }
+            preferenceChanged(null, true, true);
+            host.repaint();
+            return;
+        }
+
+        Element line = map.getElement(map.getElementIndex(e.getOffset()));
+        LineMetrics lm = getLineMetrics(line);
+        if (lm != null) {
+            int delta = e.getType() == DocumentEvent.EventType.REMOVE
+                ? -e.getLength()
+                : e.getLength();
+            lm.edited(line, e.getOffset(), delta);
+        }
+
+        if (e.getType() != DocumentEvent.EventType.CHANGE) {
+            int w = getLineWidth(line);
+            if (line == longLine) {
+                if (w < longWidth) {
+                    calculateLongestLine();
+                } else {
+                    longWidth = w;
+                }
+                preferenceChanged(null, true, false);
+            } else if (w > longWidth) {
+                longLine = line;
+                longWidth = w;
+                preferenceChanged(null, true, false);
+            }
+        }
+
+        if (a != null) {
+            Rectangle alloc = a.getBounds();
+            int h = metrics.getHeight();
+            host.repaint(
+                alloc.x,
+                alloc.y + map.getElementIndex(e.getOffset()) * h,
+                alloc.width,
+                h
+            );
+        }
+    }
+
+    // Cached x positions of one long line, relative to its start
+    private class LineMetrics {
+
+        // x at every multiple of CHUNK characters; the first valid
+        // entries are exact
+        int[] checkpoints = new int[16];
+        int valid = 1;
+        // Exact width when measured, else an estimate after edits
+        int width = -1;
+        boolean exact;
+
+        int getCheckpoint(Element line, int chunk) {
+            int start = line.getStartOffset();
+            while (valid <= chunk) {
+                int p0 = start + (valid - 1) * CHUNK;
+                int x = checkpoints[valid - 1];
+                if (valid == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, valid * 2);
+                }
+                checkpoints[valid] = x + measure(p0, p0 + CHUNK, x);
+                valid++;
+            }
+            return checkpoints[chunk];
+        }
+
+        int getXAt(Element line, int offset) {
+            int start = line.getStartOffset();
+            int chunk = (offset - start) / CHUNK;
+            int x = getCheckpoint(line, chunk);
+            return x + measure(start + chunk * CHUNK, offset, x);
+        }
+
+        // Chunk containing x, measuring up to it as needed
+        int findChunk(Element line, int x) {
+            int chunks = (line.getEndOffset() - line.getStartOffset()) / CHUNK;
+            while (valid - 1 < chunks && checkpoints[valid - 1] <= x) {
+                getCheckpoint(line, valid);
+            }
+            int low = 0;
+            int high = valid - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (checkpoints[mid] <= x) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        int getWidth(Element line) {
+            if (width < 0) {
+                measured(line);
+            }
+            return width;
+        }
+
+        // Called once the whole line has been measured anyway
+        void measured(Element line) {
+            if (exact) return;
+            int old = width;
+            width = getXAt(line, line.getEndOffset());
+            exact = true;
+            if (
+                old >= 0 &&
+                old != width &&
+                (line == longLine || width > longWidth)
+            ) {
+                longLine = line;
+                longWidth = width;
+                SwingUtilities.invokeLater(() ->
+                    preferenceChanged(null, true, false)
+                );
+            }
+        }
+
+        void edited(Element line, int offset, int delta) {
+            valid = Math.min(valid, (offset - line.getStartOffset()) / CHUNK + 1);
+            if (width >= 0) {
+                width = Math.max(0, width + delta * metrics.charWidth('m'));
+            }
+            exact = false;
+        }
+    }
+}
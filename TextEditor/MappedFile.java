@@ -0,0 +1,229 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BooleanSupplier;
+
+// Mapped File
+// Read-only memory mapping of a file in 1 GB regions that are mapped on
+// first access, so files of any size open at once. Overwritten bytes are
+// kept aside until they are written back through the file channel.
+class MappedFile implements Closeable {
+
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+    private static final int SEARCH_BLOCK = 1 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final boolean writable;
+    private final MappedByteBuffer[] regions;
+    // Concurrent so a background search can read while the EDT edits
+    private final ConcurrentSkipListMap<Long, Byte> edits =
+        new ConcurrentSkipListMap<>();
+
+    private MappedFile(File file, FileChannel channel, boolean writable)
+        throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.writable = writable;
+        size = channel.size();
+        regions = new MappedByteBuffer[(int) ((size >> REGION_SHIFT) + 1)];
+    }
+
+    public static MappedFile open(File file) throws IOException {
+        boolean writable = file.canWrite();
+        FileChannel channel = writable
+            ? FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            )
+            : FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return new MappedFile(file, channel, writable);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public boolean isModified() {
+        return !edits.isEmpty();
+    }
+
+    public boolean isEdited(long offset) {
+        return !edits.isEmpty() && edits.containsKey(offset);
+    }
+
+    private MappedByteBuffer region(long offset) throws IOException {
+        int index = (int) (offset >> REGION_SHIFT);
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            long start = (long) index << REGION_SHIFT;
+            region = channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                start,
+                Math.min(REGION_MASK + 1, size - start)
+            );
+            regions[index] = region;
+        }
+        return region;
+    }
+
+    public byte get(long offset) throws IOException {
+        if (!edits.isEmpty()) {
+            Byte edited = edits.get(offset);
+            if (edited != null) return edited;
+        }
+        return region(offset).get((int) (offset & REGION_MASK));
+    }
+
+    // Copies up to len bytes starting at offset; returns the count read
+    public int read(long offset, byte[] dst, int len) throws IOException {
+        int n = (int) Math.max(0, Math.min(len, size - offset));
+        for (int i = 0; i < n; ) {
+            ByteBuffer region = region(offset + i).duplicate();
+            int pos = (int) ((offset + i) & REGION_MASK);
+            int count = Math.min(n - i, region.limit() - pos);
+            region.position(pos);
+            region.get(dst, i, count);
+            i += count;
+        }
+        if (!edits.isEmpty()) {
+            for (Map.Entry<Long, Byte> edit : edits
+                .subMap(offset, offset + n)
+                .entrySet()) {
+                dst[(int) (edit.getKey() - offset)] = edit.getValue();
+            }
+        }
+        return n;
+    }
+
+    public void put(long offset, byte value) throws IOException {
+        if (!writable) {
+            throw new IOException(file.getName() + " is read-only");
+        }
+        if (region(offset).get((int) (offset & REGION_MASK)) == value) {
+            edits.remove(offset);
+        } else {
+            edits.put(offset, value);
+        }
+    }
+
+    public void discardEdits() {
+        edits.clear();
+    }
+
+    // Writes each run of overwritten bytes back in place
+    public void save() throws IOException {
+        writeEdits(channel);
+        channel.force(false);
+        edits.clear();
+    }
+
+    // Copies the file, then applies the pending edits to the copy
+    public void saveAs(File target) throws IOException {
+        Files.copy(
+            file.toPath(),
+            target.toPath(),
+            StandardCopyOption.REPLACE_EXISTING
+        );
+        try (
+            FileChannel out = FileChannel.open(
+                target.toPath(),
+                StandardOpenOption.WRITE
+            )
+        ) {
+            writeEdits(out);
+            out.force(false);
+        }
+    }
+
+    private void writeEdits(FileChannel out) throws IOException {
+        byte[] run = new byte[256];
+        long runStart = -1;
+        int runLength = 0;
+        for (Map.Entry<Long, Byte> edit : edits.entrySet()) {
+            long offset = edit.getKey();
+            if (runLength > 0 && offset != runStart + runLength) {
+                write(out, run, runLength, runStart);
+                runLength = 0;
+            }
+            if (runLength == 0) {
+                runStart = offset;
+            } else if (runLength == run.length) {
+                run = Arrays.copyOf(run, run.length * 2);
+            }
+            run[runLength++] = edit.getValue();
+        }
+        if (runLength > 0) {
+            write(out, run, runLength, runStart);
+        }
+    }
+
+    private static void write(
+        FileChannel out,
+        byte[] bytes,
+        int length,
+        long position
+    ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+
+    // Boyer-Moore-Horspool search over the mapping, a block at a time;
+    // returns -1 if the pattern does not occur at or after from, or the
+    // search is cancelled
+    public long indexOf(byte[] pattern, long from, BooleanSupplier cancelled)
+        throws IOException {
+        int m = pattern.length;
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[pattern[i] & 0xFF] = m - 1 - i;
+        }
+
+        byte[] block = new byte[Math.max(SEARCH_BLOCK, 2 * m)];
+        long base = Math.max(0, from);
+        while (base + m <= size) {
+            if (cancelled.getAsBoolean()) return -1;
+            int last = read(base, block, block.length) - m;
+            int pos = 0;
+            while (pos <= last) {
+                int j = m - 1;
+                while (j >= 0 && block[pos + j] == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) return base + pos;
+                pos += shift[block[pos + m - 1] & 0xFF];
+            }
+            // Candidates past the block are read again with the next one
+            base += pos;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
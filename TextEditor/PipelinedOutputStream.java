@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Pipelined Output Stream
+// Hands full blocks to a writer thread, so whatever produces the bytes,
+// such as a compressor, keeps working while earlier blocks reach disk
+class PipelinedOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int BLOCKS_IN_FLIGHT = 4;
+    private static final byte[] END = new byte[0];
+
+    private final OutputStream out;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(
+        BLOCKS_IN_FLIGHT
+    );
+    private final Thread writer;
+    private volatile IOException failure;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean closed;
+
+    PipelinedOutputStream(OutputStream out) {
+        this.out = out;
+        writer = new Thread(this::drain, "Pipelined writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void drain() {
+        try {
+            byte[] next;
+            while ((next = queue.take()) != END) {
+                // After a failure, keep taking so the producer never blocks
+                if (failure != null) continue;
+                try {
+                    out.write(next);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Write interrupted");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) pass(block);
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) pass(block);
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Queues what has been written so far without waiting for the disk
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) pass(Arrays.copyOf(block, count));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (count > 0 && failure == null) {
+                queue.put(Arrays.copyOf(block, count));
+            }
+            // Always sent, so the writer thread finishes even after a failure
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Write interrupted");
+        } finally {
+            out.close();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void pass(byte[] full) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (failure != null) throw failure;
+        try {
+            queue.put(full);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Write interrupted");
+        }
+        if (full == block) block = new byte[BLOCK_SIZE];
+        count = 0;
+    }
+}
@@ -0,0 +1,120 @@
+import java.awt.*;
+import java.awt.print.PageFormat;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+
+// Print Preview Dialog
+// Shows the pages of a paginated document; only the pages inside the
+// visible area are rendered, so previews of huge documents open at once
+class PrintPreviewDialog extends JDialog {
+
+    private static final int GAP = 16;
+    private static final double SCALE = 0.75;
+
+    private final DocumentPrinter printer;
+    private final PageFormat format;
+    private final JLabel pageLabel;
+
+    PrintPreviewDialog(Frame owner, DocumentPrinter printer, Runnable print) {
+        super(owner, "Print Preview", false);
+        this.printer = printer;
+        this.format = printer.getPageFormat(0);
+
+        PagePanel pages = new PagePanel();
+        JScrollPane scrollPane = new JScrollPane(pages);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(24);
+        scrollPane.getViewport().addChangeListener(e -> updatePageLabel(pages));
+
+        pageLabel = new JLabel();
+        JButton printButton = new JButton("Print...");
+        printButton.addActionListener(e -> {
+            dispose();
+            print.run();
+        });
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(printButton);
+        buttonPanel.add(closeButton);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBorder(new EmptyBorder(4, 12, 4, 4));
+        bottomPanel.add(pageLabel, BorderLayout.WEST);
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+
+        setLayout(new BorderLayout());
+        add(scrollPane, BorderLayout.CENTER);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        setSize(
+            (int) (format.getWidth() * SCALE) + 2 * GAP + 40,
+            Math.min(900, (int) (format.getHeight() * SCALE) + 2 * GAP + 80)
+        );
+        setLocationRelativeTo(owner);
+        updatePageLabel(pages);
+    }
+
+    private void updatePageLabel(PagePanel pages) {
+        Rectangle visible = pages.getVisibleRect();
+        int page = pages.pageAt(visible.y + visible.height / 2);
+        pageLabel.setText(
+            "Page " + (page + 1) + " of " + printer.getNumberOfPages()
+        );
+    }
+
+    private class PagePanel extends JPanel {
+
+        private final int pageWidth = (int) (format.getWidth() * SCALE);
+        private final int pageHeight = (int) (format.getHeight() * SCALE);
+
+        PagePanel() {
+            setBackground(Color.GRAY);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int pages = printer.getNumberOfPages();
+            return new Dimension(
+                pageWidth + 2 * GAP,
+                pages * (pageHeight + GAP) + GAP
+            );
+        }
+
+        int pageAt(int y) {
+            int page = (y - GAP) / (pageHeight + GAP);
+            return Math.max(0, Math.min(printer.getNumberOfPages() - 1, page));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Rectangle clip = g.getClipBounds();
+            int x = Math.max(GAP, (getWidth() - pageWidth) / 2);
+            int first = pageAt(clip.y);
+            int last = pageAt(clip.y + clip.height);
+
+            for (int i = first; i <= last; i++) {
+                int y = GAP + i * (pageHeight + GAP);
+                g.setColor(Color.WHITE);
+                g.fillRect(x, y, pageWidth, pageHeight);
+                g.setColor(Color.DARK_GRAY);
+                g.drawRect(x - 1, y - 1, pageWidth + 1, pageHeight + 1);
+
+                Graphics2D page = (Graphics2D) g.create(
+                    x,
+                    y,
+                    pageWidth,
+                    pageHeight
+                );
+                page.setRenderingHint(
+                    RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+                );
+                page.scale(SCALE, SCALE);
+                printer.print(page, format, i);
+                page.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+// Quick Open Dialog
+// Type part of a path to find files under the quick-open folders. Every
+// keystroke starts a search on a background thread and supersedes the
+// one before it; results replace the list when they arrive.
+class QuickOpenDialog extends JDialog {
+
+    private static final int MAX_RESULTS = 50;
+    private static final ExecutorService SEARCH_EXECUTOR =
+        Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Quick open");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final FileIndex index = FileIndex.getInstance();
+    private final Consumer<File> opener;
+    private final JTextField queryField = new JTextField();
+    private final DefaultListModel<FileIndex.Match> results =
+        new DefaultListModel<>();
+    private final JList<FileIndex.Match> resultList = new JList<>(results);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ChangeListener indexListener = e -> search();
+
+    QuickOpenDialog(Frame owner, Consumer<File> opener) {
+        super(owner, "Quick Open", false);
+        this.opener = opener;
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+        queryField.getDocument().addDocumentListener(
+            new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    search();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    search();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {}
+            }
+        );
+        // The list is driven from the query field
+        bind("UP", () -> moveSelection(-1));
+        bind("DOWN", () -> moveSelection(1));
+        bind("PAGE_UP", () -> moveSelection(-10));
+        bind("PAGE_DOWN", () -> moveSelection(10));
+        bind("ENTER", this::openSelected);
+        getRootPane()
+            .registerKeyboardAction(
+                e -> dispose(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                JComponent.WHEN_IN_FOCUSED_WINDOW
+            );
+
+        resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultList.setFocusable(false);
+        resultList.setCellRenderer(new MatchRenderer());
+        resultList.addMouseListener(
+            new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() == 2) openSelected();
+                }
+            }
+        );
+
+        JButton addButton = new JButton("Add Folder...");
+        addButton.addActionListener(e -> addFolder());
+        JButton removeButton = new JButton("Remove Folder...");
+        removeButton.addActionListener(e -> removeFolder());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        buttons.add(addButton);
+        buttons.add(removeButton);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBorder(new EmptyBorder(4, 8, 4, 4));
+        bottomPanel.add(statusLabel, BorderLayout.CENTER);
+        bottomPanel.add(buttons, BorderLayout.EAST);
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.setBorder(new EmptyBorder(8, 8, 8, 8));
+        topPanel.add(queryField, BorderLayout.CENTER);
+
+        JScrollPane scrollPane = new JScrollPane(resultList);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+
+        setLayout(new BorderLayout());
+        add(topPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        add(bottomPanel, BorderLayout.SOUTH);
+        setSize(640, 420);
+        setLocationRelativeTo(owner);
+
+        // New paths show up in an open palette too
+        index.addChangeListener(indexListener);
+        addWindowListener(
+            new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    generation.incrementAndGet();
+                    index.removeChangeListener(indexListener);
+                }
+            }
+        );
+        search();
+    }
+
+    private void bind(String key, Runnable action) {
+        queryField.getInputMap().put(KeyStroke.getKeyStroke(key), key);
+        queryField
+            .getActionMap()
+            .put(
+                key,
+                new AbstractAction() {
+                    @Override
+                    public void actionPerformed(java.awt.event.ActionEvent e) {
+                        action.run();
+                    }
+                }
+            );
+    }
+
+    private void search() {
+        int request = generation.incrementAndGet();
+        String query = queryField.getText();
+        if (query.trim().isEmpty()) {
+            results.clear();
+            showIndexStatus();
+            return;
+        }
+        SEARCH_EXECUTOR.execute(() -> {
+            if (generation.get() != request) return;
+            long start = System.nanoTime();
+            FileIndex.Result result = index.search(
+                query,
+                MAX_RESULTS,
+                () -> generation.get() != request
+            );
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (result == null) return;
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() == request) showResult(result, millis);
+            });
+        });
+    }
+
+    private void showResult(FileIndex.Result result, long millis) {
+        results.clear();
+        for (FileIndex.Match match : result.matches) {
+            results.addElement(match);
+        }
+        if (!results.isEmpty()) resultList.setSelectedIndex(0);
+        String status = String.format(
+            "%,d of %,d files match (%d ms)",
+            result.total,
+            index.getFileCount(),
+            millis
+        );
+        if (index.isWalking()) status += " | indexing...";
+        statusLabel.setText(status);
+    }
+
+    private void showIndexStatus() {
+        if (index.getFolders().isEmpty()) {
+            statusLabel.setText("Add a folder to search the files in it");
+        } else if (index.isWalking()) {
+            statusLabel.setText(
+                String.format("Indexing... %,d files", index.getFileCount())
+            );
+        } else {
+            statusLabel.setText(
+                String.format("%,d files", index.getFileCount())
+            );
+        }
+    }
+
+    private void moveSelection(int delta) {
+        int size = results.getSize();
+        if (size == 0) return;
+        int selected = resultList.getSelectedIndex();
+        int next = Math.max(0, Math.min(size - 1, selected + delta));
+        resultList.setSelectedIndex(next);
+        resultList.ensureIndexIsVisible(next);
+    }
+
+    private void openSelected() {
+        FileIndex.Match match = resultList.getSelectedValue();
+        if (match == null) return;
+        dispose();
+        opener.accept(match.file);
+    }
+
+    private void addFolder() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Add Folder to Quick Open");
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            index.addFolder(chooser.getSelectedFile());
+            queryField.requestFocusInWindow();
+        }
+    }
+
+    private void removeFolder() {
+        List<File> folders = index.getFolders();
+        if (folders.isEmpty()) return;
+        Object choice = JOptionPane.showInputDialog(
+            this,
+            "Stop indexing:",
+            "Remove Folder",
+            JOptionPane.PLAIN_MESSAGE,
+            null,
+            folders.toArray(),
+            folders.get(0)
+        );
+        if (choice instanceof File) {
+            index.removeFolder((File) choice);
+        }
+    }
+
+    // File name first, then the folder it is in, dimmed
+    private static class MatchRenderer extends DefaultListCellRenderer {
+
+        @Override
+        public Component getListCellRendererComponent(
+            JList<?> list,
+            Object value,
+            int index,
+            boolean isSelected,
+            boolean cellHasFocus
+        ) {
+            super.getListCellRendererComponent(
+                list,
+                value,
+                index,
+                isSelected,
+                cellHasFocus
+            );
+            FileIndex.Match match = (FileIndex.Match) value;
+            int slash = match.path.lastIndexOf('/');
+            String name = match.path.substring(slash + 1);
+            String dir = slash >= 0 ? match.path.substring(0, slash) : "";
+            setText(
+                "<html><b>" +
+                escape(name) +
+                "</b>&nbsp;&nbsp;<font color='gray'>" +
+                escape(dir) +
+                "</font></html>"
+            );
+            setToolTipText(match.file.getPath());
+            setBorder(new EmptyBorder(2, 8, 2, 8));
+            return this;
+        }
+
+        private static String escape(String text) {
+            return text
+                .replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;");
+        }
+    }
+}
@@ -1,20 +1,41 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.print.PrinterException;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.PrinterJob;
 import java.io.*;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+import javax.print.DocFlavor;
+import javax.print.SimpleDoc;
+import javax.print.StreamPrintServiceFactory;
+import javax.print.attribute.HashPrintRequestAttributeSet;
+import javax.print.attribute.PrintRequestAttributeSet;
+import javax.print.attribute.standard.PageRanges;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import javax.swing.event.UndoableEditListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Element;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Highlighter;
+import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoManager;
 
 public class RetroTextEditor extends JFrame {
@@ -33,13 +54,31 @@ public class RetroTextEditor extends JFrame {
     private static final Color LINE_NUMBER_FG = new Color(128, 128, 128);
     private static final Color STATUS_BG = new Color(242, 242, 242);
     private static final Color TOOLBAR_BG = new Color(245, 245, 245);
+    private static final Color ADDED_MARKER = new Color(90, 180, 90);
+    private static final Color CHANGED_MARKER = new Color(90, 140, 220);
+    private static final Color DELETED_MARKER = new Color(220, 80, 80);
+
+    // Preferred fonts, in order
+    private static final String[] SYSTEM_FONTS = {
+        ".SF NS Text",
+        "San Francisco",
+        "Helvetica Neue",
+        "Lucida Grande",
+    };
+    private static final String[] MONO_FONTS = {
+        "SF Mono",
+        "Monaco",
+        "Menlo",
+        "Courier New",
+    };
 
     // Components
-    private JTextArea textArea;
-    private JTextArea lineNumbers;
+    private EditorTextArea textArea;
+    private LineNumberGutter lineNumbers;
     private JScrollPane scrollPane;
     private JFileChooser fileChooser;
     private JLabel statusLabel;
+    private TaskIndicator taskIndicator;
     private JToolBar toolBar;
 
     // File management
@@ -58,6 +97,54 @@ public class RetroTextEditor extends JFrame {
     private javax.swing.Timer autoSaveTimer;
     private boolean autoSaveEnabled = true;
 
+    // Session
+    private static final List<RetroTextEditor> openEditors =
+        new ArrayList<>();
+    private static RetroTextEditor activeEditor;
+    // False in an editor started just to wait on files, so it leaves the
+    // saved session alone
+    private static boolean keepSession = true;
+    private DocumentChangeBus changeBus;
+    private JCheckBoxMenuItem wordWrapItem;
+    private LineIndex diskLineIndex;
+    // False once a save has written the file differently from the text
+    private boolean diskMatchesText = true;
+    private DeltaSave deltaSave;
+    private long diskFileSize;
+    private long diskLastModified;
+    private long wordCount;
+    private javax.swing.Timer statisticsTimer;
+    private HexView hexView;
+    private JCheckBoxMenuItem hexViewItem;
+    private byte[] hexPattern;
+    private TextSnapshot savedText;
+    private javax.swing.Timer changeMarkerTimer;
+    private final Object changeMarkerKey = new Object();
+    private LineFilterView lineFilterView;
+    private javax.swing.Timer lineFilterTimer;
+    private int loadRequest;
+    private final Object loadKey = new Object();
+    private final Object statisticsKey = new Object();
+    private SaveWorker pendingSave;
+    private boolean pasting;
+    private StructureIndex structureIndex;
+    private DocumentAnalyzer structureAnalyzer;
+    private BracketHighlighter bracketHighlighter;
+    private final WordIndex wordIndex = new WordIndex();
+    // Run when the window closes or its document is replaced, e.g. to
+    // release a launch waiting on it
+    private final List<Runnable> closeActions = new ArrayList<>();
+
+    // Words of recent files that are not open, read once per version of
+    // each file; only touched on the EDT
+    private static final Map<String, RecentWords> recentWords =
+        new HashMap<>();
+    private static final long MAX_COMPLETION_FILE = 16L * 1024 * 1024;
+    private static final int MAX_COMPLETIONS = 12;
+
+    // Shared by every window; only touched on the EDT
+    private static final SaveTransforms saveTransforms = SaveTransforms.load();
+
     public RetroTextEditor() {
         recentFiles = new ArrayList<>();
         loadRecentFiles();
@@ -78,41 +165,32 @@ public class RetroTextEditor extends JFrame {
             new WindowAdapter() {
                 @Override
                 public void windowClosing(WindowEvent e) {
-                    exitApplication();
+                    closeWindow();
+                }
+
+                @Override
+                public void windowActivated(WindowEvent e) {
+                    activeEditor = RetroTextEditor.this;
                 }
             }
         );
 
         setLocationRelativeTo(null);
         newDocument();
+        openEditors.add(this);
     }
 
     private void initializeComponents() {
         // Use system font
-        Font systemFont = new Font(".SF NS Text", Font.PLAIN, 14);
-        if (!systemFont.getFamily().equals(".SF NS Text")) {
-            systemFont = new Font("San Francisco", Font.PLAIN, 14);
-            if (!systemFont.getFamily().equals("San Francisco")) {
-                systemFont = new Font("Helvetica Neue", Font.PLAIN, 14);
-                if (!systemFont.getFamily().equals("Helvetica Neue")) {
-                    systemFont = new Font("Lucida Grande", Font.PLAIN, 14);
-                }
-            }
-        }
-
-        Font monoFont = new Font("SF Mono", Font.PLAIN, 14);
-        if (!monoFont.getFamily().equals("SF Mono")) {
-            monoFont = new Font("Monaco", Font.PLAIN, 14);
-            if (!monoFont.getFamily().equals("Monaco")) {
-                monoFont = new Font("Menlo", Font.PLAIN, 14);
-                if (!monoFont.getFamily().equals("Menlo")) {
-                    monoFont = new Font("Courier New", Font.PLAIN, 14);
-                }
-            }
-        }
+        Font systemFont = new Font(
+            FontCatalog.getInstance().firstAvailable(SYSTEM_FONTS),
+            Font.PLAIN,
+            14
+        );
+        Font monoFont = createDefaultMonoFont();
 
         // Main text area
-        textArea = new JTextArea();
+        textArea = new EditorTextArea();
         textArea.setFont(monoFont);
         textArea.setBackground(NATIVE_BG);
         textArea.setForeground(NATIVE_FG);
@@ -122,15 +200,30 @@ public class RetroTextEditor extends JFrame {
         textArea.setWrapStyleWord(true);
         textArea.setTabSize(4);
         textArea.setBorder(new EmptyBorder(10, 10, 10, 10));
+        textArea.addPropertyChangeListener("font", e -> {
+            if (hexView != null) hexView.setFont(textArea.getFont());
+            if (lineFilterView != null) {
+                lineFilterView.setFont(textArea.getFont());
+            }
+        });
+
+        // Keyboard paste takes the same chunked path as the menu item
+        Action pasteAction = new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                paste();
+            }
+        };
+        textArea.getActionMap().put(DefaultEditorKit.pasteAction, pasteAction);
+        textArea.getActionMap().put("paste", pasteAction);
+        bracketHighlighter = new BracketHighlighter(textArea);
 
         // Line numbers
-        lineNumbers = new JTextArea("1");
+        lineNumbers = new LineNumberGutter(textArea);
         lineNumbers.setFont(new Font(monoFont.getName(), Font.PLAIN, 13));
         lineNumbers.setBackground(LINE_NUMBER_BG);
         lineNumbers.setForeground(LINE_NUMBER_FG);
-        lineNumbers.setEditable(false);
-        lineNumbers.setFocusable(false);
-        lineNumbers.setBorder(new EmptyBorder(10, 10, 10, 5));
+        lineNumbers.setBorder(new EmptyBorder(0, 10, 0, 5));
 
         // Scroll pane
         scrollPane = new JScrollPane(textArea);
@@ -149,6 +242,13 @@ public class RetroTextEditor extends JFrame {
         statusLabel.setForeground(Color.DARK_GRAY);
         statusLabel.setBorder(new EmptyBorder(5, 15, 5, 15));
 
+        taskIndicator = new TaskIndicator();
+        taskIndicator.setFont(statusLabel.getFont());
+        taskIndicator.setOpaque(true);
+        taskIndicator.setBackground(STATUS_BG);
+        taskIndicator.setForeground(Color.DARK_GRAY);
+        taskIndicator.setBorder(new EmptyBorder(5, 15, 5, 15));
+
         // File chooser
         fileChooser = new JFileChooser();
         fileChooser.setFileFilter(
@@ -169,33 +269,45 @@ public class RetroTextEditor extends JFrame {
     private void setupUI() {
         setLayout(new BorderLayout());
 
-        // Add document change listener
-        textArea
-            .getDocument()
-            .addDocumentListener(
-                new DocumentListener() {
-                    @Override
-                    public void insertUpdate(DocumentEvent e) {
-                        documentChanged();
-                    }
+        // Edits reach the editor's own reactions through the change bus,
+        // batched like those of any other analyzer
+        changeBus = new DocumentChangeBus(getEditorDocument());
+        changeBus.register(
+            DocumentAnalyzer.of("Editor state", batch -> {
+                if (!batch.reset) documentChanged();
+            }),
+            DocumentChangeBus.EDT
+        );
+        // Completion words are recounted from each batch's range alone
+        changeBus.register(
+            DocumentAnalyzer.of("Word completion", wordIndex::update),
+            DocumentChangeBus.BACKGROUND
+        );
 
-                    @Override
-                    public void removeUpdate(DocumentEvent e) {
-                        documentChanged();
-                    }
+        // Word counts are refreshed once typing pauses
+        statisticsTimer = new javax.swing.Timer(300, e -> updateStatistics());
+        statisticsTimer.setRepeats(false);
 
-                    @Override
-                    public void changedUpdate(DocumentEvent e) {
-                        documentChanged();
-                    }
-                }
-            );
+        // Change markers follow edits once typing pauses
+        changeMarkerTimer = new javax.swing.Timer(1000, e ->
+            refreshChangeMarkers()
+        );
+        changeMarkerTimer.setRepeats(false);
+
+        // An open line filter rescans once edits pause
+        lineFilterTimer = new javax.swing.Timer(300, e -> refreshLineFilter());
+        lineFilterTimer.setRepeats(false);
 
         // Add caret listener for status updates
         textArea.addCaretListener(e -> updateStatusBar());
 
+        JPanel statusBar = new JPanel(new BorderLayout());
+        statusBar.setBackground(STATUS_BG);
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        statusBar.add(taskIndicator, BorderLayout.EAST);
+
         add(scrollPane, BorderLayout.CENTER);
-        add(statusLabel, BorderLayout.SOUTH);
+        add(statusBar, BorderLayout.SOUTH);
     }
 
     private void setupNativeMenus() {
@@ -212,12 +324,24 @@ public class RetroTextEditor extends JFrame {
         );
         newItem.addActionListener(e -> newDocument());
 
+        JMenuItem newWindowItem = new JMenuItem("New Window");
+        newWindowItem.addActionListener(e -> newWindow());
+
         JMenuItem openItem = new JMenuItem("Open...");
         openItem.setAccelerator(
             KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.META_DOWN_MASK)
         );
         openItem.addActionListener(e -> openFile());
 
+        JMenuItem quickOpenItem = new JMenuItem("Quick Open...");
+        quickOpenItem.setAccelerator(
+            KeyStroke.getKeyStroke(
+                KeyEvent.VK_O,
+                InputEvent.META_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK
+            )
+        );
+        quickOpenItem.addActionListener(e -> showQuickOpen());
+
         JMenu recentMenu = new JMenu("Recent Files");
         updateRecentFilesMenu(recentMenu);
 
@@ -242,14 +366,33 @@ public class RetroTextEditor extends JFrame {
         );
         printItem.addActionListener(e -> printDocument());
 
+        JMenuItem printPreviewItem = new JMenuItem("Print Preview...");
+        printPreviewItem.addActionListener(e -> showPrintPreview());
+
+        JMenu exportMenu = new JMenu("Export");
+        JMenuItem exportPdfItem = new JMenuItem("PDF...");
+        exportPdfItem.addActionListener(e ->
+            exportDocument("PDF", "application/pdf", "pdf")
+        );
+        JMenuItem exportPostScriptItem = new JMenuItem("PostScript...");
+        exportPostScriptItem.addActionListener(e ->
+            exportDocument("PostScript", "application/postscript", "ps")
+        );
+        exportMenu.add(exportPdfItem);
+        exportMenu.add(exportPostScriptItem);
+
         fileMenu.add(newItem);
+        fileMenu.add(newWindowItem);
         fileMenu.add(openItem);
+        fileMenu.add(quickOpenItem);
         fileMenu.add(recentMenu);
         fileMenu.addSeparator();
         fileMenu.add(saveItem);
         fileMenu.add(saveAsItem);
         fileMenu.addSeparator();
+        fileMenu.add(printPreviewItem);
         fileMenu.add(printItem);
+        fileMenu.add(exportMenu);
 
         // Edit Menu
         JMenu editMenu = new JMenu("Edit");
@@ -286,7 +429,13 @@ public class RetroTextEditor extends JFrame {
         pasteItem.setAccelerator(
             KeyStroke.getKeyStroke(KeyEvent.VK_V, InputEvent.META_DOWN_MASK)
         );
-        pasteItem.addActionListener(e -> textArea.paste());
+        pasteItem.addActionListener(e -> paste());
+
+        JMenuItem completeItem = new JMenuItem("Complete Word");
+        completeItem.setAccelerator(
+            KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, InputEvent.CTRL_DOWN_MASK)
+        );
+        completeItem.addActionListener(e -> completeWord());
 
         JMenuItem selectAllItem = new JMenuItem("Select All");
         selectAllItem.setAccelerator(
@@ -306,28 +455,42 @@ public class RetroTextEditor extends JFrame {
         );
         goToLineItem.addActionListener(e -> showGoToLine());
 
+        JMenuItem filterLinesItem = new JMenuItem("Filter Lines...");
+        filterLinesItem.setAccelerator(
+            KeyStroke.getKeyStroke(
+                KeyEvent.VK_F,
+                InputEvent.META_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK
+            )
+        );
+        filterLinesItem.addActionListener(e -> showLineFilter());
+
         editMenu.add(undoItem);
         editMenu.add(redoItem);
         editMenu.addSeparator();
         editMenu.add(cutItem);
         editMenu.add(copyItem);
         editMenu.add(pasteItem);
+        editMenu.add(completeItem);
         editMenu.addSeparator();
         editMenu.add(selectAllItem);
         editMenu.addSeparator();
         editMenu.add(findItem);
         editMenu.add(goToLineItem);
+        editMenu.add(filterLinesItem);
 
         // View Menu
         JMenu viewMenu = new JMenu("View");
         viewMenu.setMnemonic('V');
 
-        JCheckBoxMenuItem wordWrapItem = new JCheckBoxMenuItem(
+        wordWrapItem = new JCheckBoxMenuItem(
             "Word Wrap",
             wordWrap
         );
         wordWrapItem.addActionListener(e -> toggleWordWrap());
 
+        hexViewItem = new JCheckBoxMenuItem("Hex View", false);
+        hexViewItem.addActionListener(e -> toggleHexView());
+
         JMenuItem zoomInItem = new JMenuItem("Zoom In");
         zoomInItem.setAccelerator(
             KeyStroke.getKeyStroke(KeyEvent.VK_PLUS, InputEvent.META_DOWN_MASK)
@@ -346,7 +509,29 @@ public class RetroTextEditor extends JFrame {
         );
         resetZoomItem.addActionListener(e -> resetZoom());
 
+        JMenuItem toggleFoldItem = new JMenuItem("Toggle Fold");
+        toggleFoldItem.setAccelerator(
+            KeyStroke.getKeyStroke(
+                KeyEvent.VK_PERIOD,
+                InputEvent.META_DOWN_MASK | InputEvent.ALT_DOWN_MASK
+            )
+        );
+        toggleFoldItem.addActionListener(e -> toggleFold());
+
+        JMenuItem foldAllItem = new JMenuItem("Fold All");
+        foldAllItem.addActionListener(e -> {
+            if (textArea.canFold()) textArea.getFolds().collapseAll();
+        });
+
+        JMenuItem unfoldAllItem = new JMenuItem("Unfold All");
+        unfoldAllItem.addActionListener(e -> textArea.getFolds().expandAll());
+
         viewMenu.add(wordWrapItem);
+        viewMenu.add(hexViewItem);
+        viewMenu.addSeparator();
+        viewMenu.add(toggleFoldItem);
+        viewMenu.add(foldAllItem);
+        viewMenu.add(unfoldAllItem);
         viewMenu.addSeparator();
         viewMenu.add(zoomInItem);
         viewMenu.add(zoomOutItem);
@@ -369,6 +554,10 @@ public class RetroTextEditor extends JFrame {
         dateTimeItem.addActionListener(e -> insertDateTime());
 
         formatMenu.add(fontItem);
+        formatMenu.add(createSaveTransformsMenu());
+        formatMenu.addSeparator();
+        formatMenu.add(createStructuredMenu(StructuredFormat.Language.JSON));
+        formatMenu.add(createStructuredMenu(StructuredFormat.Language.XML));
         formatMenu.addSeparator();
         formatMenu.add(dateTimeItem);
 
@@ -379,15 +568,67 @@ public class RetroTextEditor extends JFrame {
         JMenuItem wordCountItem = new JMenuItem("Word Count");
         wordCountItem.addActionListener(e -> showWordCount());
 
+        JMenuItem analysisItem = new JMenuItem("Document Analysis...");
+        analysisItem.addActionListener(e -> showDocumentAnalysis());
+
         JCheckBoxMenuItem autoSaveItem = new JCheckBoxMenuItem(
             "Auto Save",
             autoSaveEnabled
         );
         autoSaveItem.addActionListener(e -> toggleAutoSave());
 
+        JMenuItem compareSavedItem = new JMenuItem("Compare with Saved");
+        compareSavedItem.addActionListener(e -> compareWithSaved());
+
+        JMenuItem compareFilesItem = new JMenuItem("Compare Files...");
+        compareFilesItem.addActionListener(e -> compareFiles());
+
+        JMenuItem analyzerTimingsItem = new JMenuItem("Analyzer Timings");
+        analyzerTimingsItem.addActionListener(e -> showAnalyzerTimings());
+
+        JMenu linesMenu = new JMenu("Lines");
+        addLineOperation(linesMenu, "Sort Ascending", (lines, cancelled) ->
+            LineOperations.sort(lines, false, false, cancelled)
+        );
+        addLineOperation(linesMenu, "Sort Descending", (lines, cancelled) ->
+            LineOperations.sort(lines, true, false, cancelled)
+        );
+        addLineOperation(
+            linesMenu,
+            "Sort Ignoring Case",
+            (lines, cancelled) ->
+                LineOperations.sort(lines, false, true, cancelled)
+        );
+        linesMenu.addSeparator();
+        addLineOperation(
+            linesMenu,
+            "Remove Duplicate Lines",
+            LineOperations::removeDuplicates
+        );
+        addLineOperation(
+            linesMenu,
+            "Reverse Lines",
+            LineOperations::reverse
+        );
+        addLineOperation(linesMenu, "Shuffle Lines", (lines, cancelled) ->
+            LineOperations.shuffle(lines, new Random(), cancelled)
+        );
+        linesMenu.addSeparator();
+        addLineOperation(
+            linesMenu,
+            "Trim Trailing Whitespace",
+            LineOperations::trimTrailingWhitespace
+        );
+
         toolsMenu.add(wordCountItem);
+        toolsMenu.add(analysisItem);
+        toolsMenu.add(linesMenu);
+        toolsMenu.addSeparator();
+        toolsMenu.add(compareSavedItem);
+        toolsMenu.add(compareFilesItem);
         toolsMenu.addSeparator();
         toolsMenu.add(autoSaveItem);
+        toolsMenu.add(analyzerTimingsItem);
 
         menuBar.add(fileMenu);
         menuBar.add(editMenu);
@@ -398,6 +639,122 @@ public class RetroTextEditor extends JFrame {
         setJMenuBar(menuBar);
     }
 
+    // Settings are shared, so the items are brought up to date with
+    // changes made from other windows whenever the menu opens
+    private JMenu createSaveTransformsMenu() {
+        JMenu menu = new JMenu("On Save");
+        JCheckBoxMenuItem trimItem = new JCheckBoxMenuItem(
+            "Trim Trailing Whitespace"
+        );
+        trimItem.addActionListener(e -> {
+            saveTransforms.trimTrailingWhitespace = trimItem.isSelected();
+            saveTransforms.save();
+        });
+        JCheckBoxMenuItem tabsItem = new JCheckBoxMenuItem(
+            "Convert Tabs to Spaces"
+        );
+        tabsItem.addActionListener(e -> {
+            saveTransforms.expandTabs = tabsItem.isSelected();
+            saveTransforms.save();
+        });
+        JCheckBoxMenuItem newlineItem = new JCheckBoxMenuItem(
+            "Ensure Final Newline"
+        );
+        newlineItem.addActionListener(e -> {
+            saveTransforms.ensureFinalNewline = newlineItem.isSelected();
+            saveTransforms.save();
+        });
+
+        JMenu endingsMenu = new JMenu("Line Endings");
+        ButtonGroup endings = new ButtonGroup();
+        Map<SaveTransforms.LineEnding, JRadioButtonMenuItem> endingItems =
+            new EnumMap<>(SaveTransforms.LineEnding.class);
+        SaveTransforms.LineEnding[] lineEndings =
+            SaveTransforms.LineEnding.values();
+        for (SaveTransforms.LineEnding ending : lineEndings) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(ending.label);
+            item.addActionListener(e -> {
+                saveTransforms.lineEnding = ending;
+                saveTransforms.save();
+            });
+            endings.add(item);
+            endingsMenu.add(item);
+            endingItems.put(ending, item);
+        }
+
+        JMenu encodingMenu = new JMenu("Encoding");
+        ButtonGroup encodings = new ButtonGroup();
+        Map<Charset, JRadioButtonMenuItem> encodingItems = new HashMap<>();
+        for (String name : SaveTransforms.ENCODINGS) {
+            if (!Charset.isSupported(name)) continue;
+            Charset charset = Charset.forName(name);
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(name);
+            item.addActionListener(e -> {
+                saveTransforms.charset = charset;
+                saveTransforms.save();
+            });
+            encodings.add(item);
+            encodingMenu.add(item);
+            encodingItems.put(charset, item);
+        }
+
+        menu.addMenuListener(
+            new MenuListener() {
+                @Override
+                public void menuSelected(MenuEvent e) {
+                    trimItem.setSelected(saveTransforms.trimTrailingWhitespace);
+                    tabsItem.setSelected(saveTransforms.expandTabs);
+                    newlineItem.setSelected(saveTransforms.ensureFinalNewline);
+                    endingItems
+                        .get(saveTransforms.lineEnding)
+                        .setSelected(true);
+                    JRadioButtonMenuItem encoding = encodingItems.get(
+                        saveTransforms.charset
+                    );
+                    if (encoding != null) {
+                        encoding.setSelected(true);
+                    } else {
+                        encodings.clearSelection();
+                    }
+                }
+
+                @Override
+                public void menuDeselected(MenuEvent e) {}
+
+                @Override
+                public void menuCanceled(MenuEvent e) {}
+            }
+        );
+
+        menu.add(trimItem);
+        menu.add(tabsItem);
+        menu.add(newlineItem);
+        menu.addSeparator();
+        menu.add(endingsMenu);
+        menu.add(encodingMenu);
+        return menu;
+    }
+
+    private JMenu createStructuredMenu(StructuredFormat.Language language) {
+        JMenu menu = new JMenu(language.name());
+        for (StructuredFormat.Mode mode : StructuredFormat.Mode.values()) {
+            JMenuItem item = new JMenuItem(mode.label);
+            item.addActionListener(e -> formatStructured(language, mode));
+            menu.add(item);
+        }
+        return menu;
+    }
+
+    private void addLineOperation(
+        JMenu menu,
+        String name,
+        LineOperations.Operation operation
+    ) {
+        JMenuItem item = new JMenuItem(name);
+        item.addActionListener(e -> runLineOperation(name, operation));
+        menu.add(item);
+    }
+
     private void setupToolbar() {
         toolBar = new JToolBar();
         toolBar.setBackground(TOOLBAR_BG);
@@ -503,8 +860,13 @@ public class RetroTextEditor extends JFrame {
 
     private void setupAutoSave() {
         autoSaveTimer = new javax.swing.Timer(30000, e -> {
-            if (autoSaveEnabled && isModified && currentFile != null) {
-                saveFile();
+            if (
+                autoSaveEnabled &&
+                isModified &&
+                currentFile != null &&
+                hexView == null
+            ) {
+                saveToFile(currentFile, TaskManager.Priority.BACKGROUND);
                 updateStatusWithMessage("Auto-saved");
             }
         });
@@ -534,8 +896,14 @@ public class RetroTextEditor extends JFrame {
             isModified = true;
             updateTitle();
         }
-        updateLineNumbers();
         updateStatusBar();
+        statisticsTimer.restart();
+        if (savedText != null) {
+            changeMarkerTimer.restart();
+        }
+        if (lineFilterView != null) {
+            lineFilterTimer.restart();
+        }
     }
 
     private void updateTitle() {
@@ -551,35 +919,28 @@ public class RetroTextEditor extends JFrame {
         setTitle(title);
     }
 
-    private void updateLineNumbers() {
-        String text = textArea.getText();
-        int lineCount = text.isEmpty() ? 1 : text.split("\n", -1).length;
-
-        StringBuilder sb = new StringBuilder();
-        for (int i = 1; i <= lineCount; i++) {
-            sb.append(i).append("\n");
-        }
-
-        lineNumbers.setText(sb.toString());
-    }
-
     private void updateStatusBar() {
+        if (hexView != null) {
+            updateHexStatusBar();
+            return;
+        }
         try {
             int pos = textArea.getCaretPosition();
             int line = textArea.getLineOfOffset(pos) + 1;
             int col = pos - textArea.getLineStartOffset(line - 1) + 1;
 
-            String text = textArea.getText();
-            int length = text.length();
-            int words = countWords(text);
-
             String status = String.format(
                 " Line: %d, Col: %d | Length: %d | Words: %d",
                 line,
                 col,
-                length,
-                words
+                textArea.getDocument().getLength(),
+                wordCount
             );
+            Document doc = textArea.getDocument();
+            if (doc instanceof EditorDocument) {
+                long footprint = ((EditorDocument) doc).getFootprint();
+                status += " | Memory: " + formatBytes(footprint);
+            }
 
             if (isModified) {
                 status = " Modified |" + status;
@@ -593,6 +954,28 @@ public class RetroTextEditor extends JFrame {
         }
     }
 
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%d KB", (bytes + 1023) / 1024);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private void updateHexStatusBar() {
+        MappedFile data = hexView.getData();
+        long caret = hexView.getCaret();
+        String status = String.format(
+            " Offset: 0x%X (%d) | Size: %d bytes",
+            caret,
+            caret,
+            data.size()
+        );
+        if (!data.isWritable()) {
+            status += " | Read-only";
+        }
+        statusLabel.setText((isModified ? " Modified |" : " Ready |") + status);
+    }
+
     private void updateStatusWithMessage(String message) {
         String originalText = statusLabel.getText();
         statusLabel.setText(originalText + " (" + message + ")");
@@ -604,18 +987,61 @@ public class RetroTextEditor extends JFrame {
         timer.start();
     }
 
-    private int countWords(String text) {
-        if (text.trim().isEmpty()) return 0;
-        return text.trim().split("\\s+").length;
+    // Counts words in the background; a count for a version that has
+    // since been edited is dropped, as the timer will ask again
+    private void updateStatistics() {
+        EditorDocument document = getEditorDocument();
+        EditorDocument.Version version = document.getVersion();
+        TaskManager.getInstance().submitCancellable(
+            "Counting words",
+            TaskManager.Priority.IDLE,
+            statisticsKey,
+            null,
+            new SwingWorker<TextStatistics, Void>() {
+                @Override
+                protected TextStatistics doInBackground() {
+                    return statisticsOf(version.text);
+                }
+
+                @Override
+                protected void done() {
+                    if (isCancelled()) return;
+                    if (textArea.getDocument() != document) return;
+                    if (!document.isCurrent(version)) return;
+                    try {
+                        wordCount = get().getWords();
+                    } catch (ExecutionException e) {
+                        return;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    updateStatusBar();
+                }
+            }
+        );
+    }
+
+    // Reads the current version in place instead of copying it
+    private TextStatistics getDocumentStatistics() {
+        return statisticsOf(getEditorDocument().getVersion().text);
+    }
+
+    private static TextStatistics statisticsOf(TextRope text) {
+        TextStatistics stats = new TextStatistics();
+        text.forEachChunk(stats::accept);
+        return stats;
     }
 
     // File operations
     private void newDocument() {
         if (checkSaveChanges()) {
-            textArea.setText("");
+            documentClosed();
+            closeHexView();
+            installDocument(new EditorDocument());
             currentFile = null;
             isModified = false;
-            undoManager.discardAllEdits();
+            updateCodeStructure();
             updateTitle();
             updateStatusBar();
         }
@@ -632,27 +1058,114 @@ public class RetroTextEditor extends JFrame {
     }
 
     private void loadFile(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder content = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+        documentClosed();
+        try {
+            if (DocumentLoader.isBinary(file)) {
+                openHexView(file);
+                return;
             }
-
-            textArea.setText(content.toString());
-            currentFile = file;
-            isModified = false;
-            undoManager.discardAllEdits();
-            updateTitle();
-            updateStatusBar();
-            addToRecentFiles(file.getAbsolutePath());
         } catch (IOException e) {
             showError("Error opening file: " + e.getMessage());
+            return;
         }
+        loadTextFile(file);
+    }
+
+    // Reads the file on a background thread; compressed files are
+    // decompressed as they stream in, never unpacked to disk
+    private void loadTextFile(File file) {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        int request = ++loadRequest;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        textArea.setEditable(false);
+        statusLabel.setText(" Opening " + file.getName() + "...");
+
+        TaskManager.getInstance().submitCancellable(
+            "Opening " + file.getName(),
+            TaskManager.Priority.INTERACTIVE,
+            loadKey,
+            cancelled,
+            new SwingWorker<DocumentLoader.Result, Void>() {
+                @Override
+                protected DocumentLoader.Result doInBackground()
+                    throws IOException {
+                    return DocumentLoader.load(
+                        file,
+                        null,
+                        cancelled::get,
+                        this::setProgress
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    // A later open has taken over
+                    if (request != loadRequest) return;
+                    textArea.setEditable(hexView == null);
+                    if (isCancelled()) {
+                        updateStatusBar();
+                        return;
+                    }
+                    try {
+                        applyLoadedDocument(file, get(), size, lastModified);
+                    } catch (ExecutionException e) {
+                        updateStatusBar();
+                        showError(
+                            "Error opening file: " + e.getCause().getMessage()
+                        );
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        );
+    }
+
+    private void applyLoadedDocument(
+        File file,
+        DocumentLoader.Result result,
+        long size,
+        long lastModified
+    ) {
+        closeHexView();
+        installDocument(result.document);
+        deltaSave.setBaseline(result.baseline);
+        currentFile = file;
+        isModified = false;
+        updateCodeStructure();
+        diskLineIndex = result.lineIndex;
+        diskMatchesText = true;
+        diskFileSize = size;
+        diskLastModified = lastModified;
+        updateTitle();
+        updateStatusBar();
+        addToRecentFiles(file.getAbsolutePath());
+    }
+
+    // Moves the editor's listeners over to a freshly loaded document
+    private void installDocument(EditorDocument document) {
+        Document old = textArea.getDocument();
+        old.removeUndoableEditListener(undoManager);
+
+        textArea.setDocument(document);
+        textArea.setTabSize(4);
+        textArea.setCaretPosition(0);
+
+        changeBus.setDocument(document);
+        if (deltaSave != null) deltaSave.dispose();
+        deltaSave = new DeltaSave(document);
+        document.addUndoableEditListener(undoManager);
+        undoManager.discardAllEdits();
+        clearChangeMarkers();
+        updateStatistics();
+        refreshLineFilter();
     }
 
     private void saveFile() {
-        if (currentFile == null) {
+        if (hexView != null) {
+            saveHexEdits();
+        } else if (currentFile == null) {
             saveFileAs();
         } else {
             saveToFile(currentFile);
@@ -674,24 +1187,194 @@ public class RetroTextEditor extends JFrame {
                     return;
                 }
             }
+            if (hexView != null) {
+                saveHexEditsAs(file);
+                return;
+            }
             saveToFile(file);
             currentFile = file;
+            updateCodeStructure();
             addToRecentFiles(file.getAbsolutePath());
         }
     }
 
+    // Writes the current version of the document in the background, so
+    // typing carries on during the save
     private void saveToFile(File file) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            writer.write(textArea.getText());
-            isModified = false;
+        saveToFile(file, TaskManager.Priority.INTERACTIVE);
+    }
+
+    private void saveToFile(File file, TaskManager.Priority priority) {
+        finishPendingSave();
+        pendingSave = new SaveWorker(file, getEditorDocument(), deltaSave);
+        TaskManager.getInstance().submit(
+            "Saving " + file.getName(),
+            priority,
+            pendingSave
+        );
+    }
+
+    // Waits for a save in progress to reach the disk, e.g. before the
+    // document is closed
+    private void finishPendingSave() {
+        if (pendingSave != null) pendingSave.finish();
+    }
+
+    private class SaveWorker
+        extends SwingWorker<SaveTransforms.Output, Void> {
+
+        private final File file;
+        private final EditorDocument document;
+        private final EditorDocument.Version version;
+        private final DeltaSave deltaSave;
+        private final DeltaSave.Save save;
+        private final SaveTransforms transforms = saveTransforms.copy();
+        private final int tabSize = textArea.getTabSize();
+        private boolean finished;
+
+        SaveWorker(File file, EditorDocument document, DeltaSave deltaSave) {
+            this.file = file;
+            this.document = document;
+            this.version = document.getVersion();
+            this.deltaSave = deltaSave;
+            this.save = deltaSave.startSave(file, version);
+        }
+
+        // A save that only patched the changes leaves the line starts to
+        // be taken from the document later
+        @Override
+        protected SaveTransforms.Output doInBackground() throws IOException {
+            if (
+                transforms.leavesUnchanged(version.text) &&
+                save.writeChanges()
+            ) {
+                return null;
+            }
+            return writeText(
+                file,
+                version.text,
+                save.fullWrite(),
+                transforms,
+                tabSize,
+                this::setProgress
+            );
+        }
+
+        @Override
+        protected void done() {
+            finish();
+        }
+
+        // Runs once, from done() or from a caller that could not wait
+        void finish() {
+            if (finished) return;
+            finished = true;
+            if (pendingSave == this) pendingSave = null;
+            // A save still waiting for a thread is written here instead;
+            // one already running is left to finish
+            run();
+
+            SaveTransforms.Output output;
+            try {
+                output = get();
+            } catch (ExecutionException e) {
+                // A failed write may have left the file half written
+                deltaSave.finishSave(save, true);
+                showError("Error saving file: " + e.getCause().getMessage());
+                return;
+            } catch (InterruptedException e) {
+                deltaSave.finishSave(save, false);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            deltaSave.finishSave(save, true);
+            if (textArea.getDocument() != document) return;
+
+            // Edits made while writing are not on disk yet
+            isModified = !document.isCurrent(version);
+            clearChangeMarkers();
+            diskLineIndex = output != null ? output.getLineIndex() : null;
+            diskMatchesText = output == null || !output.isChanged();
+            diskFileSize = file.length();
+            diskLastModified = file.lastModified();
             updateTitle();
             updateStatusBar();
+            if (output != null && output.getUnencodable() > 0) {
+                showError(
+                    String.format(
+                        "%,d characters could not be saved in %s and were " +
+                        "replaced.",
+                        output.getUnencodable(),
+                        output.getCharset().name()
+                    )
+                );
+            }
+        }
+    }
+
+    // Streams a version to disk through the save transforms, compressed
+    // if the file is; baseline records the bytes when they are just the
+    // text's own
+    private static SaveTransforms.Output writeText(
+        File file,
+        TextRope text,
+        DeltaSave.Baseline baseline,
+        SaveTransforms transforms,
+        int tabSize,
+        IntConsumer progress
+    ) throws IOException {
+        Compression.Codec codec = Compression.forSave(file);
+        boolean exact = codec == null && transforms.leavesUnchanged(text);
+        if (!exact) baseline.invalidate();
+        SaveTransforms.Output output = transforms.open(
+            Compression.create(file, codec),
+            text,
+            tabSize
+        );
+        try (Writer writer = output) {
+            Reader reader = text.reader();
+            char[] buffer = new char[64 * 1024];
+            long written = 0;
+            int n;
+            while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+                writer.write(buffer, 0, n);
+                if (exact) baseline.add(buffer, 0, n);
+                written += n;
+                progress.accept((int) (100 * written / text.length()));
+            }
+        }
+        baseline.finish(null);
+        return output;
+    }
+
+    // Writes overwritten bytes back into the mapped file in place
+    private void saveHexEdits() {
+        try {
+            hexView.getData().save();
+        } catch (IOException e) {
+            showError("Error saving file: " + e.getMessage());
+            return;
+        }
+        isModified = false;
+        hexView.repaint();
+        updateTitle();
+        updateStatusBar();
+    }
+
+    private void saveHexEditsAs(File file) {
+        long caret = hexView.getCaret();
+        try {
+            hexView.getData().saveAs(file);
         } catch (IOException e) {
             showError("Error saving file: " + e.getMessage());
+            return;
         }
+        openHexView(file);
+        if (hexView != null) hexView.goTo(caret);
     }
 
     private boolean checkSaveChanges() {
+        finishPendingSave();
         if (!isModified) return true;
 
         String fileName = currentFile != null
@@ -706,6 +1389,7 @@ public class RetroTextEditor extends JFrame {
 
         if (choice == JOptionPane.YES_OPTION) {
             saveFile();
+            finishPendingSave();
             return !isModified;
         } else if (choice == JOptionPane.NO_OPTION) {
             return true;
@@ -808,12 +1492,15 @@ public class RetroTextEditor extends JFrame {
 
     // Edit operations
     private void undo() {
+        // A paste still streaming in is not on the undo stack yet
+        if (pasting) return;
         if (undoManager.canUndo()) {
             undoManager.undo();
         }
     }
 
     private void redo() {
+        if (pasting) return;
         if (undoManager.canRedo()) {
             undoManager.redo();
         }
@@ -821,80 +1508,1004 @@ public class RetroTextEditor extends JFrame {
 
     // View operations
     private void toggleWordWrap() {
-        wordWrap = !wordWrap;
+        setWordWrap(!wordWrap);
+    }
+
+    private void setWordWrap(boolean enabled) {
+        wordWrap = enabled;
+        wordWrapItem.setSelected(enabled);
         textArea.setLineWrap(wordWrap);
         textArea.setWrapStyleWord(wordWrap);
+        if (enabled && textArea.isLongLineMode()) {
+            updateStatusWithMessage("Word wrap is off for very long lines");
+        }
     }
 
-    private void zoomIn() {
-        Font currentFont = textArea.getFont();
-        Font newFont = currentFont.deriveFont(currentFont.getSize() + 2f);
-        textArea.setFont(newFont);
-        lineNumbers.setFont(newFont.deriveFont(newFont.getSize() - 1f));
+    private void toggleHexView() {
+        if (hexView != null) {
+            File file = currentFile;
+            if (checkSaveChanges()) {
+                loadTextFile(file);
+            }
+        } else if (currentFile == null) {
+            showError("Save the document before viewing it as hex.");
+        } else if (checkSaveChanges()) {
+            openHexView(currentFile);
+        }
+        hexViewItem.setSelected(hexView != null);
     }
 
-    private void zoomOut() {
-        Font currentFont = textArea.getFont();
-        if (currentFont.getSize() > 8) {
-            Font newFont = currentFont.deriveFont(currentFont.getSize() - 2f);
-            textArea.setFont(newFont);
-            lineNumbers.setFont(newFont.deriveFont(newFont.getSize() - 1f));
+    // Shows a file in the hex view; the file is mapped, not loaded, so
+    // binaries of any size open at once
+    private void openHexView(File file) {
+        MappedFile data;
+        try {
+            data = MappedFile.open(file);
+        } catch (IOException e) {
+            showError("Error opening file: " + e.getMessage());
+            return;
         }
+
+        closeHexView();
+        closeLineFilter();
+        installDocument(new EditorDocument());
+        textArea.setEditable(false);
+
+        hexView = new HexView(data, textArea.getFont());
+        hexView.addChangeListener(e -> hexViewChanged());
+        showInCenter(hexView);
+        hexViewItem.setSelected(true);
+
+        currentFile = file;
+        isModified = false;
+        diskLineIndex = null;
+        updateCodeStructure();
+        updateTitle();
+        updateStatusBar();
+        addToRecentFiles(file.getAbsolutePath());
+        hexView.requestFocusInWindow();
     }
 
-    private void resetZoom() {
-        Font monoFont = new Font("SF Mono", Font.PLAIN, 14);
-        if (!monoFont.getFamily().equals("SF Mono")) {
-            monoFont = new Font("Monaco", Font.PLAIN, 14);
+    private void closeHexView() {
+        if (hexView == null) return;
+        try {
+            hexView.getData().close();
+        } catch (IOException e) {
+            // Nothing left to release
         }
-        textArea.setFont(monoFont);
-        lineNumbers.setFont(monoFont.deriveFont(13f));
+        hexView = null;
+        showInCenter(scrollPane);
+        textArea.setEditable(true);
+        hexViewItem.setSelected(false);
     }
 
-    // Dialog operations
-    private void showFindReplace() {
-        if (findReplaceDialog == null) {
-            findReplaceDialog = new FindReplaceDialog(this);
+    // Swaps the text area, hex view or line filter into the window
+    private void showInCenter(Component component) {
+        BorderLayout layout = (BorderLayout) getContentPane().getLayout();
+        Component current = layout.getLayoutComponent(BorderLayout.CENTER);
+        if (current == component) return;
+        if (current != null) remove(current);
+        add(component, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+
+    // Java files get bracket matching and folding, from a structure index
+    // that the change bus keeps up to date edit by edit
+    private void updateCodeStructure() {
+        boolean java =
+            hexView == null &&
+            currentFile != null &&
+            currentFile.getName().toLowerCase().endsWith(".java");
+        if (!java) {
+            if (structureAnalyzer == null) return;
+            changeBus.unregister(structureAnalyzer);
+            structureAnalyzer = null;
+            structureIndex = null;
+            bracketHighlighter.setIndex(null);
+            textArea.getFolds().setRegions(Collections.emptyList());
+            textArea.getFolds().expandAll();
+            lineNumbers.foldsChanged();
+            return;
         }
-        findReplaceDialog.setVisible(true);
+        if (structureAnalyzer == null) {
+            StructureIndex index = new StructureIndex();
+            structureIndex = index;
+            structureAnalyzer = DocumentAnalyzer.of("Code structure", batch -> {
+                if (index == structureIndex) codeStructureChanged(batch);
+            });
+            changeBus.register(structureAnalyzer, DocumentChangeBus.EDT);
+        }
+        structureIndex.rebuild(getEditorDocument());
+        showCodeStructure();
     }
 
-    private void showGoToLine() {
-        if (goToLineDialog == null) {
-            goToLineDialog = new GoToLineDialog(this);
+    private void codeStructureChanged(ChangeBatch batch) {
+        if (structureIndex.update(batch, getEditorDocument())) {
+            showCodeStructure();
         }
-        goToLineDialog.setVisible(true);
     }
 
-    private void findNext() {
-        if (findReplaceDialog != null) {
-            findReplaceDialog.findNext();
+    private void showCodeStructure() {
+        Element root = getEditorDocument().getDefaultRootElement();
+        textArea.getFolds().setRegions(structureIndex.getRegions(root));
+        bracketHighlighter.setIndex(structureIndex);
+        lineNumbers.foldsChanged();
+    }
+
+    // Collapses or expands the innermost region starting on or around
+    // the caret's line
+    private void toggleFold() {
+        if (!textArea.canFold()) return;
+        FoldModel folds = textArea.getFolds();
+        Element root = textArea.getDocument().getDefaultRootElement();
+        int line = root.getElementIndex(textArea.getCaretPosition());
+        FoldModel.Region region = folds.regionAt(line);
+        if (region == null) {
+            for (FoldModel.Region r : folds.getRegions()) {
+                if (r.startLine > line) break;
+                if (r.endLine >= line) region = r;
+            }
         }
+        if (region == null) return;
+        if (!folds.isCollapsed(region)) {
+            // The caret moves out of the way first, or it would reopen
+            // the fold
+            textArea.setCaretPosition(region.start);
+        }
+        folds.toggle(region);
     }
 
-    private void findPrevious() {
-        if (findReplaceDialog != null) {
-            findReplaceDialog.findPrevious();
+    // Shows only the lines matching a pattern in place of the text area;
+    // picking a line returns to it in the full text
+    private void showLineFilter() {
+        if (hexView != null) {
+            updateStatusWithMessage("Line filter is not available in hex view");
+            return;
+        }
+        if (lineFilterView == null) {
+            lineFilterView = new LineFilterView(
+                textArea.getFont(),
+                line -> {
+                    closeLineFilter();
+                    goToLine(line + 1);
+                },
+                () -> {
+                    closeLineFilter();
+                    textArea.requestFocusInWindow();
+                }
+            );
+            showInCenter(lineFilterView);
+            refreshLineFilter();
         }
+        lineFilterView.focusFilter();
     }
 
-    // Tool operations
-    private void showWordCount() {
-        String text = textArea.getText();
-        int chars = text.length();
-        int charsNoSpaces = text.replaceAll("\\s", "").length();
-        int words = countWords(text);
-        int lines = textArea.getLineCount();
+    private void refreshLineFilter() {
+        lineFilterTimer.stop();
+        if (lineFilterView != null) {
+            lineFilterView.setText(getEditorDocument().getVersion().text);
+        }
+    }
+
+    private void closeLineFilter() {
+        if (lineFilterView == null) return;
+        lineFilterView.cancel();
+        lineFilterTimer.stop();
+        lineFilterView = null;
+        showInCenter(scrollPane);
+    }
+
+    private void hexViewChanged() {
+        boolean modified = hexView.getData().isModified();
+        if (modified != isModified) {
+            isModified = modified;
+            updateTitle();
+        }
+        updateStatusBar();
+    }
+
+    private void zoomIn() {
+        Font currentFont = textArea.getFont();
+        Font newFont = currentFont.deriveFont(currentFont.getSize() + 2f);
+        textArea.setFont(newFont);
+        lineNumbers.setFont(newFont.deriveFont(newFont.getSize() - 1f));
+    }
+
+    private void zoomOut() {
+        Font currentFont = textArea.getFont();
+        if (currentFont.getSize() > 8) {
+            Font newFont = currentFont.deriveFont(currentFont.getSize() - 2f);
+            textArea.setFont(newFont);
+            lineNumbers.setFont(newFont.deriveFont(newFont.getSize() - 1f));
+        }
+    }
+
+    private void resetZoom() {
+        Font monoFont = createDefaultMonoFont();
+        textArea.setFont(monoFont);
+        lineNumbers.setFont(monoFont.deriveFont(13f));
+    }
+
+    private static Font createDefaultMonoFont() {
+        return new Font(
+            FontCatalog.getInstance().firstAvailable(MONO_FONTS),
+            Font.PLAIN,
+            14
+        );
+    }
+
+    // Dialog operations
+    private void showFindReplace() {
+        if (hexView != null) {
+            showFindBytes();
+            return;
+        }
+        if (findReplaceDialog == null) {
+            findReplaceDialog = new FindReplaceDialog(this);
+        }
+        findReplaceDialog.setVisible(true);
+    }
+
+    private void showGoToLine() {
+        if (hexView != null) {
+            showGoToOffset();
+            return;
+        }
+        if (goToLineDialog == null) {
+            goToLineDialog = new GoToLineDialog(this);
+        }
+        goToLineDialog.setVisible(true);
+    }
+
+    private void findNext() {
+        if (hexView != null) {
+            if (hexPattern != null) findNextBytes();
+        } else if (findReplaceDialog != null) {
+            findReplaceDialog.findNext();
+        }
+    }
+
+    private void findPrevious() {
+        if (hexView == null && findReplaceDialog != null) {
+            findReplaceDialog.findPrevious();
+        }
+    }
+
+    private void showFindBytes() {
+        String input = JOptionPane.showInputDialog(
+            this,
+            "Find bytes (hex such as DE AD BE EF, or \"text\"):",
+            "Find",
+            JOptionPane.QUESTION_MESSAGE
+        );
+        if (input == null) return;
+        try {
+            hexPattern = HexView.parsePattern(input);
+        } catch (IllegalArgumentException e) {
+            showError("Invalid byte pattern: " + input.trim());
+            return;
+        }
+        findNextBytes();
+    }
+
+    // Searches the mapping in the background from just past the caret
+    private void findNextBytes() {
+        statusLabel.setText(" Searching...");
+        hexView.findNext(hexPattern, message -> {
+            updateStatusBar();
+            if (message != null) updateStatusWithMessage(message);
+        });
+    }
+
+    private void showGoToOffset() {
+        String input = JOptionPane.showInputDialog(
+            this,
+            "Offset (decimal, or hex with 0x):",
+            "Go to Offset",
+            JOptionPane.QUESTION_MESSAGE
+        );
+        if (input == null) return;
+        try {
+            long offset = HexView.parseOffset(input);
+            long size = hexView.getData().size();
+            if (offset < 0 || (offset >= size && size > 0)) {
+                throw new NumberFormatException();
+            }
+            hexView.goTo(offset);
+            hexView.requestFocusInWindow();
+        } catch (NumberFormatException e) {
+            showError("Invalid offset: " + input.trim());
+        }
+    }
+
+    // Tool operations
+    private void compareWithSaved() {
+        if (hexView != null || currentFile == null) {
+            showError("The document has not been saved to a file.");
+            return;
+        }
+        File file = currentFile;
+        TextRope current = getEditorDocument().getVersion().text;
+        DiffDialog dialog = new DiffDialog(
+            this,
+            "Compare with Saved",
+            file.getName() + " (saved)",
+            file.getName() + " (current)",
+            textArea.getFont()
+        );
+        dialog.setRightLineAction(line -> goToLine(line + 1));
+        dialog.compare(
+            () -> DocumentLoader.readText(file, null),
+            () -> TextSnapshot.of(current),
+            hunks -> {
+                if (file.equals(currentFile) && hexView == null) {
+                    savedText = dialog.getLeftText();
+                    showChangeMarkers(hunks);
+                }
+            }
+        );
+    }
+
+    private void compareFiles() {
+        fileChooser.setDialogTitle("Choose the Original File");
+        int result = fileChooser.showOpenDialog(this);
+        if (result != JFileChooser.APPROVE_OPTION) {
+            fileChooser.setDialogTitle(null);
+            return;
+        }
+        File left = fileChooser.getSelectedFile();
+        fileChooser.setDialogTitle("Choose the Changed File");
+        result = fileChooser.showOpenDialog(this);
+        fileChooser.setDialogTitle(null);
+        if (result != JFileChooser.APPROVE_OPTION) return;
+        File right = fileChooser.getSelectedFile();
+
+        new DiffDialog(
+            this,
+            "Compare Files",
+            left.getName(),
+            right.getName(),
+            textArea.getFont()
+        ).compare(
+            () -> DocumentLoader.readText(left, null),
+            () -> DocumentLoader.readText(right, null),
+            hunks -> {}
+        );
+    }
+
+    // Runs a line operation in the background on the selected lines, or
+    // on the whole document, and applies the result as one undoable edit
+    private void runLineOperation(
+        String name,
+        LineOperations.Operation operation
+    ) {
+        if (hexView != null || pasting || !textArea.isEditable()) return;
+        EditorDocument doc = getEditorDocument();
+        EditorDocument.Version version = doc.getVersion();
+        Element root = doc.getDefaultRootElement();
+        boolean selection =
+            textArea.getSelectionStart() != textArea.getSelectionEnd();
+        int first = 0;
+        int last = root.getElementCount() - 1;
+        if (selection) {
+            first = root.getElementIndex(textArea.getSelectionStart());
+            last = root.getElementIndex(textArea.getSelectionEnd());
+            if (
+                last > first &&
+                root.getElement(last).getStartOffset() ==
+                textArea.getSelectionEnd()
+            ) {
+                last--;
+            }
+        }
+        // A trailing empty line stays put so the text keeps its last newline
+        Element lastLine = root.getElement(last);
+        if (
+            last > first &&
+            lastLine.getEndOffset() - lastLine.getStartOffset() == 1
+        ) {
+            last--;
+        }
+        int start = root.getElement(first).getStartOffset();
+        int end = root.getElement(last).getEndOffset() - 1;
+        TextSnapshot lines = TextSnapshot.of(doc, start, end - start);
+        int request = loadRequest;
+
+        textArea.setEditable(false);
+        statusLabel.setText(" " + name + "...");
+        AtomicBoolean cancelled = new AtomicBoolean();
+        TaskManager.getInstance().submitCancellable(
+            name,
+            TaskManager.Priority.INTERACTIVE,
+            null,
+            cancelled,
+            new SwingWorker<String, Void>() {
+                @Override
+                protected String doInBackground() {
+                    return operation.apply(lines, cancelled::get);
+                }
+
+                @Override
+                protected void done() {
+                    // A file opened meanwhile sets editing itself
+                    if (request == loadRequest && getEditorDocument() == doc) {
+                        textArea.setEditable(true);
+                    }
+                    updateStatusBar();
+                    if (isCancelled()) return;
+                    String result;
+                    try {
+                        result = get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        showError(name + " failed: " + e.getMessage());
+                        return;
+                    }
+                    if (result == null) {
+                        updateStatusWithMessage("No changes");
+                        return;
+                    }
+                    if (!doc.isCurrent(version) || getEditorDocument() != doc) {
+                        showError(
+                            name + " skipped: the text changed meanwhile"
+                        );
+                        return;
+                    }
+                    replaceAsOneEdit(start, end - start, result);
+                    if (selection) {
+                        textArea.select(start, start + result.length());
+                    } else {
+                        textArea.setCaretPosition(start);
+                    }
+                }
+            }
+        );
+    }
+
+    // Pretty-prints, minifies or validates the selection, or the whole
+    // text, in the background. A syntax error moves the caret to where
+    // parsing stopped; a result replaces the text as one undoable edit.
+    private void formatStructured(
+        StructuredFormat.Language language,
+        StructuredFormat.Mode mode
+    ) {
+        if (hexView != null || pasting || !textArea.isEditable()) return;
+        String name = mode.label + " " + language.name();
+        EditorDocument doc = getEditorDocument();
+        EditorDocument.Version version = doc.getVersion();
+        boolean selection =
+            textArea.getSelectionStart() != textArea.getSelectionEnd();
+        int start = selection ? textArea.getSelectionStart() : 0;
+        int end = selection
+            ? textArea.getSelectionEnd()
+            : version.text.length();
+        int indent = textArea.getTabSize();
+        int request = loadRequest;
+
+        textArea.setEditable(false);
+        statusLabel.setText(" " + name + "...");
+        AtomicBoolean cancelled = new AtomicBoolean();
+        TaskManager.getInstance().submitCancellable(
+            name,
+            TaskManager.Priority.INTERACTIVE,
+            null,
+            cancelled,
+            new SwingWorker<StructuredFormat.Result, Void>() {
+                @Override
+                protected StructuredFormat.Result doInBackground()
+                    throws StructuredFormat.SyntaxError {
+                    return StructuredFormat.format(
+                        version.text,
+                        start,
+                        end,
+                        language,
+                        mode,
+                        indent,
+                        cancelled::get
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    // A file opened meanwhile sets editing itself
+                    if (request == loadRequest && getEditorDocument() == doc) {
+                        textArea.setEditable(true);
+                    }
+                    updateStatusBar();
+                    if (isCancelled()) return;
+                    StructuredFormat.Result result;
+                    try {
+                        result = get();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof StructuredFormat.SyntaxError) {
+                            showSyntaxError(
+                                doc,
+                                start,
+                                (StructuredFormat.SyntaxError) cause
+                            );
+                        } else {
+                            showError(name + " failed: " + cause);
+                        }
+                        return;
+                    }
+                    if (mode == StructuredFormat.Mode.VALIDATE) {
+                        updateStatusWithMessage("Valid " + language.name());
+                        return;
+                    }
+                    if (result == null) {
+                        updateStatusWithMessage("No changes");
+                        return;
+                    }
+                    if (!doc.isCurrent(version) || getEditorDocument() != doc) {
+                        showError(
+                            name + " skipped: the text changed meanwhile"
+                        );
+                        return;
+                    }
+                    applyFormatted(doc, name, start, end, result, selection);
+                }
+            }
+        );
+    }
+
+    private void applyFormatted(
+        EditorDocument doc,
+        String name,
+        int start,
+        int end,
+        StructuredFormat.Result result,
+        boolean selection
+    ) {
+        IntConsumer finished = last -> {
+            if (selection) {
+                textArea.select(start, last);
+            } else {
+                textArea.setCaretPosition(start);
+            }
+        };
+        String first = result.next();
+        if (!result.hasMore()) {
+            replaceAsOneEdit(start, end - start, first);
+            finished.accept(start + first.length());
+            return;
+        }
+        CompoundEdit edit = new CompoundEdit();
+        try {
+            replaceInto(edit, start, end - start, first);
+        } catch (BadLocationException e) {
+            edit.end();
+            showError(name + " failed: " + e.getMessage());
+            return;
+        }
+        insertInChunks(
+            doc,
+            edit,
+            start,
+            first.length(),
+            result::next,
+            () -> {},
+            name,
+            finished
+        );
+    }
+
+    // Puts the caret where parsing stopped, given as a line and column
+    // within the text that was formatted from start
+    private void showSyntaxError(
+        EditorDocument doc,
+        int start,
+        StructuredFormat.SyntaxError error
+    ) {
+        if (getEditorDocument() != doc) return;
+        Element root = doc.getDefaultRootElement();
+        int index = Math.min(
+            root.getElementIndex(start) + error.line - 1,
+            root.getElementCount() - 1
+        );
+        Element line = root.getElement(index);
+        int lineStart = error.line == 1 ? start : line.getStartOffset();
+        int offset = Math.min(
+            lineStart + error.column - 1,
+            line.getEndOffset() - 1
+        );
+        goToLine(index + 1);
+        textArea.setCaretPosition(offset);
+        showError(
+            String.format(
+                "Line %d, column %d: %s",
+                index + 1,
+                offset - line.getStartOffset() + 1,
+                error.getMessage()
+            )
+        );
+    }
+
+    // The remove and insert of a replacement are undone together
+    private void replaceAsOneEdit(int offset, int length, String text) {
+        CompoundEdit edit = new CompoundEdit();
+        try {
+            replaceInto(edit, offset, length, text);
+        } catch (BadLocationException e) {
+            showError("Can't replace text: " + e.getMessage());
+        } finally {
+            edit.end();
+            undoManager.addEdit(edit);
+        }
+    }
+
+    // Replaces text, adding its undo steps to edit instead of the undo
+    // manager
+    private void replaceInto(
+        CompoundEdit edit,
+        int offset,
+        int length,
+        String text
+    ) throws BadLocationException {
+        AbstractDocument doc = (AbstractDocument) textArea.getDocument();
+        UndoableEditListener collector = e -> edit.addEdit(e.getEdit());
+        doc.removeUndoableEditListener(undoManager);
+        doc.addUndoableEditListener(collector);
+        try {
+            doc.replace(offset, length, text, null);
+        } finally {
+            doc.removeUndoableEditListener(collector);
+            doc.addUndoableEditListener(undoManager);
+        }
+    }
+
+    // Pastes the clipboard's text over the selection. Text longer than a
+    // chunk streams in over several EDT turns, read-only meanwhile, and
+    // undoes as one edit; analyzers see a single change at the end.
+    private void paste() {
+        if (hexView != null || pasting || !textArea.isEditable()) return;
+        ClipboardReader reader;
+        String first;
+        try {
+            reader = ClipboardReader.open(
+                getToolkit().getSystemClipboard().getContents(this)
+            );
+            if (reader == null) return;
+            first = reader.next();
+        } catch (IOException | IllegalStateException e) {
+            showError("Can't paste: " + e.getMessage());
+            return;
+        }
+        if (first == null || !reader.hasMore()) {
+            closeQuietly(reader);
+            if (first != null) textArea.replaceSelection(first);
+            return;
+        }
+
+        EditorDocument doc = getEditorDocument();
+        int start = textArea.getSelectionStart();
+        CompoundEdit edit = new CompoundEdit();
+        try {
+            replaceInto(edit, start, textArea.getSelectionEnd() - start, first);
+        } catch (BadLocationException e) {
+            closeQuietly(reader);
+            showError("Can't paste: " + e.getMessage());
+            return;
+        }
+        insertInChunks(
+            doc,
+            edit,
+            start,
+            first.length(),
+            reader::next,
+            reader,
+            "Pasting",
+            end -> textArea.setCaretPosition(end)
+        );
+    }
+
+    // Inserts the rest of a long edit, begun with its first chunk, one
+    // chunk per EDT turn so painting and input keep up. The text is
+    // read-only meanwhile; it all undoes as one edit and analyzers see a
+    // single change at the end.
+    private void insertInChunks(
+        EditorDocument doc,
+        CompoundEdit edit,
+        int start,
+        int inserted,
+        Callable<String> chunks,
+        Closeable source,
+        String name,
+        IntConsumer finished
+    ) {
+        pasting = true;
+        changeBus.suspend();
+        textArea.setEditable(false);
+
+        TaskManager.getInstance().submit(
+            name,
+            TaskManager.Priority.INTERACTIVE,
+            new SwingWorker<Void, Void>() {
+                private int offset = start + inserted;
+                private volatile boolean abandoned;
+
+                @Override
+                protected Void doInBackground() throws Exception {
+                    try (source) {
+                        String chunk;
+                        while (!abandoned && (chunk = chunks.call()) != null) {
+                            String text = chunk;
+                            SwingUtilities.invokeAndWait(() -> insert(text));
+                        }
+                    }
+                    return null;
+                }
+
+                private void insert(String text) {
+                    // Another file was opened meanwhile
+                    if (textArea.getDocument() != doc) {
+                        abandoned = true;
+                        return;
+                    }
+                    try {
+                        replaceInto(edit, offset, 0, text);
+                    } catch (BadLocationException e) {
+                        abandoned = true;
+                        return;
+                    }
+                    offset += text.length();
+                    statusLabel.setText(
+                        String.format(
+                            " %s... %,d characters",
+                            name,
+                            offset - start
+                        )
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    pasting = false;
+                    edit.end();
+                    changeBus.resume();
+                    if (textArea.getDocument() == doc) {
+                        undoManager.addEdit(edit);
+                        textArea.setEditable(true);
+                        finished.accept(offset);
+                    }
+                    updateStatusBar();
+                    try {
+                        get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        Throwable cause = e.getCause() != null
+                            ? e.getCause()
+                            : e;
+                        showError(
+                            name + " stopped early: " + cause.getMessage()
+                        );
+                    }
+                }
+            }
+        );
+    }
+
+    // Offers words from the open documents and recent files that complete
+    // the one before the caret, most frequent first
+    private void completeWord() {
+        if (hexView != null || pasting || !textArea.isEditable()) return;
+        if (textArea.getSelectionStart() != textArea.getSelectionEnd()) return;
+        int caret = textArea.getCaretPosition();
+        CharSequence text = getEditorDocument().getVersion().text.chars();
+        int start = WordIndex.wordStart(text, caret);
+        if (start == caret) return;
+        String prefix = text.subSequence(start, caret).toString();
+
+        List<String> words = WordIndex.complete(
+            prefix,
+            completionIndexes(),
+            MAX_COMPLETIONS
+        );
+        if (words.isEmpty()) {
+            updateStatusWithMessage("No completions for " + prefix);
+            return;
+        }
+        JPopupMenu popup = new JPopupMenu();
+        for (String word : words) {
+            JMenuItem item = new JMenuItem(word);
+            item.addActionListener(e -> {
+                // Only if the word being completed is still there
+                if (textArea.getCaretPosition() == caret) {
+                    textArea.replaceSelection(word.substring(prefix.length()));
+                }
+            });
+            popup.add(item);
+        }
+        try {
+            Rectangle r = textArea.modelToView2D(caret).getBounds();
+            popup.show(textArea, r.x, r.y + r.height);
+            MenuSelectionManager.defaultManager().setSelectedPath(
+                new MenuElement[] { popup, (MenuElement) popup.getComponent(0) }
+            );
+        } catch (BadLocationException e) {
+            // Caret is always inside the document
+        }
+    }
+
+    // Indexes of every open document plus those of recent files that are
+    // ready; recent files not indexed yet are read in the background
+    private List<WordIndex> completionIndexes() {
+        List<WordIndex> indexes = new ArrayList<>();
+        Set<String> open = new HashSet<>();
+        for (RetroTextEditor editor : openEditors) {
+            indexes.add(editor.wordIndex);
+            if (editor.currentFile != null) {
+                open.add(editor.currentFile.getAbsolutePath());
+            }
+        }
+        recentWords.keySet().retainAll(recentFiles);
+        for (String path : recentFiles) {
+            if (open.contains(path)) continue;
+            File file = new File(path);
+            if (!file.isFile() || file.length() > MAX_COMPLETION_FILE) {
+                continue;
+            }
+            RecentWords words = recentWords.get(path);
+            if (words == null || words.lastModified != file.lastModified()) {
+                words = new RecentWords(file.lastModified());
+                recentWords.put(path, words);
+                WordIndex index = words.index;
+                DocumentChangeBus.BACKGROUND.execute(() ->
+                    indexRecentFile(file, index)
+                );
+            }
+            indexes.add(words.index);
+        }
+        return indexes;
+    }
+
+    private static void indexRecentFile(File file, WordIndex index) {
+        try {
+            if (DocumentLoader.isBinary(file)) return;
+            TextSnapshot text = DocumentLoader.readText(file, null);
+            index.reset(TextRope.of(text.getText(), 0, text.getLength()));
+        } catch (IOException e) {
+            // Completion goes on without this file's words
+        }
+    }
+
+    private static class RecentWords {
+
+        final long lastModified;
+        final WordIndex index = new WordIndex();
+
+        RecentWords(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to read from it anyway
+        }
+    }
+
+    // Marks changed lines of the document in the gutter
+    private void showChangeMarkers(List<LineDiff.Hunk> hunks) {
+        List<LineNumberGutter.Marker> markers = new ArrayList<>();
+        for (LineDiff.Hunk hunk : hunks) {
+            Color color;
+            if (hunk.rightStart == hunk.rightEnd) {
+                color = DELETED_MARKER;
+            } else if (hunk.leftStart == hunk.leftEnd) {
+                color = ADDED_MARKER;
+            } else {
+                color = CHANGED_MARKER;
+            }
+            markers.add(
+                new LineNumberGutter.Marker(
+                    hunk.rightStart,
+                    hunk.rightEnd,
+                    color
+                )
+            );
+        }
+        lineNumbers.setMarkers(markers);
+    }
+
+    // Diffs the document against the saved text again in the background
+    private void refreshChangeMarkers() {
+        if (savedText == null) return;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        TextSnapshot saved = savedText;
+        TextRope current = getEditorDocument().getVersion().text;
+
+        TaskManager.getInstance().submitCancellable(
+            "Marking changes",
+            TaskManager.Priority.IDLE,
+            changeMarkerKey,
+            cancelled,
+            new SwingWorker<List<LineDiff.Hunk>, Void>() {
+                @Override
+                protected List<LineDiff.Hunk> doInBackground() {
+                    return LineDiff.compare(
+                        saved,
+                        TextSnapshot.of(current),
+                        cancelled::get
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    if (cancelled.get() || saved != savedText) return;
+                    try {
+                        showChangeMarkers(get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        // Keep the markers from the last successful diff
+                    }
+                }
+            }
+        );
+    }
+
+    private void clearChangeMarkers() {
+        savedText = null;
+        TaskManager.getInstance().cancel(changeMarkerKey);
+        changeMarkerTimer.stop();
+        lineNumbers.clearMarkers();
+    }
+
+    // Lists time spent reacting to edits per analyzer, so a slow
+    // extension stands out
+    private void showAnalyzerTimings() {
+        StringBuilder report = new StringBuilder(
+            String.format(
+                "%-24s %-10s %8s %10s %10s%n",
+                "Analyzer",
+                "Thread",
+                "Batches",
+                "Avg ms",
+                "Max ms"
+            )
+        );
+        for (DocumentChangeBus.Timing timing : changeBus.getTimings()) {
+            report.append(
+                String.format(
+                    "%-24s %-10s %8d %10.2f %10.2f%s%n",
+                    timing.name,
+                    timing.onEdt ? "EDT" : "Background",
+                    timing.batches,
+                    timing.batches == 0
+                        ? 0.0
+                        : timing.totalNanos / 1e6 / timing.batches,
+                    timing.maxNanos / 1e6,
+                    timing.failures > 0
+                        ? "  (" + timing.failures + " failed)"
+                        : ""
+                )
+            );
+        }
+        JTextArea text = new JTextArea(report.toString());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(
+            this,
+            new JScrollPane(text),
+            "Analyzer Timings",
+            JOptionPane.INFORMATION_MESSAGE
+        );
+    }
+
+    private void showWordCount() {
+        TextStatistics stats = getDocumentStatistics();
 
         String message = String.format(
             "Characters: %d\n" +
             "Characters (no spaces): %d\n" +
             "Words: %d\n" +
             "Lines: %d",
-            chars,
-            charsNoSpaces,
-            words,
-            lines
+            stats.getCharacters(),
+            stats.getNonWhitespaceCharacters(),
+            stats.getWords(),
+            stats.getLines()
         );
 
         JOptionPane.showMessageDialog(
@@ -905,6 +2516,23 @@ public class RetroTextEditor extends JFrame {
         );
     }
 
+    // Analyzes the text as it is now; later edits are not followed
+    private void showDocumentAnalysis() {
+        String name = currentFile != null
+            ? currentFile.getName()
+            : "New Document";
+        new DocumentAnalysisDialog(
+            this,
+            "Document Analysis - " + name
+        ).analyze(getEditorDocument().getVersion().text);
+    }
+
+    private void showQuickOpen() {
+        new QuickOpenDialog(this, file -> {
+            if (checkSaveChanges()) loadFile(file);
+        }).setVisible(true);
+    }
+
     private void showFontDialog() {
         Font currentFont = textArea.getFont();
         Font newFont = FontChooser.showDialog(this, "Choose Font", currentFont);
@@ -927,11 +2555,220 @@ public class RetroTextEditor extends JFrame {
     }
 
     private void printDocument() {
-        try {
-            textArea.print();
-        } catch (PrinterException e) {
-            showError("Error printing document: " + e.getMessage());
+        paginate(this::printPages);
+    }
+
+    private void showPrintPreview() {
+        paginate(printer ->
+            new PrintPreviewDialog(this, printer, () ->
+                printPages(printer)
+            ).setVisible(true)
+        );
+    }
+
+    private void printPages(DocumentPrinter printer) {
+        PrinterJob job = PrinterJob.getPrinterJob();
+        job.setPageable(printer);
+        PrintRequestAttributeSet attributes =
+            new HashPrintRequestAttributeSet();
+        if (!job.printDialog(attributes)) return;
+
+        runPrintJob("Printing", printer, pageable -> {
+            job.setPageable(pageable);
+            job.print(attributes);
+        });
+    }
+
+    // The JDK ships a PostScript stream service; PDF needs a third-party
+    // service on the class path
+    private void exportDocument(String name, String mimeType, String ext) {
+        StreamPrintServiceFactory[] factories =
+            StreamPrintServiceFactory.lookupStreamPrintServiceFactories(
+                DocFlavor.SERVICE_FORMATTED.PAGEABLE,
+                mimeType
+            );
+        if (factories.length == 0) {
+            showError("No " + name + " export service is installed.");
+            return;
         }
+
+        paginate(printer -> {
+            JFileChooser chooser = new JFileChooser();
+            String base = currentFile != null
+                ? currentFile.getName().replaceFirst("\\.[^.]*$", "")
+                : "Untitled";
+            chooser.setSelectedFile(new File(base + "." + ext));
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File file = chooser.getSelectedFile();
+
+            String range = JOptionPane.showInputDialog(
+                this,
+                "Pages to export (1-" +
+                printer.getNumberOfPages() +
+                ", e.g. 1-5,8), or blank for all:",
+                "Export " + name,
+                JOptionPane.QUESTION_MESSAGE
+            );
+            if (range == null) return;
+            PrintRequestAttributeSet attributes =
+                new HashPrintRequestAttributeSet();
+            if (!range.trim().isEmpty()) {
+                try {
+                    attributes.add(new PageRanges(range.trim()));
+                } catch (IllegalArgumentException e) {
+                    showError("Invalid page range: " + range);
+                    return;
+                }
+            }
+
+            runPrintJob("Exporting " + file.getName(), printer, pageable -> {
+                try (
+                    OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(file)
+                    )
+                ) {
+                    factories[0]
+                        .getPrintService(out)
+                        .createPrintJob()
+                        .print(
+                            new SimpleDoc(
+                                pageable,
+                                DocFlavor.SERVICE_FORMATTED.PAGEABLE,
+                                null
+                            ),
+                            attributes
+                        );
+                }
+            });
+        });
+    }
+
+    // Snapshots the document and paginates it in the background
+    private void paginate(Consumer<DocumentPrinter> then) {
+        if (hexView != null) {
+            showError("Binary files can't be printed.");
+            return;
+        }
+        PageFormat format = PrinterJob.getPrinterJob().defaultPage();
+        String title = currentFile != null
+            ? currentFile.getName()
+            : "New Document";
+        DocumentPrinter printer = DocumentPrinter.snapshot(
+            textArea.getDocument(),
+            textArea.getFont().deriveFont(10f),
+            textArea.getTabSize(),
+            title,
+            format
+        );
+        int lines = printer.getLineCount();
+        statusLabel.setText(" Paginating...");
+
+        TaskManager.getInstance().submit(
+            "Paginating",
+            TaskManager.Priority.INTERACTIVE,
+            new SwingWorker<Void, Integer>() {
+                @Override
+                protected Void doInBackground() {
+                    printer.paginate(line -> {
+                        publish(line);
+                        setProgress((int) (100L * line / Math.max(1, lines)));
+                    });
+                    return null;
+                }
+
+                @Override
+                protected void process(List<Integer> done) {
+                    int line = done.get(done.size() - 1);
+                    statusLabel.setText(
+                        " Paginating... " + (100L * line / lines) + "%"
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    updateStatusBar();
+                    try {
+                        get();
+                        then.accept(printer);
+                    } catch (InterruptedException | ExecutionException e) {
+                        showError("Error preparing pages: " + e.getMessage());
+                    }
+                }
+            }
+        );
+    }
+
+    // Runs a print or export job off the EDT with a progress monitor
+    private void runPrintJob(
+        String title,
+        DocumentPrinter printer,
+        PrintTask task
+    ) {
+        int pages = printer.getNumberOfPages();
+        ProgressMonitor monitor = new ProgressMonitor(
+            this,
+            title,
+            "Preparing...",
+            0,
+            pages
+        );
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        TaskManager.getInstance().submitCancellable(
+            title,
+            TaskManager.Priority.BACKGROUND,
+            null,
+            cancelled,
+            new SwingWorker<Void, Integer>() {
+                @Override
+                protected Void doInBackground() throws Exception {
+                    task.run(
+                        printer.withProgress(
+                            page -> {
+                                publish(page + 1);
+                                setProgress(100 * (page + 1) / pages);
+                            },
+                            cancelled::get
+                        )
+                    );
+                    return null;
+                }
+
+                @Override
+                protected void process(List<Integer> done) {
+                    int page = done.get(done.size() - 1);
+                    monitor.setProgress(page);
+                    monitor.setNote("Page " + page + " of " + pages);
+                    if (monitor.isCanceled()) {
+                        cancelled.set(true);
+                    }
+                }
+
+                @Override
+                protected void done() {
+                    monitor.close();
+                    if (isCancelled()) return;
+                    try {
+                        get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        if (!cancelled.get()) {
+                            Throwable cause = e.getCause() != null
+                                ? e.getCause()
+                                : e;
+                            showError(
+                                "Error printing document: " + cause.getMessage()
+                            );
+                        }
+                    }
+                }
+            }
+        );
+    }
+
+    interface PrintTask {
+        void run(Pageable pageable) throws Exception;
     }
 
     private void closeCurrentDocument() {
@@ -948,10 +2785,276 @@ public class RetroTextEditor extends JFrame {
         );
     }
 
+    private void newWindow() {
+        RetroTextEditor editor = new RetroTextEditor();
+        Point location = getLocation();
+        editor.setLocation(location.x + 24, location.y + 24);
+        editor.setVisible(true);
+    }
+
+    private void closeWindow() {
+        if (openEditors.size() <= 1) {
+            exitApplication();
+        } else if (checkSaveChanges()) {
+            // Leave the closed window out of the saved session
+            openEditors.remove(this);
+            if (activeEditor == this) activeEditor = null;
+            saveSession();
+            closeHexView();
+            dispose();
+            documentClosed();
+        }
+    }
+
+    // Runs, once, what waits for the window's document to close: a --wait
+    // launch ends when the window closes or another document replaces it
+    private void documentClosed() {
+        List<Runnable> actions = new ArrayList<>(closeActions);
+        closeActions.clear();
+        for (Runnable action : actions) action.run();
+    }
+
+    // Opens files handed over by another launch, each in a window of its
+    // own unless reuse is a window still holding an empty new document;
+    // closed, when given, runs once all of those windows have closed
+    private static void openFiles(
+        List<File> files,
+        Runnable closed,
+        RetroTextEditor reuse
+    ) {
+        int[] open = { files.size() };
+        if (closed != null && files.isEmpty()) closed.run();
+        // A launch with nothing to open brings the editor forward instead
+        if (files.isEmpty() && reuse != null && reuse.isDisplayable()) {
+            if ((reuse.getExtendedState() & ICONIFIED) != 0) {
+                reuse.setExtendedState(reuse.getExtendedState() & ~ICONIFIED);
+            }
+            reuse.toFront();
+            reuse.requestFocus();
+        }
+        for (File file : files) {
+            RetroTextEditor editor;
+            if (reuse != null && reuse.isEmptyDocument()) {
+                editor = reuse;
+            } else {
+                editor = new RetroTextEditor();
+                if (activeEditor != null) {
+                    Point location = activeEditor.getLocation();
+                    editor.setLocation(location.x + 24, location.y + 24);
+                }
+            }
+            reuse = null;
+            if (file.exists()) {
+                editor.loadFile(file);
+            } else {
+                // Saving creates it, as an editor run by git expects
+                editor.currentFile = file;
+                editor.updateTitle();
+            }
+            if (closed != null) {
+                editor.closeActions.add(() -> {
+                    if (--open[0] == 0) closed.run();
+                });
+            }
+            editor.setVisible(true);
+            editor.toFront();
+        }
+    }
+
+    private boolean isEmptyDocument() {
+        return (
+            currentFile == null &&
+            !isModified &&
+            hexView == null &&
+            textArea.getDocument().getLength() == 0
+        );
+    }
+
     private void exitApplication() {
-        if (checkSaveChanges()) {
-            System.exit(0);
+        for (RetroTextEditor editor : new ArrayList<>(openEditors)) {
+            if (!editor.checkSaveChanges()) return;
+        }
+        saveSession();
+        System.exit(0);
+    }
+
+    // Session management
+    private static void saveSession() {
+        if (!keepSession) {
+            FileIndex.getInstance().save();
+            return;
+        }
+        List<SessionStore.DocumentState> states = new ArrayList<>();
+        int active = 0;
+        for (RetroTextEditor editor : openEditors) {
+            SessionStore.DocumentState state = editor.captureState();
+            if (state == null) continue;
+            if (editor == activeEditor) active = states.size();
+            states.add(state);
+            editor.saveLineIndexCache();
+        }
+        SessionStore.save(states, active);
+        FileIndex.getInstance().save();
+    }
+
+    private SessionStore.DocumentState captureState() {
+        if (currentFile == null) return null;
+
+        SessionStore.DocumentState state = new SessionStore.DocumentState();
+        state.path = currentFile.getAbsolutePath();
+        state.caret = textArea.getCaretPosition();
+        Point view = scrollPane.getViewport().getViewPosition();
+        state.scrollX = view.x;
+        state.scrollY = view.y;
+        state.fontSize = textArea.getFont().getSize2D();
+        state.wordWrap = wordWrap;
+        state.fileSize = currentFile.length();
+        state.lastModified = currentFile.lastModified();
+        state.bounds = getBounds();
+        return state;
+    }
+
+    private void saveLineIndexCache() {
+        if (
+            diskLineIndex == null &&
+            diskMatchesText &&
+            currentFile != null &&
+            hexView == null &&
+            !isModified
+        ) {
+            diskLineIndex = LineIndex.fromElement(
+                textArea.getDocument().getDefaultRootElement()
+            );
+        }
+        if (diskLineIndex != null) {
+            SessionStore.saveLineIndex(
+                currentFile,
+                diskFileSize,
+                diskLastModified,
+                diskLineIndex
+            );
+        }
+    }
+
+    // Restores the active document into the first window, then opens the
+    // others one at a time in background-loaded windows behind it
+    // False if there was nothing to restore, leaving first empty
+    private static boolean restoreSession(RetroTextEditor first) {
+        List<SessionStore.DocumentState> states = SessionStore.load();
+        if (states.isEmpty()) return false;
+
+        first.restoreDocument(states.get(0), () ->
+            restoreRemaining(first, states, 1)
+        );
+        return true;
+    }
+
+    private static void restoreRemaining(
+        RetroTextEditor first,
+        List<SessionStore.DocumentState> states,
+        int index
+    ) {
+        if (index >= states.size()) return;
+
+        RetroTextEditor editor = new RetroTextEditor();
+        editor.restoreDocument(states.get(index), () -> {
+            if (editor.currentFile != null) {
+                editor.setAutoRequestFocus(false);
+                editor.setVisible(true);
+                first.toFront();
+            } else {
+                openEditors.remove(editor);
+                editor.dispose();
+            }
+            restoreRemaining(first, states, index + 1);
+        });
+    }
+
+    private void restoreDocument(
+        SessionStore.DocumentState state,
+        Runnable done
+    ) {
+        File file = new File(state.path);
+        if (!file.isFile()) {
+            restoreFailed(file, "no longer exists");
+            done.run();
+            return;
+        }
+
+        try {
+            if (DocumentLoader.isBinary(file)) {
+                openHexView(file);
+                applyViewState(state);
+                done.run();
+                return;
+            }
+        } catch (IOException e) {
+            restoreFailed(file, e.getMessage());
+            done.run();
+            return;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        TaskManager.getInstance().submit(
+            "Opening " + file.getName(),
+            TaskManager.Priority.INTERACTIVE,
+            new SwingWorker<DocumentLoader.Result, Void>() {
+                @Override
+                protected DocumentLoader.Result doInBackground()
+                    throws IOException {
+                    return DocumentLoader.load(
+                        file,
+                        SessionStore.loadLineIndex(file),
+                        () -> false,
+                        this::setProgress
+                    );
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        applyLoadedDocument(file, get(), size, lastModified);
+                        applyViewState(state);
+                    } catch (Exception e) {
+                        // Skip documents that can no longer be read
+                        Throwable cause = e instanceof ExecutionException
+                            ? e.getCause()
+                            : e;
+                        restoreFailed(file, String.valueOf(cause));
+                    }
+                    done.run();
+                }
+            }
+        );
+    }
+
+    // Reported on stderr, as a dialog for each missing file would hold up
+    // the start
+    private static void restoreFailed(File file, String reason) {
+        System.err.println("Could not restore " + file + ": " + reason);
+    }
+
+    private void applyViewState(SessionStore.DocumentState state) {
+        if (state.bounds != null && !state.bounds.isEmpty()) {
+            setBounds(state.bounds);
         }
+        if (state.fontSize > 0) {
+            Font font = textArea.getFont().deriveFont(state.fontSize);
+            textArea.setFont(font);
+            lineNumbers.setFont(font.deriveFont(font.getSize() - 1f));
+        }
+        setWordWrap(state.wordWrap);
+
+        int length = textArea.getDocument().getLength();
+        textArea.setCaretPosition(Math.max(0, Math.min(state.caret, length)));
+
+        // Scroll once the new font and wrap mode have been laid out
+        SwingUtilities.invokeLater(() ->
+            scrollPane
+                .getViewport()
+                .setViewPosition(new Point(state.scrollX, state.scrollY))
+        );
     }
 
     // Getter methods for dialogs
@@ -959,6 +3062,22 @@ public class RetroTextEditor extends JFrame {
         return textArea;
     }
 
+    // Extensions register their analyzers here
+    public DocumentChangeBus getChangeBus() {
+        return changeBus;
+    }
+
+    public EditorDocument getEditorDocument() {
+        return (EditorDocument) textArea.getDocument();
+    }
+
+    // The Find & Replace dialog's search field, once it has been opened
+    public JTextField getFindField() {
+        return findReplaceDialog != null
+            ? findReplaceDialog.getFindField()
+            : null;
+    }
+
     public void highlightText(int start, int end) {
         textArea.select(start, end);
     }
@@ -974,6 +3093,45 @@ public class RetroTextEditor extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Headless batch mode never touches the UI
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(
+                BatchProcessor.run(Arrays.copyOfRange(args, 1, args.length))
+            );
+        }
+        // Input latency measured under Xvfb, for tracking regressions
+        if (args.length > 0 && args[0].equals("--benchmark")) {
+            System.exit(
+                LatencyBenchmark.run(Arrays.copyOfRange(args, 1, args.length))
+            );
+        }
+
+        // Files may be given to open; --wait returns only once they are
+        // closed, as git and others expect of $EDITOR
+        List<File> files = new ArrayList<>();
+        boolean wait = false;
+        boolean newInstance = false;
+        for (String arg : args) {
+            if (arg.equals("--wait")) {
+                wait = true;
+            } else if (arg.equals("--new-instance")) {
+                newInstance = true;
+            } else {
+                files.add(new File(arg).getAbsoluteFile());
+            }
+        }
+        // A running editor opens them at once, without a second JVM
+        if (!newInstance && SingleInstance.forward(files, wait)) {
+            System.exit(0);
+        }
+        // Started to wait on files, the editor opens only those and exits
+        // once they are closed; it takes no files from later launches,
+        // which start an instance of their own
+        boolean waiting = wait && !files.isEmpty();
+        boolean listen = !newInstance && !waiting;
+        keepSession = !waiting;
+
         // Use macOS system menu bar
         System.setProperty("apple.laf.useScreenMenuBar", "true");
         System.setProperty(
@@ -981,6 +3139,11 @@ public class RetroTextEditor extends JFrame {
             "Text Editor"
         );
 
+        // Enumerate fonts in the background while the UI starts
+        FontCatalog.getInstance().startLoading();
+        // Load or rebuild the quick-open index of file paths
+        FileIndex.getInstance().start();
+
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(
@@ -989,7 +3152,27 @@ public class RetroTextEditor extends JFrame {
             } catch (Exception e) {
                 // Use default look and feel
             }
-            new RetroTextEditor().setVisible(true);
+            RetroTextEditor editor = new RetroTextEditor();
+            editor.setVisible(true);
+            if (waiting) {
+                openFiles(
+                    files,
+                    () -> openEditors.get(0).exitApplication(),
+                    editor
+                );
+                return;
+            }
+            boolean restored = restoreSession(editor);
+            openFiles(files, null, restored ? null : editor);
+            if (listen) {
+                SingleInstance.listen((forwarded, closed) ->
+                    openFiles(
+                        forwarded,
+                        closed,
+                        activeEditor != null ? activeEditor : editor
+                    )
+                );
+            }
         });
     }
 }
@@ -1003,6 +3186,8 @@ class FindReplaceDialog extends JDialog {
     private JCheckBox wholeWordBox;
     private RetroTextEditor parent;
     private int lastSearchPos = 0;
+    // A newer search replaces one still running
+    private final Object searchKey = new Object();
 
     public FindReplaceDialog(RetroTextEditor parent) {
         super(parent, "Find & Replace", false);
@@ -1092,111 +3277,176 @@ class FindReplaceDialog extends JDialog {
         replaceField.addActionListener(e -> findNext());
     }
 
-    public void findNext() {
-        String searchText = findField.getText();
-        if (searchText.isEmpty()) return;
-
-        String text = parent.getTextArea().getText();
-        String searchIn = caseSensitiveBox.isSelected()
-            ? text
-            : text.toLowerCase();
-        String searchFor = caseSensitiveBox.isSelected()
-            ? searchText
-            : searchText.toLowerCase();
-
-        int pos = searchIn.indexOf(searchFor, lastSearchPos);
-        if (pos == -1) {
-            pos = searchIn.indexOf(searchFor, 0); // Wrap around
-            if (pos == -1) {
-                JOptionPane.showMessageDialog(
-                    this,
-                    "Text not found",
-                    "Find",
-                    JOptionPane.INFORMATION_MESSAGE
-                );
-                return;
-            }
-        }
+    public JTextField getFindField() {
+        return findField;
+    }
 
-        lastSearchPos = pos + searchFor.length();
-        parent.highlightText(pos, pos + searchFor.length());
+    public void findNext() {
+        SearchEngine engine = createEngine();
+        if (engine == null) return;
+
+        int from = lastSearchPos;
+        search(
+            engine,
+            text -> {
+                int pos = engine.findNext(text, from);
+                return pos != -1
+                    ? pos
+                    : engine.findNext(text, 0); // Wrap around
+            },
+            this::findNext
+        );
     }
 
     public void findPrevious() {
-        String searchText = findField.getText();
-        if (searchText.isEmpty()) return;
-
-        String text = parent.getTextArea().getText();
-        String searchIn = caseSensitiveBox.isSelected()
-            ? text
-            : text.toLowerCase();
-        String searchFor = caseSensitiveBox.isSelected()
-            ? searchText
-            : searchText.toLowerCase();
+        SearchEngine engine = createEngine();
+        if (engine == null) return;
 
         int currentPos = parent.getTextArea().getSelectionStart();
-        int pos = searchIn.lastIndexOf(searchFor, currentPos - 1);
-        if (pos == -1) {
-            pos = searchIn.lastIndexOf(searchFor); // Wrap around
-            if (pos == -1) {
-                JOptionPane.showMessageDialog(
-                    this,
-                    "Text not found",
-                    "Find",
-                    JOptionPane.INFORMATION_MESSAGE
-                );
-                return;
-            }
-        }
+        search(
+            engine,
+            text -> {
+                int pos = engine.findPrevious(text, currentPos);
+                return pos != -1
+                    ? pos
+                    : engine.findPrevious(text, text.length()); // Wrap around
+            },
+            this::findPrevious
+        );
+    }
 
-        lastSearchPos = pos + searchFor.length();
-        parent.highlightText(pos, pos + searchFor.length());
+    // Searches the current version of the text off the EDT. If the text
+    // is edited before the result comes back, the search is run again.
+    private void search(
+        SearchEngine engine,
+        ToIntFunction<CharSequence> find,
+        Runnable retry
+    ) {
+        EditorDocument document = parent.getEditorDocument();
+        EditorDocument.Version version = document.getVersion();
+        TaskManager.getInstance().submitCancellable(
+            "Searching",
+            TaskManager.Priority.INTERACTIVE,
+            searchKey,
+            null,
+            new SwingWorker<Integer, Void>() {
+                @Override
+                protected Integer doInBackground() {
+                    return find.applyAsInt(version.text.chars());
+                }
+
+                @Override
+                protected void done() {
+                    if (isCancelled()) return;
+                    if (!document.isCurrent(version)) {
+                        retry.run();
+                        return;
+                    }
+                    int pos;
+                    try {
+                        pos = get();
+                    } catch (ExecutionException | InterruptedException e) {
+                        return;
+                    }
+                    if (pos == -1) {
+                        showNotFound();
+                        return;
+                    }
+                    lastSearchPos = pos + engine.getMatchLength();
+                    parent.highlightText(pos, pos + engine.getMatchLength());
+                }
+            }
+        );
     }
 
     private void replace() {
-        String searchText = findField.getText();
+        SearchEngine engine = createEngine();
+        if (engine == null) return;
         String replaceText = replaceField.getText();
-        if (searchText.isEmpty()) return;
 
         JTextArea textArea = parent.getTextArea();
         String selectedText = textArea.getSelectedText();
 
-        if (selectedText != null && selectedText.equals(searchText)) {
+        if (
+            selectedText != null &&
+            engine.findNext(selectedText, 0) == 0 &&
+            selectedText.length() == engine.getMatchLength()
+        ) {
             textArea.replaceSelection(replaceText);
         }
         findNext();
     }
 
     private void replaceAll() {
-        String searchText = findField.getText();
+        SearchEngine engine = createEngine();
+        if (engine == null) return;
         String replaceText = replaceField.getText();
-        if (searchText.isEmpty()) return;
 
         JTextArea textArea = parent.getTextArea();
-        String text = textArea.getText();
+        EditorDocument document = parent.getEditorDocument();
+        EditorDocument.Version version = document.getVersion();
+        StringBuilder newText = new StringBuilder(version.text.length());
+
+        // Builds the new text off the EDT; it only replaces the document
+        // if nothing was typed in the meantime
+        TaskManager.getInstance().submitCancellable(
+            "Replacing all",
+            TaskManager.Priority.INTERACTIVE,
+            null,
+            null,
+            new SwingWorker<Integer, Void>() {
+                @Override
+                protected Integer doInBackground() {
+                    return engine.replaceAll(
+                        version.text.chars(),
+                        replaceText,
+                        newText
+                    );
+                }
 
-        int flags = caseSensitiveBox.isSelected()
-            ? 0
-            : Pattern.CASE_INSENSITIVE;
-        if (wholeWordBox.isSelected()) {
-            searchText = "\\b" + Pattern.quote(searchText) + "\\b";
-        } else {
-            searchText = Pattern.quote(searchText);
-        }
+                @Override
+                protected void done() {
+                    if (isCancelled()) return;
+                    if (!document.isCurrent(version)) {
+                        replaceAll();
+                        return;
+                    }
+                    int count;
+                    try {
+                        count = get();
+                    } catch (ExecutionException | InterruptedException e) {
+                        return;
+                    }
+                    if (count > 0) {
+                        textArea.setText(newText.toString());
+                    }
+
+                    JOptionPane.showMessageDialog(
+                        FindReplaceDialog.this,
+                        "Replaced " + count + " occurrences",
+                        "Replace All",
+                        JOptionPane.INFORMATION_MESSAGE
+                    );
+                }
+            }
+        );
+    }
 
-        String newText = text.replaceAll(
+    private SearchEngine createEngine() {
+        String searchText = findField.getText();
+        if (searchText.isEmpty()) return null;
+        return new SearchEngine(
             searchText,
-            Matcher.quoteReplacement(replaceText)
+            caseSensitiveBox.isSelected(),
+            wholeWordBox.isSelected()
         );
-        textArea.setText(newText);
+    }
 
-        int count =
-            (text.length() - newText.length()) /
-            (searchText.length() - replaceText.length());
+    private void showNotFound() {
         JOptionPane.showMessageDialog(
             this,
-            "Replaced " + Math.abs(count) + " occurrences",
-            "Replace All",
+            "Text not found",
+            "Find",
             JOptionPane.INFORMATION_MESSAGE
         );
     }
@@ -1293,10 +3543,13 @@ class FontChooser {
     private static class FontChooserDialog extends JDialog {
 
         private Font selectedFont;
+        private JTextField filterField;
+        private JCheckBox monospacedBox;
         private JList<String> fontList;
         private JList<Integer> sizeList;
         private JCheckBox boldBox, italicBox;
         private JTextArea previewArea;
+        private javax.swing.Timer previewTimer;
 
         public FontChooserDialog(Frame parent, String title, Font initialFont) {
             super(parent, title, true);
@@ -1319,19 +3572,49 @@ class FontChooser {
             // Font family
             JPanel familyPanel = new JPanel(new BorderLayout());
             familyPanel.setBackground(UIManager.getColor("Panel.background"));
-            familyPanel.add(new JLabel("Font:"), BorderLayout.NORTH);
 
-            String[] fonts =
-                GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
-            fontList = new JList<>(fonts);
+            JPanel filterPanel = new JPanel(new BorderLayout(0, 4));
+            filterPanel.setBackground(UIManager.getColor("Panel.background"));
+            filterPanel.add(new JLabel("Font:"), BorderLayout.NORTH);
+            filterField = new JTextField();
+            filterField.setToolTipText("Filter fonts");
+            filterField
+                .getDocument()
+                .addDocumentListener(
+                    new DocumentListener() {
+                        @Override
+                        public void insertUpdate(DocumentEvent e) {
+                            populateFontList();
+                        }
+
+                        @Override
+                        public void removeUpdate(DocumentEvent e) {
+                            populateFontList();
+                        }
+
+                        @Override
+                        public void changedUpdate(DocumentEvent e) {
+                            populateFontList();
+                        }
+                    }
+                );
+            filterPanel.add(filterField, BorderLayout.CENTER);
+            familyPanel.add(filterPanel, BorderLayout.NORTH);
+
+            // Fixed cell size so large font lists are not measured per item
+            fontList = new JList<>();
+            fontList.setPrototypeCellValue("Abcdefghijklmnopqrstuvw");
             fontList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-            fontList.setSelectedValue(selectedFont.getFontName(), true);
-            fontList.addListSelectionListener(e -> updatePreview());
+            fontList.addListSelectionListener(e -> schedulePreview());
 
             JScrollPane fontScroll = new JScrollPane(fontList);
             fontScroll.setPreferredSize(new Dimension(200, 150));
             familyPanel.add(fontScroll, BorderLayout.CENTER);
 
+            monospacedBox = new JCheckBox("Monospaced only");
+            monospacedBox.addActionListener(e -> populateFontList());
+            familyPanel.add(monospacedBox, BorderLayout.SOUTH);
+
             // Font size
             JPanel sizePanel = new JPanel(new BorderLayout());
             sizePanel.setBackground(UIManager.getColor("Panel.background"));
@@ -1357,7 +3640,7 @@ class FontChooser {
             sizeList = new JList<>(sizes);
             sizeList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
             sizeList.setSelectedValue(selectedFont.getSize(), true);
-            sizeList.addListSelectionListener(e -> updatePreview());
+            sizeList.addListSelectionListener(e -> schedulePreview());
 
             JScrollPane sizeScroll = new JScrollPane(sizeList);
             sizeScroll.setPreferredSize(new Dimension(80, 150));
@@ -1371,8 +3654,8 @@ class FontChooser {
 
             boldBox = new JCheckBox("Bold", selectedFont.isBold());
             italicBox = new JCheckBox("Italic", selectedFont.isItalic());
-            boldBox.addActionListener(e -> updatePreview());
-            italicBox.addActionListener(e -> updatePreview());
+            boldBox.addActionListener(e -> schedulePreview());
+            italicBox.addActionListener(e -> schedulePreview());
 
             stylePanel.add(boldBox);
             stylePanel.add(italicBox);
@@ -1426,10 +3709,54 @@ class FontChooser {
             add(mainPanel, BorderLayout.CENTER);
             add(buttonPanel, BorderLayout.SOUTH);
 
+            // Coalesce quick selection changes into one preview update
+            previewTimer = new javax.swing.Timer(150, e -> updatePreview());
+            previewTimer.setRepeats(false);
+
+            populateFontList();
+            FontCatalog catalog = FontCatalog.getInstance();
+            if (!catalog.isLoaded()) {
+                catalog.whenLoaded(this::populateFontList);
+            }
+
             pack();
             updatePreview();
         }
 
+        // Rebuilds the list from the catalog, keeping the selection
+        private void populateFontList() {
+            String selected = fontList.getSelectedValue();
+            if (selected == null && selectedFont != null) {
+                selected = selectedFont.getFamily();
+            }
+
+            String filter = filterField.getText().trim().toLowerCase();
+            DefaultListModel<String> model = new DefaultListModel<>();
+            List<FontCatalog.FontFamily> families =
+                FontCatalog.getInstance().getFamilies();
+            if (families != null) {
+                for (FontCatalog.FontFamily family : families) {
+                    if (monospacedBox.isSelected() && !family.monospaced) {
+                        continue;
+                    }
+                    if (
+                        !filter.isEmpty() &&
+                        !family.name.toLowerCase().contains(filter)
+                    ) {
+                        continue;
+                    }
+                    model.addElement(family.name);
+                }
+            }
+
+            fontList.setModel(model);
+            fontList.setSelectedValue(selected, true);
+        }
+
+        private void schedulePreview() {
+            previewTimer.restart();
+        }
+
         private void updatePreview() {
             updateSelectedFont();
             if (selectedFont != null) {
@@ -1446,7 +3773,11 @@ class FontChooser {
                 if (boldBox.isSelected()) style |= Font.BOLD;
                 if (italicBox.isSelected()) style |= Font.ITALIC;
 
-                selectedFont = new Font(fontName, style, size);
+                selectedFont = FontCatalog.getInstance().getFont(
+                    fontName,
+                    style,
+                    size
+                );
             }
         }
 
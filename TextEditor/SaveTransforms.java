@@ -0,0 +1,562 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+// Save Transforms
+// Clean-ups applied to a document's text as it is written: trimming
+// trailing whitespace, expanding tabs, adding a final newline, changing
+// line endings and re-encoding. Each is a Writer stage in front of the
+// next, so a save still streams the text once, a chunk at a time. Stages
+// that could not change anything are left out of the chain.
+class SaveTransforms {
+
+    private static final int MAGIC = 0x52545354; // "RTST"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final String[] ENCODINGS = {
+        "UTF-8",
+        "ISO-8859-1",
+        "windows-1252",
+        "UTF-16",
+    };
+
+    enum LineEnding {
+        LF("\n", "Unix (LF)"),
+        CRLF("\r\n", "Windows (CRLF)"),
+        CR("\r", "Classic Mac (CR)");
+
+        final String chars;
+        final String label;
+
+        LineEnding(String chars, String label) {
+            this.chars = chars;
+            this.label = label;
+        }
+    }
+
+    boolean trimTrailingWhitespace;
+    boolean expandTabs;
+    boolean ensureFinalNewline;
+    LineEnding lineEnding = LineEnding.LF;
+    Charset charset = DocumentLoader.CHARSET;
+
+    // Taken by each save, so changing the settings during one is safe
+    SaveTransforms copy() {
+        SaveTransforms copy = new SaveTransforms();
+        copy.trimTrailingWhitespace = trimTrailingWhitespace;
+        copy.expandTabs = expandTabs;
+        copy.ensureFinalNewline = ensureFinalNewline;
+        copy.lineEnding = lineEnding;
+        copy.charset = charset;
+        return copy;
+    }
+
+    // True when the text would be written exactly as it is, which is
+    // what lets a save patch only the changed bytes
+    boolean leavesUnchanged(TextRope text) {
+        return (
+            !trimTrailingWhitespace &&
+            !expandTabs &&
+            !needsFinalNewline(text) &&
+            lineEnding == LineEnding.LF &&
+            isDefaultCharset()
+        );
+    }
+
+    private boolean needsFinalNewline(TextRope text) {
+        int length = text.length();
+        return (
+            ensureFinalNewline &&
+            length > 0 &&
+            text.charAt(length - 1) != '\n'
+        );
+    }
+
+    private boolean isDefaultCharset() {
+        return charset.equals(DocumentLoader.CHARSET);
+    }
+
+    // Builds the chain for one save of text to out. Write the text to
+    // what it returns, then close it.
+    Output open(OutputStream out, TextRope text, int tabSize) {
+        Encoder encoder = null;
+        Writer writer;
+        if (isDefaultCharset()) {
+            writer = new OutputStreamWriter(out, charset);
+        } else {
+            encoder = new Encoder(out, charset);
+            writer = encoder;
+        }
+
+        // Built from the last stage back to the first
+        Stage[] stages = new Stage[5];
+        int count = 0;
+        if (lineEnding != LineEnding.LF) {
+            writer = stages[count++] = new LineEndingStage(writer, lineEnding);
+        }
+        LineCounter lines = new LineCounter(writer);
+        writer = lines;
+        if (needsFinalNewline(text)) {
+            writer = stages[count++] = new FinalNewlineStage(writer);
+        }
+        if (expandTabs) {
+            writer = stages[count++] = new TabStage(writer, tabSize);
+        }
+        if (trimTrailingWhitespace) {
+            writer = stages[count++] = new TrimStage(writer);
+        }
+        return new Output(
+            writer,
+            Arrays.copyOf(stages, count),
+            lines,
+            encoder,
+            charset
+        );
+    }
+
+    // The head of a chain, and what it did once closed
+    static final class Output extends Writer {
+
+        private final Writer head;
+        private final Stage[] stages;
+        private final LineCounter lines;
+        private final Encoder encoder;
+        private final Charset charset;
+
+        private Output(
+            Writer head,
+            Stage[] stages,
+            LineCounter lines,
+            Encoder encoder,
+            Charset charset
+        ) {
+            this.head = head;
+            this.stages = stages;
+            this.lines = lines;
+            this.encoder = encoder;
+            this.charset = charset;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            head.write(buf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            head.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            head.close();
+        }
+
+        // Whether the file differs from the text that was written
+        boolean isChanged() {
+            if (encoder != null) return true;
+            for (Stage stage : stages) {
+                if (stage.changed) return true;
+            }
+            return false;
+        }
+
+        // Line starts of the file as the editor would read it back, or
+        // null when it is not in the encoding the editor reads
+        LineIndex getLineIndex() {
+            return encoder == null ? lines.index : null;
+        }
+
+        // Characters the encoding has no bytes for, written as its
+        // replacement instead
+        int getUnencodable() {
+            return encoder == null ? 0 : encoder.replaced;
+        }
+
+        Charset getCharset() {
+            return charset;
+        }
+    }
+
+    // A step of the chain, passing what it makes of its input on to out
+    private abstract static class Stage extends Writer {
+
+        final Writer out;
+        boolean changed;
+
+        Stage(Writer out) {
+            this.out = out;
+        }
+
+        // Called at the end of the text, before out is closed
+        void finish() throws IOException {}
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+    }
+
+    // Blanks are passed on only once something other than a newline
+    // follows them, so a run split across chunks is still dropped
+    private static final class TrimStage extends Stage {
+
+        private char[] held = new char[64];
+        private int heldCount;
+
+        TrimStage(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            int end = off + len;
+            int start = off;
+            int blanks = -1;
+            for (int i = off; i < end; i++) {
+                char c = buf[i];
+                if (c == '\n') {
+                    if (blanks >= 0 || heldCount > 0) {
+                        int kept = blanks >= 0 ? blanks : i;
+                        out.write(buf, start, kept - start);
+                        start = i;
+                        heldCount = 0;
+                        changed = true;
+                    }
+                    blanks = -1;
+                } else if (LineOperations.isBlank(c)) {
+                    if (blanks < 0) blanks = i;
+                } else if (blanks >= 0 || heldCount > 0) {
+                    // Nothing of this chunk has gone yet if blanks were held
+                    out.write(held, 0, heldCount);
+                    heldCount = 0;
+                    blanks = -1;
+                }
+            }
+            if (blanks >= 0) {
+                out.write(buf, start, blanks - start);
+                hold(buf, blanks, end - blanks);
+            } else {
+                out.write(buf, start, end - start);
+            }
+        }
+
+        private void hold(char[] buf, int off, int len) {
+            if (heldCount + len > held.length) {
+                held = Arrays.copyOf(
+                    held,
+                    Math.max(held.length * 2, heldCount + len)
+                );
+            }
+            System.arraycopy(buf, off, held, heldCount, len);
+            heldCount += len;
+        }
+
+        // The last line's blanks, with no newline after them
+        @Override
+        void finish() {
+            if (heldCount > 0) changed = true;
+            heldCount = 0;
+        }
+    }
+
+    private static final class TabStage extends Stage {
+
+        private final int width;
+        private int column;
+        private char[] expanded = new char[0];
+
+        TabStage(Writer out, int width) {
+            super(out);
+            this.width = Math.max(1, width);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            int end = off + len;
+            int start = -1;
+            int tabs = 0;
+            for (int i = off; i < end; i++) {
+                if (buf[i] == '\t') {
+                    if (tabs++ == 0) start = i;
+                }
+            }
+            if (tabs == 0) {
+                advance(buf, off, end);
+                out.write(buf, off, len);
+                return;
+            }
+
+            // Only the part from the first tab on is copied
+            advance(buf, off, start);
+            out.write(buf, off, start - off);
+            int need = end - start + tabs * (width - 1);
+            if (expanded.length < need) expanded = new char[need];
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                char c = buf[i];
+                if (c == '\t') {
+                    int spaces = width - column % width;
+                    Arrays.fill(expanded, n, n + spaces, ' ');
+                    n += spaces;
+                    column += spaces;
+                } else {
+                    expanded[n++] = c;
+                    column = c == '\n' ? 0 : column + 1;
+                }
+            }
+            out.write(expanded, 0, n);
+            changed = true;
+        }
+
+        private void advance(char[] buf, int from, int to) {
+            for (int i = from; i < to; i++) {
+                column = buf[i] == '\n' ? 0 : column + 1;
+            }
+        }
+    }
+
+    // Only in the chain when the text does not already end with one
+    private static final class FinalNewlineStage extends Stage {
+
+        private char last = '\n';
+
+        FinalNewlineStage(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            if (len > 0) last = buf[off + len - 1];
+            out.write(buf, off, len);
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (last != '\n') {
+                out.write('\n');
+                changed = true;
+            }
+        }
+    }
+
+    // Records the line starts while the text still has \n endings, as the
+    // loader normalizes them to when reading the file back
+    private static final class LineCounter extends Stage {
+
+        final LineIndex index = new LineIndex();
+        private int offset;
+
+        LineCounter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                if (buf[off + i] == '\n') index.addLineStart(offset + i + 1);
+            }
+            offset += len;
+            out.write(buf, off, len);
+        }
+    }
+
+    private static final class LineEndingStage extends Stage {
+
+        private final char[] ending;
+        private char[] converted = new char[0];
+
+        LineEndingStage(Writer out, LineEnding lineEnding) {
+            super(out);
+            this.ending = lineEnding.chars.toCharArray();
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            int need = len * ending.length;
+            if (converted.length < need) converted = new char[need];
+            int n = 0;
+            for (int i = off; i < off + len; i++) {
+                char c = buf[i];
+                if (c == '\n') {
+                    for (char e : ending) {
+                        converted[n++] = e;
+                    }
+                    changed = true;
+                } else {
+                    converted[n++] = c;
+                }
+            }
+            out.write(converted, 0, n);
+        }
+    }
+
+    // Encodes into a buffer of its own, counting the characters the
+    // charset cannot represent rather than failing the save on them
+    private static final class Encoder extends Writer {
+
+        private final OutputStream out;
+        private final CharsetEncoder encoder;
+        private final byte[] replacement;
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        // A high surrogate that ended the last chunk
+        private final char[] pending = new char[2];
+        private int pendingCount;
+        int replaced;
+
+        Encoder(OutputStream out, Charset charset) {
+            this.out = out;
+            this.encoder = charset.newEncoder();
+            this.replacement = encoder.replacement();
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            if (len == 0) return;
+            if (pendingCount > 0) {
+                pending[pendingCount++] = buf[off];
+                off++;
+                len--;
+                CharBuffer pair = CharBuffer.wrap(pending, 0, pendingCount);
+                pendingCount = 0;
+                encode(pair, false);
+            }
+            encode(CharBuffer.wrap(buf, off, len), false);
+        }
+
+        private void encode(CharBuffer in, boolean endOfInput)
+            throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(in, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    in.position(in.position() + result.length());
+                    if (bytes.remaining() < replacement.length) drain();
+                    bytes.put(replacement);
+                    replaced++;
+                }
+            }
+            while (in.hasRemaining()) {
+                pending[pendingCount++] = in.get();
+            }
+        }
+
+        private void drain() throws IOException {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                CharBuffer rest = CharBuffer.wrap(pending, 0, pendingCount);
+                pendingCount = 0;
+                encode(rest, true);
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain();
+                }
+                drain();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // --- Settings ---
+
+    private static File getSettingsFile() {
+        File configDir = new File(
+            System.getProperty("user.home"),
+            ".texteditor"
+        );
+        return new File(configDir, "save-transforms.bin");
+    }
+
+    // Defaults to writing the text as it is
+    public static SaveTransforms load() {
+        SaveTransforms transforms = new SaveTransforms();
+        File file = getSettingsFile();
+        if (!file.exists()) return transforms;
+
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))
+            )
+        ) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return transforms;
+            }
+            transforms.trimTrailingWhitespace = in.readBoolean();
+            transforms.expandTabs = in.readBoolean();
+            transforms.ensureFinalNewline = in.readBoolean();
+            transforms.lineEnding = LineEnding.valueOf(in.readUTF());
+            transforms.charset = Charset.forName(in.readUTF());
+        } catch (IOException | IllegalArgumentException e) {
+            // Ignore unreadable settings
+            return new SaveTransforms();
+        }
+        return transforms;
+    }
+
+    public void save() {
+        try {
+            File file = getSettingsFile();
+            File dir = file.getParentFile();
+            if (!dir.exists()) dir.mkdirs();
+
+            File temp = new File(dir, file.getName() + ".tmp");
+            try (
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))
+                )
+            ) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeBoolean(trimTrailingWhitespace);
+                out.writeBoolean(expandTabs);
+                out.writeBoolean(ensureFinalNewline);
+                out.writeUTF(lineEnding.name());
+                out.writeUTF(charset.name());
+            }
+            try {
+                Files.move(
+                    temp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(
+                    temp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            }
+        } catch (IOException e) {
+            // Ignore errors when saving settings
+        }
+    }
+}
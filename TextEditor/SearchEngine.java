@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Search Engine
+// Literal find/replace shared by FindReplaceDialog and the batch mode
+class SearchEngine {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String searchText;
+    private final boolean caseSensitive;
+    private final boolean wholeWord;
+    private final Pattern pattern;
+
+    public SearchEngine(
+        String searchText,
+        boolean caseSensitive,
+        boolean wholeWord
+    ) {
+        if (searchText == null || searchText.isEmpty()) {
+            throw new IllegalArgumentException("Search text is empty");
+        }
+        this.searchText = searchText;
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+
+        // UNICODE_CASE folds non-ASCII letters too, as toLowerCase did
+        int flags = caseSensitive
+            ? 0
+            : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        String regex = Pattern.quote(searchText);
+        if (wholeWord) {
+            regex = "\\b" + regex + "\\b";
+        }
+        this.pattern = Pattern.compile(regex, flags);
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    public boolean isWholeWord() {
+        return wholeWord;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    // Literal matches always have the length of the search text
+    public int getMatchLength() {
+        return searchText.length();
+    }
+
+    // Returns the start of the first match at or after from, or -1
+    public int findNext(CharSequence text, int from) {
+        if (from < 0) from = 0;
+        if (from > text.length()) return -1;
+        Matcher matcher = newMatcher(text);
+        matcher.region(from, text.length());
+        return matcher.find() ? matcher.start() : -1;
+    }
+
+    // Returns the start of the last match that begins before the given
+    // offset, or -1. Searches backwards in growing windows so that a
+    // match close to the caret does not require scanning the whole text.
+    public int findPrevious(CharSequence text, int before) {
+        if (before > text.length()) before = text.length();
+        Matcher matcher = newMatcher(text);
+        int window = Math.max(CHUNK_SIZE, searchText.length() * 4);
+        int regionEnd = Math.min(
+            text.length(),
+            before + searchText.length() - 1
+        );
+
+        int regionStart = before;
+        while (regionStart > 0) {
+            regionStart = Math.max(0, regionStart - window);
+            matcher.region(regionStart, regionEnd);
+            int last = -1;
+            while (matcher.find() && matcher.start() < before) {
+                last = matcher.start();
+            }
+            if (last != -1) return last;
+            window *= 2;
+        }
+        return -1;
+    }
+
+    // Replaces every match and returns the number of replacements
+    public int replaceAll(
+        CharSequence text,
+        String replacement,
+        StringBuilder out
+    ) {
+        Matcher matcher = newMatcher(text);
+        int count = 0;
+        int last = 0;
+        while (matcher.find()) {
+            out.append(text, last, matcher.start());
+            out.append(replacement);
+            last = matcher.end();
+            count++;
+        }
+        out.append(text, last, text.length());
+        return count;
+    }
+
+    // Streams the reader through the matcher in fixed-size chunks, so
+    // memory use does not depend on the input size. Each match is
+    // reported to the listener (if any); when out is given, the text is
+    // copied to it with every match substituted by the replacement.
+    public long scan(
+        Reader in,
+        MatchListener listener,
+        Writer out,
+        String replacement
+    ) throws IOException {
+        int keep = searchText.length();
+        char[] buf = new char[Math.max(CHUNK_SIZE, keep * 4)];
+        Matcher matcher = pattern.matcher("");
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+
+        int len = 0; // chars in buf
+        int pos = 0; // chars before pos have been committed
+        long base = 0; // absolute offset of buf[0]
+        long line = 1;
+        long lineStart = 0;
+        long count = 0;
+        boolean eof = false;
+
+        while (!eof) {
+            // Keep one committed char so word boundaries see it
+            int shift = Math.max(0, pos - 1);
+            if (shift > 0) {
+                System.arraycopy(buf, shift, buf, 0, len - shift);
+                len -= shift;
+                pos -= shift;
+                base += shift;
+            }
+
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) {
+                eof = true;
+            } else {
+                len += n;
+            }
+
+            // Matches must start before limit so that they (and the
+            // char after them) are fully inside the buffer
+            int limit = eof ? len : len - keep;
+            if (limit <= pos) continue;
+
+            matcher.reset(CharBuffer.wrap(buf, 0, len));
+            matcher.region(pos, len);
+            int next = pos;
+            while (matcher.find() && matcher.start() < limit) {
+                int start = matcher.start();
+                for (int i = next; i < start; i++) {
+                    if (buf[i] == '\n') {
+                        line++;
+                        lineStart = base + i + 1;
+                    }
+                }
+                if (out != null) {
+                    out.write(buf, next, start - next);
+                    out.write(replacement);
+                }
+                if (listener != null) {
+                    listener.matchFound(
+                        base + start,
+                        line,
+                        base + start - lineStart + 1
+                    );
+                }
+                for (int i = start; i < matcher.end(); i++) {
+                    if (buf[i] == '\n') {
+                        line++;
+                        lineStart = base + i + 1;
+                    }
+                }
+                count++;
+                next = matcher.end();
+            }
+
+            int commit = Math.max(next, limit);
+            for (int i = next; i < commit; i++) {
+                if (buf[i] == '\n') {
+                    line++;
+                    lineStart = base + i + 1;
+                }
+            }
+            if (out != null) {
+                out.write(buf, next, commit - next);
+            }
+            pos = commit;
+        }
+        return count;
+    }
+
+    private Matcher newMatcher(CharSequence text) {
+        Matcher matcher = pattern.matcher(text);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        return matcher;
+    }
+
+    // Receives matches found by scan()
+    interface MatchListener {
+        void matchFound(long offset, long line, long column);
+    }
+}
@@ -0,0 +1,238 @@
+import java.awt.Rectangle;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Session Store
+// Compact binary record of the open documents (~/.texteditor/session.bin)
+// plus a per-file line index cache keyed by a size/mtime fingerprint
+class SessionStore {
+
+    private static final int MAGIC = 0x52544553; // "RTES"
+    private static final int VERSION = 1;
+    private static final int INDEX_MAGIC = 0x5254494C; // "RTIL"
+
+    private static File getConfigDir() {
+        return new File(System.getProperty("user.home"), ".texteditor");
+    }
+
+    private static File getSessionFile() {
+        return new File(getConfigDir(), "session.bin");
+    }
+
+    private static File getCacheDir() {
+        return new File(getConfigDir(), "cache");
+    }
+
+    // The active document is always returned first
+    public static List<DocumentState> load() {
+        List<DocumentState> states = new ArrayList<>();
+        File file = getSessionFile();
+        if (!file.exists()) return states;
+
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))
+            )
+        ) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return states;
+            }
+            int count = in.readInt();
+            int active = in.readInt();
+            for (int i = 0; i < count; i++) {
+                DocumentState state = DocumentState.read(in);
+                if (i == active) {
+                    states.add(0, state);
+                } else {
+                    states.add(state);
+                }
+            }
+        } catch (IOException e) {
+            // Ignore unreadable sessions
+            states.clear();
+        }
+        return states;
+    }
+
+    public static void save(List<DocumentState> states, int active) {
+        try {
+            File configDir = getConfigDir();
+            if (!configDir.exists()) configDir.mkdirs();
+
+            File temp = new File(configDir, "session.bin.tmp");
+            try (
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))
+                )
+            ) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(states.size());
+                out.writeInt(active);
+                for (DocumentState state : states) {
+                    state.write(out);
+                }
+            }
+            replace(temp, getSessionFile());
+            pruneLineIndexCache(states);
+        } catch (IOException e) {
+            // Ignore errors when saving the session
+        }
+    }
+
+    // Returns the cached line index if the file still has the size and
+    // modification time it had when the index was written
+    public static LineIndex loadLineIndex(File file) {
+        File cacheFile = getCacheFile(file);
+        if (!cacheFile.exists()) return null;
+
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(cacheFile))
+            )
+        ) {
+            if (
+                in.readInt() != INDEX_MAGIC ||
+                !in.readUTF().equals(file.getAbsolutePath()) ||
+                in.readLong() != file.length() ||
+                in.readLong() != file.lastModified()
+            ) {
+                return null;
+            }
+            return LineIndex.read(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static void saveLineIndex(
+        File file,
+        long fileSize,
+        long lastModified,
+        LineIndex index
+    ) {
+        // Only cache indexes that still describe the file on disk
+        if (
+            file.length() != fileSize || file.lastModified() != lastModified
+        ) {
+            return;
+        }
+        try {
+            File cacheDir = getCacheDir();
+            if (!cacheDir.exists()) cacheDir.mkdirs();
+
+            File cacheFile = getCacheFile(file);
+            File temp = new File(cacheDir, cacheFile.getName() + ".tmp");
+            try (
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))
+                )
+            ) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeUTF(file.getAbsolutePath());
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                index.write(out);
+            }
+            replace(temp, cacheFile);
+        } catch (IOException e) {
+            // Ignore errors when saving the cache
+        }
+    }
+
+    private static void pruneLineIndexCache(List<DocumentState> states) {
+        File[] cached = getCacheDir().listFiles((dir, name) ->
+            name.endsWith(".lidx")
+        );
+        if (cached == null) return;
+
+        Set<String> keep = new HashSet<>();
+        for (DocumentState state : states) {
+            keep.add(getCacheFile(new File(state.path)).getName());
+        }
+        for (File file : cached) {
+            if (!keep.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getCacheFile(File file) {
+        String path = file.getAbsolutePath();
+        return new File(
+            getCacheDir(),
+            Integer.toHexString(path.hashCode()) + ".lidx"
+        );
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(
+                source.toPath(),
+                target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(
+                source.toPath(),
+                target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING
+            );
+        }
+    }
+
+    // View state of one open document
+    static class DocumentState {
+
+        String path;
+        int caret;
+        int scrollX;
+        int scrollY;
+        float fontSize;
+        boolean wordWrap;
+        long fileSize;
+        long lastModified;
+        Rectangle bounds;
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeInt(caret);
+            out.writeInt(scrollX);
+            out.writeInt(scrollY);
+            out.writeFloat(fontSize);
+            out.writeBoolean(wordWrap);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(bounds.x);
+            out.writeInt(bounds.y);
+            out.writeInt(bounds.width);
+            out.writeInt(bounds.height);
+        }
+
+        static DocumentState read(DataInputStream in) throws IOException {
+            DocumentState state = new DocumentState();
+            state.path = in.readUTF();
+            state.caret = in.readInt();
+            state.scrollX = in.readInt();
+            state.scrollY = in.readInt();
+            state.fontSize = in.readFloat();
+            state.wordWrap = in.readBoolean();
+            state.fileSize = in.readLong();
+            state.lastModified = in.readLong();
+            state.bounds = new Rectangle(
+                in.readInt(),
+                in.readInt(),
+                in.readInt(),
+                in.readInt()
+            );
+            return state;
+        }
+    }
+}
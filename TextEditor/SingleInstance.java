@@ -0,0 +1,261 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+
+// Single Instance
+// Lets a launch hand its files to an editor that is already running
+// instead of starting a new one. The running instance listens on a
+// loopback port, written with a secret token to a file only its user can
+// read (~/.texteditor/instance), and refuses connections without it.
+class SingleInstance {
+
+    private static final int MAGIC = 0x52545349; // "RTSI"
+    private static final int CONNECT_TIMEOUT = 500;
+    private static final int REPLY_TIMEOUT = 5000;
+    private static final int MAX_FILES = 1024;
+
+    // Called on the EDT with the files a launch handed over; closed is
+    // null unless the launch waits, and must then run once all of the
+    // files have been closed
+    interface Opener {
+        void open(List<File> files, Runnable closed);
+    }
+
+    private static File getInstanceFile() {
+        File configDir = new File(
+            System.getProperty("user.home"),
+            ".texteditor"
+        );
+        return new File(configDir, "instance");
+    }
+
+    // Hands the files to the running instance, if there is one, and
+    // returns true once it has taken them; with wait, not until it has
+    // closed them again or exited
+    public static boolean forward(List<File> files, boolean wait) {
+        int port;
+        String token;
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    new FileInputStream(getInstanceFile()),
+                    StandardCharsets.UTF_8
+                )
+            )
+        ) {
+            port = Integer.parseInt(reader.readLine().trim());
+            token = reader.readLine();
+        } catch (IOException | RuntimeException e) {
+            // No instance, or none that left a usable record
+            return false;
+        }
+
+        try (Socket socket = new Socket()) {
+            socket.connect(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                CONNECT_TIMEOUT
+            );
+            socket.setSoTimeout(REPLY_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream())
+            );
+            out.writeInt(MAGIC);
+            out.writeUTF(token);
+            out.writeBoolean(wait);
+            out.writeInt(files.size());
+            for (File file : files) {
+                out.writeUTF(file.getAbsolutePath());
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            if (in.readInt() != MAGIC) return false;
+            if (wait) {
+                // Ends with a byte when closed, or the end of the stream
+                // if the instance exits first
+                socket.setSoTimeout(0);
+                try {
+                    in.read();
+                } catch (IOException e) {
+                    // The files were taken; nothing more to wait for
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            // A stale record; whatever is on that port is not an editor
+            return false;
+        }
+    }
+
+    // Makes this process the running instance. Failing to listen leaves
+    // it working on its own, as every launch did before.
+    public static void listen(Opener opener) {
+        ServerSocket server;
+        String token = newToken();
+        try {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            writeInstanceFile(server.getLocalPort(), token);
+        } catch (IOException e) {
+            return;
+        }
+
+        Thread thread = new Thread(
+            () -> accept(server, token, opener),
+            "Instance server"
+        );
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime()
+            .addShutdownHook(new Thread(() -> deleteInstanceFile(token)));
+    }
+
+    private static void accept(
+        ServerSocket server,
+        String token,
+        Opener opener
+    ) {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            // Each launch gets a thread, as some wait a long time
+            Thread thread = new Thread(
+                () -> serve(socket, token, opener),
+                "Instance client"
+            );
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void serve(Socket socket, String token, Opener opener) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(REPLY_TIMEOUT);
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(connection.getInputStream())
+            );
+            if (in.readInt() != MAGIC) return;
+            byte[] given = in.readUTF().getBytes(StandardCharsets.UTF_8);
+            if (
+                !MessageDigest.isEqual(
+                    given,
+                    token.getBytes(StandardCharsets.UTF_8)
+                )
+            ) {
+                return;
+            }
+            boolean wait = in.readBoolean();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_FILES) return;
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                files.add(new File(in.readUTF()));
+            }
+
+            CountDownLatch closed = new CountDownLatch(1);
+            SwingUtilities.invokeLater(() ->
+                opener.open(files, wait ? closed::countDown : null)
+            );
+            DataOutputStream out = new DataOutputStream(
+                connection.getOutputStream()
+            );
+            out.writeInt(MAGIC);
+            out.flush();
+            if (wait) {
+                closed.await();
+                out.writeByte(0);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The launch gave up or was not one of ours
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b & 0xFF));
+        }
+        return token.toString();
+    }
+
+    // Created readable by its owner only, then moved into place
+    private static void writeInstanceFile(int port, String token)
+        throws IOException {
+        File file = getInstanceFile();
+        File dir = file.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        Path temp;
+        try {
+            temp = Files.createTempFile(
+                dir.toPath(),
+                "instance",
+                ".tmp",
+                PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")
+                )
+            );
+        } catch (UnsupportedOperationException e) {
+            temp = Files.createTempFile(dir.toPath(), "instance", ".tmp");
+        }
+        try {
+            Files.write(
+                temp,
+                (port + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8)
+            );
+            try {
+                Files.move(
+                    temp,
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(
+                    temp,
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Only if a later instance has not taken the record over since
+    private static void deleteInstanceFile(String token) {
+        File file = getInstanceFile();
+        try {
+            List<String> lines = Files.readAllLines(
+                file.toPath(),
+                StandardCharsets.UTF_8
+            );
+            if (lines.size() > 1 && lines.get(1).equals(token)) {
+                Files.delete(file.toPath());
+            }
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+}
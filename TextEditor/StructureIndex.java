@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.Element;
+
+// Structure Index
+// Brackets and block comments of Java source, kept per line together
+// with the lexer state the line starts in. An edit re-lexes only the
+// lines it touched, plus those after it whose starting state it changed,
+// such as when it opens a comment; nothing else reads the text again.
+class StructureIndex {
+
+    // Token kinds; an opening kind is even and its closing kind follows
+    static final int PAREN_OPEN = 0;
+    static final int PAREN_CLOSE = 1;
+    static final int BRACKET_OPEN = 2;
+    static final int BRACKET_CLOSE = 3;
+    static final int BRACE_OPEN = 4;
+    static final int BRACE_CLOSE = 5;
+    static final int COMMENT_OPEN = 6;
+    static final int COMMENT_CLOSE = 7;
+
+    // Returned by findMatch when there is no bracket at the offset
+    static final int NO_BRACKET = -2;
+
+    // Lexer states at the start of a line
+    private static final int CODE = 0;
+    private static final int COMMENT = 1;
+    private static final int TEXT_BLOCK = 2;
+
+    private static final int[] NO_TOKENS = new int[0];
+
+    private final List<Line> lines = new ArrayList<>();
+    private long version = -1;
+    private ChangeBatch waiting;
+
+    // One line's tokens, each stored as its offset in the line << 3 | kind
+    private static class Line {
+
+        final int state;
+        final int endState;
+        final int[] tokens;
+
+        Line(int state, int endState, int[] tokens) {
+            this.state = state;
+            this.endState = endState;
+            this.tokens = tokens;
+        }
+    }
+
+    // Lexes the whole document
+    public void rebuild(EditorDocument document) {
+        EditorDocument.Version current = document.getVersion();
+        Element root = document.getDefaultRootElement();
+        CharSequence text = current.text.chars();
+        lines.clear();
+        int state = CODE;
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Line line = lex(text, root.getElement(i), state);
+            lines.add(line);
+            state = line.endState;
+        }
+        version = current.number;
+        waiting = null;
+    }
+
+    // Applies a batch of edits. Returns false while the document has moved
+    // past the batch; the range is kept and merged with the next one.
+    public boolean update(ChangeBatch batch, EditorDocument document) {
+        waiting = waiting == null ? batch : waiting.merge(batch);
+        if (!document.isCurrent(waiting.version)) return false;
+        ChangeBatch change = waiting;
+        if (change.reset || version < 0) {
+            rebuild(document);
+            return true;
+        }
+        waiting = null;
+
+        Element root = document.getDefaultRootElement();
+        CharSequence text = change.getText().chars();
+        int first = root.getElementIndex(change.start);
+        int lastNew = root.getElementIndex(change.end);
+        int lastOld = lastNew - (root.getElementCount() - lines.size());
+
+        int state = first == 0 ? CODE : lines.get(first - 1).endState;
+        List<Line> fresh = new ArrayList<>(lastNew - first + 1);
+        for (int i = first; i <= lastNew; i++) {
+            Line line = lex(text, root.getElement(i), state);
+            fresh.add(line);
+            state = line.endState;
+        }
+        lines.subList(first, lastOld + 1).clear();
+        lines.addAll(first, fresh);
+
+        // Carry a changed state on until a line already starts in it
+        for (int i = lastNew + 1; i < lines.size(); i++) {
+            if (lines.get(i).state == state) break;
+            Line line = lex(text, root.getElement(i), state);
+            lines.set(i, line);
+            state = line.endState;
+        }
+        version = change.version.number;
+        return true;
+    }
+
+    public boolean isCurrent(EditorDocument document) {
+        return version == document.getVersion().number;
+    }
+
+    // Foldable braces and block comments spanning three or more lines,
+    // by start offset
+    public List<FoldModel.Region> getRegions(Element root) {
+        List<FoldModel.Region> regions = new ArrayList<>();
+        int[] stackOffsets = new int[64];
+        int[] stackLines = new int[64];
+        int[] stackKinds = new int[64];
+        int depth = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            int[] tokens = lines.get(i).tokens;
+            if (tokens.length == 0) continue;
+            int lineStart = root.getElement(i).getStartOffset();
+            for (int token : tokens) {
+                int kind = token & 7;
+                int offset = lineStart + (token >>> 3);
+                if (kind == BRACE_OPEN || kind == COMMENT_OPEN) {
+                    if (depth == stackOffsets.length) {
+                        stackOffsets = Arrays.copyOf(stackOffsets, depth * 2);
+                        stackLines = Arrays.copyOf(stackLines, depth * 2);
+                        stackKinds = Arrays.copyOf(stackKinds, depth * 2);
+                    }
+                    stackOffsets[depth] = offset;
+                    stackLines[depth] = i;
+                    stackKinds[depth] = kind;
+                    depth++;
+                } else if (kind == BRACE_CLOSE || kind == COMMENT_CLOSE) {
+                    // An unmatched closing brace is left alone
+                    if (depth == 0 || stackKinds[depth - 1] != kind - 1) {
+                        continue;
+                    }
+                    depth--;
+                    if (i - stackLines[depth] >= 2) {
+                        regions.add(
+                            new FoldModel.Region(
+                                stackOffsets[depth],
+                                offset,
+                                stackLines[depth],
+                                i
+                            )
+                        );
+                    }
+                }
+            }
+        }
+        regions.sort((a, b) -> Integer.compare(a.start, b.start));
+        return regions;
+    }
+
+    // Offset of the bracket that matches the one at offset, -1 if it has
+    // none, or NO_BRACKET. Walks the token lists, not the text.
+    public int findMatch(Element root, int offset) {
+        int line = root.getElementIndex(offset);
+        if (line >= lines.size()) return NO_BRACKET;
+        int inLine = offset - root.getElement(line).getStartOffset();
+        int[] tokens = lines.get(line).tokens;
+        int index = -1;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] >>> 3 == inLine && (tokens[i] & 7) <= BRACE_CLOSE) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) return NO_BRACKET;
+
+        int kind = tokens[index] & 7;
+        int open = kind & ~1;
+        boolean forward = kind == open;
+        int depth = 0;
+        int i = index;
+        while (true) {
+            i += forward ? 1 : -1;
+            while (i < 0 || i >= tokens.length) {
+                line += forward ? 1 : -1;
+                if (line < 0 || line >= lines.size()) return -1;
+                tokens = lines.get(line).tokens;
+                i = forward ? 0 : tokens.length - 1;
+            }
+            int other = tokens[i] & 7;
+            if (other == kind) {
+                depth++;
+            } else if ((other & ~1) == open) {
+                if (depth == 0) {
+                    return (
+                        root.getElement(line).getStartOffset() +
+                        (tokens[i] >>> 3)
+                    );
+                }
+                depth--;
+            }
+        }
+    }
+
+    // Finds brackets outside comments, strings and character literals
+    private static Line lex(CharSequence text, Element element, int state) {
+        int start = element.getStartOffset();
+        int end = Math.min(element.getEndOffset(), text.length());
+        int startState = state;
+        int[] tokens = NO_TOKENS;
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (state == COMMENT) {
+                if (c == '*' && i + 1 < end && text.charAt(i + 1) == '/') {
+                    tokens = add(tokens, count++, i - start, COMMENT_CLOSE);
+                    state = CODE;
+                    i += 2;
+                } else {
+                    i++;
+                }
+                continue;
+            }
+            if (state == TEXT_BLOCK) {
+                if (c == '\\') {
+                    i += 2;
+                } else if (isTripleQuote(text, i, end)) {
+                    state = CODE;
+                    i += 3;
+                } else {
+                    i++;
+                }
+                continue;
+            }
+            int kind = -1;
+            switch (c) {
+                case '/':
+                    if (i + 1 < end && text.charAt(i + 1) == '/') {
+                        i = end;
+                        continue;
+                    }
+                    if (i + 1 < end && text.charAt(i + 1) == '*') {
+                        tokens = add(tokens, count++, i - start, COMMENT_OPEN);
+                        state = COMMENT;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                case '"':
+                    if (isTripleQuote(text, i, end)) {
+                        state = TEXT_BLOCK;
+                        i += 3;
+                        continue;
+                    }
+                    i = skipQuoted(text, i, end, '"');
+                    continue;
+                case '\'':
+                    i = skipQuoted(text, i, end, '\'');
+                    continue;
+                case '(':
+                    kind = PAREN_OPEN;
+                    break;
+                case ')':
+                    kind = PAREN_CLOSE;
+                    break;
+                case '[':
+                    kind = BRACKET_OPEN;
+                    break;
+                case ']':
+                    kind = BRACKET_CLOSE;
+                    break;
+                case '{':
+                    kind = BRACE_OPEN;
+                    break;
+                case '}':
+                    kind = BRACE_CLOSE;
+                    break;
+                default:
+                    break;
+            }
+            if (kind >= 0) tokens = add(tokens, count++, i - start, kind);
+            i++;
+        }
+        if (count < tokens.length) tokens = Arrays.copyOf(tokens, count);
+        return new Line(startState, state, tokens);
+    }
+
+    private static int[] add(int[] tokens, int count, int offset, int kind) {
+        if (count == tokens.length) {
+            tokens = Arrays.copyOf(tokens, Math.max(4, count * 2));
+        }
+        tokens[count] = offset << 3 | kind;
+        return tokens;
+    }
+
+    private static boolean isTripleQuote(CharSequence text, int i, int end) {
+        return (
+            i + 2 < end &&
+            text.charAt(i) == '"' &&
+            text.charAt(i + 1) == '"' &&
+            text.charAt(i + 2) == '"'
+        );
+    }
+
+    // Index after a string or character literal; an unclosed one ends
+    // with the line
+    private static int skipQuoted(
+        CharSequence text,
+        int i,
+        int end,
+        char quote
+    ) {
+        i++;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote || c == '\n') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+// Structured Format
+// Pretty-prints, minifies or validates JSON and XML. The formatters read
+// the text once, token by token, and write straight into a compact
+// content buffer, so no tree of the document is ever built and a large
+// file costs little more than its formatted copy.
+class StructuredFormat {
+
+    // Pieces handed to the document, one per EDT turn
+    static final int CHUNK_SIZE = 1 << 20;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    enum Language {
+        JSON,
+        XML,
+    }
+
+    enum Mode {
+        PRETTY_PRINT("Pretty-Print"),
+        MINIFY("Minify"),
+        VALIDATE("Validate");
+
+        final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+    }
+
+    // Where the text stops parsing, counted in lines and columns from the
+    // start of the formatted range
+    static class SyntaxError extends Exception {
+
+        final int line;
+        final int column;
+
+        SyntaxError(String message, int line, int column) {
+            super(message);
+            this.line = line;
+            this.column = column;
+        }
+    }
+
+    // Formats text from start up to end, returning null when validating
+    // or when the result would be the same text. Throws
+    // CancellationException once cancelled reports true.
+    public static Result format(
+        TextRope text,
+        int start,
+        int end,
+        Language language,
+        Mode mode,
+        int indent,
+        BooleanSupplier cancelled
+    ) throws SyntaxError {
+        Output out = new Output(mode != Mode.VALIDATE, cancelled);
+        boolean pretty = mode == Mode.PRETTY_PRINT;
+        if (language == Language.JSON) {
+            CharSequence range = text.chars().subSequence(start, end);
+            new JsonFormatter(range, out, pretty, indent).run();
+        } else {
+            XmlFormatter.run(text.reader(start, end), out, pretty, indent);
+        }
+        if (mode == Mode.VALIDATE) return null;
+        Result result = new Result(out.finish());
+        if (result.matches(text.chars().subSequence(start, end))) {
+            return null;
+        }
+        return result;
+    }
+
+    // Collects output in a small buffer that is flushed to the content,
+    // checking at each flush whether to stop
+    static final class Output {
+
+        private final CompactContent content;
+        private final BooleanSupplier cancelled;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int count;
+
+        Output(boolean keep, BooleanSupplier cancelled) {
+            content = keep ? new CompactContent() : null;
+            this.cancelled = cancelled;
+        }
+
+        void put(char c) {
+            if (count == buffer.length) flush();
+            buffer[count++] = c;
+        }
+
+        void put(String s) {
+            put(s, 0, s.length());
+        }
+
+        void put(CharSequence s, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (count == buffer.length) flush();
+                buffer[count++] = s.charAt(i);
+            }
+        }
+
+        CompactContent finish() {
+            flush();
+            return content;
+        }
+
+        private void flush() {
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            if (content != null) content.append(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    // The formatted text, read back a chunk at a time
+    static final class Result {
+
+        private final CompactContent content;
+        private int position;
+
+        private Result(CompactContent content) {
+            this.content = content;
+        }
+
+        public int length() {
+            // Less the newline every content ends with
+            return content.length() - 1;
+        }
+
+        public boolean hasMore() {
+            return position < length();
+        }
+
+        // The next chunk, or null once all of it has been read
+        public String next() {
+            if (!hasMore()) return null;
+            int n = Math.min(CHUNK_SIZE, length() - position);
+            try {
+                String chunk = content.getString(position, n);
+                position += n;
+                return chunk;
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean matches(CharSequence text) {
+            if (text.length() != length()) return false;
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            int i = 0;
+            while (i < length()) {
+                try {
+                    content.getChars(i, length() - i, segment);
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int k = 0; k < segment.count; k++) {
+                    if (segment.array[segment.offset + k] != text.charAt(i++)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.awt.Cursor;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.event.ChangeListener;
+
+// Task Indicator
+// Shows the task manager's work in the status bar: the task running, or
+// how many are, with progress and time taken. Tasks that finish quickly
+// never show. A click lists them all, with a way to cancel each that
+// can be cancelled.
+class TaskIndicator extends JLabel {
+
+    // Shorter tasks would only flicker past
+    private static final long SHOW_AFTER_MS = 500;
+
+    private final TaskManager manager = TaskManager.getInstance();
+    private final ChangeListener listener = e -> refresh();
+    // Keeps the times counting while anything is running
+    private final javax.swing.Timer timer = new javax.swing.Timer(500, e ->
+        refresh()
+    );
+
+    TaskIndicator() {
+        setVisible(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        addMouseListener(
+            new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    showTasks();
+                }
+            }
+        );
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        manager.addChangeListener(listener);
+        refresh();
+    }
+
+    @Override
+    public void removeNotify() {
+        manager.removeChangeListener(listener);
+        timer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        List<TaskManager.Task> tasks = manager.getTasks();
+        if (tasks.isEmpty()) {
+            timer.stop();
+        } else if (!timer.isRunning()) {
+            timer.start();
+        }
+
+        List<TaskManager.Task> shown = new ArrayList<>();
+        for (TaskManager.Task task : tasks) {
+            if (task.getElapsedMillis() >= SHOW_AFTER_MS) shown.add(task);
+        }
+        if (shown.isEmpty()) {
+            setVisible(false);
+            return;
+        }
+        setText(
+            shown.size() == 1
+                ? describe(shown.get(0))
+                : shown.size() + " tasks running"
+        );
+        StringBuilder tip = new StringBuilder("<html>");
+        for (TaskManager.Task task : shown) {
+            tip.append(describe(task)).append("<br>");
+        }
+        setToolTipText(tip.append("</html>").toString());
+        setVisible(true);
+    }
+
+    private void showTasks() {
+        JPopupMenu menu = new JPopupMenu();
+        for (TaskManager.Task task : manager.getTasks()) {
+            if (task.isCancellable() && !task.isCancelled()) {
+                JMenuItem item = new JMenuItem("Cancel " + describe(task));
+                item.addActionListener(e -> task.cancel());
+                menu.add(item);
+            } else {
+                JMenuItem item = new JMenuItem(describe(task));
+                item.setEnabled(false);
+                menu.add(item);
+            }
+        }
+        if (menu.getComponentCount() == 0) return;
+        menu.show(this, 0, -menu.getPreferredSize().height);
+    }
+
+    private static String describe(TaskManager.Task task) {
+        StringBuilder text = new StringBuilder(task.name);
+        if (task.getProgress() > 0) {
+            text.append(' ').append(task.getProgress()).append('%');
+        }
+        long seconds = task.getElapsedMillis() / 1000;
+        text.append(String.format(" %d:%02d", seconds / 60, seconds % 60));
+        if (task.isCancelled()) {
+            text.append(" (cancelling)");
+        } else if (!task.isStarted()) {
+            text.append(" (waiting)");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+// Task Manager
+// Runs the editor's background work, as SwingWorkers, in three priority
+// classes with a pool each, so idle work never holds up what the user is
+// waiting for. A task may carry a key: submitting another with the same
+// key cancels the older one, so a newer search replaces a stale one.
+// Cancelling is cooperative; the worker is cancelled and its token set,
+// and the work stops the next time it checks.
+class TaskManager {
+
+    private static final TaskManager INSTANCE = new TaskManager();
+
+    enum Priority {
+        // What the user is waiting on: opening, saving, searching
+        INTERACTIVE,
+        // Work the user asked for but can carry on without
+        BACKGROUND,
+        // Upkeep such as word counts and change markers
+        IDLE,
+    }
+
+    private final Map<Priority, ExecutorService> executors =
+        new EnumMap<>(Priority.class);
+    private final List<Task> tasks = new CopyOnWriteArrayList<>();
+    private final List<ChangeListener> listeners =
+        new CopyOnWriteArrayList<>();
+
+    private TaskManager() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        executors.put(
+            Priority.INTERACTIVE,
+            newPool(
+                "Interactive task",
+                Math.max(2, cores),
+                Thread.NORM_PRIORITY
+            )
+        );
+        executors.put(
+            Priority.BACKGROUND,
+            newPool(
+                "Background task",
+                Math.max(1, cores / 2),
+                Thread.NORM_PRIORITY - 1
+            )
+        );
+        executors.put(
+            Priority.IDLE,
+            newPool("Idle task", 1, Thread.MIN_PRIORITY)
+        );
+    }
+
+    public static TaskManager getInstance() {
+        return INSTANCE;
+    }
+
+    // Platform threads: virtual threads need Java 21, and the editor runs
+    // on Java 9
+    private static ExecutorService newPool(
+        String name,
+        int threads,
+        int priority
+    ) {
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+    }
+
+    // Runs worker to the end; for work that must not stop halfway, such
+    // as a save
+    public Task submit(
+        String name,
+        Priority priority,
+        SwingWorker<?, ?> worker
+    ) {
+        return start(new Task(name, priority, null, false, null, worker));
+    }
+
+    // Runs worker until it finishes or is cancelled, first cancelling any
+    // task with the same key. The worker's done() must check isCancelled()
+    // or the token before calling get().
+    public Task submitCancellable(
+        String name,
+        Priority priority,
+        Object key,
+        AtomicBoolean token,
+        SwingWorker<?, ?> worker
+    ) {
+        if (key != null) cancel(key);
+        return start(new Task(name, priority, key, true, token, worker));
+    }
+
+    // Cancels the tasks submitted with key
+    public void cancel(Object key) {
+        for (Task task : tasks) {
+            if (key.equals(task.key)) task.cancel();
+        }
+    }
+
+    // Tasks waiting or running, oldest first
+    public List<Task> getTasks() {
+        return new ArrayList<>(tasks);
+    }
+
+    // Listeners run on the EDT when a task is added or removed
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Task start(Task task) {
+        tasks.add(task);
+        fireChanged();
+        executors.get(task.priority).execute(() -> {
+            task.started = System.nanoTime();
+            try {
+                // Returns at once for a task cancelled while waiting
+                task.worker.run();
+            } finally {
+                remove(task);
+            }
+        });
+        return task;
+    }
+
+    private void remove(Task task) {
+        if (tasks.remove(task)) fireChanged();
+    }
+
+    private void fireChanged() {
+        SwingUtilities.invokeLater(() -> {
+            ChangeEvent event = new ChangeEvent(this);
+            for (ChangeListener listener : listeners) {
+                listener.stateChanged(event);
+            }
+        });
+    }
+
+    static final class Task {
+
+        final String name;
+        final Priority priority;
+        private final Object key;
+        private final boolean cancellable;
+        private final AtomicBoolean token;
+        private final SwingWorker<?, ?> worker;
+        private final long submitted = System.nanoTime();
+        private volatile long started;
+        private volatile boolean cancelled;
+
+        private Task(
+            String name,
+            Priority priority,
+            Object key,
+            boolean cancellable,
+            AtomicBoolean token,
+            SwingWorker<?, ?> worker
+        ) {
+            this.name = name;
+            this.priority = priority;
+            this.key = key;
+            this.cancellable = cancellable;
+            this.token = token;
+            this.worker = worker;
+        }
+
+        public boolean isCancellable() {
+            return cancellable;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isStarted() {
+            return started != 0;
+        }
+
+        // Percent done, as the worker last set it; 0 when it doesn't say
+        public int getProgress() {
+            return worker.getProgress();
+        }
+
+        // Time since it started running, or since it was submitted while
+        // it still waits for a thread
+        public long getElapsedMillis() {
+            long from = started != 0 ? started : submitted;
+            return (System.nanoTime() - from) / 1_000_000;
+        }
+
+        public void cancel() {
+            if (!cancellable || cancelled) return;
+            cancelled = true;
+            if (token != null) token.set(true);
+            worker.cancel(false);
+            // One still waiting never gets to run
+            if (started == 0) INSTANCE.remove(this);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+// Text Analysis
+// Word and word pair frequencies, line lengths and character classes,
+// counted over chunks in parallel and merged. Words are keyed by a 64-bit
+// hash in primitive tables of fixed capacity, so memory does not grow
+// with the text; once a table is full its rarest entries are dropped and
+// the counts become lower bounds, off by at most the report's maxError.
+class TextAnalysis {
+
+    static final int CHUNK_SIZE = 1 << 22;
+    static final int TOP = 100;
+
+    private static final int CHUNK_CAPACITY = 1 << 16;
+    private static final int TOTAL_CAPACITY = 1 << 19;
+    private static final long REPORT_INTERVAL = 200_000_000L;
+    // Longer words and pairs are cut off when shown
+    private static final int MAX_SHOWN = 60;
+    private static final long SEED = 0xCBF29CE484222325L;
+
+    static final String[] CLASS_NAMES = {
+        "Uppercase letters",
+        "Lowercase letters",
+        "Other letters",
+        "Digits",
+        "Whitespace",
+        "Punctuation",
+        "Symbols",
+        "Other",
+    };
+
+    // Line lengths are counted in buckets 0, 1, 2-3, 4-7, ...; the last
+    // one holds every longer line
+    static final int BUCKETS = 22;
+
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_CLASSES[c] = (byte) classify(c);
+        }
+    }
+
+    private final Counter words;
+    private final Counter bigrams;
+    private final long[] lineLengths = new long[BUCKETS];
+    private final long[] classes = new long[CLASS_NAMES.length];
+    private long wordCount;
+    private long pairCount;
+    private long lineCount;
+    private long characters;
+
+    // Scan state within one chunk
+    private int wordStart = -1;
+    private long wordHash;
+    private int previousStart = -1;
+    private long previousHash;
+
+    private TextAnalysis(int capacity) {
+        words = new Counter(capacity);
+        bigrams = new Counter(capacity);
+    }
+
+    // Analyzes text on the common fork/join pool. Partial reports go to
+    // progress one at a time, a few times a second; throws
+    // CancellationException once cancelled returns true.
+    public static Report run(
+        TextRope text,
+        BooleanSupplier cancelled,
+        Consumer<Report> progress
+    ) {
+        int length = text.length();
+        int chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        TextAnalysis total = new TextAnalysis(TOTAL_CAPACITY);
+        int[] done = { 0 };
+        long[] reported = { System.nanoTime() };
+
+        IntStream.range(0, chunks)
+            .parallel()
+            .forEach(chunk -> {
+                TextAnalysis part = new TextAnalysis(CHUNK_CAPACITY);
+                int start = chunk * CHUNK_SIZE;
+                int end = Math.min(length, start + CHUNK_SIZE);
+                part.scan(text.chars(), start, end, cancelled);
+                synchronized (total) {
+                    total.merge(part);
+                    done[0]++;
+                    long now = System.nanoTime();
+                    if (
+                        done[0] < chunks &&
+                        now - reported[0] >= REPORT_INTERVAL
+                    ) {
+                        reported[0] = now;
+                        progress.accept(
+                            total.report(text, (double) done[0] / chunks)
+                        );
+                    }
+                }
+            });
+        return total.report(text, 1);
+    }
+
+    // Counts what starts in [start, end), reading past end to finish the
+    // last word, word pair and line
+    private void scan(
+        CharSequence text,
+        int start,
+        int end,
+        BooleanSupplier cancelled
+    ) {
+        int length = text.length();
+        characters += end - start;
+        int lineStart = start == 0 || text.charAt(start - 1) == '\n'
+            ? start
+            : -1;
+        // A word running into this chunk belongs to the one before
+        boolean skipping = start > 0 && isWordChar(text, start - 1);
+
+        for (int i = start; i < end; i++) {
+            if ((i & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            char c = text.charAt(i);
+            classes[c < 128 ? ASCII_CLASSES[c] : classify(c)]++;
+            if (c == '\n') {
+                if (lineStart >= 0) addLine(i - lineStart);
+                lineStart = i + 1;
+            }
+            if (isWordChar(text, i)) {
+                if (skipping) continue;
+                if (wordStart < 0) {
+                    wordStart = i;
+                    wordHash = SEED;
+                }
+                wordHash = hash(wordHash, c);
+            } else {
+                skipping = false;
+                if (wordStart >= 0) endWord(i);
+                // Only words with just whitespace between them pair up
+                if (!TextStatistics.isWhitespace(c)) previousStart = -1;
+            }
+        }
+
+        int i = end;
+        if (wordStart >= 0) {
+            while (i < length && isWordChar(text, i)) {
+                if ((i & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+                wordHash = hash(wordHash, text.charAt(i++));
+            }
+            endWord(i);
+        }
+        // The next chunk's first word still pairs with this one's last
+        if (previousStart >= 0) {
+            while (i < length && TextStatistics.isWhitespace(text.charAt(i))) {
+                if ((i++ & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+            }
+            long next = SEED;
+            int nextStart = i;
+            while (i < length && isWordChar(text, i)) {
+                next = hash(next, text.charAt(i++));
+            }
+            if (i > nextStart) {
+                pairCount++;
+                bigrams.add(
+                    pairKey(previousHash, next),
+                    1,
+                    previousStart,
+                    i - previousStart
+                );
+            }
+        }
+        if (lineStart >= 0 && (lineStart < end || end == length)) {
+            int lineEnd = end;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                if ((lineEnd++ & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+            }
+            addLine(lineEnd - lineStart);
+        }
+    }
+
+    private void endWord(int end) {
+        words.add(wordHash, 1, wordStart, end - wordStart);
+        wordCount++;
+        if (previousStart >= 0) {
+            pairCount++;
+            bigrams.add(
+                pairKey(previousHash, wordHash),
+                1,
+                previousStart,
+                end - previousStart
+            );
+        }
+        previousStart = wordStart;
+        previousHash = wordHash;
+        wordStart = -1;
+    }
+
+    private void addLine(int length) {
+        int bucket = 32 - Integer.numberOfLeadingZeros(length);
+        lineLengths[Math.min(bucket, BUCKETS - 1)]++;
+        lineCount++;
+    }
+
+    private void merge(TextAnalysis part) {
+        words.addAll(part.words);
+        bigrams.addAll(part.bigrams);
+        for (int i = 0; i < BUCKETS; i++) {
+            lineLengths[i] += part.lineLengths[i];
+        }
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] += part.classes[i];
+        }
+        wordCount += part.wordCount;
+        pairCount += part.pairCount;
+        lineCount += part.lineCount;
+        characters += part.characters;
+    }
+
+    private Report report(TextRope text, double progress) {
+        CharSequence chars = text.chars();
+        List<Entry> topWords = new ArrayList<>();
+        for (int slot : words.top(TOP)) {
+            topWords.add(
+                new Entry(
+                    shown(chars, words.offsets[slot], words.lengths[slot]),
+                    words.counts[slot]
+                )
+            );
+        }
+        List<Entry> topPairs = new ArrayList<>();
+        for (int slot : bigrams.top(TOP)) {
+            topPairs.add(
+                new Entry(
+                    shownPair(
+                        chars,
+                        bigrams.offsets[slot],
+                        bigrams.lengths[slot]
+                    ),
+                    bigrams.counts[slot]
+                )
+            );
+        }
+        return new Report(
+            topWords,
+            topPairs,
+            lineLengths.clone(),
+            classes.clone(),
+            wordCount,
+            pairCount,
+            lineCount,
+            characters,
+            Math.max(words.error, bigrams.error),
+            progress
+        );
+    }
+
+    private static String shown(CharSequence text, int offset, int length) {
+        String word = text
+            .subSequence(offset, offset + Math.min(length, MAX_SHOWN))
+            .toString()
+            .toLowerCase(Locale.ROOT);
+        return length > MAX_SHOWN ? word + "..." : word;
+    }
+
+    // Two words with the whitespace between them shown as one space
+    private static String shownPair(
+        CharSequence text,
+        int offset,
+        int length
+    ) {
+        int end = offset + length;
+        int gap = offset;
+        while (!TextStatistics.isWhitespace(text.charAt(gap))) gap++;
+        int second = gap;
+        while (TextStatistics.isWhitespace(text.charAt(second))) second++;
+        return (
+            shown(text, offset, gap - offset) +
+            " " +
+            shown(text, second, end - second)
+        );
+    }
+
+    // Letters, digits and underscores, plus an apostrophe between two
+    // letters or digits, as in "don't"
+    private static boolean isWordChar(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (Character.isLetterOrDigit(c) || c == '_') return true;
+        return (
+            c == '\'' &&
+            i > 0 &&
+            i + 1 < text.length() &&
+            Character.isLetterOrDigit(text.charAt(i - 1)) &&
+            Character.isLetterOrDigit(text.charAt(i + 1))
+        );
+    }
+
+    private static int classify(char c) {
+        switch (Character.getType(c)) {
+            case Character.UPPERCASE_LETTER:
+            case Character.TITLECASE_LETTER:
+                return 0;
+            case Character.LOWERCASE_LETTER:
+                return 1;
+            case Character.MODIFIER_LETTER:
+            case Character.OTHER_LETTER:
+                return 2;
+            case Character.DECIMAL_DIGIT_NUMBER:
+            case Character.LETTER_NUMBER:
+            case Character.OTHER_NUMBER:
+                return 3;
+            case Character.SPACE_SEPARATOR:
+            case Character.LINE_SEPARATOR:
+            case Character.PARAGRAPH_SEPARATOR:
+                return 4;
+            case Character.CONTROL:
+                return Character.isWhitespace(c) ? 4 : 7;
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return 5;
+            case Character.MATH_SYMBOL:
+            case Character.CURRENCY_SYMBOL:
+            case Character.MODIFIER_SYMBOL:
+            case Character.OTHER_SYMBOL:
+                return 6;
+            default:
+                return 7;
+        }
+    }
+
+    // FNV-1a over the lowercased characters
+    private static long hash(long hash, char c) {
+        return (hash ^ Character.toLowerCase(c)) * 0x100000001B3L;
+    }
+
+    private static long pairKey(long first, long second) {
+        return mix(first * 0x9E3779B97F4A7C15L + second);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+
+    static class Entry {
+
+        final String text;
+        final long count;
+
+        Entry(String text, long count) {
+            this.text = text;
+            this.count = count;
+        }
+    }
+
+    static class Report {
+
+        final List<Entry> words;
+        final List<Entry> bigrams;
+        final long[] lineLengths;
+        final long[] classes;
+        final long wordCount;
+        final long pairCount;
+        final long lineCount;
+        final long characters;
+        // Counts shown may be this much too low; 0 when exact
+        final long maxError;
+        // Share of the text analyzed so far, up to 1
+        final double progress;
+
+        Report(
+            List<Entry> words,
+            List<Entry> bigrams,
+            long[] lineLengths,
+            long[] classes,
+            long wordCount,
+            long pairCount,
+            long lineCount,
+            long characters,
+            long maxError,
+            double progress
+        ) {
+            this.words = words;
+            this.bigrams = bigrams;
+            this.lineLengths = lineLengths;
+            this.classes = classes;
+            this.wordCount = wordCount;
+            this.pairCount = pairCount;
+            this.lineCount = lineCount;
+            this.characters = characters;
+            this.maxError = maxError;
+            this.progress = progress;
+        }
+    }
+
+    // Open-addressing table from a nonzero 64-bit key to a count and the
+    // text range where the key was first seen. When capacity entries are
+    // in use, the rarer half is dropped; error adds up the counts that
+    // may have been lost that way.
+    private static class Counter {
+
+        private final int capacity;
+        private long[] keys;
+        private long[] counts;
+        private int[] offsets;
+        private int[] lengths;
+        private int size;
+        private long error;
+
+        Counter(int capacity) {
+            this.capacity = capacity;
+            allocate(1024);
+        }
+
+        private void allocate(int slots) {
+            keys = new long[slots];
+            counts = new long[slots];
+            offsets = new int[slots];
+            lengths = new int[slots];
+            size = 0;
+        }
+
+        void add(long key, long count, int offset, int length) {
+            if (key == 0) key = 1;
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    counts[slot] += count;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            counts[slot] = count;
+            offsets[slot] = offset;
+            lengths[slot] = length;
+            size++;
+            if (size >= capacity) {
+                prune();
+            } else if (size * 2 > keys.length) {
+                rehash(keys.length * 2, 0);
+            }
+        }
+
+        void addAll(Counter other) {
+            error += other.error;
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] != 0) {
+                    add(
+                        other.keys[slot],
+                        other.counts[slot],
+                        other.offsets[slot],
+                        other.lengths[slot]
+                    );
+                }
+            }
+        }
+
+        // Drops entries counted no more than the median
+        private void prune() {
+            long[] sorted = new long[size];
+            int n = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) sorted[n++] = counts[slot];
+            }
+            Arrays.sort(sorted);
+            long threshold = sorted[size / 2];
+            error += threshold;
+            rehash(keys.length, threshold);
+        }
+
+        // Moves entries counted more than threshold into a new table
+        private void rehash(int slots, long threshold) {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            int[] oldOffsets = offsets;
+            int[] oldLengths = lengths;
+            allocate(slots);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0 && oldCounts[slot] > threshold) {
+                    add(
+                        oldKeys[slot],
+                        oldCounts[slot],
+                        oldOffsets[slot],
+                        oldLengths[slot]
+                    );
+                }
+            }
+        }
+
+        // Slots of the n highest counts, highest first
+        int[] top(int n) {
+            int[] best = new int[Math.min(n, size)];
+            if (best.length == 0) return best;
+            int found = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0) continue;
+                long count = counts[slot];
+                if (found == best.length && count <= counts[best[found - 1]]) {
+                    continue;
+                }
+                int i = found < best.length ? found++ : found - 1;
+                while (i > 0 && counts[best[i - 1]] < count) {
+                    best[i] = best[i - 1];
+                    i--;
+                }
+                best[i] = slot;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+import java.io.Reader;
+import java.util.Arrays;
+
+// Text Rope
+// Immutable text kept as a height-balanced tree of small chunks. An edit
+// returns a new rope that shares every untouched chunk with the old one,
+// so earlier versions stay readable from any thread without locking.
+// Chunks of Latin-1 text are kept at a byte per character, like the
+// document's own content.
+class TextRope {
+
+    // Chunks are split past this size; loaded text starts half full so
+    // typing fills existing chunks instead of adding new ones
+    private static final int MAX_LEAF = 2048;
+    private static final int BUILD_LEAF = MAX_LEAF / 2;
+    // A node and, for a leaf, the header of its array
+    private static final int NODE_BYTES = 56;
+
+    static final TextRope EMPTY = new TextRope(null);
+
+    private final Node root;
+
+    private TextRope(Node root) {
+        this.root = root;
+    }
+
+    public static TextRope of(char[] text, int offset, int length) {
+        return new TextRope(build(text, offset, offset + length));
+    }
+
+    public static TextRope of(String text) {
+        return of(text.toCharArray(), 0, text.length());
+    }
+
+    public int length() {
+        return root == null ? 0 : root.length;
+    }
+
+    public int getLineCount() {
+        return root == null ? 1 : root.newlines + 1;
+    }
+
+    // Bytes held, roughly: one per Latin-1 character and two per other,
+    // plus a leaf and a branch for every chunk, taking chunks to be as
+    // full as when built
+    public long estimateFootprint() {
+        long chunks = length() / BUILD_LEAF + 1;
+        long wide = root == null ? 0 : root.wideLength;
+        return length() + wide + chunks * 2 * NODE_BYTES;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        Node node = root;
+        while (!node.isLeaf()) {
+            if (index < node.left.length) {
+                node = node.left;
+            } else {
+                index -= node.left.length;
+                node = node.right;
+            }
+        }
+        return node.charAt(index);
+    }
+
+    public TextRope insert(int offset, String text) {
+        checkRange(offset, 0);
+        if (text.isEmpty()) return this;
+        if (root != null) {
+            // Typing usually fits in the chunk at the caret
+            Node fitted = insertInLeaf(root, offset, text);
+            if (fitted != null) return new TextRope(fitted);
+        }
+        char[] chars = text.toCharArray();
+        Node[] halves = split(root, offset);
+        Node inserted = build(chars, 0, chars.length);
+        return new TextRope(concat(concat(halves[0], inserted), halves[1]));
+    }
+
+    public TextRope delete(int offset, int length) {
+        checkRange(offset, length);
+        if (length == 0) return this;
+        Node trimmed = deleteInLeaf(root, offset, length);
+        if (trimmed != null) return new TextRope(trimmed);
+        Node[] head = split(root, offset);
+        Node[] tail = split(head[1], length);
+        return new TextRope(concat(head[0], tail[1]));
+    }
+
+    // Calls visitor with each chunk of the text, in order; the array is
+    // only valid during the call
+    public void forEachChunk(ChunkVisitor visitor) {
+        visit(root, visitor, new char[MAX_LEAF]);
+    }
+
+    // Fast sequential access for regex and other scans; each view keeps
+    // its own position, so use one per thread
+    public CharSequence chars() {
+        return new Cursor();
+    }
+
+    public Reader reader() {
+        return reader(0, length());
+    }
+
+    // Reads the text from start up to end
+    public Reader reader(int start, int end) {
+        checkRange(start, end - start);
+        Cursor cursor = new Cursor();
+        return new Reader() {
+            private int position = start;
+
+            @Override
+            public int read(char[] buf, int off, int len) {
+                if (position >= end) return -1;
+                cursor.seek(position);
+                int n = Math.min(
+                    len,
+                    Math.min(cursor.leafEnd, end) - position
+                );
+                int from = position - cursor.leafStart;
+                cursor.leaf.getChars(from, from + n, buf, off);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    @Override
+    public String toString() {
+        char[] text = new char[length()];
+        copy(root, 0, text.length, text, 0);
+        return new String(text);
+    }
+
+    interface ChunkVisitor {
+        void visit(char[] chars, int offset, int count);
+    }
+
+    private void checkRange(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > length()) {
+            throw new IndexOutOfBoundsException(
+                "Range " + offset + "+" + length + " of " + length()
+            );
+        }
+    }
+
+    // Leaves hold text, as bytes while it is all Latin-1 and as chars
+    // otherwise; branches hold two children whose heights differ by at
+    // most one
+    private static class Node {
+
+        final Node left;
+        final Node right;
+        final byte[] narrow;
+        final char[] wide;
+        final int length;
+        final int newlines;
+        final int height;
+        // Characters held in wide leaves
+        final int wideLength;
+
+        Node(byte[] narrow) {
+            this.left = null;
+            this.right = null;
+            this.narrow = narrow;
+            this.wide = null;
+            this.length = narrow.length;
+            int count = 0;
+            for (byte b : narrow) {
+                if (b == '\n') count++;
+            }
+            this.newlines = count;
+            this.height = 0;
+            this.wideLength = 0;
+        }
+
+        Node(char[] wide) {
+            this.left = null;
+            this.right = null;
+            this.narrow = null;
+            this.wide = wide;
+            this.length = wide.length;
+            int count = 0;
+            for (char c : wide) {
+                if (c == '\n') count++;
+            }
+            this.newlines = count;
+            this.height = 0;
+            this.wideLength = wide.length;
+        }
+
+        Node(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+            this.narrow = null;
+            this.wide = null;
+            this.length = left.length + right.length;
+            this.newlines = left.newlines + right.newlines;
+            this.height = Math.max(left.height, right.height) + 1;
+            this.wideLength = left.wideLength + right.wideLength;
+        }
+
+        boolean isLeaf() {
+            return left == null;
+        }
+
+        char charAt(int index) {
+            return narrow != null ? (char) (narrow[index] & 0xFF) : wide[index];
+        }
+
+        // Copies a leaf's text in [from, to) into dst at dstBegin
+        void getChars(int from, int to, char[] dst, int dstBegin) {
+            if (wide != null) {
+                System.arraycopy(wide, from, dst, dstBegin, to - from);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                dst[dstBegin++] = (char) (narrow[i] & 0xFF);
+            }
+        }
+
+        // A leaf holding part of this one's text, in the same form
+        Node slice(int from, int to) {
+            if (narrow != null) {
+                return new Node(Arrays.copyOfRange(narrow, from, to));
+            }
+            return leaf(wide, from, to);
+        }
+    }
+
+    // A leaf for text[start, end), narrow when every char fits in a byte
+    private static Node leaf(char[] text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text[i] > 0xFF) {
+                return new Node(Arrays.copyOfRange(text, start, end));
+            }
+        }
+        byte[] narrow = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            narrow[i - start] = (byte) text[i];
+        }
+        return new Node(narrow);
+    }
+
+    private static Node build(char[] text, int start, int end) {
+        if (start >= end) return null;
+        int leaves = (end - start + BUILD_LEAF - 1) / BUILD_LEAF;
+        return buildLeaves(text, start, end, leaves);
+    }
+
+    // Splits evenly so the tree comes out as balanced as it can be
+    private static Node buildLeaves(char[] text, int start, int end, int n) {
+        if (n == 1) return leaf(text, start, end);
+        int half = n / 2;
+        int mid = start + (int) ((long) (end - start) * half / n);
+        return new Node(
+            buildLeaves(text, start, mid, half),
+            buildLeaves(text, mid, end, n - half)
+        );
+    }
+
+    // Copies the path to the leaf holding offset, or returns null when
+    // the text does not fit in that leaf
+    private static Node insertInLeaf(Node node, int offset, String text) {
+        if (node.isLeaf()) {
+            if (node.length + text.length() > MAX_LEAF) return null;
+            char[] chars = new char[node.length + text.length()];
+            node.getChars(0, offset, chars, 0);
+            text.getChars(0, text.length(), chars, offset);
+            node.getChars(offset, node.length, chars, offset + text.length());
+            return leaf(chars, 0, chars.length);
+        }
+        if (offset <= node.left.length) {
+            Node left = insertInLeaf(node.left, offset, text);
+            return left == null ? null : new Node(left, node.right);
+        }
+        Node right = insertInLeaf(node.right, offset - node.left.length, text);
+        return right == null ? null : new Node(node.left, right);
+    }
+
+    // Copies the path to a leaf that holds the whole range and keeps some
+    // text, or returns null
+    private static Node deleteInLeaf(Node node, int offset, int length) {
+        if (node.isLeaf()) {
+            if (length >= node.length) return null;
+            char[] chars = new char[node.length - length];
+            node.getChars(0, offset, chars, 0);
+            node.getChars(offset + length, node.length, chars, offset);
+            return leaf(chars, 0, chars.length);
+        }
+        int leftLength = node.left.length;
+        if (offset + length <= leftLength) {
+            Node left = deleteInLeaf(node.left, offset, length);
+            return left == null ? null : new Node(left, node.right);
+        }
+        if (offset >= leftLength) {
+            Node right = deleteInLeaf(node.right, offset - leftLength, length);
+            return right == null ? null : new Node(node.left, right);
+        }
+        return null;
+    }
+
+    // Text before and after offset
+    private static Node[] split(Node node, int offset) {
+        if (node == null) return new Node[2];
+        if (offset <= 0) return new Node[] { null, node };
+        if (offset >= node.length) return new Node[] { node, null };
+        if (node.isLeaf()) {
+            return new Node[] {
+                node.slice(0, offset),
+                node.slice(offset, node.length),
+            };
+        }
+        int leftLength = node.left.length;
+        if (offset == leftLength) return new Node[] { node.left, node.right };
+        if (offset < leftLength) {
+            Node[] halves = split(node.left, offset);
+            halves[1] = concat(halves[1], node.right);
+            return halves;
+        }
+        Node[] halves = split(node.right, offset - leftLength);
+        halves[0] = concat(node.left, halves[0]);
+        return halves;
+    }
+
+    // Joins two trees, descending the taller one's spine to a subtree of
+    // matching height and rotating on the way back up
+    private static Node concat(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.isLeaf() && b.isLeaf() && a.length + b.length <= MAX_LEAF) {
+            if (a.narrow != null && b.narrow != null) {
+                byte[] narrow = Arrays.copyOf(a.narrow, a.length + b.length);
+                System.arraycopy(b.narrow, 0, narrow, a.length, b.length);
+                return new Node(narrow);
+            }
+            char[] chars = new char[a.length + b.length];
+            a.getChars(0, a.length, chars, 0);
+            b.getChars(0, b.length, chars, a.length);
+            return leaf(chars, 0, chars.length);
+        }
+        if (a.height > b.height + 1) return joinRight(a, b);
+        if (b.height > a.height + 1) return joinLeft(a, b);
+        return new Node(a, b);
+    }
+
+    private static Node joinRight(Node a, Node b) {
+        Node right = a.right.height <= b.height + 1
+            ? concat(a.right, b)
+            : joinRight(a.right, b);
+        if (right.height <= a.left.height + 1) {
+            return new Node(a.left, right);
+        }
+        if (right.left.height > right.right.height) {
+            right = rotateRight(right);
+        }
+        return rotateLeft(new Node(a.left, right));
+    }
+
+    private static Node joinLeft(Node a, Node b) {
+        Node left = b.left.height <= a.height + 1
+            ? concat(a, b.left)
+            : joinLeft(a, b.left);
+        if (left.height <= b.right.height + 1) {
+            return new Node(left, b.right);
+        }
+        if (left.right.height > left.left.height) {
+            left = rotateLeft(left);
+        }
+        return rotateRight(new Node(left, b.right));
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        return new Node(new Node(node.left, right.left), right.right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        return new Node(left.left, new Node(left.right, node.right));
+    }
+
+    private static void copy(
+        Node node,
+        int start,
+        int end,
+        char[] dst,
+        int dstBegin
+    ) {
+        if (node == null || start >= end) return;
+        if (node.isLeaf()) {
+            node.getChars(start, end, dst, dstBegin);
+            return;
+        }
+        int leftLength = node.left.length;
+        if (start < leftLength) {
+            copy(node.left, start, Math.min(end, leftLength), dst, dstBegin);
+        }
+        if (end > leftLength) {
+            int from = Math.max(start, leftLength);
+            copy(
+                node.right,
+                from - leftLength,
+                end - leftLength,
+                dst,
+                dstBegin + from - start
+            );
+        }
+    }
+
+    // Narrow leaves are widened into buffer, which the visitor must not
+    // keep
+    private static void visit(
+        Node node,
+        ChunkVisitor visitor,
+        char[] buffer
+    ) {
+        if (node == null) return;
+        if (node.wide != null) {
+            visitor.visit(node.wide, 0, node.length);
+            return;
+        }
+        if (node.isLeaf()) {
+            node.getChars(0, node.length, buffer, 0);
+            visitor.visit(buffer, 0, node.length);
+            return;
+        }
+        visit(node.left, visitor, buffer);
+        visit(node.right, visitor, buffer);
+    }
+
+    // Remembers the last leaf it read, so reading in order only walks the
+    // tree once per chunk
+    private class Cursor implements CharSequence {
+
+        private final int start;
+        private final int end;
+        private Node leaf;
+        private int leafStart;
+        private int leafEnd;
+
+        Cursor() {
+            this(0, root == null ? 0 : root.length);
+        }
+
+        Cursor(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void seek(int index) {
+            if (index >= leafStart && index < leafEnd) return;
+            Node node = root;
+            int nodeStart = 0;
+            while (!node.isLeaf()) {
+                if (index < nodeStart + node.left.length) {
+                    node = node.left;
+                } else {
+                    nodeStart += node.left.length;
+                    node = node.right;
+                }
+            }
+            leaf = node;
+            leafStart = nodeStart;
+            leafEnd = nodeStart + node.length;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            int i = start + index;
+            if (i < leafStart || i >= leafEnd) seek(i);
+            return leaf.charAt(i - leafStart);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > end - start || from > to) {
+                throw new IndexOutOfBoundsException(from + ", " + to);
+            }
+            return new Cursor(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            char[] text = new char[end - start];
+            copy(root, start, end, text, 0);
+            return new String(text);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+// Text Snapshot
+// Immutable copy of a text and its line starts, for work that runs off
+// the EDT while the document keeps changing
+class TextSnapshot {
+
+    private final char[] text;
+    private final int length;
+    private final LineIndex lines;
+
+    TextSnapshot(char[] text, int length, LineIndex lines) {
+        this.text = text;
+        this.length = length;
+        this.lines = lines;
+    }
+
+    // Copies the document through partial segments; must be called on
+    // the EDT or with the document otherwise locked against changes
+    public static TextSnapshot of(Document doc) {
+        char[] text = copy(doc, 0, doc.getLength());
+        LineIndex lines = LineIndex.fromElement(doc.getDefaultRootElement());
+        return new TextSnapshot(text, text.length, lines);
+    }
+
+    // Copies part of a document; its lines are numbered from the start
+    // of the range
+    public static TextSnapshot of(Document doc, int offset, int length) {
+        char[] text = copy(doc, offset, length);
+        return new TextSnapshot(text, length, LineIndex.scan(text, length));
+    }
+
+    // Copies a rope version; ropes never change, so unlike a document it
+    // can be copied on any thread
+    public static TextSnapshot of(TextRope rope) {
+        char[] text = new char[rope.length()];
+        int[] offset = { 0 };
+        rope.forEachChunk((chars, start, count) -> {
+            System.arraycopy(chars, start, text, offset[0], count);
+            offset[0] += count;
+        });
+        return new TextSnapshot(
+            text,
+            text.length,
+            LineIndex.scan(text, text.length)
+        );
+    }
+
+    private static char[] copy(Document doc, int start, int length) {
+        char[] text = new char[length];
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            int offset = 0;
+            while (offset < length) {
+                doc.getText(start + offset, length - offset, segment);
+                System.arraycopy(
+                    segment.array,
+                    segment.offset,
+                    text,
+                    offset,
+                    segment.count
+                );
+                offset += segment.count;
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Can't copy document", e);
+        }
+        return text;
+    }
+
+    public char[] getText() {
+        return text;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    public int getLineStart(int line) {
+        return lines.getLineStart(line);
+    }
+
+    // End of the line's text, not counting its newline
+    public int getLineEnd(int line) {
+        int start = lines.getLineStart(line);
+        int end = line + 1 < lines.getLineCount()
+            ? lines.getLineStart(line + 1)
+            : length;
+        return end > start && text[end - 1] == '\n' ? end - 1 : end;
+    }
+
+    public String getLine(int line) {
+        int start = getLineStart(line);
+        return new String(text, start, getLineEnd(line) - start);
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.io.Reader;
+
+// Text Statistics
+// Incremental character/word/line counter shared by the status bar,
+// the Word Count dialog and the batch mode. Text can be fed in chunks
+// of any size; words spanning chunk boundaries are counted once.
+class TextStatistics {
+
+    private long characters;
+    private long nonWhitespace;
+    private long words;
+    private long lines = 1;
+    private boolean inWord;
+
+    public static TextStatistics of(CharSequence text) {
+        TextStatistics stats = new TextStatistics();
+        stats.accept(text, 0, text.length());
+        return stats;
+    }
+
+    public static TextStatistics of(Reader reader) throws IOException {
+        TextStatistics stats = new TextStatistics();
+        char[] buf = new char[64 * 1024];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            stats.accept(buf, 0, n);
+        }
+        return stats;
+    }
+
+    public void accept(char[] buf, int off, int len) {
+        characters += len;
+        for (int i = off; i < off + len; i++) {
+            count(buf[i]);
+        }
+    }
+
+    public void accept(CharSequence text, int start, int end) {
+        characters += end - start;
+        for (int i = start; i < end; i++) {
+            count(text.charAt(i));
+        }
+    }
+
+    private void count(char c) {
+        if (isWhitespace(c)) {
+            inWord = false;
+            if (c == '\n') lines++;
+        } else {
+            nonWhitespace++;
+            if (!inWord) {
+                inWord = true;
+                words++;
+            }
+        }
+    }
+
+    // Same character class as the regex \s
+    public static boolean isWhitespace(char c) {
+        return (
+            c == ' ' ||
+            c == '\t' ||
+            c == '\n' ||
+            c == '\u000B' ||
+            c == '\f' ||
+            c == '\r'
+        );
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    public long getNonWhitespaceCharacters() {
+        return nonWhitespace;
+    }
+
+    public long getWords() {
+        return words;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+}
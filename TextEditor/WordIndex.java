@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// Word Index
+// Words of a text and how often each occurs, for completion. An edit
+// recounts only the words overlapping its range. Words are kept in a
+// sorted array, so those with a given prefix form one range, under a tree
+// of maximum counts that yields the most frequent of them without looking
+// at the rest. Words first seen since the array was built wait in a small
+// sorted map until there are enough to merge in.
+class WordIndex {
+
+    // Shorter words are quicker to type than to pick
+    static final int MIN_LENGTH = 3;
+    private static final int MAX_LENGTH = 64;
+    private static final int PENDING_LIMIT = 4096;
+    // Larger edits, such as a big paste, recount the text without the lock
+    private static final int RESET_CHARS = 1 << 20;
+
+    private String[] sorted = new String[0];
+    // Counts of the sorted words, as the leaves of a tree whose nodes hold
+    // the largest count below them; node i has children 2i and 2i + 1
+    private int[] tree = new int[2];
+    private int leaves = 1;
+    private final TreeMap<String, int[]> pending = new TreeMap<>();
+    private TextRope text = TextRope.EMPTY;
+
+    // Indexes text from scratch; the counting happens before the lock is
+    // taken, so lookups meanwhile see the old words
+    public void reset(TextRope text) {
+        Map<String, int[]> counts = new HashMap<>();
+        CharSequence chars = text.chars();
+        int i = 0;
+        while (i < chars.length()) {
+            int end = wordEnd(chars, i, chars.length());
+            if (end > i) {
+                String word = chars.subSequence(i, end).toString();
+                int[] count = counts.get(word);
+                if (count == null) {
+                    counts.put(word, new int[] { 1 });
+                } else {
+                    count[0]++;
+                }
+                i = end;
+            } else {
+                i = end < 0 ? -end : i + 1;
+            }
+        }
+        String[] words = counts.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        int[] wordCounts = new int[words.length];
+        for (int w = 0; w < words.length; w++) {
+            wordCounts[w] = counts.get(words[w])[0];
+        }
+        synchronized (this) {
+            this.text = text;
+            pending.clear();
+            build(words, wordCounts, words.length);
+        }
+    }
+
+    // Applies one batch; batches must arrive in order, as the change bus
+    // delivers them to an analyzer
+    public void update(ChangeBatch batch) {
+        int changed = batch.end - batch.start + batch.oldEnd - batch.start;
+        if (batch.reset || changed > RESET_CHARS) {
+            reset(batch.getText());
+            return;
+        }
+        synchronized (this) {
+            CharSequence before = text.chars();
+            CharSequence after = batch.getText().chars();
+
+            // Widen the range to whole words; the text outside it is the
+            // same before and after
+            int start = batch.start;
+            while (start > 0 && isWordChar(before.charAt(start - 1))) {
+                start--;
+            }
+            int oldEnd = batch.oldEnd;
+            while (
+                oldEnd < before.length() && isWordChar(before.charAt(oldEnd))
+            ) {
+                oldEnd++;
+            }
+            int end = batch.end + oldEnd - batch.oldEnd;
+
+            countWords(before, start, oldEnd, -1);
+            countWords(after, start, end, 1);
+            text = batch.getText();
+            if (pending.size() > PENDING_LIMIT) mergePending();
+        }
+    }
+
+    // The limit most frequent words starting with prefix, with their
+    // counts; pending words may add up to limit more
+    public synchronized Map<String, Integer> top(String prefix, int limit) {
+        Map<String, Integer> found = new HashMap<>();
+        int from = lowerBound(prefix);
+        int to = from;
+        // The range ends at the first word without the prefix
+        int high = sorted.length;
+        while (to < high) {
+            int mid = (to + high) >>> 1;
+            if (sorted[mid].startsWith(prefix)) {
+                to = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // Tree nodes covering the range, largest count first
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) ->
+            Integer.compare(tree[b], tree[a])
+        );
+        int l = from + leaves;
+        int r = to + leaves;
+        while (l < r) {
+            if ((l & 1) == 1) queue.add(l++);
+            if ((r & 1) == 1) queue.add(--r);
+            l >>= 1;
+            r >>= 1;
+        }
+        while (!queue.isEmpty() && found.size() < limit) {
+            int node = queue.poll();
+            if (tree[node] == 0) break;
+            if (node >= leaves) {
+                found.put(sorted[node - leaves], tree[node]);
+            } else {
+                queue.add(2 * node);
+                queue.add(2 * node + 1);
+            }
+        }
+
+        // Pending words are few; take the most frequent of those too
+        List<Map.Entry<String, int[]>> recent = new ArrayList<>();
+        for (Map.Entry<String, int[]> e : pending.tailMap(prefix).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) break;
+            recent.add(e);
+        }
+        recent.sort((a, b) ->
+            Integer.compare(b.getValue()[0], a.getValue()[0])
+        );
+        for (int i = 0; i < Math.min(limit, recent.size()); i++) {
+            found.put(recent.get(i).getKey(), recent.get(i).getValue()[0]);
+        }
+        return found;
+    }
+
+    public synchronized int count(String word) {
+        int i = lowerBound(word);
+        if (i < sorted.length && sorted[i].equals(word)) {
+            return tree[leaves + i];
+        }
+        int[] count = pending.get(word);
+        return count != null ? count[0] : 0;
+    }
+
+    // The most frequent words across the indexes that complete prefix,
+    // most frequent first. Candidates are each index's own most frequent
+    // words, ranked by their counts in all of them.
+    public static List<String> complete(
+        String prefix,
+        List<WordIndex> indexes,
+        int limit
+    ) {
+        Map<String, Integer> totals = new HashMap<>();
+        for (WordIndex index : indexes) {
+            // One more, as the prefix itself may be among them
+            for (String word : index.top(prefix, limit + 1).keySet()) {
+                totals.put(word, 0);
+            }
+        }
+        totals.remove(prefix);
+        for (Map.Entry<String, Integer> entry : totals.entrySet()) {
+            int total = 0;
+            for (WordIndex index : indexes) {
+                total += index.count(entry.getKey());
+            }
+            entry.setValue(total);
+        }
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(
+            totals.entrySet()
+        );
+        entries.sort((a, b) -> {
+            int byCount = Integer.compare(b.getValue(), a.getValue());
+            return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+        });
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+            words.add(entries.get(i).getKey());
+        }
+        return words;
+    }
+
+    // The start of the word that ends at offset, or offset if there is none
+    public static int wordStart(CharSequence text, int offset) {
+        int start = offset;
+        while (start > 0 && isWordChar(text.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    public static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // End of the word starting at i, or minus its end if it is too short,
+    // too long or starts with a digit; i if no word starts at i
+    private static int wordEnd(CharSequence text, int i, int end) {
+        if (!isWordChar(text.charAt(i))) return i;
+        int wordEnd = i;
+        while (wordEnd < end && isWordChar(text.charAt(wordEnd))) {
+            wordEnd++;
+        }
+        int length = wordEnd - i;
+        if (
+            Character.isDigit(text.charAt(i)) ||
+            length < MIN_LENGTH ||
+            length > MAX_LENGTH
+        ) {
+            return -wordEnd;
+        }
+        return wordEnd;
+    }
+
+    // Adds delta to the count of every word in the range
+    private void countWords(CharSequence text, int start, int end, int delta) {
+        int i = start;
+        while (i < end) {
+            int wordEnd = wordEnd(text, i, end);
+            if (wordEnd > i) {
+                count(text.subSequence(i, wordEnd).toString(), delta);
+                i = wordEnd;
+            } else {
+                i = wordEnd < 0 ? -wordEnd : i + 1;
+            }
+        }
+    }
+
+    private void count(String word, int delta) {
+        int i = lowerBound(word);
+        if (i < sorted.length && sorted[i].equals(word)) {
+            int node = leaves + i;
+            tree[node] = Math.max(0, tree[node] + delta);
+            for (node >>= 1; node > 0; node >>= 1) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+            return;
+        }
+        int[] count = pending.get(word);
+        if (count == null) {
+            if (delta > 0) pending.put(word, new int[] { delta });
+        } else if ((count[0] += delta) <= 0) {
+            pending.remove(word);
+        }
+    }
+
+    // Merges the pending words in and drops words no longer counted
+    private void mergePending() {
+        int total = sorted.length + pending.size();
+        String[] words = new String[total];
+        int[] counts = new int[total];
+        int n = 0;
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : pending.entrySet()) {
+            String word = entry.getKey();
+            for (; i < sorted.length && sorted[i].compareTo(word) < 0; i++) {
+                if (tree[leaves + i] > 0) {
+                    words[n] = sorted[i];
+                    counts[n++] = tree[leaves + i];
+                }
+            }
+            words[n] = word;
+            counts[n++] = entry.getValue()[0];
+        }
+        for (; i < sorted.length; i++) {
+            if (tree[leaves + i] > 0) {
+                words[n] = sorted[i];
+                counts[n++] = tree[leaves + i];
+            }
+        }
+        pending.clear();
+        build(words, counts, n);
+    }
+
+    private void build(String[] words, int[] counts, int n) {
+        sorted = n == words.length ? words : Arrays.copyOf(words, n);
+        leaves = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+        tree = new int[2 * leaves];
+        System.arraycopy(counts, 0, tree, leaves, n);
+        for (int node = leaves - 1; node > 0; node--) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,190 @@
+import java.awt.event.ActionEvent;
+import java.text.BreakIterator;
+import javax.swing.ActionMap;
+import javax.swing.text.*;
+
+// Word Navigation
+// Word movement and double-click selection that only read a bounded
+// window of text around the caret. The default actions copy the whole
+// line, which stalls on single-line files of many megabytes.
+class WordNavigation {
+
+    // Characters read on each side of the caret
+    static final int WINDOW = 4096;
+
+    public static void install(JTextComponent c) {
+        ActionMap map = c.getActionMap();
+        map.put(
+            DefaultEditorKit.nextWordAction,
+            new WordAction(DefaultEditorKit.nextWordAction, true, false)
+        );
+        map.put(
+            DefaultEditorKit.previousWordAction,
+            new WordAction(DefaultEditorKit.previousWordAction, false, false)
+        );
+        map.put(
+            DefaultEditorKit.selectionNextWordAction,
+            new WordAction(DefaultEditorKit.selectionNextWordAction, true, true)
+        );
+        map.put(
+            DefaultEditorKit.selectionPreviousWordAction,
+            new WordAction(
+                DefaultEditorKit.selectionPreviousWordAction,
+                false,
+                true
+            )
+        );
+        map.put(DefaultEditorKit.selectWordAction, new SelectWordAction());
+    }
+
+    // Start of the next word, or the end of the line when it has no more
+    // words; from the end of a line, the first word of the next one
+    static int nextWord(Document doc, int offs) throws BadLocationException {
+        Element line = getLine(doc, offs);
+        int lineEnd = line.getEndOffset() - 1;
+        if (offs < lineEnd) {
+            int next = nextWordInLine(doc, offs, lineEnd);
+            return next >= 0 ? next : lineEnd;
+        }
+        if (lineEnd >= doc.getLength()) {
+            return doc.getLength();
+        }
+
+        int start = lineEnd + 1;
+        if (start >= doc.getLength()) {
+            return start;
+        }
+        char c = doc.getText(start, 1).charAt(0);
+        if (c == ' ' || c == '\t') {
+            int nextEnd = getLine(doc, start).getEndOffset() - 1;
+            int next = nextWordInLine(doc, start, nextEnd);
+            return next >= 0 ? next : nextEnd;
+        }
+        return start;
+    }
+
+    // Start of the previous word, or the end of the previous line when
+    // already at the start of a line
+    static int previousWord(Document doc, int offs)
+        throws BadLocationException {
+        int lineStart = getLine(doc, offs).getStartOffset();
+        if (offs == lineStart) {
+            return Math.max(0, offs - 1);
+        }
+
+        int start = Math.max(lineStart, offs - WINDOW);
+        String text = doc.getText(start, offs - start);
+        BreakIterator words = BreakIterator.getWordInstance();
+        words.setText(text);
+        int b = words.preceding(text.length());
+        if (b != BreakIterator.DONE && isBlank(text.charAt(b))) {
+            b = words.previous();
+        }
+        // Words longer than the window stop at its edge
+        return b == BreakIterator.DONE ? start : start + b;
+    }
+
+    // Word boundaries around the offset, within the window
+    static int[] wordAt(Document doc, int offs) throws BadLocationException {
+        Element line = getLine(doc, offs);
+        int lineStart = line.getStartOffset();
+        int lineEnd = line.getEndOffset() - 1;
+        int start = Math.max(lineStart, offs - WINDOW);
+        int end = Math.min(lineEnd, offs + WINDOW);
+        if (end <= start) {
+            return new int[] { offs, offs };
+        }
+
+        String text = doc.getText(start, end - start);
+        BreakIterator words = BreakIterator.getWordInstance();
+        words.setText(text);
+        int rel = Math.min(offs - start, text.length() - 1);
+        int wordStart = words.isBoundary(rel) ? rel : words.preceding(rel);
+        int wordEnd = words.following(rel);
+        if (wordEnd == BreakIterator.DONE) wordEnd = text.length();
+        return new int[] { start + wordStart, start + wordEnd };
+    }
+
+    private static int nextWordInLine(Document doc, int offs, int lineEnd)
+        throws BadLocationException {
+        int end = Math.min(lineEnd, offs + WINDOW);
+        String text = doc.getText(offs, end - offs);
+        BreakIterator words = BreakIterator.getWordInstance();
+        words.setText(text);
+        int b = words.following(0);
+        if (b != BreakIterator.DONE && b < text.length()) {
+            if (!isBlank(text.charAt(b))) {
+                return offs + b;
+            }
+            b = words.next();
+        }
+        if (b == BreakIterator.DONE || b >= text.length()) {
+            // Words longer than the window stop at its edge
+            return end < lineEnd ? end : -1;
+        }
+        return offs + b;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static Element getLine(Document doc, int offs) {
+        Element root = doc.getDefaultRootElement();
+        return root.getElement(root.getElementIndex(offs));
+    }
+
+    static class WordAction extends TextAction {
+
+        private final boolean forward;
+        private final boolean select;
+
+        WordAction(String name, boolean forward, boolean select) {
+            super(name);
+            this.forward = forward;
+            this.select = select;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JTextComponent target = getTextComponent(e);
+            if (target == null) return;
+            Document doc = target.getDocument();
+            int offs = target.getCaretPosition();
+            try {
+                offs = forward ? nextWord(doc, offs) : previousWord(doc, offs);
+            } catch (BadLocationException ex) {
+                target.getToolkit().beep();
+                return;
+            }
+            if (select) {
+                target.moveCaretPosition(offs);
+            } else {
+                target.setCaretPosition(offs);
+            }
+        }
+    }
+
+    static class SelectWordAction extends TextAction {
+
+        SelectWordAction() {
+            super(DefaultEditorKit.selectWordAction);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JTextComponent target = getTextComponent(e);
+            if (target == null) return;
+            try {
+                int[] word = wordAt(
+                    target.getDocument(),
+                    target.getCaretPosition()
+                );
+                target.setCaretPosition(word[0]);
+                target.moveCaretPosition(word[1]);
+            } catch (BadLocationException ex) {
+                target.getToolkit().beep();
+            }
+        }
+    }
+}
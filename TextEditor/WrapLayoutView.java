@@ -0,0 +1,786 @@
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.*;
+
+// Wrap Layout View
+// Soft-wrap view that caches the row breaks of every line. When the width,
+// font or tab size changes, lines first report an estimated row count and
+// are then measured on a background thread, starting at the caret; lines
+// that get painted are measured right away. Edits only re-measure the
+// lines they touch.
+class WrapLayoutView extends BoxView implements TabExpander {
+
+    private static final ExecutorService LAYOUT_EXECUTOR =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Wrap layout");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+    // Characters measured per read-locked batch on the layout thread
+    private static final int BATCH_CHARS = 128 * 1024;
+    // Larger insertions are measured in the background
+    private static final int SYNC_LINE_LIMIT = 64;
+
+    private final boolean wordWrap;
+    private volatile LayoutParams params;
+    private int nextGeneration;
+    private int tabBase;
+    // Scratch segment for the EDT; the layout thread uses its own
+    private final Segment lineText = new Segment();
+
+    private int sel0;
+    private int sel1;
+    private Color unselected;
+    private Color selected;
+
+    WrapLayoutView(Element elem, boolean wordWrap) {
+        super(elem, Y_AXIS);
+        this.wordWrap = wordWrap;
+    }
+
+    private int getTabSize() {
+        Integer size = (Integer) getDocument().getProperty(
+            PlainDocument.tabSizeAttribute
+        );
+        return size != null ? size : 8;
+    }
+
+    // Returns true if the layout parameters changed, which makes every
+    // cached row break stale
+    private boolean updateParams(int width) {
+        Component host = getContainer();
+        Font font = host.getFont();
+        FontMetrics metrics = host.getFontMetrics(font);
+        int tabSize = getTabSize() * metrics.charWidth('m');
+        LayoutParams p = params;
+        if (
+            p != null &&
+            p.width == width &&
+            p.tabSize == tabSize &&
+            p.font.equals(font)
+        ) {
+            return false;
+        }
+        params = new LayoutParams(
+            nextGeneration++,
+            font,
+            metrics,
+            tabSize,
+            width,
+            wordWrap
+        );
+        return true;
+    }
+
+    // Folds of the text area when any are collapsed, otherwise null
+    private FoldModel getFolds() {
+        Container host = getContainer();
+        FoldModel folds = host instanceof EditorTextArea
+            ? ((EditorTextArea) host).getFolds()
+            : null;
+        return folds != null && folds.hasCollapsed() ? folds : null;
+    }
+
+    private LayoutParams currentParams() {
+        LayoutParams p = params;
+        if (updateParams(p != null ? p.width : Integer.MAX_VALUE)) {
+            scheduleLayout(null);
+        }
+        return params;
+    }
+
+    @Override
+    protected void loadChildren(ViewFactory f) {
+        Element elem = getElement();
+        int n = elem.getElementCount();
+        if (n > 0) {
+            View[] added = new View[n];
+            for (int i = 0; i < n; i++) {
+                added[i] = new WrapLine(elem.getElement(i));
+            }
+            replace(0, 0, added);
+        }
+    }
+
+    private void updateChildren(DocumentEvent e, Shape a) {
+        DocumentEvent.ElementChange ec = e.getChange(getElement());
+        if (ec == null) return;
+
+        Element[] addedElems = ec.getChildrenAdded();
+        WrapLine[] added = new WrapLine[addedElems.length];
+        for (int i = 0; i < addedElems.length; i++) {
+            added[i] = new WrapLine(addedElems[i]);
+        }
+        replace(ec.getIndex(), ec.getChildrenRemoved().length, added);
+
+        if (added.length > SYNC_LINE_LIMIT) {
+            scheduleLayout(added);
+        } else {
+            for (WrapLine line : added) {
+                line.ensureExact();
+            }
+        }
+
+        if (a != null) {
+            preferenceChanged(null, true, true);
+            getContainer().repaint();
+        }
+    }
+
+    // Measures the given lines (or all of them, caret line first) on the
+    // layout thread and applies the results in batches on the EDT
+    private void scheduleLayout(WrapLine[] lines) {
+        LayoutParams p = params;
+        if (p == null || p.isUnbounded()) return;
+
+        if (lines == null) {
+            int n = getViewCount();
+            JTextComponent host = (JTextComponent) getContainer();
+            int start = getElement().getElementIndex(host.getCaretPosition());
+            FoldModel folds = getFolds();
+            lines = new WrapLine[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int index = (start + i) % n;
+                // Hidden lines are measured once they are unfolded
+                if (folds != null && folds.isHidden(index)) continue;
+                lines[count++] = (WrapLine) getView(index);
+            }
+            if (count < n) lines = Arrays.copyOf(lines, count);
+        }
+
+        WrapLine[] queue = lines;
+        LAYOUT_EXECUTOR.execute(() -> measureLines(queue, p));
+    }
+
+    private void measureLines(WrapLine[] lines, LayoutParams p) {
+        Document doc = getDocument();
+        int[] next = { 0 };
+        while (next[0] < lines.length) {
+            if (params != p || getParent() == null) return; // superseded
+
+            int from = next[0];
+            int[][] ends = new int[Math.min(lines.length - from, 4096)][];
+            int[] stamps = new int[ends.length];
+            doc.render(() -> {
+                Segment segment = new Segment();
+                int chars = 0;
+                int i = from;
+                while (i < lines.length && i - from < ends.length) {
+                    WrapLine line = lines[i];
+                    int p0 = line.getStartOffset();
+                    int p1 = line.getEndOffset();
+                    try {
+                        doc.getText(p0, p1 - p0, segment);
+                        ends[i - from] = p.computeRowEnds(segment);
+                        stamps[i - from] = line.editStamp;
+                    } catch (BadLocationException e) {
+                        stamps[i - from] = -1; // line was removed
+                    }
+                    chars += p1 - p0;
+                    i++;
+                    if (chars >= BATCH_CHARS) break;
+                }
+                next[0] = i;
+            });
+
+            int count = next[0] - from;
+            SwingUtilities.invokeLater(() ->
+                applyMeasurements(lines, from, count, ends, stamps, p)
+            );
+        }
+    }
+
+    private void applyMeasurements(
+        WrapLine[] lines,
+        int from,
+        int count,
+        int[][] ends,
+        int[] stamps,
+        LayoutParams p
+    ) {
+        if (params != p || getParent() == null) return;
+
+        // Keep the first visible position in place while lines above it
+        // change height
+        JTextComponent host = (JTextComponent) getContainer();
+        JViewport viewport = host.getParent() instanceof JViewport
+            ? (JViewport) host.getParent()
+            : null;
+        int anchor = -1;
+        int anchorY = 0;
+        if (viewport != null) {
+            Rectangle view = viewport.getViewRect();
+            anchor = host.viewToModel2D(view.getLocation());
+            try {
+                Rectangle2D r = host.modelToView2D(anchor);
+                anchorY = r != null ? (int) r.getY() - view.y : 0;
+            } catch (BadLocationException e) {
+                anchor = -1;
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            WrapLine line = lines[from + i];
+            if (
+                line.getParent() == this &&
+                line.editStamp == stamps[i] &&
+                !(line.exact && line.generation == p.generation)
+            ) {
+                changed |= line.apply(ends[i], p.generation);
+            }
+        }
+        if (!changed) return;
+
+        preferenceChanged(null, false, true);
+        if (anchor >= 0) {
+            int position = anchor;
+            int offset = anchorY;
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    Rectangle2D r = host.modelToView2D(position);
+                    if (r == null) return;
+                    Point view = viewport.getViewPosition();
+                    viewport.setViewPosition(
+                        new Point(view.x, Math.max(0, (int) r.getY() - offset))
+                    );
+                } catch (BadLocationException e) {
+                    // Document changed in the meantime
+                }
+            });
+        }
+    }
+
+    // --- TabExpander methods ------------------------------------------
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        int tabSize = params.tabSize;
+        if (tabSize == 0) return x;
+        int ntabs = (int) ((x - tabBase) / tabSize);
+        return tabBase + ((ntabs + 1) * tabSize);
+    }
+
+    // --- View methods -------------------------------------------------
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+        JTextComponent host = (JTextComponent) getContainer();
+        sel0 = host.getSelectionStart();
+        sel1 = host.getSelectionEnd();
+        unselected = host.isEnabled()
+            ? host.getForeground()
+            : host.getDisabledTextColor();
+        Caret c = host.getCaret();
+        selected = c.isSelectionVisible() && host.getHighlighter() != null
+            ? host.getSelectedTextColor()
+            : unselected;
+        g.setFont(host.getFont());
+
+        // Only visit the lines inside the clip
+        Rectangle clip = g.getClipBounds();
+        int n = getViewCount();
+        if (clip == null || n == 0) {
+            super.paint(g, a);
+            return;
+        }
+        int x = alloc.x + getLeftInset();
+        int y = alloc.y + getTopInset();
+        Rectangle childAlloc = new Rectangle();
+        FoldModel folds = getFolds();
+        for (int i = findChildAt(clip.y - y); i < n; i++) {
+            if (folds != null) {
+                i = folds.nextVisibleLine(i);
+                if (i >= n) break;
+            }
+            childAlloc.x = x + getOffset(X_AXIS, i);
+            childAlloc.y = y + getOffset(Y_AXIS, i);
+            childAlloc.width = getSpan(X_AXIS, i);
+            childAlloc.height = getSpan(Y_AXIS, i);
+            if (childAlloc.y > clip.y + clip.height) break;
+            paintChild(g, childAlloc, i);
+        }
+    }
+
+    // Index of the child whose span contains the offset along the y axis
+    private int findChildAt(int offset) {
+        int low = 0;
+        int high = getViewCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getOffset(Y_AXIS, mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    protected View getViewAtPoint(int x, int y, Rectangle alloc) {
+        int index = findChildAt(y - alloc.y);
+        childAllocation(index, alloc);
+        return getView(index);
+    }
+
+    @Override
+    public void setSize(float width, float height) {
+        int inner = Math.max(0, (int) width - getLeftInset() - getRightInset());
+        if (updateParams(inner)) {
+            // Children will report estimates until they are measured
+            preferenceChanged(null, true, true);
+            super.setSize(width, height);
+            scheduleLayout(null);
+        } else {
+            super.setSize(width, height);
+        }
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        currentParams();
+        return super.getPreferredSpan(axis);
+    }
+
+    @Override
+    public float getMinimumSpan(int axis) {
+        currentParams();
+        return super.getMinimumSpan(axis);
+    }
+
+    @Override
+    public float getMaximumSpan(int axis) {
+        currentParams();
+        return super.getMaximumSpan(axis);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        forwardToLine(e, a);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        forwardToLine(e, a);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        updateChildren(e, a);
+    }
+
+    private void forwardToLine(DocumentEvent e, Shape a) {
+        updateChildren(e, a);
+
+        Rectangle alloc = a != null && isAllocationValid()
+            ? getInsideAllocation(a)
+            : null;
+        View v = getViewAtPosition(e.getOffset(), alloc);
+        if (v instanceof WrapLine) {
+            ((WrapLine) v).update(alloc);
+        }
+    }
+
+    // Layout inputs shared with the layout thread; immutable
+    static class LayoutParams {
+
+        final int generation;
+        final Font font;
+        final FontMetrics metrics;
+        final int[] widths = new int[256];
+        final int tabSize;
+        final int width;
+        final boolean wordWrap;
+
+        LayoutParams(
+            int generation,
+            Font font,
+            FontMetrics metrics,
+            int tabSize,
+            int width,
+            boolean wordWrap
+        ) {
+            this.generation = generation;
+            this.font = font;
+            this.metrics = metrics;
+            this.tabSize = tabSize;
+            this.width = width;
+            this.wordWrap = wordWrap;
+            for (int c = 0; c < widths.length; c++) {
+                widths[c] = metrics.charWidth((char) c);
+            }
+        }
+
+        // Before the first real layout the view is sized to MAX_VALUE
+        boolean isUnbounded() {
+            return width <= 0 || width >= Integer.MAX_VALUE / 2;
+        }
+
+        int charWidth(char c) {
+            return c < 256 ? widths[c] : metrics.charWidth(c);
+        }
+
+        int estimateRows(int chars) {
+            if (isUnbounded() || chars <= 1) return 1;
+            long span = (long) (chars - 1) * widths['n'];
+            return (int) Math.max(1, (span + width - 1) / width);
+        }
+
+        // Returns the end offset of each row relative to the line start,
+        // or null if the line fits on one row. Mirrors the break rules of
+        // WrappedPlainView: whitespace stays on the row it ends, and the
+        // trailing newline never starts a row of its own.
+        int[] computeRowEnds(Segment s) {
+            if (isUnbounded()) return null;
+            char[] txt = s.array;
+            int off = s.offset;
+            int n = s.count;
+            int[] ends = null;
+            int rows = 0;
+            int rowStart = 0;
+            int x = 0;
+
+            for (int i = 0; i < n; i++) {
+                char c = txt[off + i];
+                if (c == '\n' && i == n - 1) break;
+                int next = c == '\t' ? nextTab(x) : x + charWidth(c);
+                if (next <= width || i == rowStart) {
+                    x = next;
+                    continue;
+                }
+
+                int brk = i;
+                if (wordWrap) {
+                    for (int j = i; j > rowStart; j--) {
+                        char ch = txt[off + j];
+                        if (ch < 256 && Character.isWhitespace(ch)) {
+                            brk = j + 1;
+                            break;
+                        }
+                    }
+                }
+                if (ends == null) {
+                    ends = new int[4];
+                } else if (rows + 2 > ends.length) {
+                    ends = Arrays.copyOf(ends, ends.length * 2);
+                }
+                ends[rows++] = brk;
+                rowStart = brk;
+
+                // Re-measure the carried-over part of the current word
+                x = 0;
+                for (int j = rowStart; j <= i; j++) {
+                    char ch = txt[off + j];
+                    x = ch == '\t' ? nextTab(x) : x + charWidth(ch);
+                }
+            }
+
+            if (ends == null) return null;
+            ends[rows++] = n;
+            return Arrays.copyOf(ends, rows);
+        }
+
+        private int nextTab(int x) {
+            if (tabSize == 0) return x;
+            return (x / tabSize + 1) * tabSize;
+        }
+    }
+
+    // One logical line, wrapped into rows
+    class WrapLine extends View {
+
+        int rows = 1;
+        int[] rowEnds;
+        int generation = -1;
+        boolean exact;
+        int editStamp;
+
+        WrapLine(Element elem) {
+            super(elem);
+        }
+
+        // Falls back to an estimate when the layout parameters changed
+        private LayoutParams ensureEstimate() {
+            LayoutParams p = currentParams();
+            if (generation != p.generation) {
+                generation = p.generation;
+                rowEnds = null;
+                rows = p.estimateRows(getEndOffset() - getStartOffset());
+                exact = p.isUnbounded();
+            }
+            return p;
+        }
+
+        // Returns true if the row count changed
+        boolean ensureExact() {
+            LayoutParams p = ensureEstimate();
+            if (exact) return false;
+            try {
+                int p0 = getStartOffset();
+                getDocument().getText(p0, getEndOffset() - p0, lineText);
+                return apply(p.computeRowEnds(lineText), p.generation);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException("Can't get line text", e);
+            }
+        }
+
+        boolean apply(int[] ends, int gen) {
+            int old = rows;
+            rowEnds = ends;
+            rows = ends == null ? 1 : ends.length;
+            generation = gen;
+            exact = true;
+            return old != rows;
+        }
+
+        void update(Shape a) {
+            editStamp++;
+            exact = false;
+            if (ensureExact()) {
+                WrapLayoutView.this.preferenceChanged(this, false, true);
+                getContainer().repaint();
+            } else if (a != null) {
+                Rectangle alloc = (Rectangle) a;
+                getContainer()
+                    .repaint(alloc.x, alloc.y, alloc.width, alloc.height);
+            }
+        }
+
+        private int rowHeight() {
+            return params.metrics.getHeight();
+        }
+
+        @Override
+        public float getPreferredSpan(int axis) {
+            switch (axis) {
+                case View.X_AXIS:
+                    float width = getWidth();
+                    return width == Integer.MAX_VALUE ? 100f : width;
+                case View.Y_AXIS:
+                    if (isHidden()) return 0;
+                    ensureEstimate();
+                    return rows * rowHeight();
+                default:
+                    throw new IllegalArgumentException("Invalid axis: " + axis);
+            }
+        }
+
+        // Lines folded away take no space
+        private boolean isHidden() {
+            FoldModel folds = getFolds();
+            return folds != null && folds.isHiddenAt(getStartOffset());
+        }
+
+        @Override
+        public void paint(Graphics g, Shape a) {
+            if (isHidden()) return;
+            Rectangle alloc = a.getBounds();
+            int h = rowHeight();
+
+            // Painted lines are always measured exactly; fix the layout
+            // afterwards if the estimate was off
+            if (ensureExact() || alloc.height != rows * h) {
+                SwingUtilities.invokeLater(() -> {
+                    if (getParent() != null) {
+                        WrapLayoutView.this.preferenceChanged(this, false, true);
+                    }
+                });
+            }
+
+            JTextComponent host = (JTextComponent) getContainer();
+            Highlighter highlighter = host.getHighlighter();
+            LayeredHighlighter dh = highlighter instanceof LayeredHighlighter
+                ? (LayeredHighlighter) highlighter
+                : null;
+
+            int firstRow = 0;
+            int lastRow = rows - 1;
+            Rectangle clip = g.getClipBounds();
+            if (clip != null && h > 0) {
+                firstRow = Math.max(0, (clip.y - alloc.y) / h);
+                lastRow = Math.min(lastRow, (clip.y + clip.height - alloc.y) / h);
+            }
+            // An estimated height taller than the exact rows can put the
+            // clip below the last of them
+            if (lastRow < 0) return;
+            firstRow = Math.min(firstRow, lastRow);
+
+            int start = getStartOffset();
+            int end = getEndOffset();
+            int p0 = firstRow == 0 ? start : start + rowEnds[firstRow - 1];
+            int y = alloc.y + firstRow * h + params.metrics.getAscent();
+            for (int row = firstRow; row <= lastRow; row++) {
+                int p1 = rowEnds == null ? end : start + rowEnds[row];
+                if (dh != null) {
+                    int hOffset = p1 == end ? p1 - 1 : p1;
+                    dh.paintLayeredHighlights(g, p0, hOffset, a, host, this);
+                }
+                drawRow(p0, p1, g, alloc.x, y);
+                p0 = p1;
+                y += h;
+            }
+        }
+
+        private void drawRow(int p0, int p1, Graphics g, int x, int y) {
+            p1 = Math.min(getDocument().getLength(), p1);
+            try {
+                if (sel0 == sel1 || selected == unselected) {
+                    drawText(g, x, y, p0, p1, unselected);
+                } else if (p0 >= sel0 && p1 <= sel1) {
+                    drawText(g, x, y, p0, p1, selected);
+                } else {
+                    int s0 = Math.max(p0, Math.min(sel0, p1));
+                    int s1 = Math.max(s0, Math.min(sel1, p1));
+                    x = drawText(g, x, y, p0, s0, unselected);
+                    x = drawText(g, x, y, s0, s1, selected);
+                    drawText(g, x, y, s1, p1, unselected);
+                }
+            } catch (BadLocationException e) {
+                throw new IllegalStateException("Can't render line", e);
+            }
+        }
+
+        private int drawText(
+            Graphics g,
+            int x,
+            int y,
+            int p0,
+            int p1,
+            Color color
+        ) throws BadLocationException {
+            if (p1 <= p0) return x;
+            g.setColor(color);
+            getDocument().getText(p0, p1 - p0, lineText);
+            return Math.round(
+                Utilities.drawTabbedText(
+                    lineText,
+                    (float) x,
+                    (float) y,
+                    (Graphics2D) g,
+                    WrapLayoutView.this,
+                    p0
+                )
+            );
+        }
+
+        // Row containing the offset (relative to the line start)
+        private int findRow(int offset) {
+            if (rowEnds == null) return 0;
+            int low = 0;
+            int high = rows - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (offset < rowEnds[mid]) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public Shape modelToView(int pos, Shape a, Position.Bias b)
+            throws BadLocationException {
+            ensureExact();
+            Rectangle alloc = a.getBounds();
+            tabBase = alloc.x;
+            alloc.height = rowHeight();
+            alloc.width = 1;
+
+            int p0 = getStartOffset();
+            if (pos < p0 || pos > getEndOffset()) {
+                throw new BadLocationException("Position out of range", pos);
+            }
+
+            int testP = b == Position.Bias.Forward
+                ? pos
+                : Math.max(p0, pos - 1);
+            int row = findRow(testP - p0);
+            if (row > 0) {
+                p0 += rowEnds[row - 1];
+            }
+            alloc.y += alloc.height * row;
+
+            if (pos > p0) {
+                getDocument().getText(p0, pos - p0, lineText);
+                alloc.x += Math.round(
+                    Utilities.getTabbedTextWidth(
+                        lineText,
+                        params.metrics,
+                        (float) alloc.x,
+                        WrapLayoutView.this,
+                        p0
+                    )
+                );
+            }
+            return alloc;
+        }
+
+        @Override
+        public int viewToModel(
+            float fx,
+            float fy,
+            Shape a,
+            Position.Bias[] bias
+        ) {
+            ensureExact();
+            bias[0] = Position.Bias.Forward;
+
+            Rectangle alloc = a.getBounds();
+            tabBase = alloc.x;
+            int x = (int) fx;
+            int y = (int) fy;
+            if (y < alloc.y) {
+                return getStartOffset();
+            } else if (y > alloc.y + alloc.height) {
+                return getEndOffset() - 1;
+            }
+
+            int h = rowHeight();
+            int row = h > 0 ? (y - alloc.y) / h : rows - 1;
+            if (row >= rows) {
+                return getEndOffset() - 1;
+            }
+
+            int p0 = getStartOffset();
+            int p1 = rowEnds == null ? getEndOffset() : p0 + rowEnds[row];
+            if (row > 0) {
+                p0 += rowEnds[row - 1];
+            }
+            if (x < alloc.x) {
+                return p0;
+            } else if (x > alloc.x + alloc.width) {
+                return p1 - 1;
+            }
+
+            try {
+                getDocument().getText(p0, p1 - p0, lineText);
+                int n = Utilities.getTabbedTextOffset(
+                    lineText,
+                    params.metrics,
+                    (float) alloc.x,
+                    (float) x,
+                    WrapLayoutView.this,
+                    p0,
+                    true
+                );
+                return Math.min(p0 + n, p1 - 1);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException("Can't get line text", e);
+            }
+        }
+    }
+}
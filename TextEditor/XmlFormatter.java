@@ -0,0 +1,325 @@
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// XML Formatter
+// Writes XML back out from the JDK's streaming parser, one event at a
+// time. Whitespace between tags is taken as layout and replaced; once an
+// element holds text of its own its content is mixed, and the rest of it
+// is written as it came. Entities stay references and no DTD or other
+// file is ever fetched.
+class XmlFormatter {
+
+    private static final String REPORT_CDATA =
+        "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private final XMLStreamReader in;
+    private final StructuredFormat.Output out;
+    private final boolean pretty;
+    private final int indent;
+    private int depth;
+    // For each open element, whether its content is mixed
+    private boolean[] mixed = new boolean[32];
+    // A start tag is left without its '>' until we know it is not empty
+    private boolean tagOpen;
+    private boolean started;
+    // ']' just written as text, since "]]>" must not appear in it
+    private int brackets;
+
+    private XmlFormatter(
+        XMLStreamReader in,
+        StructuredFormat.Output out,
+        boolean pretty,
+        int indent
+    ) {
+        this.in = in;
+        this.out = out;
+        this.pretty = pretty;
+        this.indent = indent;
+    }
+
+    static void run(
+        Reader text,
+        StructuredFormat.Output out,
+        boolean pretty,
+        int indent
+    ) throws StructuredFormat.SyntaxError {
+        LastCharReader source = new LastCharReader(text);
+        XMLStreamReader in = null;
+        try {
+            in = newFactory().createXMLStreamReader(source);
+            new XmlFormatter(in, out, pretty, indent).write();
+        } catch (XMLStreamException e) {
+            throw syntaxError(e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (XMLStreamException ignored) {}
+            }
+        }
+        // A final newline is kept, as the other formatters keep it
+        if (source.last == '\n') out.put('\n');
+    }
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+            false
+        );
+        factory.setProperty(
+            XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,
+            false
+        );
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        return factory;
+    }
+
+    private void write() throws XMLStreamException {
+        if (in.getVersion() != null) declaration();
+        while (in.hasNext()) {
+            switch (in.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    text();
+                    break;
+                case XMLStreamConstants.CDATA:
+                    startText();
+                    out.put("<![CDATA[");
+                    out.put(in.getText());
+                    out.put("]]>");
+                    brackets = 0;
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    startText();
+                    out.put('&');
+                    out.put(in.getLocalName());
+                    out.put(';');
+                    brackets = 0;
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    startItem();
+                    out.put("<!--");
+                    out.put(in.getText());
+                    out.put("-->");
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    startItem();
+                    out.put("<?");
+                    out.put(in.getPITarget());
+                    String data = in.getPIData();
+                    if (data != null && !data.isEmpty()) {
+                        out.put(' ');
+                        out.put(data);
+                    }
+                    out.put("?>");
+                    break;
+                case XMLStreamConstants.DTD:
+                    startItem();
+                    out.put(in.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void declaration() {
+        startItem();
+        out.put("<?xml version=\"");
+        out.put(in.getVersion());
+        out.put('"');
+        if (in.getCharacterEncodingScheme() != null) {
+            out.put(" encoding=\"");
+            out.put(in.getCharacterEncodingScheme());
+            out.put('"');
+        }
+        if (in.standaloneSet()) {
+            out.put(" standalone=\"");
+            out.put(in.isStandalone() ? "yes" : "no");
+            out.put('"');
+        }
+        out.put("?>");
+    }
+
+    private void startElement() {
+        startItem();
+        out.put('<');
+        putName(in.getPrefix(), in.getLocalName());
+        for (int i = 0; i < in.getNamespaceCount(); i++) {
+            String prefix = in.getNamespacePrefix(i);
+            out.put(" xmlns");
+            if (prefix != null && !prefix.isEmpty()) {
+                out.put(':');
+                out.put(prefix);
+            }
+            putValue(in.getNamespaceURI(i));
+        }
+        for (int i = 0; i < in.getAttributeCount(); i++) {
+            out.put(' ');
+            putName(in.getAttributePrefix(i), in.getAttributeLocalName(i));
+            putValue(in.getAttributeValue(i));
+        }
+        if (depth == mixed.length) {
+            mixed = Arrays.copyOf(mixed, depth * 2);
+        }
+        // Everything inside mixed content is written as it came
+        mixed[depth] = depth > 0 && mixed[depth - 1];
+        depth++;
+        tagOpen = true;
+    }
+
+    private void endElement() {
+        boolean wasMixed = mixed[--depth];
+        brackets = 0;
+        if (tagOpen) {
+            out.put("/>");
+            tagOpen = false;
+            return;
+        }
+        if (!wasMixed) newline();
+        out.put("</");
+        putName(in.getPrefix(), in.getLocalName());
+        out.put('>');
+    }
+
+    private void text() {
+        // Outside the root element there can only be whitespace
+        if (depth == 0) return;
+        if (!mixed[depth - 1] && in.isWhiteSpace()) return;
+        startText();
+        char[] chars = in.getTextCharacters();
+        int start = in.getTextStart();
+        int end = start + in.getTextLength();
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == '&') {
+                out.put("&amp;");
+            } else if (c == '<') {
+                out.put("&lt;");
+            } else if (c == '>' && brackets >= 2) {
+                out.put("&gt;");
+            } else {
+                out.put(c);
+            }
+            brackets = c == ']' ? brackets + 1 : 0;
+        }
+    }
+
+    // Text, a CDATA section or a reference makes its element mixed
+    private void startText() {
+        closeTag();
+        if (depth > 0) mixed[depth - 1] = true;
+    }
+
+    // Tags, comments and the like go on lines of their own, unless they
+    // sit in mixed content
+    private void startItem() {
+        closeTag();
+        brackets = 0;
+        if (depth == 0 || !mixed[depth - 1]) newline();
+        started = true;
+    }
+
+    private void closeTag() {
+        if (tagOpen) {
+            out.put('>');
+            tagOpen = false;
+        }
+    }
+
+    private void newline() {
+        if (!pretty || !started) return;
+        out.put('\n');
+        for (int i = depth * indent; i > 0; i--) {
+            out.put(' ');
+        }
+    }
+
+    private void putName(String prefix, String localName) {
+        if (prefix != null && !prefix.isEmpty()) {
+            out.put(prefix);
+            out.put(':');
+        }
+        out.put(localName);
+    }
+
+    private void putValue(String value) {
+        out.put("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&') {
+                out.put("&amp;");
+            } else if (c == '<') {
+                out.put("&lt;");
+            } else if (c == '"') {
+                out.put("&quot;");
+            } else if (c == '\n') {
+                out.put("&#10;");
+            } else if (c == '\r') {
+                out.put("&#13;");
+            } else if (c == '\t') {
+                out.put("&#9;");
+            } else {
+                out.put(c);
+            }
+        }
+        out.put('"');
+    }
+
+    private static StructuredFormat.SyntaxError syntaxError(
+        XMLStreamException e
+    ) {
+        String message = e.getMessage() == null ? "" : e.getMessage();
+        // The parser leads with its own copy of the position
+        int at = message.indexOf("Message: ");
+        if (at >= 0) message = message.substring(at + 9);
+        Location location = e.getLocation();
+        return new StructuredFormat.SyntaxError(
+            message.trim(),
+            location == null ? 1 : Math.max(1, location.getLineNumber()),
+            location == null ? 1 : Math.max(1, location.getColumnNumber())
+        );
+    }
+
+    // Remembers the last character read, so a final newline can be kept
+    private static class LastCharReader extends FilterReader {
+
+        int last = -1;
+
+        LastCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) last = c;
+            return c;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) last = buf[off + n - 1];
+            return n;
+        }
+    }
+}